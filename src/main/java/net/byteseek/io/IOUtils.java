@@ -32,12 +32,20 @@
 package net.byteseek.io;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 
+import net.byteseek.io.reader.AbstractReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+
 /**
  * A static utility package containing some useful methods for reading and
- * writing bytes using InputStreams, OutputStreams, and RandomAccessFiles.
+ * writing bytes using InputStreams, OutputStreams, RandomAccessFiles, FileChannels
+ * and WindowReaders.
  * 
  * @author M\tt Palmer
  */
@@ -219,6 +227,124 @@ public final class IOUtils {
 		return totalRead;
 	}
 
+	/**
+	 * Reads bytes from a {@link java.nio.channels.FileChannel} into the byte array,
+	 * starting from the position provided in the FileChannel, until the
+	 * byte array is filled or there are no more bytes in the FileChannel.
+	 * <p>
+	 * The read is positional, so it does not use or change the current position
+	 * of the FileChannel. It is therefore safe for more than one thread to read
+	 * from the same FileChannel at the same time.
+	 * <p>
+	 * Returns the total number of bytes read into the array.
+	 *
+	 * @param input
+	 *            The FileChannel to read from.
+	 * @param bytes
+	 *            The byte array to fill.
+	 * @param fromPosition
+	 *            The position to begin reading from in the FileChannel.
+	 * @return int The total number of bytes read.
+	 * @throws IOException
+	 *             If a problem occurs reading from the FileChannel.
+	 */
+	public static int readBytes(final FileChannel input,
+			final byte[] bytes, final long fromPosition) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		final int blockSize = bytes.length;
+		int totalRead = 0;
+		while (totalRead < blockSize) {
+			final int read = input.read(buffer, fromPosition + totalRead);
+			if (read == -1) {
+				break;
+			}
+			totalRead += read;
+		}
+		return totalRead;
+	}
+
+	/**
+	 * Reads bytes from a {@link java.nio.channels.SeekableByteChannel} into the byte array,
+	 * starting from the current position of the channel, until the byte array is filled
+	 * or there are no more bytes in the channel.
+	 * <p>
+	 * Returns the total number of bytes read into the array.
+	 *
+	 * @param input
+	 *            The SeekableByteChannel to read from.
+	 * @param bytes
+	 *            The byte array to fill.
+	 * @return int The total number of bytes read.
+	 * @throws IOException
+	 *             If a problem occurs reading from the SeekableByteChannel.
+	 */
+	public static int readBytes(final SeekableByteChannel input,
+			final byte[] bytes) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		final int blockSize = bytes.length;
+		int totalRead = 0;
+		while (totalRead < blockSize) {
+			final int read = input.read(buffer);
+			if (read == -1) {
+				break;
+			}
+			totalRead += read;
+		}
+		return totalRead;
+	}
+
+	/**
+	 * Reads bytes from a position in a {@link net.byteseek.io.reader.WindowReader} into
+	 * the byte array, crossing Window boundaries if necessary, until the length requested
+	 * is read or there are no more bytes in the reader.
+	 * <p>
+	 * An {@link net.byteseek.io.reader.AbstractReader} reads the bytes itself, otherwise they
+	 * are copied from each Window of the reader in turn.
+	 *
+	 * @param reader
+	 *            The WindowReader to read from.
+	 * @param position
+	 *            The position in the reader to start reading from.
+	 * @param bytes
+	 *            The byte array to read bytes into.
+	 * @param offset
+	 *            The offset in the array to read bytes into.
+	 * @param length
+	 *            The number of bytes to read.
+	 * @return int The total number of bytes read, which is zero if there are no bytes at the position.
+	 * @throws IOException
+	 *             If a problem occurs reading from the WindowReader.
+	 * @throws IndexOutOfBoundsException
+	 *             If the offset or length are negative, or the length is more than the space
+	 *             available in the array after the offset.
+	 */
+	public static int readBytes(final WindowReader reader, final long position,
+			final byte[] bytes, final int offset, final int length) throws IOException {
+		if (reader instanceof AbstractReader) {
+			return ((AbstractReader) reader).read(position, bytes, offset, length);
+		}
+		if (offset < 0 || length < 0 || length > bytes.length - offset) {
+			throw new IndexOutOfBoundsException("Cannot read " + length + " bytes at offset " + offset +
+					                            " into an array of length " + bytes.length);
+		}
+		long readPosition = position;
+		int totalRead = 0;
+		while (totalRead < length) {
+			final Window window = reader.getWindow(readPosition);
+			if (window == null) {
+				break;
+			}
+			final int windowOffset = (int) (readPosition - window.getWindowPosition());
+			final int available = window.length() - windowOffset;
+			final int remaining = length - totalRead;
+			final int toCopy = available < remaining? available : remaining;
+			System.arraycopy(window.getArray(), windowOffset, bytes, offset + totalRead, toCopy);
+			totalRead += toCopy;
+			readPosition += toCopy;
+		}
+		return totalRead;
+	}
+
 	/**
 	 * Writes the contents of an array of bytes into a
 	 * {@link java.io.RandomAccessFile}.
@@ -34,9 +34,17 @@ package net.byteseek.io.reader;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
 
+import net.byteseek.io.reader.cache.WindowArrayPool;
 import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.cache.WindowCache.WindowObserver;
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.PooledWindow;
+import net.byteseek.io.reader.windows.SoftWindowRecovery;
 import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowMissingException;
 import net.byteseek.utils.ArgUtils;
 
 //FUTURE:
@@ -50,6 +58,10 @@ import net.byteseek.utils.ArgUtils;
  * It provides common Window and cache management services using a fixed Window
  * size, and a standard Window iterator
  * {@link net.byteseek.io.reader.AbstractReader.WindowIterator}.
+ * <p>
+ * Getting windows and reading bytes is safe for use by more than one thread, as
+ * long as the {@link WindowCache} used and the implementation of
+ * {@link #createWindow(long)} in a subclass are also thread-safe.
  * 
  * @author Matt Palmer
  */
@@ -89,14 +101,40 @@ public abstract class AbstractReader implements WindowReader {
 	 */
 	protected final WindowCache cache;
 
+	/**
+	 * The lock held while a Window is created when the reader is prefetching, as
+	 * Windows are then created on a background executor as well as by the caller.
+	 * Subclasses which use the same state as {@link #createWindow(long)} in other
+	 * methods (e.g. seeking a file to reload a Window, or decompressing data to find
+	 * the length) must hold this lock while they do so.
+	 */
+	protected final Object createLock = new Object();
+
 	/**
 	 * The last window acquired in this WindowReader using the
 	 * {@link #getWindow(long)} method. Positions to read from are quite likely
 	 * to be consecutive or close to the previous byte read from. Recording the
 	 * last window therefore avoids the need to look it up in the cache if the
 	 * required position is still inside the last Window.
+	 * <p>
+	 * The field is only read once into a local variable by getWindow(), so if
+	 * more than one thread uses the reader, the worst that can happen is that a
+	 * thread looks up a window in the cache when it did not strictly need to.
+	 */
+	private volatile Window lastWindow;
+
+	/**
+	 * An optional pool of byte arrays to create Windows from, and the observer
+	 * of the cache which returns arrays to it when a Window leaves the cache.
 	 */
-	private Window lastWindow;
+	private WindowArrayPool arrayPool;
+	private volatile ArrayReturner arrayReturner;
+	private final SoftWindowRecovery windowReloader = new WindowReloader();
+
+	/**
+	 * An optional prefetcher which reads Windows ahead of sequential access on a background executor.
+	 */
+	private volatile WindowPrefetcher prefetcher;
 
 	/**
 	 * Construct the WindowReader using a default window size, using the WindowCache
@@ -165,23 +203,26 @@ public abstract class AbstractReader implements WindowReader {
 	@Override
 	public Window getWindow(final long position) throws IOException {
 		if (position >= 0) {
-			Window window;
+			Window window = lastWindow;
 			final int offset = (int) (position % (long) windowSize);
 			final long windowStart = position - offset;
-			if (lastWindow != null
-					&& lastWindow.getWindowPosition() == windowStart) {
-				window = lastWindow;
-			} else {
+			if (window == null || window.getWindowPosition() != windowStart) {
 				window = cache.getWindow(windowStart);
 				if (window != null) {
 					lastWindow = window;
 				} else {
-					window = createWindow(windowStart);
+					final WindowPrefetcher windowPrefetcher = prefetcher;
+					window = windowPrefetcher == null? createWindow(windowStart)
+							                         : windowPrefetcher.getWindow(windowStart);
 					if (window != null) {
 						lastWindow = window;
 						cache.addWindow(window);
 					}
 				}
+				final ArrayReturner returner = arrayReturner;
+				if (returner != null) {
+					returner.returnPendingWindow(window);
+				}
 			}
 			// Finally, if the position requested is outside the window limit,
 			// don't return a window. The position itself is invalid, even
@@ -203,12 +244,106 @@ public abstract class AbstractReader implements WindowReader {
 		return new WindowIterator();
 	}
 
+	/**
+	 * Reads bytes from a position into an array, crossing Window boundaries if necessary.
+	 * <p>
+	 * Fewer bytes than requested are read if the end of the reader is reached.
+	 * {@link net.byteseek.io.IOUtils#readBytes(WindowReader, long, byte[], int, int)}
+	 * reads in bulk from any WindowReader, using this method for an AbstractReader.
+	 *
+	 * @param position
+	 *            The position to start reading from.
+	 * @param readInto
+	 *            The array to read bytes into.
+	 * @param offset
+	 *            The offset in the array to read bytes into.
+	 * @param length
+	 *            The number of bytes to read.
+	 * @return The number of bytes read, which is zero if there are no bytes at the position.
+	 * @throws IOException
+	 *             if there was a problem reading the bytes.
+	 * @throws IndexOutOfBoundsException
+	 *             if the offset or length are negative, or the length is more than the space
+	 *             available in the array after the offset.
+	 */
+	public int read(final long position, final byte[] readInto, final int offset, final int length)
+			throws IOException {
+		if (offset < 0 || length < 0 || length > readInto.length - offset) {
+			throw new IndexOutOfBoundsException("Cannot read " + length + " bytes at offset " + offset +
+					                            " into an array of length " + readInto.length);
+		}
+		long readPosition = position;
+		int totalRead = 0;
+		while (totalRead < length) {
+			final Window window = getWindow(readPosition);
+			if (window == null) {
+				break;
+			}
+			final int windowOffset = (int) (readPosition - window.getWindowPosition());
+			final int available = window.length() - windowOffset;
+			final int remaining = length - totalRead;
+			final int toCopy = available < remaining? available : remaining;
+			if (window instanceof BufferWindow) { // read directly from the buffer rather than copying the window.
+				((BufferWindow) window).copyBytes(windowOffset, readInto, offset + totalRead, toCopy);
+			} else if (window instanceof PooledWindow) { // copy without handing out the pool array.
+				((PooledWindow) window).copyBytes(windowOffset, readInto, offset + totalRead, toCopy);
+			} else {
+				System.arraycopy(window.getArray(), windowOffset, readInto, offset + totalRead, toCopy);
+			}
+			totalRead += toCopy;
+			readPosition += toCopy;
+		}
+		return totalRead;
+	}
+
+	/**
+	 * Returns a {@link Window} containing a contiguous range of bytes starting at the
+	 * position given, which may cross Window boundaries.
+	 * <p>
+	 * If the range is entirely inside a single Window, that Window is returned, and
+	 * it may start before the position requested. Otherwise a new Window is returned
+	 * which starts at the position, containing a copy of the bytes in the range. The offset
+	 * of the position in the view is always <code>position - view.getWindowPosition()</code>.
+	 * The view contains fewer bytes than requested if the end of the reader is reached.
+	 * <p>
+	 * As a view crossing a Window boundary copies the whole range, code which can stop
+	 * early, such as a matcher failing on its first byte, should compare Window by Window
+	 * instead, and only use a view when it needs all of the bytes.
+	 *
+	 * @param position
+	 *            The position of the first byte in the range.
+	 * @param length
+	 *            The number of bytes in the range.
+	 * @return A Window containing the range of bytes, or null if there is no byte at the position.
+	 * @throws IOException
+	 *             if there was a problem reading the bytes.
+	 * @throws IllegalArgumentException
+	 *             if the length is less than one.
+	 */
+	public Window getView(final long position, final int length) throws IOException {
+		ArgUtils.checkPositiveInteger(length, "length");
+		final Window window = getWindow(position);
+		if (window != null) {
+			final int availableInWindow = window.length() - (int) (position - window.getWindowPosition());
+			if (availableInWindow < length) {
+				final byte[] bytes = new byte[length];
+				final int totalRead = read(position, bytes, 0, length);
+				if (totalRead > availableInWindow) {
+					return new HardWindow(bytes, position, totalRead);
+				}
+			}
+		}
+		return window;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void close() throws IOException {
+		stopPrefetching();
 		cache.clear();
+		setWindowArrayPool(null);
 	}
 
 	/**
@@ -219,6 +354,138 @@ public abstract class AbstractReader implements WindowReader {
 		return (int) (position % (long) windowSize);
 	}
 
+	/**
+	 * Starts reading Windows ahead of the reader on a background executor, when the
+	 * reader is accessed sequentially forwards or backwards.  Windows read ahead are
+	 * handed to the reader when they are needed, so reading from slow storage can
+	 * overlap with processing the Windows already acquired.  If the reader was
+	 * already prefetching, the previous prefetching is stopped.
+	 * <p>
+	 * Calls to {@link #createWindow(long)} are serialized on the {@link #createLock} while
+	 * prefetching, so createWindow() itself does not need to be thread-safe.  Other methods
+	 * of the subclass which use the same state must also hold that lock.  The cache is still
+	 * only used by the threads calling this reader.  The executor should not interrupt running tasks
+	 * (e.g. with shutdownNow()), as interrupting a thread reading a FileChannel closes it.
+	 * The executor is not shut down when prefetching stops, or when the reader is closed.
+	 *
+	 * @param executor   The executor to read Windows on.
+	 * @param numWindows The number of Windows to read ahead of sequential access.
+	 * @throws IllegalArgumentException if the executor is null or numWindows is less than one.
+	 */
+	public void startPrefetching(final ExecutorService executor, final int numWindows) {
+		final WindowPrefetcher newPrefetcher = new WindowPrefetcher(this, executor, numWindows);
+		stopPrefetching();
+		prefetcher = newPrefetcher;
+	}
+
+	/**
+	 * Stops reading Windows ahead of the reader, discarding any Windows which have been
+	 * read ahead but not yet used.  Waits for any Window read which is currently running
+	 * to finish.  Has no effect if the reader is not prefetching.
+	 */
+	public void stopPrefetching() {
+		final WindowPrefetcher oldPrefetcher = prefetcher;
+		if (oldPrefetcher != null) {
+			prefetcher = null;
+			oldPrefetcher.stop();
+		}
+	}
+
+	/**
+	 * Returns true if the reader is reading Windows ahead of sequential access.
+	 *
+	 * @return true if the reader is reading Windows ahead of sequential access.
+	 */
+	public boolean isPrefetching() {
+		return prefetcher != null;
+	}
+
+	/**
+	 * Sets a pool of byte arrays to create Windows from, or null to stop using a pool.
+	 * <p>
+	 * Windows created with {@link #newWindow(byte[], long, int)} are
+	 * {@link PooledWindow}s which own their pool array.  When one leaves the cache of this
+	 * reader, it releases its array, which is returned to the pool to be re-used by a later
+	 * Window.  If the Window leaving the cache is still the last Window acquired from this
+	 * reader, its array is not released until another Window is acquired.  A caller still
+	 * holding a released Window can read it, as it reloads its bytes from this reader, or
+	 * throws a WindowMissingException if the reader cannot read them again (e.g. a stream
+	 * which has moved past them).  The arrays of other Windows, and arrays handed out by
+	 * {@link Window#getArray()}, are never returned to the pool.
+	 * <p>
+	 * The reader claims the pool, so it cannot be shared with other readers.  It is
+	 * released when another pool is set, or when the reader is closed.
+	 * A pool should not be used with a reader shared between threads, as a Window
+	 * may still be in use by another thread when it leaves the cache.  The cache of the
+	 * reader can be shared with readers on other threads, which may evict its Windows.
+	 *
+	 * @param pool The pool of byte arrays to use, or null if no pool should be used.
+	 * @throws IllegalArgumentException if the pool array size is not the window size of this reader.
+	 * @throws IllegalStateException if the pool is already used by another reader.
+	 */
+	public void setWindowArrayPool(final WindowArrayPool pool) {
+		if (pool != null) {
+			if (pool.getArraySize() != windowSize) {
+				throw new IllegalArgumentException("The pool array size " + pool.getArraySize() +
+						                           " must be the same as the window size " + windowSize);
+			}
+			pool.claim(this);
+		}
+		if (arrayReturner != null) {
+			cache.unsubscribe(arrayReturner);
+			arrayReturner = null;
+		}
+		if (arrayPool != null && arrayPool != pool) {
+			arrayPool.release(this);
+		}
+		arrayPool = pool;
+		if (pool != null) {
+			arrayReturner = new ArrayReturner(pool);
+			cache.subscribe(arrayReturner);
+		}
+	}
+
+	/**
+	 * Returns the pool of byte arrays used to create Windows, or null if no pool is used.
+	 *
+	 * @return The pool of byte arrays used to create Windows, or null if no pool is used.
+	 */
+	public WindowArrayPool getWindowArrayPool() {
+		return arrayPool;
+	}
+
+	/**
+	 * Returns a byte array of the window size to read a new Window into.  If a
+	 * {@link WindowArrayPool} has been set, the array is taken from the pool,
+	 * otherwise a new array is created.  The contents of the array are undefined.
+	 *
+	 * @return A byte array of the window size.
+	 */
+	protected final byte[] newWindowArray() {
+		final WindowArrayPool pool = arrayPool;
+		return pool == null? new byte[windowSize] : pool.getArray();
+	}
+
+	/**
+	 * Returns a Window over an array returned by {@link #newWindowArray()}.  If a
+	 * {@link WindowArrayPool} has been set, it is a {@link PooledWindow} which owns the
+	 * array until it leaves the cache, and which reloads its bytes from this reader
+	 * once it has released the array.  Otherwise it is a {@link HardWindow}.
+	 *
+	 * @param bytes       The array of the Window.
+	 * @param windowStart The position in the reader at which the Window begins.
+	 * @param length      The length of the Window.
+	 * @return A Window over the array.
+	 */
+	protected final Window newWindow(final byte[] bytes, final long windowStart, final int length) {
+		if (arrayPool == null) {
+			return new HardWindow(bytes, windowStart, length);
+		}
+		final SoftWindowRecovery recovery = this instanceof SoftWindowRecovery? (SoftWindowRecovery) this
+				                                                               : windowReloader;
+		return new PooledWindow(bytes, windowStart, length, recovery);
+	}
+
 	/**
 	 * An abstract method which must create a {@link Window} for the position
 	 * given. Returns null if a Window cannot be provided for the position
@@ -236,6 +503,75 @@ public abstract class AbstractReader implements WindowReader {
 	 */
 	protected abstract Window createWindow(final long windowStart) throws IOException;
 
+	/**
+	 * A {@link WindowObserver} which releases the arrays of PooledWindows leaving the
+	 * cache to a {@link WindowArrayPool}.  If the Window leaving is still the last
+	 * Window acquired by the reader, it is held back until a different Window is acquired.
+	 * <p>
+	 * It is thread-safe, as a cache shared with other readers (e.g. a
+	 * {@link net.byteseek.io.reader.cache.SharedWindowCache}) may evict a Window on the
+	 * thread of another reader while this reader is acquiring Windows.
+	 */
+	private final class ArrayReturner implements WindowObserver {
+
+		private final WindowArrayPool pool;
+		private Window pendingWindow; // guarded by this.
+
+		private ArrayReturner(final WindowArrayPool pool) {
+			this.pool = pool;
+		}
+
+		@Override
+		public synchronized void windowFree(final Window window, final WindowCache fromCache) {
+			if (window == lastWindow) {
+				final Window pending = pendingWindow;
+				pendingWindow = window;
+				if (pending != null && pending != window) {
+					returnArray(pending);
+				}
+			} else {
+				returnArray(window);
+			}
+		}
+
+		private synchronized void returnPendingWindow(final Window currentWindow) {
+			final Window pending = pendingWindow;
+			if (pending != null && pending != currentWindow) {
+				pendingWindow = null;
+				returnArray(pending);
+			}
+		}
+
+		private void returnArray(final Window window) {
+			if (window instanceof PooledWindow) {
+				pool.returnArray(((PooledWindow) window).releaseArray());
+			}
+		}
+	}
+
+	/**
+	 * Reloads the bytes of a {@link PooledWindow} which has released its array, for readers
+	 * which do not reload Windows themselves.  The bytes are taken from the cache if it can
+	 * still provide them (e.g. from a temporary file), or else the Window is created again.
+	 */
+	private final class WindowReloader implements SoftWindowRecovery {
+
+		@Override
+		public byte[] reloadWindowBytes(final Window window) throws IOException {
+			final long windowStart = window.getWindowPosition();
+			Window reloaded = cache.getWindow(windowStart);
+			if (reloaded == null || reloaded == window) {
+				synchronized (createLock) {
+					reloaded = createWindow(windowStart);
+				}
+			}
+			if (reloaded == null || reloaded.length() != window.length()) {
+				throw new WindowMissingException("The bytes of the window can no longer be read: " + window);
+			}
+			return reloaded.getArray();
+		}
+	}
+
 	/**
 	 * An iterator of {@link Window}s over a {@link WindowReader}.
 	 */
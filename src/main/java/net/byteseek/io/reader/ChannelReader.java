@@ -0,0 +1,302 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import net.byteseek.io.IOUtils;
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader extending {@link AbstractReader} which reads a
+ * {@link java.nio.channels.SeekableByteChannel} into cached byte arrays.
+ * <p>
+ * Channels can be opened from a {@link java.nio.file.Path} on any FileSystem provider,
+ * for example the default file system, a zip file system or an in-memory file system,
+ * so entries inside archives can be read with random access rather than being read
+ * as a stream and cached in full.  If the channel is a {@link java.nio.channels.FileChannel},
+ * windows are read with positional reads.  Window arrays come from the
+ * {@link net.byteseek.io.reader.cache.WindowArrayPool} if one has been set.
+ * <p>
+ * Some channels (such as those of older zip file system providers) cannot change their position.
+ * The reader then skips forwards through the channel, and to go backwards it re-opens the channel
+ * from its Path, if it was constructed with one.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public class ChannelReader extends AbstractReader {
+
+	private final static int SKIP_BUFFER_SIZE = 8192;
+
+	private final Path path;
+	private final boolean closeChannelOnClose;
+	private final long length;
+	private SeekableByteChannel channel;
+	private boolean canPosition = true;
+	private byte[] skipBuffer;
+
+	/**
+	 * Constructs a ChannelReader over a Path, which defaults to a window size of 4096, caching
+	 * the last 32 most recently used Windows in a {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache}.
+	 *
+	 * @param path The path of the file to read from.
+	 * @throws IOException If the file cannot be opened.
+	 * @throws IllegalArgumentException if the path passed in is null.
+	 */
+	public ChannelReader(final Path path) throws IOException {
+		this(path, DEFAULT_WINDOW_SIZE, new LeastRecentlyUsedCache(DEFAULT_CAPACITY));
+	}
+
+	/**
+	 * Constructs a ChannelReader over a Path using the window size passed in, caching the
+	 * last 32 most recently used Windows in a {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache}.
+	 *
+	 * @param path       The path of the file to read from.
+	 * @param windowSize The size of the byte array to read from the channel.
+	 * @throws IOException If the file cannot be opened.
+	 * @throws IllegalArgumentException if the path passed in is null, or the window size is less than one.
+	 */
+	public ChannelReader(final Path path, final int windowSize) throws IOException {
+		this(path, windowSize, new LeastRecentlyUsedCache(DEFAULT_CAPACITY));
+	}
+
+	/**
+	 * Constructs a ChannelReader over a Path which defaults to a window size of 4096,
+	 * using the WindowCache passed in to cache Windows.
+	 *
+	 * @param path  The path of the file to read from.
+	 * @param cache The cache of Windows to use.
+	 * @throws IOException If the file cannot be opened.
+	 * @throws IllegalArgumentException if the path or cache passed in is null.
+	 */
+	public ChannelReader(final Path path, final WindowCache cache) throws IOException {
+		this(path, DEFAULT_WINDOW_SIZE, cache);
+	}
+
+	/**
+	 * Constructs a ChannelReader over a Path using the window size and cache passed in.
+	 * The channel opened is closed when this reader is closed.
+	 *
+	 * @param path       The path of the file to read from.
+	 * @param windowSize The size of the byte array to read from the channel.
+	 * @param cache      The cache of Windows to use.
+	 * @throws IOException If the file cannot be opened.
+	 * @throws IllegalArgumentException if the path or cache passed in is null, or the window size is less than one.
+	 */
+	public ChannelReader(final Path path, final int windowSize, final WindowCache cache) throws IOException {
+		this(openChannel(path, windowSize, cache), path, windowSize, cache, true);
+	}
+
+	/**
+	 * Constructs a ChannelReader over an open channel, which defaults to a window size of 4096,
+	 * caching the last 32 most recently used Windows in a {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache}.
+	 * The channel is closed when this reader is closed.
+	 *
+	 * @param channel The channel to read from.
+	 * @throws IOException If the size of the channel cannot be determined.
+	 * @throws IllegalArgumentException if the channel passed in is null.
+	 */
+	public ChannelReader(final SeekableByteChannel channel) throws IOException {
+		this(channel, DEFAULT_WINDOW_SIZE, new LeastRecentlyUsedCache(DEFAULT_CAPACITY), true);
+	}
+
+	/**
+	 * Constructs a ChannelReader over an open channel using the window size and cache passed in.
+	 *
+	 * @param channel             The channel to read from.
+	 * @param windowSize          The size of the byte array to read from the channel.
+	 * @param cache               The cache of Windows to use.
+	 * @param closeChannelOnClose Whether to close the channel when this reader is closed.
+	 * @throws IOException If the size of the channel cannot be determined.
+	 * @throws IllegalArgumentException if the channel or cache passed in is null, or the window size is less than one.
+	 */
+	public ChannelReader(final SeekableByteChannel channel, final int windowSize,
+						 final WindowCache cache, final boolean closeChannelOnClose) throws IOException {
+		this(channel, null, windowSize, cache, closeChannelOnClose);
+	}
+
+	private ChannelReader(final SeekableByteChannel channel, final Path path, final int windowSize,
+						  final WindowCache cache, final boolean closeChannelOnClose) throws IOException {
+		super(windowSize, cache);
+		ArgUtils.checkNullObject(channel, "channel");
+		this.channel = channel;
+		this.path = path;
+		this.closeChannelOnClose = closeChannelOnClose;
+		this.length = sizeOf(channel, path != null);
+	}
+
+	/**
+	 * Returns the length of the channel when the reader was constructed.
+	 *
+	 * @return The length of the channel accessed by the reader.
+	 */
+	@Override
+	public final long length() {
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Window createWindow(final long windowStart) throws IOException {
+		if (windowStart >= 0 && windowStart < length) {
+			final byte[] bytes = newWindowArray();
+			final int totalRead;
+			if (channel instanceof FileChannel) {
+				totalRead = IOUtils.readBytes((FileChannel) channel, bytes, windowStart);
+			} else if (positionChannel(windowStart)) {
+				totalRead = IOUtils.readBytes(channel, bytes);
+			} else {
+				totalRead = 0;
+			}
+			if (totalRead > 0) {
+				return newWindow(bytes, windowStart, totalRead);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the underlying channel if this reader is responsible for closing it,
+	 * then clears any cache associated with this WindowReader.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (closeChannelOnClose) {
+				channel.close();
+			}
+		} finally {
+			super.close();
+		}
+	}
+
+	/**
+	 * Returns the Path this reader was constructed with, or null if it was constructed from a channel.
+	 *
+	 * @return The Path this reader was constructed with, or null if it was constructed from a channel.
+	 */
+	public final Path getPath() {
+		return path;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[path:" + path + " channel:" + channel + " length: " + length + " cache:" + cache + ']';
+	}
+
+	/**
+	 * Checks all the arguments before opening a channel on the path, so a channel is never
+	 * opened for a reader which cannot be constructed.
+	 */
+	private static SeekableByteChannel openChannel(final Path path, final int windowSize,
+												   final WindowCache cache) throws IOException {
+		ArgUtils.checkNullObject(path, "path");
+		ArgUtils.checkPositiveInteger(windowSize, "windowSize");
+		ArgUtils.checkNullObject(cache, "cache");
+		return Files.newByteChannel(path, StandardOpenOption.READ);
+	}
+
+	/**
+	 * Returns the size of the channel, closing it if the size can't be read and
+	 * the channel was opened by this reader.
+	 */
+	private static long sizeOf(final SeekableByteChannel channel, final boolean openedHere) throws IOException {
+		try {
+			return channel.size();
+		} catch (IOException | RuntimeException ex) {
+			if (openedHere) {
+				try {
+					channel.close();
+				} catch (IOException closeFailure) {
+					ex.addSuppressed(closeFailure);
+				}
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Sets the position of the channel, or if the channel can't change position,
+	 * skips forward to it, re-opening the channel first if it must go backwards.
+	 *
+	 * @return true if the position was reached.
+	 */
+	private boolean positionChannel(final long position) throws IOException {
+		if (canPosition) {
+			try {
+				channel.position(position);
+				return true;
+			} catch (UnsupportedOperationException cannotPosition) {
+				canPosition = false;
+			}
+		}
+		if (position < channel.position()) {
+			if (path == null) {
+				throw new IOException("The channel cannot go back to position " + position + " and has no path to re-open it.");
+			}
+			channel.close();
+			channel = Files.newByteChannel(path, StandardOpenOption.READ);
+		}
+		if (skipBuffer == null) {
+			skipBuffer = new byte[SKIP_BUFFER_SIZE];
+		}
+		final ByteBuffer buffer = ByteBuffer.wrap(skipBuffer);
+		long toSkip = position - channel.position();
+		while (toSkip > 0) {
+			((Buffer) buffer).clear();
+			if (toSkip < SKIP_BUFFER_SIZE) {
+				((Buffer) buffer).limit((int) toSkip);
+			}
+			final int read = channel.read(buffer);
+			if (read < 0) {
+				return false;
+			}
+			toSkip -= read;
+		}
+		return true;
+	}
+
+}
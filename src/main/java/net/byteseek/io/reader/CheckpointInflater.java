@@ -0,0 +1,854 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * A deflate decompressor for gzip (including multi-member gzip) and zlib files,
+ * which can record and resume from {@link GzipIndex.Checkpoint}s at deflate block boundaries.
+ * <p>
+ * The java.util.zip.Inflater cannot resume decompression from a bit position in the middle
+ * of a compressed stream, which is required to restart at a block boundary, so this class
+ * implements deflate decoding (RFC 1951) directly.  Huffman codes up to 10 bits long are decoded
+ * with a single table lookup, and input bits are buffered 64 at a time.
+ * <p>
+ * The length in the trailer of each gzip member is verified, and so is its CRC-32 (or the Adler-32
+ * of a zlib stream) if the member was inflated from its start rather than from a checkpoint.
+ * The optional CRC of a gzip header is not verified.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Matt Palmer
+ */
+final class CheckpointInflater {
+
+	private static final int WINDOW_SIZE = 32768;
+	private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+	private static final int BUFFER_SIZE = 65536;
+	private static final int MAX_BITS = 15;
+	private static final int FAST_BITS = 10;
+	private static final int FAST_MASK = (1 << FAST_BITS) - 1;
+	private static final int MAX_BUFFERED_BITS = 56;
+	private static final int MIN_ARRAY_COPY = 16;
+	private static final int MAX_MATCH_BITS = 5 + MAX_BITS + 13; // length extra, distance code and extra bits.
+	private static final int MAX_LENGTH_CODES = 286;
+	private static final int MAX_DISTANCE_CODES = 30;
+	private static final int FIXED_LENGTH_CODES = 288;
+
+	private static final int GZIP_ID1 = 0x1f;
+	private static final int GZIP_ID2 = 0x8b;
+	private static final int DEFLATE_METHOD = 8;
+	private static final int GZIP_FLAG_HEADER_CRC = 0x02;
+	private static final int GZIP_FLAG_EXTRA = 0x04;
+	private static final int GZIP_FLAG_NAME = 0x08;
+	private static final int GZIP_FLAG_COMMENT = 0x10;
+	private static final int ZLIB_FLAG_DICTIONARY = 0x20;
+	private static final int GZIP_TRAILER_LENGTH = 8;
+	private static final int ZLIB_TRAILER_LENGTH = 4;
+
+	private static final int[] LENGTH_BASE = {
+			3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+			35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+	private static final int[] LENGTH_EXTRA = {
+			0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+			3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+	private static final int[] DISTANCE_BASE = {
+			1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+			257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+	private static final int[] DISTANCE_EXTRA = {
+			0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+			7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+	private static final int[] CODE_LENGTH_ORDER = {
+			16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+	private static final Huffman FIXED_LENGTHS;
+	private static final Huffman FIXED_DISTANCES;
+	static {
+		final int[] lengths = new int[FIXED_LENGTH_CODES];
+		for (int symbol = 0; symbol < FIXED_LENGTH_CODES; symbol++) {
+			lengths[symbol] = symbol < 144? 8 : symbol < 256? 9 : symbol < 280? 7 : 8;
+		}
+		FIXED_LENGTHS = new Huffman(FIXED_LENGTH_CODES);
+		FIXED_LENGTHS.build(lengths, 0, FIXED_LENGTH_CODES);
+		final int[] distances = new int[MAX_DISTANCE_CODES];
+		for (int symbol = 0; symbol < MAX_DISTANCE_CODES; symbol++) {
+			distances[symbol] = 5;
+		}
+		FIXED_DISTANCES = new Huffman(MAX_DISTANCE_CODES);
+		FIXED_DISTANCES.build(distances, 0, MAX_DISTANCE_CODES);
+	}
+
+	private enum State { MEMBER_HEADER, BLOCK_HEADER, STORED, CODES, MEMBER_TRAILER, END }
+
+	private final RandomAccessFile file;
+	private final GzipIndex index;
+
+	// Compressed input:
+	private final byte[] input = new byte[BUFFER_SIZE];
+	private long inputStart;
+	private int inputPos;
+	private int inputLimit;
+	private long bitBuffer;
+	private int bitCount;
+
+	// Uncompressed output:
+	private final byte[] window = new byte[WINDOW_SIZE];
+	private int windowPos;
+	private int windowFilled;
+	private long position;
+
+	// Trailer verification:
+	private final CRC32 crc32 = new CRC32();
+	private final Adler32 adler32 = new Adler32();
+	private Checksum checksum = crc32;
+	private boolean checksumFromStart;
+	private long memberPosition;
+
+	// Decoding state:
+	private boolean gzip;
+	private boolean formatKnown;
+	private State state;
+	private boolean firstMember;
+	private boolean lastBlock;
+	private int storedRemaining;
+	private int copyRemaining;
+	private int copyDistance;
+	private Huffman lengthCodes;
+	private Huffman distanceCodes;
+	private final Huffman dynamicLengths = new Huffman(MAX_LENGTH_CODES);
+	private final Huffman dynamicDistances = new Huffman(MAX_DISTANCE_CODES);
+	private final int[] codeLengths = new int[MAX_LENGTH_CODES + MAX_DISTANCE_CODES];
+
+	/**
+	 * Constructs a CheckpointInflater positioned at the start of the file.
+	 *
+	 * @param file  The compressed file to read.
+	 * @param index The index to record checkpoints in as the file is decompressed.
+	 */
+	CheckpointInflater(final RandomAccessFile file, final GzipIndex index) {
+		this.file = file;
+		this.index = index;
+		restart();
+	}
+
+	/**
+	 * Returns the position in the uncompressed data of the next byte to be inflated.
+	 *
+	 * @return The position in the uncompressed data of the next byte to be inflated.
+	 */
+	long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Returns true if the end of the compressed data has been reached.
+	 *
+	 * @return true if the end of the compressed data has been reached.
+	 */
+	boolean isFinished() {
+		return state == State.END;
+	}
+
+	/**
+	 * Positions the inflater back at the start of the file.
+	 */
+	void restart() {
+		resetInput(0);
+		position = 0;
+		windowPos = 0;
+		windowFilled = 0;
+		firstMember = true;
+		checksumFromStart = false;
+		memberPosition = 0;
+		state = State.MEMBER_HEADER;
+	}
+
+	/**
+	 * Positions the inflater at a checkpoint.
+	 *
+	 * @param checkpoint The checkpoint to resume decompression from.
+	 * @throws IOException If there is a problem reading the file.
+	 */
+	void restore(final GzipIndex.Checkpoint checkpoint) throws IOException {
+		ensureFormatKnown();
+		resetInput(checkpoint.bitPosition >>> 3);
+		final int skipBits = (int) (checkpoint.bitPosition & 7);
+		if (skipBits > 0) {
+			bits(skipBits);
+		}
+		final byte[] dictionary = checkpoint.dictionary;
+		System.arraycopy(dictionary, 0, window, 0, dictionary.length);
+		windowPos = dictionary.length & WINDOW_MASK;
+		windowFilled = dictionary.length;
+		position = checkpoint.position;
+		memberPosition = checkpoint.memberPosition;
+		checksum = gzip? crc32 : adler32;
+		checksumFromStart = false; // the checksum of the member before the checkpoint is not known.
+		firstMember = false;
+		state = State.BLOCK_HEADER;
+	}
+
+	/**
+	 * Inflates bytes into an array, until the length requested has been inflated or the
+	 * end of the compressed data is reached.
+	 *
+	 * @param into   The array to inflate bytes into.
+	 * @param offset The offset into the array to start inflating into.
+	 * @param length The number of bytes to inflate.
+	 * @return The number of bytes inflated, which is only less than the length requested
+	 *         at the end of the compressed data.
+	 * @throws IOException If there is a problem reading the file, or the compressed data is invalid.
+	 */
+	int inflate(final byte[] into, final int offset, final int length) throws IOException {
+		int produced = 0;
+		while (produced < length) {
+			switch (state) {
+				case MEMBER_HEADER:  readMemberHeader(); break;
+				case BLOCK_HEADER:   readBlockHeader();  break;
+				case STORED:         produced += inflateStored(into, offset + produced, length - produced); break;
+				case CODES:          produced += inflateCodes(into, offset + produced, length - produced);  break;
+				case MEMBER_TRAILER: readMemberTrailer(); break;
+				default:             return produced; // END
+			}
+		}
+		return produced;
+	}
+
+	/**
+	 * Skips over uncompressed bytes.
+	 *
+	 * @param scratch An array to inflate the skipped bytes into.
+	 * @param length  The number of bytes to skip.
+	 * @return The number of bytes skipped, which is only less than the length at the end of the data.
+	 * @throws IOException If there is a problem reading the file, or the compressed data is invalid.
+	 */
+	long skip(final byte[] scratch, final long length) throws IOException {
+		long skipped = 0;
+		while (skipped < length) {
+			final int toInflate = (int) Math.min(scratch.length, length - skipped);
+			final int inflated = inflate(scratch, 0, toInflate);
+			skipped += inflated;
+			if (inflated < toInflate) {
+				break;
+			}
+		}
+		return skipped;
+	}
+
+	/*
+	 * Headers and trailers
+	 */
+
+	private void ensureFormatKnown() throws IOException {
+		if (!formatKnown) {
+			final long pointer = file.getFilePointer();
+			file.seek(0);
+			gzip = file.read() == GZIP_ID1 && file.read() == GZIP_ID2;
+			file.seek(pointer);
+			formatKnown = true;
+		}
+	}
+
+	private void readMemberHeader() throws IOException {
+		if (!firstMember && (atEndOfInput() || peekByte() != GZIP_ID1)) {
+			state = State.END; // no further gzip members, ignoring any trailing padding.
+			return;
+		}
+		final int first = nextByte();
+		final int second = nextByte();
+		if (first == GZIP_ID1 && second == GZIP_ID2) {
+			readGzipHeader();
+			gzip = true;
+		} else if ((first & 0x0F) == DEFLATE_METHOD && ((first << 8) | second) % 31 == 0) {
+			if ((second & ZLIB_FLAG_DICTIONARY) != 0) {
+				throw new IOException("Zlib streams with a preset dictionary are not supported.");
+			}
+			gzip = false;
+		} else {
+			throw new IOException("The data is not in gzip or zlib format.");
+		}
+		formatKnown = true;
+		firstMember = false;
+		checksum = gzip? crc32 : adler32;
+		checksum.reset();
+		checksumFromStart = true;
+		memberPosition = position;
+		state = State.BLOCK_HEADER;
+	}
+
+	private void readGzipHeader() throws IOException {
+		if (nextByte() != DEFLATE_METHOD) {
+			throw new IOException("Unsupported gzip compression method.");
+		}
+		final int flags = nextByte();
+		skipBytes(6); // modification time, extra flags and operating system.
+		if ((flags & GZIP_FLAG_EXTRA) != 0) {
+			skipBytes(nextByte() | (nextByte() << 8));
+		}
+		if ((flags & GZIP_FLAG_NAME) != 0) {
+			while (nextByte() != 0);
+		}
+		if ((flags & GZIP_FLAG_COMMENT) != 0) {
+			while (nextByte() != 0);
+		}
+		if ((flags & GZIP_FLAG_HEADER_CRC) != 0) {
+			skipBytes(2);
+		}
+	}
+
+	private void readMemberTrailer() throws IOException {
+		alignToByte();
+		if (gzip) {
+			final long crc = readLittleEndianInt();
+			final long memberLength = readLittleEndianInt();
+			if (checksumFromStart && crc != checksum.getValue()) {
+				throw new IOException("The CRC-32 of the gzip member ending at position " + position +
+						              " does not match its trailer.");
+			}
+			if (memberLength != ((position - memberPosition) & 0xFFFFFFFFL)) {
+				throw new IOException("The length of the gzip member ending at position " + position +
+						              " does not match its trailer.");
+			}
+			state = State.MEMBER_HEADER;
+		} else {
+			final long adler = ((long) nextByte() << 24) | (nextByte() << 16) | (nextByte() << 8) | nextByte();
+			if (checksumFromStart && adler != checksum.getValue()) {
+				throw new IOException("The Adler-32 of the zlib stream does not match its trailer.");
+			}
+			state = State.END;
+		}
+	}
+
+	private long readLittleEndianInt() throws IOException {
+		return nextByte() | (nextByte() << 8) | (nextByte() << 16) | ((long) nextByte() << 24);
+	}
+
+	/*
+	 * Deflate blocks
+	 */
+
+	private void readBlockHeader() throws IOException {
+		if (index.wantsCheckpoint(position)) {
+			index.addCheckpoint(new GzipIndex.Checkpoint(position, getBitPosition(), getDictionary(),
+					                                     memberPosition));
+		}
+		lastBlock = bits(1) == 1;
+		switch (bits(2)) {
+			case 0: {
+				alignToByte();
+				final int length = nextByte() | (nextByte() << 8);
+				final int complement = nextByte() | (nextByte() << 8);
+				if (length != (~complement & 0xFFFF)) {
+					throw new IOException("Invalid stored block length at position " + position);
+				}
+				storedRemaining = length;
+				state = State.STORED;
+				break;
+			}
+			case 1: {
+				lengthCodes = FIXED_LENGTHS;
+				distanceCodes = FIXED_DISTANCES;
+				copyRemaining = 0;
+				state = State.CODES;
+				break;
+			}
+			case 2: {
+				readDynamicCodes();
+				lengthCodes = dynamicLengths;
+				distanceCodes = dynamicDistances;
+				copyRemaining = 0;
+				state = State.CODES;
+				break;
+			}
+			default: throw new IOException("Invalid deflate block type at position " + position);
+		}
+		if (state == State.STORED && storedRemaining == 0) {
+			endBlock();
+		}
+	}
+
+	private void endBlock() {
+		state = lastBlock? State.MEMBER_TRAILER : State.BLOCK_HEADER;
+	}
+
+	private int inflateStored(final byte[] into, final int offset, final int length) throws IOException {
+		final int toCopy = Math.min(storedRemaining, length);
+		int copied = 0;
+		while (copied < toCopy) {
+			if (inputPos == inputLimit && !fillInput()) {
+				throw new EOFException("Unexpected end of compressed data at position " + position);
+			}
+			final int chunk = Math.min(toCopy - copied, inputLimit - inputPos);
+			System.arraycopy(input, inputPos, into, offset + copied, chunk);
+			inputPos += chunk;
+			copied += chunk;
+		}
+		int windowFrom = offset;
+		int remaining = toCopy;
+		while (remaining > 0) {
+			final int chunk = Math.min(remaining, WINDOW_SIZE - windowPos);
+			System.arraycopy(into, windowFrom, window, windowPos, chunk);
+			windowPos = (windowPos + chunk) & WINDOW_MASK;
+			windowFrom += chunk;
+			remaining -= chunk;
+		}
+		produced(into, offset, toCopy);
+		storedRemaining -= toCopy;
+		if (storedRemaining == 0) {
+			endBlock();
+		}
+		return toCopy;
+	}
+
+	private int inflateCodes(final byte[] into, final int offset, final int length) throws IOException {
+		final byte[] window = this.window;
+		final int[] lengthTable = lengthCodes.table;
+		final int[] distanceTable = distanceCodes.table;
+		final int end = offset + length;
+		int out = offset;
+		int windowPos = this.windowPos;
+		// The bit buffer is held in locals while decoding literals, and synchronised
+		// with the fields around calls which use them:
+		long buffer = bitBuffer;
+		int count = bitCount;
+		while (out < end) {
+			if (copyRemaining > 0) {
+				final int toCopy = Math.min(copyRemaining, end - out);
+				final int from = (windowPos - copyDistance) & WINDOW_MASK;
+				if (toCopy >= MIN_ARRAY_COPY && toCopy <= copyDistance &&
+					from + toCopy <= WINDOW_SIZE && windowPos + toCopy <= WINDOW_SIZE) {
+					System.arraycopy(window, from, into, out, toCopy); // bytes copied do not overlap or wrap.
+					System.arraycopy(window, from, window, windowPos, toCopy);
+					out += toCopy;
+					windowPos = (windowPos + toCopy) & WINDOW_MASK;
+				} else {
+					for (int i = 0; i < toCopy; i++) {
+						final byte value = window[(from + i) & WINDOW_MASK];
+						into[out++] = value;
+						window[windowPos] = value;
+						windowPos = (windowPos + 1) & WINDOW_MASK;
+					}
+				}
+				copyRemaining -= toCopy;
+				continue;
+			}
+			if (count < MAX_BITS) {
+				bitBuffer = buffer;
+				bitCount = count;
+				fillBits();
+				buffer = bitBuffer;
+				count = bitCount;
+			}
+			final int entry = lengthTable[(int) buffer & FAST_MASK];
+			final int codeLength = entry & 0xF;
+			final int symbol;
+			if (codeLength != 0 && codeLength <= count) {
+				buffer >>>= codeLength;
+				count -= codeLength;
+				symbol = entry >>> 4;
+			} else {
+				bitBuffer = buffer;
+				bitCount = count;
+				symbol = decodeLongCode(lengthCodes);
+				buffer = bitBuffer;
+				count = bitCount;
+			}
+			if (symbol < 256) {
+				into[out++] = (byte) symbol;
+				window[windowPos] = (byte) symbol;
+				windowPos = (windowPos + 1) & WINDOW_MASK;
+			} else if (symbol == 256) {
+				endBlock();
+				break;
+			} else {
+				final int lengthCode = symbol - 257;
+				if (lengthCode >= LENGTH_BASE.length) {
+					throw new IOException("Invalid length code at position " + (position + out - offset));
+				}
+				if (count < MAX_MATCH_BITS) {
+					bitBuffer = buffer;
+					bitCount = count;
+					fillBits();
+					buffer = bitBuffer;
+					count = bitCount;
+				}
+				final int distanceCode;
+				if (count >= MAX_MATCH_BITS) { // decode the match from the locals without checking for more input.
+					final int lengthExtra = LENGTH_EXTRA[lengthCode];
+					copyRemaining = LENGTH_BASE[lengthCode] + ((int) buffer & ((1 << lengthExtra) - 1));
+					buffer >>>= lengthExtra;
+					count -= lengthExtra;
+					final int distanceEntry = distanceTable[(int) buffer & FAST_MASK];
+					final int distanceLength = distanceEntry & 0xF;
+					if (distanceLength != 0) {
+						buffer >>>= distanceLength;
+						count -= distanceLength;
+						distanceCode = distanceEntry >>> 4;
+					} else {
+						bitBuffer = buffer;
+						bitCount = count;
+						distanceCode = decodeLongCode(distanceCodes);
+						buffer = bitBuffer;
+						count = bitCount;
+					}
+					if (distanceCode >= MAX_DISTANCE_CODES) {
+						throw new IOException("Invalid distance code at position " + (position + out - offset));
+					}
+					final int distanceExtra = DISTANCE_EXTRA[distanceCode];
+					copyDistance = DISTANCE_BASE[distanceCode] + ((int) buffer & ((1 << distanceExtra) - 1));
+					buffer >>>= distanceExtra;
+					count -= distanceExtra;
+				} else { // near the end of the input.
+					bitBuffer = buffer;
+					bitCount = count;
+					copyRemaining = LENGTH_BASE[lengthCode] + bits(LENGTH_EXTRA[lengthCode]);
+					distanceCode = decode(distanceCodes);
+					if (distanceCode >= MAX_DISTANCE_CODES) {
+						throw new IOException("Invalid distance code at position " + (position + out - offset));
+					}
+					copyDistance = DISTANCE_BASE[distanceCode] + bits(DISTANCE_EXTRA[distanceCode]);
+					buffer = bitBuffer;
+					count = bitCount;
+				}
+				if (copyDistance > windowFilled + out - offset) {
+					throw new IOException("Distance " + copyDistance + " is too far back at position " +
+							              (position + out - offset));
+				}
+			}
+		}
+		bitBuffer = buffer;
+		bitCount = count;
+		this.windowPos = windowPos;
+		final int produced = out - offset;
+		produced(into, offset, produced);
+		return produced;
+	}
+
+	private void readDynamicCodes() throws IOException {
+		final int numLengths = bits(5) + 257;
+		final int numDistances = bits(5) + 1;
+		final int numCodeLengths = bits(4) + 4;
+		if (numLengths > MAX_LENGTH_CODES || numDistances > MAX_DISTANCE_CODES) {
+			throw new IOException("Too many length or distance codes at position " + position);
+		}
+		final int[] lengths = codeLengths;
+		for (int i = 0; i < CODE_LENGTH_ORDER.length; i++) {
+			lengths[CODE_LENGTH_ORDER[i]] = i < numCodeLengths? bits(3) : 0;
+		}
+		final Huffman codeLengthCodes = new Huffman(CODE_LENGTH_ORDER.length);
+		if (codeLengthCodes.build(lengths, 0, CODE_LENGTH_ORDER.length) != 0) {
+			throw new IOException("Incomplete code length codes at position " + position);
+		}
+		final int total = numLengths + numDistances;
+		int symbolIndex = 0;
+		while (symbolIndex < total) {
+			int symbol = decode(codeLengthCodes);
+			if (symbol < 16) {
+				lengths[symbolIndex++] = symbol;
+			} else {
+				int repeatLength = 0;
+				final int repeat;
+				if (symbol == 16) {
+					if (symbolIndex == 0) {
+						throw new IOException("Repeated code length with no previous length at position " + position);
+					}
+					repeatLength = lengths[symbolIndex - 1];
+					repeat = 3 + bits(2);
+				} else if (symbol == 17) {
+					repeat = 3 + bits(3);
+				} else {
+					repeat = 11 + bits(7);
+				}
+				if (symbolIndex + repeat > total) {
+					throw new IOException("Too many code lengths at position " + position);
+				}
+				for (int i = 0; i < repeat; i++) {
+					lengths[symbolIndex++] = repeatLength;
+				}
+			}
+		}
+		if (lengths[256] == 0) {
+			throw new IOException("No end of block code at position " + position);
+		}
+		if (dynamicLengths.build(lengths, 0, numLengths) < 0 ||
+			dynamicDistances.build(lengths, numLengths, numDistances) < 0) {
+			throw new IOException("Over-subscribed codes at position " + position);
+		}
+	}
+
+	/**
+	 * Decodes a symbol from Huffman codes, looking up codes of up to FAST_BITS in a table.
+	 */
+	private int decode(final Huffman huffman) throws IOException {
+		if (bitCount < MAX_BITS) {
+			fillBits();
+		}
+		final int entry = huffman.table[(int) bitBuffer & FAST_MASK];
+		final int length = entry & 0xF;
+		if (length != 0 && length <= bitCount) {
+			bitBuffer >>>= length;
+			bitCount -= length;
+			return entry >>> 4;
+		}
+		return decodeLongCode(huffman);
+	}
+
+	/**
+	 * Decodes a symbol from canonical Huffman codes one bit at a time, for codes
+	 * longer than FAST_BITS, or at the end of the input.
+	 */
+	private int decodeLongCode(final Huffman huffman) throws IOException {
+		final short[] counts = huffman.counts;
+		long buffer = bitBuffer;
+		int code = 0;
+		int first = 0;
+		int symbolIndex = 0;
+		for (int length = 1; length <= MAX_BITS && length <= bitCount; length++) {
+			code |= (int) buffer & 1;
+			buffer >>>= 1;
+			final int count = counts[length];
+			if (code - first < count) {
+				bitBuffer = buffer;
+				bitCount -= length;
+				return huffman.symbols[symbolIndex + code - first];
+			}
+			symbolIndex += count;
+			first = (first + count) << 1;
+			code <<= 1;
+		}
+		if (bitCount < MAX_BITS) {
+			throw new EOFException("Unexpected end of compressed data at position " + position);
+		}
+		throw new IOException("Invalid Huffman code at position " + position);
+	}
+
+	/**
+	 * Records bytes inflated into an array, which are already in the window.
+	 */
+	private void produced(final byte[] into, final int offset, final int length) {
+		checksum.update(into, offset, length);
+		windowFilled = Math.min(WINDOW_SIZE, windowFilled + length);
+		position += length;
+	}
+
+	private byte[] getDictionary() {
+		final byte[] dictionary = new byte[windowFilled];
+		final int start = (windowPos - windowFilled) & WINDOW_MASK;
+		final int firstPart = Math.min(windowFilled, WINDOW_SIZE - start);
+		System.arraycopy(window, start, dictionary, 0, firstPart);
+		System.arraycopy(window, 0, dictionary, firstPart, windowFilled - firstPart);
+		return dictionary;
+	}
+
+	/*
+	 * Compressed input
+	 */
+
+	private long getBitPosition() {
+		return (inputStart + inputPos) * 8 - bitCount;
+	}
+
+	private void resetInput(final long filePosition) {
+		inputStart = filePosition;
+		inputPos = 0;
+		inputLimit = 0;
+		bitBuffer = 0;
+		bitCount = 0;
+	}
+
+	private int bits(final int need) throws IOException {
+		if (bitCount < need) {
+			fillBits();
+			if (bitCount < need) {
+				throw new EOFException("Unexpected end of compressed data at position " + position);
+			}
+		}
+		final int value = (int) bitBuffer & ((1 << need) - 1);
+		bitBuffer >>>= need;
+		bitCount -= need;
+		return value;
+	}
+
+	/**
+	 * Buffers as many whole bytes of input as fit in the bit buffer, or as remain in the file.
+	 */
+	private void fillBits() throws IOException {
+		long buffer = bitBuffer;
+		int count = bitCount;
+		while (count <= MAX_BUFFERED_BITS && (inputPos < inputLimit || fillInput())) {
+			buffer |= (long) (input[inputPos++] & 0xFF) << count;
+			count += 8;
+		}
+		bitBuffer = buffer;
+		bitCount = count;
+	}
+
+	/**
+	 * Discards the bits left in the current byte, and puts any whole bytes still
+	 * in the bit buffer back into the input, so bytes can be read directly again.
+	 */
+	private void alignToByte() {
+		final int wholeBytes = bitCount >>> 3;
+		if (wholeBytes <= inputPos) {
+			inputPos -= wholeBytes;
+		} else { // the bytes were buffered before the input was last filled.
+			resetInput(inputStart + inputPos - wholeBytes);
+		}
+		bitBuffer = 0;
+		bitCount = 0;
+	}
+
+	private void skipBytes(final int numBytes) throws IOException {
+		for (int i = 0; i < numBytes; i++) {
+			nextByte();
+		}
+	}
+
+	private int nextByte() throws IOException {
+		if (inputPos == inputLimit && !fillInput()) {
+			throw new EOFException("Unexpected end of compressed data at position " + position);
+		}
+		return input[inputPos++] & 0xFF;
+	}
+
+	private int peekByte() {
+		return input[inputPos] & 0xFF;
+	}
+
+	private boolean atEndOfInput() throws IOException {
+		return inputPos == inputLimit && !fillInput();
+	}
+
+	private boolean fillInput() throws IOException {
+		inputStart += inputLimit;
+		inputPos = 0;
+		inputLimit = 0;
+		file.seek(inputStart);
+		final int read = file.read(input);
+		if (read > 0) {
+			inputLimit = read;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Canonical Huffman codes, as the number of codes of each bit length and the symbols
+	 * ordered by code.  Codes of up to FAST_BITS are also in a table indexed by the next
+	 * FAST_BITS of input, whose entries are the symbol shifted left by four bits ORed with
+	 * the code length, or zero for longer (or invalid) codes.
+	 */
+	private static final class Huffman {
+
+		final short[] counts = new short[MAX_BITS + 1];
+		final short[] symbols;
+		final int[] table = new int[1 << FAST_BITS];
+
+		Huffman(final int maxSymbols) {
+			symbols = new short[maxSymbols];
+		}
+
+		/**
+		 * Builds the codes from the code lengths of each symbol.
+		 *
+		 * @return Zero for a complete code, a positive number for an incomplete code,
+		 *         or a negative number for an over-subscribed code.
+		 */
+		int build(final int[] lengths, final int from, final int numSymbols) {
+			final short[] counts = this.counts;
+			for (int length = 0; length <= MAX_BITS; length++) {
+				counts[length] = 0;
+			}
+			for (int symbol = 0; symbol < numSymbols; symbol++) {
+				counts[lengths[from + symbol]]++;
+			}
+			if (counts[0] == numSymbols) {
+				Arrays.fill(table, 0);
+				return 0; // no codes: complete, but decoding will fail.
+			}
+			int left = 1;
+			for (int length = 1; length <= MAX_BITS; length++) {
+				left <<= 1;
+				left -= counts[length];
+				if (left < 0) {
+					return left;
+				}
+			}
+			final int[] offsets = new int[MAX_BITS + 1];
+			for (int length = 1; length < MAX_BITS; length++) {
+				offsets[length + 1] = offsets[length] + counts[length];
+			}
+			for (int symbol = 0; symbol < numSymbols; symbol++) {
+				final int length = lengths[from + symbol];
+				if (length != 0) {
+					symbols[offsets[length]++] = (short) symbol;
+				}
+			}
+			buildTable();
+			return left;
+		}
+
+		/**
+		 * Fills the table with every code of up to FAST_BITS.  Deflate sends codes starting
+		 * from their most significant bit, so the table is indexed by the reversed code,
+		 * repeated for every value of the bits which follow it.
+		 */
+		private void buildTable() {
+			final int[] table = this.table;
+			Arrays.fill(table, 0);
+			int code = 0;
+			int symbolIndex = 0;
+			for (int length = 1; length <= FAST_BITS; length++) {
+				final int count = counts[length];
+				for (int i = 0; i < count; i++) {
+					final int entry = (symbols[symbolIndex++] << 4) | length;
+					for (int index = reverse(code++, length); index < table.length; index += 1 << length) {
+						table[index] = entry;
+					}
+				}
+				code <<= 1;
+			}
+		}
+
+		private static int reverse(final int code, final int length) {
+			return Integer.reverse(code) >>> (32 - length);
+		}
+	}
+
+}
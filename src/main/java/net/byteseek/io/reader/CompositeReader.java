@@ -0,0 +1,316 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import net.byteseek.io.IOUtils;
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader extending {@link AbstractReader} which presents an ordered list of other
+ * WindowReaders as a single contiguous source, for example the parts of a split disk image
+ * (.001, .002, ...) or a capture saved in chunks.
+ * <p>
+ * Positions in the composite reader run through each segment reader in turn.  A Window which
+ * lies inside a single Window of a segment shares its bytes, rebased to the position in the
+ * composite reader, so they are not copied or cached twice.  Only Windows which straddle a
+ * boundary between segments or segment Windows are filled by copying from each segment they
+ * cover, so a match which crosses the boundary between two segments is found like any other.
+ * The segment containing a position is found with a binary search over the segment start positions.
+ * <p>
+ * The length of each segment is determined when the reader is constructed, which for a reader
+ * over a stream may require reading the entire stream.  As the segment readers cache their own
+ * Windows, only a small number of composite Windows are cached by default.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public class CompositeReader extends AbstractReader {
+
+	/**
+	 * The default number of composite Windows to cache.
+	 */
+	protected final static int DEFAULT_COMPOSITE_CAPACITY = 4;
+
+	private final WindowReader[] segments;
+	private final long[] segmentStarts; // has one more entry than segments: the total length.
+	private final boolean closeSegmentsOnClose;
+
+	/**
+	 * Constructs a CompositeReader over the readers given, which defaults to a window size of 4096,
+	 * caching the four most recently used Windows in a {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache}.
+	 * The readers are closed when this reader is closed.
+	 *
+	 * @param segments The readers to read from, in order.
+	 * @throws IOException If the length of a reader cannot be determined.
+	 * @throws IllegalArgumentException if the readers or any reader passed in is null.
+	 */
+	public CompositeReader(final WindowReader... segments) throws IOException {
+		this(DEFAULT_WINDOW_SIZE, new LeastRecentlyUsedCache(DEFAULT_COMPOSITE_CAPACITY),
+			 segments == null? null : Arrays.asList(segments), true);
+	}
+
+	/**
+	 * Constructs a CompositeReader over the readers given, which defaults to a window size of 4096,
+	 * caching the four most recently used Windows in a {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache}.
+	 * The readers are closed when this reader is closed.
+	 *
+	 * @param segments The readers to read from, in order.
+	 * @throws IOException If the length of a reader cannot be determined.
+	 * @throws IllegalArgumentException if the list or any reader in it is null.
+	 */
+	public CompositeReader(final List<? extends WindowReader> segments) throws IOException {
+		this(DEFAULT_WINDOW_SIZE, new LeastRecentlyUsedCache(DEFAULT_COMPOSITE_CAPACITY), segments, true);
+	}
+
+	/**
+	 * Constructs a CompositeReader over the readers given, using the window size and cache passed in.
+	 *
+	 * @param windowSize           The size of the composite Windows to create.
+	 * @param cache                The cache of composite Windows to use.
+	 * @param segments             The readers to read from, in order.
+	 * @param closeSegmentsOnClose Whether to close the readers when this reader is closed.
+	 * @throws IOException If the length of a reader cannot be determined.
+	 * @throws IllegalArgumentException if the list or any reader in it is null, the cache is null,
+	 *                                  or the window size is less than one.
+	 */
+	public CompositeReader(final int windowSize, final WindowCache cache,
+						   final List<? extends WindowReader> segments,
+						   final boolean closeSegmentsOnClose) throws IOException {
+		super(windowSize, cache);
+		ArgUtils.checkNullCollectionElements(segments, "segments");
+		final int numSegments = segments.size();
+		this.segments = segments.toArray(new WindowReader[numSegments]);
+		this.segmentStarts = new long[numSegments + 1];
+		long start = 0;
+		for (int segment = 0; segment < numSegments; segment++) {
+			segmentStarts[segment] = start;
+			start += this.segments[segment].length();
+		}
+		segmentStarts[numSegments] = start;
+		this.closeSegmentsOnClose = closeSegmentsOnClose;
+	}
+
+	/**
+	 * Returns the total length of all the segment readers.
+	 *
+	 * @return The total length of all the segment readers.
+	 */
+	@Override
+	public final long length() {
+		return segmentStarts[segments.length];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Window createWindow(final long windowStart) throws IOException {
+		if (windowStart >= 0 && windowStart < length()) {
+			final Window segmentWindow = rebasedSegmentWindow(windowStart);
+			if (segmentWindow != null) {
+				return segmentWindow;
+			}
+			final byte[] bytes = newWindowArray();
+			final int numSegments = segments.length;
+			int segment = getSegmentIndex(windowStart);
+			long position = windowStart;
+			int filled = 0;
+			while (filled < bytes.length && segment < numSegments) {
+				final long segmentEnd = segmentStarts[segment + 1];
+				final int toRead = (int) Math.min(bytes.length - filled, segmentEnd - position);
+				final int read = IOUtils.readBytes(segments[segment], position - segmentStarts[segment],
+					                                 bytes, filled, toRead);
+				filled += read;
+				position += read;
+				if (read < toRead) {
+					break; // the segment is shorter than it was when the composite was constructed.
+				}
+				segment++;
+			}
+			if (filled > 0) {
+				return newWindow(bytes, windowStart, filled);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a Window over the bytes of a segment Window, rebased to the position in this reader,
+	 * if all the bytes of the composite Window at the position lie inside a single segment Window.
+	 * A segment Window backed by a ByteBuffer is sliced; otherwise its array is shared, directly
+	 * if the composite Window starts at the start of the array, or through a ByteBuffer wrapping
+	 * the part of the array it covers.  Returns null if the Window straddles segments or segment
+	 * Windows, or if the segment re-uses its arrays from a pool, so its bytes must be copied.
+	 *
+	 * @param windowStart The start of the composite Window.
+	 * @return A Window sharing the bytes of a segment Window, or null if the bytes must be copied.
+	 * @throws IOException If the segment reader cannot provide a Window.
+	 */
+	private Window rebasedSegmentWindow(final long windowStart) throws IOException {
+		final int segment = getSegmentIndex(windowStart);
+		final WindowReader segmentReader = segments[segment];
+		if (segmentReader instanceof AbstractReader &&
+			((AbstractReader) segmentReader).getWindowArrayPool() != null) {
+			return null; // sharing a pooled array would stop it going back to the segment pool.
+		}
+		final long remaining = length() - windowStart;
+		final int windowLength = remaining < windowSize? (int) remaining : windowSize;
+		final long segmentPosition = windowStart - segmentStarts[segment];
+		if (windowStart + windowLength > segmentStarts[segment + 1]) {
+			return null; // straddles the end of the segment.
+		}
+		final Window window = segmentReader.getWindow(segmentPosition);
+		if (window == null) {
+			return null;
+		}
+		final int offset = (int) (segmentPosition - window.getWindowPosition());
+		if (offset + windowLength > window.length()) {
+			return null; // straddles the end of the segment Window.
+		}
+		if (window instanceof BufferWindow) {
+			final ByteBuffer buffer = ((BufferWindow) window).getByteBuffer();
+			((Buffer) buffer).position(offset);
+			((Buffer) buffer).limit(offset + windowLength);
+			return new BufferWindow(buffer.slice(), windowStart, windowLength);
+		}
+		final byte[] array = window.getArray();
+		if (offset == 0) {
+			return new HardWindow(array, windowStart, windowLength);
+		}
+		return new BufferWindow(ByteBuffer.wrap(array, offset, windowLength).slice(), windowStart, windowLength);
+	}
+
+	/**
+	 * Returns the index of the segment reader containing the position given.  Positions
+	 * before the start return the first segment, and positions past the end the last one.
+	 *
+	 * @param position The position in the composite reader.
+	 * @return The index of the segment reader containing the position.
+	 */
+	public final int getSegmentIndex(final long position) {
+		// Find the last segment starting at or before the position, which skips over empty segments:
+		int low = 0;
+		int high = segments.length - 1;
+		while (low < high) {
+			final int middle = (low + high + 1) >>> 1;
+			if (segmentStarts[middle] <= position) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the number of segment readers.
+	 *
+	 * @return The number of segment readers.
+	 */
+	public final int getNumSegments() {
+		return segments.length;
+	}
+
+	/**
+	 * Returns the segment reader at the index given.
+	 *
+	 * @param index The index of the segment reader.
+	 * @return The segment reader at the index.
+	 * @throws ArrayIndexOutOfBoundsException if the index is not a valid segment index.
+	 */
+	public final WindowReader getSegment(final int index) {
+		return segments[index];
+	}
+
+	/**
+	 * Returns the position in the composite reader at which the segment at the index given starts.
+	 *
+	 * @param index The index of the segment reader.
+	 * @return The position at which the segment starts.
+	 * @throws ArrayIndexOutOfBoundsException if the index is not a valid segment index.
+	 */
+	public final long getSegmentStart(final int index) {
+		if (index >= segments.length) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+		return segmentStarts[index];
+	}
+
+	/**
+	 * Closes the segment readers if this reader is responsible for closing them,
+	 * then clears any cache associated with this WindowReader.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (closeSegmentsOnClose) {
+				closeSegments();
+			}
+		} finally {
+			super.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[segments: " + Arrays.toString(segments) + " length: " + length() + " cache:" + cache + ']';
+	}
+
+	private void closeSegments() throws IOException {
+		IOException firstException = null;
+		for (final WindowReader segment : segments) {
+			try {
+				segment.close();
+			} catch (IOException ex) {
+				if (firstException == null) {
+					firstException = ex;
+				}
+			}
+		}
+		if (firstException != null) {
+			throw firstException;
+		}
+	}
+
+}
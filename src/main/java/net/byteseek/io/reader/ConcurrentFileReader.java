@@ -0,0 +1,202 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import net.byteseek.io.IOUtils;
+import net.byteseek.io.reader.cache.ConcurrentLeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader extending {@link AbstractReader} over a file, which can be shared
+ * by more than one thread.  This allows several {@link net.byteseek.searcher.Searcher}s
+ * running in different threads to search the same file using a single file descriptor,
+ * sharing the Windows cached by the reader.
+ * <p>
+ * Windows are read using positional reads on a {@link java.nio.channels.FileChannel},
+ * which do not depend on a shared file pointer. By default, Windows are cached in a
+ * {@link net.byteseek.io.reader.cache.ConcurrentLeastRecentlyUsedCache}.  If you
+ * supply your own {@link WindowCache}, it must be thread-safe for the reader to be.
+ * <p>
+ * Note that if a thread is interrupted while it is reading, the FileChannel will be
+ * closed, and all other threads using this reader will then receive a
+ * {@link java.nio.channels.ClosedChannelException} if they have to read from the file.
+ *
+ * @author Matt Palmer
+ */
+public class ConcurrentFileReader extends AbstractReader {
+
+	private final static String READ_ONLY = "r";
+
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+	private final long length;
+
+	/**
+	 * Constructs a ConcurrentFileReader which defaults to a window size of 4096,
+	 * caching the most recently used 32 Windows in a
+	 * {@link net.byteseek.io.reader.cache.ConcurrentLeastRecentlyUsedCache}.
+	 *
+	 * @param file The file to read from.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file passed in is null.
+	 */
+	public ConcurrentFileReader(final File file) throws FileNotFoundException {
+		this(file, DEFAULT_WINDOW_SIZE, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a ConcurrentFileReader which defaults to a window size of 4096,
+	 * using the thread-safe WindowCache passed in to cache Windows.
+	 *
+	 * @param file  The file to read from.
+	 * @param cache The thread-safe cache of Windows to use.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file or cache passed in is null.
+	 */
+	public ConcurrentFileReader(final File file, final WindowCache cache) throws FileNotFoundException {
+		this(file, DEFAULT_WINDOW_SIZE, cache);
+	}
+
+	/**
+	 * Constructs a ConcurrentFileReader using the window size and capacity passed in,
+	 * caching the most recently used Windows in a
+	 * {@link net.byteseek.io.reader.cache.ConcurrentLeastRecentlyUsedCache}.
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of Windows to create from the file.
+	 * @param capacity The number of Windows to cache.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file passed in is null, or the window
+	 *                                  size or capacity is less than one.
+	 */
+	public ConcurrentFileReader(final File file, final int windowSize, final int capacity)
+			throws FileNotFoundException {
+		this(file, windowSize, new ConcurrentLeastRecentlyUsedCache(capacity));
+	}
+
+	/**
+	 * Constructs a ConcurrentFileReader which defaults to a window size of 4096,
+	 * caching the most recently used 32 Windows in a
+	 * {@link net.byteseek.io.reader.cache.ConcurrentLeastRecentlyUsedCache}.
+	 *
+	 * @param path The path of the file to read from.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the path passed in is null.
+	 */
+	public ConcurrentFileReader(final String path) throws FileNotFoundException {
+		this(path == null? null : new File(path), DEFAULT_WINDOW_SIZE, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a ConcurrentFileReader which reads the file into Windows of the
+	 * specified size, using the thread-safe WindowCache supplied to cache them.
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of Windows to create from the file.
+	 * @param cache The thread-safe cache of Windows to use.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file or cache passed in is null,
+	 *                                  or the window size is less than one.
+	 */
+	public ConcurrentFileReader(final File file, final int windowSize,
+								final WindowCache cache) throws FileNotFoundException {
+		super(windowSize, cache);
+		ArgUtils.checkNullObject(file, "file");
+		this.file = file;
+		this.randomAccessFile = new RandomAccessFile(file, READ_ONLY);
+		this.channel = randomAccessFile.getChannel();
+		this.length = file.length();
+	}
+
+	/**
+	 * Returns the length of the file.
+	 *
+	 * @return The length of the file accessed by the reader.
+	 */
+	@Override
+	public final long length() {
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Window createWindow(final long windowStart) throws IOException {
+		if (windowStart >= 0 && windowStart < length) {
+			final byte[] bytes = newWindowArray();
+			final int totalRead = IOUtils.readBytes(channel, bytes, windowStart);
+			if (totalRead > 0) {
+				return newWindow(bytes, windowStart, totalRead);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the underlying file, then clears any cache associated with this WindowReader.
+	 * Other threads still using the reader will receive an IOException if they
+	 * have to read from the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			randomAccessFile.close();
+		} finally {
+			super.close();
+		}
+	}
+
+	/**
+	 * Returns the {@link java.io.File} object accessed by this WindowReader.
+	 *
+	 * @return The File object accessed by this WindowReader.
+	 */
+	public final File getFile() {
+		return file;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[file:" + file + " length: " + length + " cache:" + cache + ']';
+	}
+
+}
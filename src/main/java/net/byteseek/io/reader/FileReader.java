@@ -40,7 +40,6 @@ import java.io.RandomAccessFile;
 import net.byteseek.io.IOUtils;
 import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
 import net.byteseek.io.reader.cache.WindowCache;
-import net.byteseek.io.reader.windows.HardWindow;
 import net.byteseek.io.reader.windows.SoftWindow;
 import net.byteseek.io.reader.windows.SoftWindowRecovery;
 import net.byteseek.io.reader.windows.Window;
@@ -216,11 +215,11 @@ public class FileReader extends AbstractReader implements SoftWindowRecovery {
 		if (windowStart >= 0) {
 			try {
 				randomAccessFile.seek(windowStart);
-				final byte[] bytes = new byte[windowSize];
+				final byte[] bytes = newWindowArray();
 				final int totalRead = IOUtils.readBytes(randomAccessFile, bytes);
 				if (totalRead > 0) {
 					return useSoftWindows? new SoftWindow(bytes, windowStart, totalRead, this)
-							             : new HardWindow(bytes, windowStart, totalRead);
+							             : newWindow(bytes, windowStart, totalRead);
 				}
 			} catch (final EOFException justReturnNull) {
 			}
@@ -261,9 +260,11 @@ public class FileReader extends AbstractReader implements SoftWindowRecovery {
 
 	@Override
 	public byte[] reloadWindowBytes(final Window window) throws IOException {
-		randomAccessFile.seek(window.getWindowPosition());
 		final byte[] bytes = new byte[windowSize];
-		IOUtils.readBytes(randomAccessFile, bytes);
+		synchronized (createLock) { // a prefetched window may be seeking the same file.
+			randomAccessFile.seek(window.getWindowPosition());
+			IOUtils.readBytes(randomAccessFile, bytes);
+		}
 		return bytes;
 	}
 
@@ -0,0 +1,355 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * An index of decompression checkpoints into a gzip (or zlib) compressed file, used by a
+ * {@link GzipReader} to regenerate any part of the uncompressed data without decompressing
+ * it from the start.
+ * <p>
+ * Each checkpoint records a position in the uncompressed data, the bit position in the
+ * compressed file of the deflate block which starts there, and the 32K of uncompressed data
+ * preceding it, which is the dictionary needed to resume decompression.  Checkpoints are
+ * recorded at the first block boundary after each spacing interval of uncompressed data,
+ * so reading any window decompresses at most a little more than the spacing.  Memory use
+ * is up to 32K for each checkpoint.
+ * <p>
+ * The length of the compressed file and a checksum of it are recorded, so an index is not
+ * used with a different file than the one it was built from.
+ * <p>
+ * An index is built as a GzipReader decompresses the file, and is complete once the end
+ * of the file has been reached (e.g. by calling {@link GzipReader#length()}).  It can be
+ * written out with {@link #write(java.io.OutputStream)} and read back with
+ * {@link #read(java.io.InputStream)}, so later readers of the same file can seek
+ * immediately.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public final class GzipIndex {
+
+	/**
+	 * The default spacing between checkpoints in the uncompressed data, which is 1 MiB.
+	 */
+	public static final long DEFAULT_SPACING = 1024 * 1024;
+
+	private static final int MAGIC = 0x42534758; // "BSGX"
+	private static final int VERSION = 2;
+	private static final int SOURCE_SAMPLE_SIZE = 65536;
+	private static final long UNKNOWN = -1;
+
+	private final long spacing;
+	private final List<Checkpoint> checkpoints;
+	private long compressedLength = UNKNOWN;
+	private long sourceChecksum = UNKNOWN;
+	private long uncompressedLength = UNKNOWN;
+
+	/**
+	 * Constructs an empty GzipIndex with the default checkpoint spacing of 1 MiB.
+	 */
+	public GzipIndex() {
+		this(DEFAULT_SPACING);
+	}
+
+	/**
+	 * Constructs an empty GzipIndex with the checkpoint spacing given.
+	 *
+	 * @param spacing The number of uncompressed bytes between checkpoints.
+	 * @throws IllegalArgumentException if the spacing is less than one.
+	 */
+	public GzipIndex(final long spacing) {
+		if (spacing < 1) {
+			throw new IllegalArgumentException("The spacing must be positive: " + spacing);
+		}
+		this.spacing = spacing;
+		this.checkpoints = new ArrayList<Checkpoint>();
+	}
+
+	/**
+	 * Reads a GzipIndex previously written by {@link #write(java.io.OutputStream)}.
+	 * The stream is not closed.
+	 *
+	 * @param in The InputStream to read the index from.
+	 * @return A GzipIndex read from the stream.
+	 * @throws IOException If there is a problem reading the stream, or it does not contain a GzipIndex.
+	 * @throws IllegalArgumentException if the stream is null.
+	 */
+	public static GzipIndex read(final InputStream in) throws IOException {
+		ArgUtils.checkNullObject(in, "in");
+		final Inflater inflater = new Inflater();
+		try {
+			final DataInputStream data = new DataInputStream(new InflaterInputStream(in, inflater));
+			if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+				throw new IOException("The stream does not contain a gzip index.");
+			}
+			final GzipIndex index = new GzipIndex(data.readLong());
+			index.compressedLength = data.readLong();
+			index.sourceChecksum = data.readLong();
+			index.uncompressedLength = data.readLong();
+			final int numCheckpoints = data.readInt();
+			for (int i = 0; i < numCheckpoints; i++) {
+				final long position = data.readLong();
+				final long bitPosition = data.readLong();
+				final long memberPosition = data.readLong();
+				final byte[] dictionary = new byte[data.readInt()];
+				data.readFully(dictionary);
+				index.checkpoints.add(new Checkpoint(position, bitPosition, dictionary, memberPosition));
+			}
+			return index;
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Writes this index to an OutputStream in a compressed form.  The stream is not closed.
+	 *
+	 * @param out The OutputStream to write the index to.
+	 * @throws IOException If there is a problem writing to the stream.
+	 * @throws IllegalArgumentException if the stream is null.
+	 */
+	public void write(final OutputStream out) throws IOException {
+		ArgUtils.checkNullObject(out, "out");
+		final Deflater deflater = new Deflater();
+		try {
+			final DeflaterOutputStream compressed = new DeflaterOutputStream(out, deflater);
+			final DataOutputStream data = new DataOutputStream(compressed);
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			data.writeLong(spacing);
+			data.writeLong(compressedLength);
+			data.writeLong(sourceChecksum);
+			data.writeLong(uncompressedLength);
+			data.writeInt(checkpoints.size());
+			for (final Checkpoint checkpoint : checkpoints) {
+				data.writeLong(checkpoint.position);
+				data.writeLong(checkpoint.bitPosition);
+				data.writeLong(checkpoint.memberPosition);
+				data.writeInt(checkpoint.dictionary.length);
+				data.write(checkpoint.dictionary);
+			}
+			data.flush();
+			compressed.finish();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Returns the number of uncompressed bytes between checkpoints.
+	 *
+	 * @return The number of uncompressed bytes between checkpoints.
+	 */
+	public long getSpacing() {
+		return spacing;
+	}
+
+	/**
+	 * Returns the number of checkpoints in the index.
+	 *
+	 * @return The number of checkpoints in the index.
+	 */
+	public int size() {
+		return checkpoints.size();
+	}
+
+	/**
+	 * Returns true if the index covers the entire compressed file.
+	 *
+	 * @return true if the index covers the entire compressed file.
+	 */
+	public boolean isComplete() {
+		return uncompressedLength != UNKNOWN;
+	}
+
+	/**
+	 * Returns the length of the uncompressed data, or -1 if the index is not yet complete.
+	 *
+	 * @return The length of the uncompressed data, or -1 if the index is not yet complete.
+	 */
+	public long getUncompressedLength() {
+		return uncompressedLength;
+	}
+
+	/**
+	 * Returns the length of the compressed file the index was built from,
+	 * or -1 if it has not been used with a file yet.
+	 *
+	 * @return The length of the compressed file the index was built from, or -1.
+	 */
+	public long getCompressedLength() {
+		return compressedLength;
+	}
+
+	/**
+	 * Returns a checksum of the compressed file the index was built from,
+	 * or -1 if it has not been used with a file yet.  It is the CRC-32 of the first and last
+	 * 64K of the file, which for gzip includes the modification time in the header of the
+	 * first member and the CRC-32 of the uncompressed data in the trailer of the last.
+	 *
+	 * @return A checksum of the compressed file the index was built from, or -1.
+	 */
+	public long getSourceChecksum() {
+		return sourceChecksum;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[spacing: " + spacing + " checkpoints: " + checkpoints.size() +
+				" compressed length: " + compressedLength + " source checksum: " + sourceChecksum +
+				" uncompressed length: " + uncompressedLength + ']';
+	}
+
+	/**
+	 * Associates the index with a compressed file, checking it is the file the index was
+	 * built from if it has already been used.
+	 *
+	 * @param file The compressed file.
+	 * @throws IOException If there is a problem reading the file.
+	 * @throws IllegalArgumentException if the index was built from a file with a different length or checksum.
+	 */
+	void setSource(final RandomAccessFile file) throws IOException {
+		final long length = file.length();
+		if (compressedLength != UNKNOWN && compressedLength != length) {
+			throw new IllegalArgumentException("The index was built from a compressed file of length " +
+					compressedLength + ", but the file has length " + length);
+		}
+		final long checksum = checksumOf(file, length);
+		if (sourceChecksum != UNKNOWN && sourceChecksum != checksum) {
+			throw new IllegalArgumentException("The index was built from a compressed file with checksum " +
+					sourceChecksum + ", but the file has checksum " + checksum);
+		}
+		compressedLength = length;
+		sourceChecksum = checksum;
+	}
+
+	/*
+	 * Returns the CRC-32 of the first and last SOURCE_SAMPLE_SIZE bytes of a file (or all of it, if it
+	 * is smaller than both), so an index can cheaply tell if it is used with a different file of the same length.
+	 */
+	private static long checksumOf(final RandomAccessFile file, final long length) throws IOException {
+		final CRC32 crc = new CRC32();
+		final byte[] sample = new byte[(int) Math.min(length, SOURCE_SAMPLE_SIZE)];
+		file.seek(0);
+		file.readFully(sample);
+		crc.update(sample);
+		final long tailStart = Math.max(sample.length, length - SOURCE_SAMPLE_SIZE);
+		final int tailLength = (int) (length - tailStart);
+		file.seek(tailStart);
+		file.readFully(sample, 0, tailLength);
+		crc.update(sample, 0, tailLength);
+		return crc.getValue();
+	}
+
+	void setUncompressedLength(final long length) {
+		uncompressedLength = length;
+	}
+
+	/**
+	 * Returns true if a checkpoint should be added at the uncompressed position given,
+	 * which is when it is at least the spacing beyond the last checkpoint.
+	 *
+	 * @param position The position in the uncompressed data.
+	 * @return true if a checkpoint should be added at that position.
+	 */
+	boolean wantsCheckpoint(final long position) {
+		final int numCheckpoints = checkpoints.size();
+		final long lastPosition = numCheckpoints == 0? 0 : checkpoints.get(numCheckpoints - 1).position;
+		return position >= lastPosition + spacing;
+	}
+
+	void addCheckpoint(final Checkpoint checkpoint) {
+		checkpoints.add(checkpoint);
+	}
+
+	/**
+	 * Returns the checkpoint with the greatest position at or before the position given,
+	 * or null if there is no such checkpoint.
+	 *
+	 * @param position The position in the uncompressed data.
+	 * @return The nearest checkpoint at or before the position, or null if there isn't one.
+	 */
+	Checkpoint getCheckpoint(final long position) {
+		int low = 0;
+		int high = checkpoints.size() - 1;
+		Checkpoint found = null;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final Checkpoint checkpoint = checkpoints.get(middle);
+			if (checkpoint.position <= position) {
+				found = checkpoint;
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * A point at the start of a deflate block from which decompression can be resumed.
+	 * The position of the gzip member containing it lets the length in the member trailer be verified.
+	 */
+	static final class Checkpoint {
+
+		final long position;
+		final long bitPosition;
+		final byte[] dictionary;
+		final long memberPosition;
+
+		Checkpoint(final long position, final long bitPosition, final byte[] dictionary,
+				   final long memberPosition) {
+			this.position = position;
+			this.bitPosition = bitPosition;
+			this.dictionary = dictionary;
+			this.memberPosition = memberPosition;
+		}
+	}
+
+}
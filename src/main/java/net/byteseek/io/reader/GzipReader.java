@@ -0,0 +1,270 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WindowReader extending {@link AbstractReader} over the uncompressed contents of a
+ * gzip (or zlib) compressed file, which can read any position without decompressing
+ * the whole file into a temporary copy.
+ * <p>
+ * As the file is decompressed, checkpoints are recorded in a {@link GzipIndex} at regular
+ * intervals in the uncompressed data.  A Window which is no longer cached is regenerated by
+ * decompressing from the nearest checkpoint before it, so reading backwards costs at most the
+ * checkpoint spacing, with bounded memory.  Reading forwards just continues decompressing.
+ * <p>
+ * Once the end of the file has been reached (for example, by calling {@link #length()}), the
+ * index is complete, and can be written out with {@link GzipIndex#write(java.io.OutputStream)}.
+ * Passing an index read back with {@link GzipIndex#read(java.io.InputStream)} to a new
+ * GzipReader over the same file allows it to seek immediately and know its length.
+ * <p>
+ * Multi-member gzip files are read as a single stream.  The length and CRC-32 in the trailer
+ * of each member are verified when the end of the member is decompressed, although the CRC-32
+ * of a member cannot be verified if it was decompressed from a checkpoint rather than its start.
+ * <p>
+ * This class (like the underlying RandomAccessFile) is not thread-safe, but it can be
+ * prefetched: methods which move the decompressor hold the {@link #createLock}.
+ *
+ * @author Matt Palmer
+ */
+public class GzipReader extends AbstractReader {
+
+	private final static String READ_ONLY = "r";
+	private final static int SKIP_BUFFER_SIZE = 65536;
+
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+	private final GzipIndex index;
+	private final CheckpointInflater inflater;
+	private byte[] skipBuffer;
+	private volatile long length = UNKNOWN_LENGTH;
+
+	/**
+	 * Constructs a GzipReader which defaults to a window size of 4096, caching the last
+	 * 32 most recently used Windows in a {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache},
+	 * and recording checkpoints in a new {@link GzipIndex} every 1 MiB.
+	 *
+	 * @param file The compressed file to read from.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IOException If there is a problem reading the file.
+	 * @throws IllegalArgumentException if the file passed in is null.
+	 */
+	public GzipReader(final File file) throws IOException {
+		this(file, DEFAULT_WINDOW_SIZE, new LeastRecentlyUsedCache(DEFAULT_CAPACITY), new GzipIndex());
+	}
+
+	/**
+	 * Constructs a GzipReader which defaults to a window size of 4096, caching the last
+	 * 32 most recently used Windows in a {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache},
+	 * using the {@link GzipIndex} provided.
+	 *
+	 * @param file  The compressed file to read from.
+	 * @param index The index of checkpoints for the file, which may be empty or partially built.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IOException If there is a problem reading the file.
+	 * @throws IllegalArgumentException if the file or index passed in is null, or the index
+	 *                                  was built from a different file.
+	 */
+	public GzipReader(final File file, final GzipIndex index) throws IOException {
+		this(file, DEFAULT_WINDOW_SIZE, new LeastRecentlyUsedCache(DEFAULT_CAPACITY), index);
+	}
+
+	/**
+	 * Constructs a GzipReader using the window size passed in, caching the last 32 most
+	 * recently used Windows in a {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache},
+	 * and recording checkpoints in a new {@link GzipIndex} every 1 MiB.
+	 *
+	 * @param file       The compressed file to read from.
+	 * @param windowSize The size of the Windows to create.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IOException If there is a problem reading the file.
+	 * @throws IllegalArgumentException if the file passed in is null.
+	 */
+	public GzipReader(final File file, final int windowSize) throws IOException {
+		this(file, windowSize, new LeastRecentlyUsedCache(DEFAULT_CAPACITY), new GzipIndex());
+	}
+
+	/**
+	 * Constructs a GzipReader using the window size, cache and index passed in.
+	 *
+	 * @param file       The compressed file to read from.
+	 * @param windowSize The size of the Windows to create.
+	 * @param cache      The cache of Windows to use.
+	 * @param index      The index of checkpoints for the file, which may be empty or partially built.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IOException If there is a problem reading the file.
+	 * @throws IllegalArgumentException if the file, cache or index passed in is null, or the
+	 *                                  index was built from a different file.
+	 */
+	public GzipReader(final File file, final int windowSize, final WindowCache cache,
+					  final GzipIndex index) throws IOException {
+		super(windowSize, cache);
+		ArgUtils.checkNullObject(file, "file");
+		ArgUtils.checkNullObject(index, "index");
+		this.file = file;
+		this.index = index;
+		this.randomAccessFile = new RandomAccessFile(file, READ_ONLY);
+		try {
+			index.setSource(randomAccessFile);
+		} catch (final IOException ex) {
+			randomAccessFile.close();
+			throw ex;
+		} catch (final IllegalArgumentException ex) {
+			randomAccessFile.close();
+			throw ex;
+		}
+		this.inflater = new CheckpointInflater(randomAccessFile, index);
+		if (index.isComplete()) {
+			length = index.getUncompressedLength();
+		}
+	}
+
+	/**
+	 * Returns the length of the uncompressed data.  If the index is not yet complete,
+	 * the rest of the file is decompressed to find it, which completes the index.
+	 *
+	 * @return The length of the uncompressed data.
+	 * @throws IOException If there is a problem reading the file, or it is not valid gzip or zlib data.
+	 */
+	@Override
+	public long length() throws IOException {
+		if (length == UNKNOWN_LENGTH) {
+			synchronized (createLock) {
+				if (length == UNKNOWN_LENGTH) {
+					positionInflater(Long.MAX_VALUE);
+				}
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Window createWindow(final long windowStart) throws IOException {
+		if (windowStart >= 0 && (length == UNKNOWN_LENGTH || windowStart < length)
+				&& positionInflater(windowStart)) {
+			final byte[] bytes = newWindowArray();
+			final int inflated = inflater.inflate(bytes, 0, bytes.length);
+			if (inflater.isFinished()) {
+				setLengthFromInflater();
+			}
+			if (inflated > 0) {
+				return newWindow(bytes, windowStart, inflated);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the index of checkpoints recorded for the file so far.
+	 * Checkpoints are added to the index as Windows are created, so prefetching
+	 * should be stopped before the index is written.
+	 *
+	 * @return The index of checkpoints for the file.
+	 */
+	public final GzipIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the compressed {@link java.io.File} read by this WindowReader.
+	 *
+	 * @return The compressed File read by this WindowReader.
+	 */
+	public final File getFile() {
+		return file;
+	}
+
+	/**
+	 * Closes the underlying {@link java.io.RandomAccessFile}, then clears any
+	 * cache associated with this WindowReader.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			randomAccessFile.close();
+		} finally {
+			super.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[file:" + file + " length: " + length + " index: " + index + " cache:" + cache + ']';
+	}
+
+	/**
+	 * Moves the inflater to a position in the uncompressed data, restoring it from the
+	 * nearest checkpoint if that is closer than continuing from where it is.
+	 *
+	 * @return true if the position exists in the uncompressed data.
+	 */
+	private boolean positionInflater(final long position) throws IOException {
+		final long current = inflater.getPosition();
+		final GzipIndex.Checkpoint checkpoint = index.getCheckpoint(position);
+		if (current > position || (checkpoint != null && checkpoint.position > current)) {
+			if (checkpoint == null) {
+				inflater.restart();
+			} else {
+				inflater.restore(checkpoint);
+			}
+		}
+		final long toSkip = position - inflater.getPosition();
+		if (toSkip > 0) {
+			if (skipBuffer == null) {
+				skipBuffer = new byte[SKIP_BUFFER_SIZE];
+			}
+			if (inflater.skip(skipBuffer, toSkip) < toSkip) {
+				setLengthFromInflater();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void setLengthFromInflater() {
+		length = inflater.getPosition();
+		index.setUncompressedLength(length);
+	}
+
+}
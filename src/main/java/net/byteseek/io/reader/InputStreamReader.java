@@ -33,6 +33,7 @@ package net.byteseek.io.reader;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
 
 import net.byteseek.io.IOUtils;
 import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
@@ -56,10 +57,19 @@ import net.byteseek.utils.ArgUtils;
  * <p>
  * By default, the InputStreamReader uses a {@link TwoLevelCache}, with a
  * {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache} as its primary cache, and a
- * {@link TempFileCache} as its secondary cache. If the input stream fits
- * entirely into the MostRecentlyUsedCache, then a temporary file will never be
- * created. The secondary cache only gets used if a Window drops out of the
- * primary cache due to exceeding its capacity.
+ * {@link TempFileCache} as its secondary cache. The secondary cache is only used when a
+ * Window drops out of the primary cache because it is full, so if the whole stream fits
+ * into the primary cache, a temporary file is never created.
+ * <p>
+ * Windows leaving the primary cache can be kept compressed in memory before they are
+ * written to the temporary file, by passing in a cache with a
+ * {@link net.byteseek.io.reader.cache.CompressedMemoryCache} in front of the TempFileCache:
+ * <pre>
+ *     new InputStreamReader(stream, TwoLevelCache.create(new LeastRecentlyUsedCache(capacity),
+ *             TwoLevelCache.create(new CompressedMemoryCache(), new TempFileCache())));
+ * </pre>
+ * This avoids writing and re-reading data which compresses well, but every Window leaving
+ * the primary cache is then compressed, which slows down streams that are only read forwards.
  * <p>
  * Note that if you provide your own WindowCache to this WindowReader, then you should
  * either be sure that it is always possible to retrieve an earlier Window from
@@ -327,11 +337,11 @@ public class InputStreamReader extends AbstractReader {
 	protected Window createWindow(final long windowPos) throws IOException {
 		Window window = null;
 		while (nextReadPos <= windowPos && length == UNKNOWN_LENGTH) {
-			final byte[] bytes = new byte[windowSize];
+			final byte[] bytes = newWindowArray();
 			final int totalRead = IOUtils.readBytes(stream, bytes);
 			if (totalRead > 0) {
 				if (recovery == null) {
-					window = new HardWindow(bytes, nextReadPos, totalRead);
+					window = newWindow(bytes, nextReadPos, totalRead);
 				} else {
 					window = new SoftWindow(bytes, nextReadPos, totalRead, recovery);
 				}
@@ -362,12 +372,12 @@ public class InputStreamReader extends AbstractReader {
 	@Override
 	public long length() throws IOException {
 		while (length == UNKNOWN_LENGTH) {
-			final byte[] bytes = new byte[windowSize];
+			final byte[] bytes = newWindowArray();
 			final int totalRead = IOUtils.readBytes(stream, bytes);
 			if (totalRead > 0) {
 				final Window lastWindow;
 				if (recovery == null) {
-					lastWindow = new HardWindow(bytes, nextReadPos, totalRead);
+					lastWindow = newWindow(bytes, nextReadPos, totalRead);
 				} else {
 					lastWindow = new SoftWindow(bytes, nextReadPos, totalRead, recovery);
 				}
@@ -400,6 +410,19 @@ public class InputStreamReader extends AbstractReader {
 		}
 	}
 
+	/**
+	 * Prefetching is not supported by an InputStreamReader.  A stream can only be
+	 * read sequentially, and creating a Window also caches every Window before it,
+	 * so reading ahead on another thread would race with the reader over the stream
+	 * and the cache.
+	 *
+	 * @throws UnsupportedOperationException always.
+	 */
+	@Override
+	public void startPrefetching(final ExecutorService executor, final int numWindows) {
+		throw new UnsupportedOperationException("An InputStreamReader cannot prefetch windows.");
+	}
+
 	/**
 	 * Sets a SoftWindowRecovery object to use.  If this is null (the default),
 	 * then HardWindows will be used, which while in memory cannot be reclaimed
@@ -0,0 +1,357 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.SoftWindow;
+import net.byteseek.io.reader.windows.SoftWindowRecovery;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowMissingException;
+import net.byteseek.utils.ArgUtils;
+import net.byteseek.utils.collections.LongLinkedHashMap;
+
+/**
+ * A WindowReader extending {@link AbstractReader} which memory maps a file in large
+ * chunks using {@link java.nio.channels.FileChannel#map(java.nio.channels.FileChannel.MapMode, long, long)},
+ * and creates {@link Window}s from the mapped chunks.
+ * <p>
+ * Unlike the {@link FileReader}, creating a Window does not seek and read the file
+ * using system calls, or copy any bytes.  Windows are {@link BufferWindow}s over
+ * a slice of the mapped chunk, so their bytes are read directly from the operating
+ * system page cache.  Since re-creating a Window is cheap, only a small cache of Windows
+ * is used by default, enough to support matching across a Window boundary.
+ * <p>
+ * Files larger than 2Gb can be read, as the file is mapped in chunks which are
+ * rolled as the file is read.  The most recently used chunks remain mapped; older
+ * chunks are released and unmapped by the garbage collector once they are no
+ * longer referenced.  The chunk size is always a multiple of the window size, so a
+ * Window never spans more than one mapped chunk.  A Window refers to the chunk it was
+ * sliced from, so the chunk stays mapped for as long as the Window is referenced, even
+ * after this reader has released it.  If {@link #useSoftWindows(boolean)} is set, Windows
+ * are instead copied onto the heap as {@link SoftWindow}s.
+ * <p>
+ * Only searchers which search a Window's ByteBuffer directly avoid copying its bytes.
+ * These are the sequence searchers {@link net.byteseek.searcher.sequence.SequenceMatcherSearcher},
+ * {@link net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher},
+ * {@link net.byteseek.searcher.sequence.horspool.HorspoolFinalFlagSearcher} and
+ * {@link net.byteseek.searcher.sequence.sunday.SundayQuickSearcher}, and the byte searchers
+ * {@link net.byteseek.searcher.bytes.ByteSearcher} and {@link net.byteseek.searcher.bytes.ByteMatcherSearcher}.
+ * Other searchers use {@link Window#getArray()}, which copies each mapped Window onto the heap
+ * and keeps the copy for as long as the Window is held.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public class MappedFileReader extends AbstractReader implements SoftWindowRecovery {
+
+	/**
+	 * The default number of Windows to cache.  Windows are cheap to recreate from a
+	 * mapped chunk, so only a few are cached to allow matches crossing window boundaries.
+	 */
+	protected final static int DEFAULT_MAPPED_CAPACITY = 4;
+
+	/**
+	 * The default size of a mapped chunk of the file, 64Mb.
+	 */
+	protected final static int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * The default number of chunks which remain mapped at the same time.
+	 */
+	protected final static int DEFAULT_MAPPED_CHUNKS = 4;
+
+	private final static String READ_ONLY = "r";
+
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+	private final long length;
+	private final int chunkSize;
+	private final MappedChunks mappedChunks;
+	private boolean useSoftWindows;
+
+	/**
+	 * Constructs a MappedFileReader which defaults to a window size of 4096, mapping
+	 * the file in chunks of 64Mb, and caching the four most recently used Windows in a
+	 * {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache}.
+	 *
+	 * @param file The file to read from.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file passed in is null.
+	 */
+	public MappedFileReader(final File file) throws FileNotFoundException {
+		this(file, DEFAULT_WINDOW_SIZE, new LeastRecentlyUsedCache(DEFAULT_MAPPED_CAPACITY));
+	}
+
+	/**
+	 * Constructs a MappedFileReader which defaults to a window size of 4096, mapping
+	 * the file in chunks of 64Mb, using the WindowCache passed in to cache Windows.
+	 *
+	 * @param file  The file to read from.
+	 * @param cache The cache of Windows to use.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file or cache passed in is null.
+	 */
+	public MappedFileReader(final File file, final WindowCache cache) throws FileNotFoundException {
+		this(file, DEFAULT_WINDOW_SIZE, cache);
+	}
+
+	/**
+	 * Constructs a MappedFileReader using the window size passed in, mapping the
+	 * file in chunks of 64Mb, and caching the four most recently used Windows in a
+	 * {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache}.
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of Windows to create from the file.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file passed in is null, or the window size is less than one.
+	 */
+	public MappedFileReader(final File file, final int windowSize) throws FileNotFoundException {
+		this(file, windowSize, new LeastRecentlyUsedCache(DEFAULT_MAPPED_CAPACITY));
+	}
+
+	/**
+	 * Constructs a MappedFileReader using the window size passed in, mapping the
+	 * file in chunks of 64Mb, and caching the Windows in the WindowCache supplied.
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of Windows to create from the file.
+	 * @param cache The cache of Windows to use.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file or cache passed in is null,
+	 *                                  or the window size is less than one.
+	 */
+	public MappedFileReader(final File file, final int windowSize,
+							final WindowCache cache) throws FileNotFoundException {
+		this(file, windowSize, cache, DEFAULT_CHUNK_SIZE, DEFAULT_MAPPED_CHUNKS);
+	}
+
+	/**
+	 * Constructs a MappedFileReader which defaults to a window size of 4096, mapping
+	 * the file in chunks of 64Mb, and caching the four most recently used Windows in a
+	 * {@link net.byteseek.io.reader.cache.LeastRecentlyUsedCache}.
+	 *
+	 * @param path The path of the file to read from.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the path passed in is null.
+	 */
+	public MappedFileReader(final String path) throws FileNotFoundException {
+		this(path == null? null : new File(path), DEFAULT_WINDOW_SIZE,
+			 new LeastRecentlyUsedCache(DEFAULT_MAPPED_CAPACITY));
+	}
+
+	/**
+	 * Constructs a MappedFileReader which reads the file into Windows of the specified
+	 * size, using the WindowCache supplied to cache them.  The file is mapped in chunks
+	 * of the size given, rounded down to a multiple of the window size (but never
+	 * smaller than a single window), and no more than the maximum number of chunks
+	 * will remain mapped by this reader at any one time.
+	 *
+	 * @param file The file to read from.
+	 * @param windowSize The size of Windows to create from the file.
+	 * @param cache The cache of Windows to use.
+	 * @param chunkSize The size of the chunks to map the file in.
+	 * @param maxMappedChunks The maximum number of chunks which remain mapped.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws IllegalArgumentException if the file or cache passed in is null, or the
+	 *                                  window size, chunk size or maximum number of
+	 *                                  mapped chunks is less than one.
+	 */
+	public MappedFileReader(final File file, final int windowSize, final WindowCache cache,
+							final int chunkSize, final int maxMappedChunks) throws FileNotFoundException {
+		super(windowSize, cache);
+		ArgUtils.checkNullObject(file, "file");
+		ArgUtils.checkPositiveInteger(chunkSize, "chunkSize");
+		ArgUtils.checkPositiveInteger(maxMappedChunks, "maxMappedChunks");
+		this.file = file;
+		this.randomAccessFile = new RandomAccessFile(file, READ_ONLY);
+		this.channel = randomAccessFile.getChannel();
+		this.length = file.length();
+		this.chunkSize = chunkSize > windowSize? chunkSize - (chunkSize % windowSize) : windowSize;
+		this.mappedChunks = new MappedChunks(maxMappedChunks);
+	}
+
+	/**
+	 * Returns the length of the file.
+	 *
+	 * @return The length of the file accessed by the reader.
+	 */
+	@Override
+	public final long length() {
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Window createWindow(final long windowStart) throws IOException {
+		if (windowStart >= 0 && windowStart < length) {
+			final long remaining = length - windowStart;
+			final int windowLength = remaining < windowSize? (int) remaining : windowSize;
+			if (useSoftWindows) {
+				final byte[] bytes = newWindowArray();
+				copyBytes(windowStart, bytes, windowLength);
+				return new SoftWindow(bytes, windowStart, windowLength, this);
+			}
+			return new BufferWindow(slice(windowStart, windowLength), windowStart, windowLength);
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the underlying file, releases any mapped chunks, then clears any
+	 * cache associated with this WindowReader.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			mappedChunks.clear();
+			randomAccessFile.close();
+		} finally {
+			super.close();
+		}
+	}
+
+	/**
+	 * Returns the {@link java.io.File} object accessed by this WindowReader.
+	 *
+	 * @return The File object accessed by this WindowReader.
+	 */
+	public final File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the size of the chunks the file is mapped in.
+	 *
+	 * @return The size of the chunks the file is mapped in.
+	 */
+	public final int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Sets whether SoftWindows are created by this reader, which copy their bytes
+	 * onto the heap, and allow the garbage collector to reclaim their byte arrays in
+	 * low memory conditions.  The bytes are reloaded from the mapped file if they are
+	 * required again.  By default, Windows are BufferWindows over the mapped file,
+	 * which do not copy the bytes at all.
+	 *
+	 * @param useSoftWindows Whether to use SoftWindows.
+	 */
+	public void useSoftWindows(final boolean useSoftWindows) {
+		this.useSoftWindows = useSoftWindows;
+	}
+
+	@Override
+	public byte[] reloadWindowBytes(final Window window) throws IOException {
+		final long windowStart = window.getWindowPosition();
+		if (windowStart < 0 || windowStart >= length) {
+			throw new WindowMissingException("Cannot reload a window outside the file: " + window);
+		}
+		final byte[] bytes = new byte[windowSize];
+		copyBytes(windowStart, bytes, window.length());
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[file:" + file + " length: " + length +
+											" chunk size: " + chunkSize + " cache:" + cache + ']';
+	}
+
+	/**
+	 * Copies bytes from the chunk containing the window start into the byte array.
+	 */
+	private void copyBytes(final long windowStart, final byte[] bytes, final int numBytes) throws IOException {
+		slice(windowStart, numBytes).get(bytes, 0, numBytes);
+	}
+
+	/**
+	 * Returns a slice of the chunk containing the window start, beginning at the window start.
+	 * Windows never span chunks, as the chunk size is a multiple of the window size.
+	 */
+	private ByteBuffer slice(final long windowStart, final int numBytes) throws IOException {
+		final long chunkIndex = windowStart / chunkSize;
+		final ByteBuffer chunk = ((ByteBuffer) getChunk(chunkIndex)).duplicate();
+		final int chunkOffset = (int) (windowStart - chunkIndex * chunkSize);
+		((Buffer) chunk).limit(chunkOffset + numBytes);
+		((Buffer) chunk).position(chunkOffset);
+		return chunk.slice();
+	}
+
+	private MappedByteBuffer getChunk(final long chunkIndex) throws IOException {
+		MappedByteBuffer chunk = mappedChunks.get(chunkIndex);
+		if (chunk == null) {
+			final long chunkStart = chunkIndex * chunkSize;
+			final long remaining = length - chunkStart;
+			final long mapSize = remaining < chunkSize? remaining : chunkSize;
+			chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, mapSize);
+			mappedChunks.put(chunkIndex, chunk);
+		}
+		return chunk;
+	}
+
+	/**
+	 * A least recently used map of chunk indexes to their mapped buffers.
+	 * Chunks which fall out of the map are no longer referenced by this reader,
+	 * and will be unmapped when the garbage collector reclaims them.
+	 */
+	private static final class MappedChunks extends LongLinkedHashMap<MappedByteBuffer> {
+
+		private final int capacity;
+
+		private MappedChunks(final int capacity) {
+			super(capacity + 1, 1.1f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final MapEntry<MappedByteBuffer> eldest) {
+			return size() > capacity;
+		}
+	}
+
+}
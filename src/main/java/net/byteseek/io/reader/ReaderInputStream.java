@@ -30,6 +30,7 @@
  */
 package net.byteseek.io.reader;
 
+import net.byteseek.io.IOUtils;
 import net.byteseek.io.reader.windows.Window;
 import net.byteseek.utils.ArgUtils;
 
@@ -116,23 +117,15 @@ public final class ReaderInputStream extends InputStream {
         }
 
         if (pos > -1) {
-            int available = currentWindowLength - currentArrayPos;
+            final int available = currentWindowLength - currentArrayPos;
             if (available >= len) { // buffer copy is completely inside current window.
                 System.arraycopy(currentArray, currentArrayPos, b, off, len);
                 addStreamPosition(len);
                 return len;
-            } else { // buffer copy may span more than one window (if there are more windows available...)
-                int copied = 0;
-                while (copied < len) {
-                    System.arraycopy(currentArray, currentArrayPos, b, off + copied, available);
-                    copied          += available;
-                    addStreamPosition(available);
-                    if (currentWindow == null) { // no more windows available...
-                        break;
-                    }
-                    final int remaining = len - copied;
-                    available = currentWindowLength > remaining ? remaining : currentWindowLength;
-                }
+            } else { // copy the rest of the current window, then read any remaining bytes from the reader in bulk.
+                System.arraycopy(currentArray, currentArrayPos, b, off, available);
+                final int copied = available + IOUtils.readBytes(reader, pos + available, b, off + available, len - available);
+                setWindowForPosition(pos + copied);
                 return copied;
             }
         }
@@ -0,0 +1,235 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * Reads Windows ahead of an {@link AbstractReader} on a background executor, when
+ * the reader is being accessed sequentially, so that reading from slow storage
+ * can overlap with work done on the Windows already acquired.
+ * <p>
+ * The prefetcher sees every Window the reader has to create, because it was not
+ * already in the cache.  If a Window is created immediately after or before the
+ * last Window created, access is sequential in that direction, and the next Windows
+ * in that direction are scheduled to be read on the executor.  When the reader
+ * needs one of those Windows, it waits for the pending read rather than creating
+ * the Window itself.  If access is not sequential, any pending reads are discarded.
+ * <p>
+ * All calls to {@link AbstractReader#createWindow(long)} made through the prefetcher
+ * are serialized on the {@link AbstractReader#createLock} of the reader, so readers whose
+ * createWindow() method is not thread-safe can be prefetched, as long as their other
+ * methods which use the same state hold that lock too.  Reads which are still running when prefetching stops are allowed
+ * to finish, but their Windows are discarded.
+ *
+ * @author Matt Palmer
+ */
+final class WindowPrefetcher {
+
+	private final AbstractReader reader;
+	private final ExecutorService executor;
+	private final int numWindows;
+	private final Map<Long, Future<Window>> pendingWindows = new ConcurrentHashMap<Long, Future<Window>>();
+
+	private long lastCreatedPosition = -1;
+
+	/**
+	 * Constructs a WindowPrefetcher for a reader.
+	 *
+	 * @param reader     The reader to prefetch Windows for.
+	 * @param executor   The executor to read Windows on.
+	 * @param numWindows The number of Windows to read ahead of the reader.
+	 * @throws IllegalArgumentException if the reader or executor are null, or numWindows is less than one.
+	 */
+	WindowPrefetcher(final AbstractReader reader, final ExecutorService executor, final int numWindows) {
+		ArgUtils.checkNullObject(reader, "reader");
+		ArgUtils.checkNullObject(executor, "executor");
+		ArgUtils.checkPositiveInteger(numWindows, "numWindows");
+		this.reader     = reader;
+		this.executor   = executor;
+		this.numWindows = numWindows;
+	}
+
+	/**
+	 * Returns the Window starting at the window position given, either from a
+	 * pending background read, or by creating it.  Reads ahead of the Window if
+	 * the reader is being accessed sequentially.
+	 *
+	 * @param windowStart The position of the Window to get.
+	 * @return The Window at the position, or null if there is no Window at that position.
+	 * @throws IOException If there was a problem reading the Window.
+	 */
+	Window getWindow(final long windowStart) throws IOException {
+		final Future<Window> pending = pendingWindows.remove(windowStart);
+		Window window;
+		try {
+			window = pending == null? createWindow(windowStart) : waitFor(pending);
+		} catch (CancellationException cancelled) { // prefetching was stopped by another thread.
+			window = createWindow(windowStart);
+		}
+		readAhead(windowStart, window != null);
+		return window;
+	}
+
+	/**
+	 * Discards all pending reads, and waits for any read which is running to finish.
+	 */
+	void stop() {
+		cancelPending();
+		synchronized (reader.createLock) {
+			lastCreatedPosition = -1;
+		}
+	}
+
+	/**
+	 * Returns the number of Windows this prefetcher reads ahead of the reader.
+	 *
+	 * @return The number of Windows read ahead of the reader.
+	 */
+	int getNumWindows() {
+		return numWindows;
+	}
+
+	private Window createWindow(final long windowStart) throws IOException {
+		synchronized (reader.createLock) {
+			return reader.createWindow(windowStart);
+		}
+	}
+
+	private void readAhead(final long windowStart, final boolean windowExists) throws IOException {
+		final long windowSize = reader.windowSize;
+		final long lastPosition = lastCreatedPosition;
+		lastCreatedPosition = windowStart;
+		final long step;
+		if (windowExists && lastPosition >= 0 && windowStart == lastPosition + windowSize) {
+			step = windowSize;
+		} else if (windowExists && lastPosition >= 0 && windowStart == lastPosition - windowSize) {
+			step = -windowSize;
+		} else {
+			cancelPending();
+			return;
+		}
+		removeBehind(windowStart, step);
+		long position = windowStart;
+		for (int count = 0; count < numWindows; count++) {
+			position += step;
+			if (position < 0) {
+				break;
+			}
+			if (!pendingWindows.containsKey(position) && reader.cache.getWindow(position) == null) {
+				try {
+					pendingWindows.put(position, executor.submit(new WindowRead(position)));
+				} catch (RejectedExecutionException rejected) {
+					break; // The executor is not accepting any more work - just stop reading ahead.
+				}
+			}
+		}
+	}
+
+	private void removeBehind(final long windowStart, final long step) {
+		final Iterator<Map.Entry<Long, Future<Window>>> entries = pendingWindows.entrySet().iterator();
+		while (entries.hasNext()) {
+			final Map.Entry<Long, Future<Window>> entry = entries.next();
+			final long position = entry.getKey();
+			if (step > 0? position < windowStart : position > windowStart) {
+				entry.getValue().cancel(false);
+				entries.remove();
+			}
+		}
+	}
+
+	private void cancelPending() {
+		final Iterator<Future<Window>> futures = pendingWindows.values().iterator();
+		while (futures.hasNext()) {
+			// Never interrupt a read in progress - interrupting a thread reading a FileChannel closes the channel.
+			futures.next().cancel(false);
+			futures.remove();
+		}
+	}
+
+	private static Window waitFor(final Future<Window> pending) throws IOException {
+		try {
+			return pending.get();
+		} catch (InterruptedException interrupted) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for a window to be read.");
+		} catch (ExecutionException failed) {
+			final Throwable cause = failed.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[num windows: " + numWindows + " pending: " + pendingWindows.size() + ']';
+	}
+
+	/**
+	 * Creates a Window on the executor.
+	 */
+	private final class WindowRead implements Callable<Window> {
+
+		private final long windowStart;
+
+		private WindowRead(final long windowStart) {
+			this.windowStart = windowStart;
+		}
+
+		@Override
+		public Window call() throws IOException {
+			return createWindow(windowStart);
+		}
+	}
+
+}
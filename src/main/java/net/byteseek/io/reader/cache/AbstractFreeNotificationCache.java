@@ -93,6 +93,18 @@ public abstract class AbstractFreeNotificationCache implements WindowCache {
     }
     
     
+    /**
+     * Returns true if any observers are subscribed to this cache.
+     * Caches which have to do work to rebuild a Window before notifying observers
+     * can skip it when nothing is listening.
+     *
+     * @return true if any observers are subscribed to this cache.
+     */
+    protected final boolean hasObservers() {
+        return !windowObservers.isEmpty();
+    }
+
+
     /**
      * Notifies a {@link net.byteseek.io.reader.cache.WindowCache.WindowObserver} that a {@link net.byteseek.io.reader.windows.Window} was removed from a
      * {@link WindowCache}.
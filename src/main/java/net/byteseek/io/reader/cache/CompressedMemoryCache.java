@@ -0,0 +1,266 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.collections.LongLinkedHashMap;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link WindowCache} which holds the most recently used {@link net.byteseek.io.reader.windows.Window}s
+ * in memory, compressed with a {@link java.util.zip.Deflater} at its fastest level.  The cache
+ * is limited by the total number of compressed bytes it holds, so it can hold many more Windows
+ * of compressible data (such as text or sparse binary data) than an uncompressed cache in the same memory.
+ * <p>
+ * It is intended to sit between an uncompressed cache and a {@link TempFileCache} in a
+ * {@link TwoLevelCache}, so that Windows leaving the uncompressed cache do not have to be
+ * written to disk immediately, and re-reading them does not have to touch the disk:
+ * <pre>
+ *     TwoLevelCache.create(new LeastRecentlyUsedCache(capacity),
+ *                          TwoLevelCache.create(new CompressedMemoryCache(), new TempFileCache()));
+ * </pre>
+ * Windows which do not compress are held uncompressed.  Each Window returned by the cache is
+ * a new HardWindow holding a decompressed copy of the bytes.  Windows leaving the cache are
+ * decompressed so that observers (e.g. a TwoLevelCache passing them to a TempFileCache) receive
+ * the original bytes.
+ *
+ * @author Matt Palmer
+ */
+public final class CompressedMemoryCache extends AbstractFreeNotificationCache {
+
+    /**
+     * The default number of compressed bytes to hold, which is 16 MiB.
+     */
+    public static final int DEFAULT_BUDGET = 16 * 1024 * 1024;
+
+    private final LongLinkedHashMap<CompressedWindow> cache;
+    private final int budget;
+    private long bytesCached;
+    private Deflater deflater;
+    private Inflater inflater;
+    private byte[] compressBuffer = new byte[0];
+
+
+    /**
+     * Constructs a CompressedMemoryCache holding up to {@link #DEFAULT_BUDGET} compressed bytes.
+     */
+    public CompressedMemoryCache() {
+        this(DEFAULT_BUDGET);
+    }
+
+
+    /**
+     * Constructs a CompressedMemoryCache holding up to a budget of compressed bytes.
+     *
+     * @param budget The maximum number of compressed bytes to hold.
+     * @throws IllegalArgumentException if the budget is less than one.
+     */
+    public CompressedMemoryCache(final int budget) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("The budget must be a positive number of bytes: " + budget);
+        }
+        this.budget = budget;
+        this.cache = new LongLinkedHashMap<CompressedWindow>(16, 0.75f, true);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Window getWindow(final long position) throws IOException {
+        final CompressedWindow compressed = cache.get(position);
+        return compressed == null? null : decompress(position, compressed);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The bytes of the Window are compressed as they are added, and Windows are
+     * evicted in least recently used order until the budget is met again.
+     */
+    @Override
+    public void addWindow(final Window window) throws IOException {
+        final long windowPosition = window.getWindowPosition();
+        if (!cache.containsKey(windowPosition)) {
+            final CompressedWindow compressed = compress(window);
+            if (compressed.bytes.length > budget) {
+                notifyWindowFree(window, this);
+            } else {
+                cache.put(windowPosition, compressed);
+                bytesCached += compressed.bytes.length;
+                evictOverBudget();
+            }
+        }
+    }
+
+
+    /**
+     * Clears the cache, and releases the native resources used for compression.
+     */
+    @Override
+    public void clear() {
+        cache.clear();
+        bytesCached = 0;
+        compressBuffer = new byte[0];
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+
+    /**
+     * Returns the number of compressed bytes currently held in the cache.
+     *
+     * @return The number of compressed bytes currently held in the cache.
+     */
+    public long getBytesCached() {
+        return bytesCached;
+    }
+
+
+    /**
+     * Returns the maximum number of compressed bytes the cache will hold.
+     *
+     * @return The maximum number of compressed bytes the cache will hold.
+     */
+    public int getBudget() {
+        return budget;
+    }
+
+
+    private void evictOverBudget() throws IOException {
+        IOException notifyException = null;
+        while (bytesCached > budget) {
+            final LongLinkedHashMap.MapEntry<CompressedWindow> eldest = cache.iterator().next();
+            final long position = eldest.getKey();
+            final CompressedWindow compressed = eldest.getValue();
+            cache.remove(position);
+            bytesCached -= compressed.bytes.length;
+            if (hasObservers()) { // only decompress the evicted window if something wants it.
+                try {
+                    notifyWindowFree(decompress(position, compressed), this);
+                } catch (IOException ex) {
+                    notifyException = ex;
+                }
+            }
+        }
+        if (notifyException != null) {
+            throw notifyException;
+        }
+    }
+
+
+    private CompressedWindow compress(final Window window) throws IOException {
+        final int length = window.length();
+        final byte[] source = window.getArray();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+        if (compressBuffer.length < length) {
+            compressBuffer = new byte[length];
+        }
+        deflater.reset();
+        deflater.setInput(source, 0, length);
+        deflater.finish();
+        final int compressedLength = deflater.deflate(compressBuffer, 0, length);
+        final byte[] stored;
+        final boolean isCompressed = deflater.finished() && compressedLength < length;
+        if (isCompressed) {
+            stored = new byte[compressedLength];
+            System.arraycopy(compressBuffer, 0, stored, 0, compressedLength);
+        } else { // it didn't compress, so hold a copy of the original bytes.
+            stored = new byte[length];
+            System.arraycopy(source, 0, stored, 0, length);
+        }
+        return new CompressedWindow(stored, length, isCompressed);
+    }
+
+
+    private Window decompress(final long position, final CompressedWindow compressed) throws IOException {
+        if (!compressed.isCompressed) {
+            return new HardWindow(compressed.bytes.clone(), position, compressed.length);
+        }
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        final byte[] bytes = new byte[compressed.length];
+        inflater.reset();
+        inflater.setInput(compressed.bytes);
+        try {
+            final int decompressed = inflater.inflate(bytes);
+            if (decompressed != compressed.length) {
+                throw new IOException("Decompressed " + decompressed + " bytes for window at " +
+                                      position + " but expected " + compressed.length);
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException(ex);
+        }
+        return new HardWindow(bytes, position, compressed.length);
+    }
+
+
+    /**
+     * The compressed bytes of a Window, and its original length.
+     */
+    private static final class CompressedWindow {
+
+        private final byte[] bytes;
+        private final int length;
+        private final boolean isCompressed;
+
+        private CompressedWindow(final byte[] bytes, final int length, final boolean isCompressed) {
+            this.bytes = bytes;
+            this.length = length;
+            this.isCompressed = isCompressed;
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size: " + cache.size() + " bytes cached: " + bytesCached +
+                                            " budget: " + budget + ']';
+    }
+
+}
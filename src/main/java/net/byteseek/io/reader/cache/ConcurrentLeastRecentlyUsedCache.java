@@ -0,0 +1,190 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+import net.byteseek.utils.collections.LongLinkedHashMap;
+
+import java.io.IOException;
+
+
+/**
+ * A {@link WindowCache} which holds on to the {@link net.byteseek.io.reader.windows.Window}
+ * objects which were most recently used, and which is safe for use by more than one thread.
+ * <p>
+ * Windows are spread over a number of segments by their position, each of which is a
+ * least recently used cache protected by its own lock. Threads reading different
+ * windows will usually not contend for the same lock.  Each segment holds an equal share
+ * of the total capacity, so the cache as a whole only approximates a least recently used
+ * strategy.
+ * <p>
+ * Observers should subscribe to this cache before it is shared between threads, as
+ * subscription is not synchronised.  Observers are notified that a Window has left the
+ * cache while the segment it left is locked.
+ *
+ * @author Matt Palmer
+ */
+public final class ConcurrentLeastRecentlyUsedCache extends AbstractFreeNotificationCache {
+
+    private static final int DEFAULT_CONCURRENCY = 16;
+
+    private final Segmentation segmentation;
+    private final Segment[] segments;
+    private final int capacity;
+
+
+    /**
+     * Creates a ConcurrentLeastRecentlyUsedCache using the provided capacity, and
+     * a default number of segments for concurrent access.
+     *
+     * @param capacity The number of Window objects to cache.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public ConcurrentLeastRecentlyUsedCache(final int capacity) {
+        this(capacity, DEFAULT_CONCURRENCY);
+    }
+
+
+    /**
+     * Creates a ConcurrentLeastRecentlyUsedCache using the provided capacity, and
+     * a number of segments which is the smallest power of two at least as big as the
+     * concurrency level requested.  There will never be more segments than the capacity.
+     *
+     * @param capacity The number of Window objects to cache.
+     * @param concurrencyLevel The number of threads expected to access the cache at the same time.
+     * @throws IllegalArgumentException if the capacity or concurrency level is less than one.
+     */
+    public ConcurrentLeastRecentlyUsedCache(final int capacity, final int concurrencyLevel) {
+        ArgUtils.checkPositiveInteger(capacity, "capacity");
+        ArgUtils.checkPositiveInteger(concurrencyLevel, "concurrencyLevel");
+        segmentation = new Segmentation(concurrencyLevel < capacity? concurrencyLevel : capacity);
+        final int numSegments = segmentation.size();
+        final int segmentCapacity = (capacity + numSegments - 1) / numSegments;
+        segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+        this.capacity = capacity;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Window getWindow(final long position) {
+        final Segment segment = segmentFor(position);
+        synchronized (segment) {
+            return segment.get(position);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addWindow(final Window window) throws IOException {
+        final long windowPosition = window.getWindowPosition();
+        final Segment segment = segmentFor(windowPosition);
+        synchronized (segment) {
+            if (!segment.containsKey(windowPosition)) {
+                segment.put(windowPosition, window);
+                segment.checkIOException();
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+
+    private Segment segmentFor(final long position) {
+        return segments[segmentation.indexOf(position)];
+    }
+
+
+    /**
+     * A least recently used segment of the cache, which notifies any
+     * {@link WindowObserver}s subscribed to the cache when a
+     * {@link net.byteseek.io.reader.windows.Window} leaves it.
+     * All access to a segment must be synchronized on the segment.
+     */
+    private final class Segment extends LongLinkedHashMap<Window> {
+
+        private final int capacity;
+        private IOException exception = null;
+
+        private Segment(final int capacity) {
+            super(capacity + 1, 1.1f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final MapEntry<Window> eldest) {
+            final boolean remove = size() > capacity;
+            if (remove) {
+                try {
+                    notifyWindowFree(eldest.getValue(), ConcurrentLeastRecentlyUsedCache.this);
+                } catch (IOException ex) {
+                    exception = ex;
+                }
+            }
+            return remove;
+        }
+
+        private void checkIOException() throws IOException {
+            if (exception != null) {
+                final IOException ex = exception;
+                exception = null;
+                throw ex;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[segments: " + segments.length + " capacity: " + capacity + ']';
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+import net.byteseek.utils.collections.LongLinkedHashMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link WindowCache} which holds the most recently used Windows off the Java heap,
+ * in direct {@link java.nio.ByteBuffer}s.  Large numbers of Windows can be cached
+ * without growing the heap or lengthening garbage collection, which is useful when
+ * keeping large regions of big sources resident.
+ * <p>
+ * Windows added to the cache are copied into a new direct buffer, unless they are
+ * already {@link net.byteseek.io.reader.windows.BufferWindow}s backed by one.
+ * Windows returned by the cache are BufferWindows, which read single bytes directly
+ * from the buffer, and which searchers can search without copying back into an array.
+ * Each call to {@link #getWindow(long)} returns a new BufferWindow over the cached buffer.
+ * Calling getArray() on it copies the Window onto the heap, but the copy belongs to the
+ * caller's Window, so the cache never holds both the buffer and a copy of it.
+ * <p>
+ * The memory used by a direct buffer is only released when the buffer is garbage
+ * collected, so the JVM maximum direct memory setting should allow for the capacity
+ * of the cache multiplied by the window size, plus some overhead.
+ *
+ * @author Matt Palmer
+ */
+public final class DirectBufferCache extends AbstractFreeNotificationCache {
+
+    private final Cache cache;
+
+
+    /**
+     * Creates a DirectBufferCache using the provided capacity.
+     *
+     * @param capacity The number of Window objects to cache.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public DirectBufferCache(final int capacity) {
+        ArgUtils.checkPositiveInteger(capacity, "capacity");
+        cache = new Cache(capacity);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Window getWindow(final long position) {
+        final BufferWindow window = cache.get(position);
+        return window == null? null : new BufferWindow(window.getByteBuffer(), position, window.length());
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The bytes of the Window are copied into a direct buffer, unless it is already
+     * a BufferWindow backed by a direct buffer, in which case the cache holds its own
+     * BufferWindow over that buffer, not the Window passed in.
+     */
+    @Override
+    public void addWindow(final Window window) throws IOException {
+        final long windowPosition = window.getWindowPosition();
+        if (!cache.containsKey(windowPosition)) {
+            cache.put(windowPosition, toDirectWindow(window));
+            cache.checkIOException();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+
+    private static BufferWindow toDirectWindow(final Window window) throws IOException {
+        final int length = window.length();
+        if (window instanceof BufferWindow && ((BufferWindow) window).isDirect()) {
+            return new BufferWindow(((BufferWindow) window).getByteBuffer(), window.getWindowPosition(), length);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        if (window instanceof BufferWindow) {
+            buffer.put(((BufferWindow) window).getByteBuffer());
+        } else {
+            buffer.put(window.getArray(), 0, length);
+        }
+        return new BufferWindow(buffer, window.getWindowPosition(), length);
+    }
+
+
+    /**
+     * A least recently used map of window positions to the BufferWindows holding their
+     * direct buffers, which notifies any {@link WindowObserver}s subscribed to the cache
+     * when a {@link net.byteseek.io.reader.windows.Window} is evicted from it.
+     */
+    private class Cache extends LongLinkedHashMap<BufferWindow> {
+
+        private final int capacity;
+        private IOException exception = null;
+
+        private Cache(int capacity) {
+            super(capacity + 1, 1.1f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final MapEntry<BufferWindow> eldest) {
+            final boolean remove = size() > capacity;
+            if (remove) {
+                try {
+                    notifyWindowFree(eldest.getValue(), DirectBufferCache.this);
+                } catch (IOException ex) {
+                    exception = ex;
+                }
+            }
+            return remove;
+        }
+
+        public void checkIOException() throws IOException {
+            if (exception != null) {
+                final IOException ex = exception;
+                exception = null;
+                throw ex;
+            }
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size: " + cache.size() + " capacity: " + cache.capacity + ']';
+    }
+
+}
@@ -52,10 +52,13 @@ import java.io.IOException;
  * always retrieve old data, but also want to support faster access to multiple
  * Windows (memory permitting), this cache allows both requirements to be satisfied.
  * </p>
- * This cache technically supports free notification, but will never notify
- * of a window being evicted, since the persistent cache should never actually
- * release a window.  Care must be taken to use appropriate caches with this
- * cache.
+ * This cache technically supports free notification, but will only notify
+ * of a window being evicted if the persistent cache releases a window which is
+ * no longer in the memory cache.  A persistent cache which keeps the bytes of
+ * a window rather than the window itself (e.g. a {@link TempFileCache}) releases
+ * the window as soon as it is stored, so it is only reported free here if it has
+ * already left the memory cache.  Care must be taken to use appropriate caches
+ * with this cache.
  *
  * @author Matt Palmer
  */
@@ -126,7 +129,9 @@ public final class DoubleCache extends AbstractFreeNotificationCache implements
     */
     @Override
     public void windowFree(final Window window, final WindowCache fromCache) throws IOException {
-        notifyWindowFree(window, this);
+        if (memoryCache.getWindow(window.getWindowPosition()) != window) { // only free if not still in memory.
+            notifyWindowFree(window, this);
+        }
     }
 
     /**
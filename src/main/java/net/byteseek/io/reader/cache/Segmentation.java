@@ -0,0 +1,101 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+/**
+ * Spreads the entries of a cache over a power of two number of segments, each of
+ * which can be protected by its own lock, so threads using different entries will
+ * usually not contend for the same lock.
+ * <p>
+ * Window positions are usually multiples of the window size, so the low bits of
+ * their hashes are mostly zero.  Multiplicative hashing spreads them into the high
+ * bits, which select the segment.
+ *
+ * @author Matt Palmer
+ */
+final class Segmentation {
+
+    private static final int GOLDEN_RATIO_INT = 0x9E3779B9;
+    private static final int MAX_SHIFT = 16;
+
+    private final int numSegments;
+    private final int segmentShift;
+
+
+    /**
+     * Creates a Segmentation with the smallest power of two number of segments which is
+     * at least as big as the maximum requested, up to 65536 segments.
+     *
+     * @param maxSegments The number of segments wanted.
+     */
+    Segmentation(final int maxSegments) {
+        int shift = 0;
+        while ((1 << shift) < maxSegments && shift < MAX_SHIFT) {
+            shift++;
+        }
+        this.numSegments = 1 << shift;
+        this.segmentShift = 32 - shift;
+    }
+
+
+    /**
+     * Returns the number of segments, which is a power of two.
+     *
+     * @return The number of segments.
+     */
+    int size() {
+        return numSegments;
+    }
+
+
+    /**
+     * Returns the index of the segment for a position.
+     *
+     * @param position The position to find the segment for.
+     * @return The index of the segment for the position.
+     */
+    int indexOf(final long position) {
+        return indexOf((int) (position ^ (position >>> 32)));
+    }
+
+
+    /**
+     * Returns the index of the segment for a hash code.
+     *
+     * @param hash The hash code to find the segment for.
+     * @return The index of the segment for the hash code.
+     */
+    int indexOf(final int hash) {
+        return segmentShift == 32? 0 : (hash * GOLDEN_RATIO_INT) >>> segmentShift;
+    }
+
+}
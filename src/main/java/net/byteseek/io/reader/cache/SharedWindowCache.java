@@ -0,0 +1,414 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A least recently used cache of {@link net.byteseek.io.reader.windows.Window}s shared by
+ * many readers, which limits the total number of bytes cached rather than the number of
+ * Windows cached by each reader.  When the budget is exceeded, the least recently used
+ * Windows are evicted, whichever reader they belong to.
+ * <p>
+ * Each reader needs its own {@link WindowCache} onto the shared cache, created by
+ * {@link #newCache()}.  Windows are keyed by the cache they were added through and their
+ * position, so readers of different sources never see each other's Windows.  Each reader
+ * cache also indexes the keys of its own Windows, so clearing a reader cache (e.g. when
+ * its reader is closed) only visits and removes the Windows of that reader, and notifies
+ * its observers that they have left the cache.
+ * <p>
+ * A process-wide instance is available from {@link #getDefault()}.  For example:
+ * <pre>
+ *     WindowReader reader = new FileReader(file, SharedWindowCache.getDefault().newCache());
+ * </pre>
+ * The shared cache and its reader caches are thread-safe.  Windows are spread over a
+ * number of segments in the same way as the {@link ConcurrentLeastRecentlyUsedCache}, each
+ * of which is protected by its own lock, so readers on different threads will usually not
+ * contend for the same lock.  When the budget is exceeded, the least recently used Windows
+ * in the segment of the Window being added are evicted first, then those of the other
+ * segments in turn, so the cache as a whole only approximates a least recently used strategy.
+ * <p>
+ * Observers of a reader cache are notified when one of its Windows is evicted, which can
+ * happen when a different reader adds a Window, or when the reader cache is cleared.
+ * Notification happens after the segments are unlocked, on the thread which caused the
+ * eviction.  The observers of a reader cache are notified one Window at a time, holding
+ * the lock of the reader cache, which also guards subscription.
+ *
+ * @author Matt Palmer
+ */
+public final class SharedWindowCache {
+
+    /**
+     * The default budget of the process-wide shared cache in bytes, which is 64 MiB.
+     */
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    private static final int DEFAULT_CONCURRENCY = 16;
+
+    private final long budget;
+    private final Segmentation segmentation;
+    private final Segment[] segments;
+    private final AtomicLong bytesCached = new AtomicLong();
+    private final AtomicInteger nextEvictionSegment = new AtomicInteger();
+
+
+    /**
+     * Constructs a SharedWindowCache which caches up to a budget of bytes, using
+     * a default number of segments for concurrent access.
+     * The bytes counted for each Window are its length.
+     *
+     * @param budget The maximum number of bytes to cache.
+     * @throws IllegalArgumentException if the budget is less than one.
+     */
+    public SharedWindowCache(final long budget) {
+        this(budget, DEFAULT_CONCURRENCY);
+    }
+
+
+    /**
+     * Constructs a SharedWindowCache which caches up to a budget of bytes, using a
+     * number of segments which is the smallest power of two at least as big as the
+     * concurrency level requested.  The bytes counted for each Window are its length.
+     *
+     * @param budget The maximum number of bytes to cache.
+     * @param concurrencyLevel The number of threads expected to access the cache at the same time.
+     * @throws IllegalArgumentException if the budget or concurrency level is less than one.
+     */
+    public SharedWindowCache(final long budget, final int concurrencyLevel) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("The budget must be a positive number of bytes: " + budget);
+        }
+        ArgUtils.checkPositiveInteger(concurrencyLevel, "concurrencyLevel");
+        this.budget = budget;
+        this.segmentation = new Segmentation(concurrencyLevel);
+        this.segments = new Segment[segmentation.size()];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+
+    /**
+     * Returns the process-wide SharedWindowCache, which has a budget of {@link #DEFAULT_BUDGET}.
+     *
+     * @return The process-wide SharedWindowCache.
+     */
+    public static SharedWindowCache getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+
+    /**
+     * Returns a new {@link WindowCache} for a reader, which caches Windows in this shared cache.
+     * Each reader should have its own cache.
+     *
+     * @return A new WindowCache for a reader, which caches Windows in this shared cache.
+     */
+    public WindowCache newCache() {
+        return new ReaderCache();
+    }
+
+
+    /**
+     * Returns the maximum number of bytes this cache will hold.
+     *
+     * @return The maximum number of bytes this cache will hold.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+
+    /**
+     * Returns the number of bytes currently held in this cache.
+     *
+     * @return The number of bytes currently held in this cache.
+     */
+    public long getBytesCached() {
+        return bytesCached.get();
+    }
+
+
+    /**
+     * Returns the number of Windows currently held in this cache, across all readers.
+     *
+     * @return The number of Windows currently held in this cache.
+     */
+    public int size() {
+        int size = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size: " + size() + " bytes cached: " + bytesCached.get() +
+                                            " budget: " + budget + " segments: " + segments.length + ']';
+    }
+
+
+    private Segment segmentFor(final WindowKey key) {
+        return segments[segmentation.indexOf(key.hashCode())];
+    }
+
+
+    /*
+     * Evicts the least recently used windows of a segment, other than the window to keep,
+     * until the cache is within its budget or the segment has nothing left to evict.
+     * Must be called holding the lock of the segment.
+     */
+    private void evict(final Segment segment, final WindowKey keep,
+                       final List<WindowKey> evictedKeys, final List<Window> evictedWindows) {
+        final Iterator<Map.Entry<WindowKey, Window>> eldest = segment.entrySet().iterator();
+        while (bytesCached.get() > budget && eldest.hasNext()) {
+            final Map.Entry<WindowKey, Window> entry = eldest.next();
+            final WindowKey evictedKey = entry.getKey();
+            if (!evictedKey.equals(keep)) {
+                final Window evicted = entry.getValue();
+                eldest.remove();
+                evictedKey.owner.removeKey(evictedKey);
+                bytesCached.addAndGet(-evicted.length());
+                evictedKeys.add(evictedKey);
+                evictedWindows.add(evicted);
+            }
+        }
+    }
+
+
+    /**
+     * A WindowCache for a single reader, which caches its Windows in the shared cache.
+     */
+    private final class ReaderCache extends AbstractFreeNotificationCache {
+
+        /**
+         * The keys of the Windows of this reader in the shared cache, guarded by the set itself.
+         * A segment lock may be held when it is locked, but not the other way around.
+         */
+        private final Set<WindowKey> keys = new HashSet<WindowKey>();
+
+        @Override
+        public Window getWindow(final long position) {
+            final WindowKey key = new WindowKey(this, position);
+            final Segment segment = segmentFor(key);
+            synchronized (segment) {
+                return segment.get(key);
+            }
+        }
+
+        @Override
+        public void addWindow(final Window window) throws IOException {
+            final WindowKey key = new WindowKey(this, window.getWindowPosition());
+            final int windowBytes = window.length();
+            if (windowBytes > budget) { // too big to ever cache - it leaves the cache immediately.
+                notifyFree(window);
+                return;
+            }
+            final List<WindowKey> evictedKeys = new ArrayList<WindowKey>();
+            final List<Window> evictedWindows = new ArrayList<Window>();
+            final Segment segment = segmentFor(key);
+            synchronized (segment) {
+                if (segment.containsKey(key)) {
+                    return;
+                }
+                segment.put(key, window);
+                synchronized (keys) {
+                    keys.add(key);
+                }
+                bytesCached.addAndGet(windowBytes);
+                evict(segment, key, evictedKeys, evictedWindows);
+            }
+            // If the segment of the new window did not have enough to evict, evict from the others in turn:
+            if (bytesCached.get() > budget) {
+                final int mask = segments.length - 1;
+                final int first = nextEvictionSegment.getAndIncrement();
+                for (int i = 0; i < segments.length && bytesCached.get() > budget; i++) {
+                    final Segment other = segments[(first + i) & mask];
+                    synchronized (other) {
+                        evict(other, key, evictedKeys, evictedWindows);
+                    }
+                }
+            }
+            if (!evictedKeys.isEmpty()) {
+                notifyEvicted(evictedKeys, evictedWindows);
+            }
+        }
+
+        @Override
+        public void clear() throws IOException {
+            final List<WindowKey> clearKeys;
+            synchronized (keys) {
+                clearKeys = new ArrayList<WindowKey>(keys);
+                keys.clear();
+            }
+            final List<Window> cleared = new ArrayList<Window>(clearKeys.size());
+            for (final WindowKey key : clearKeys) {
+                final Segment segment = segmentFor(key);
+                synchronized (segment) {
+                    final Window window = segment.remove(key);
+                    if (window != null) { // not evicted by another reader since the keys were copied.
+                        bytesCached.addAndGet(-window.length());
+                        cleared.add(window);
+                    }
+                }
+            }
+            IOException notifyException = null;
+            for (final Window window : cleared) {
+                try {
+                    notifyFree(window);
+                } catch (IOException ex) {
+                    notifyException = ex;
+                }
+            }
+            if (notifyException != null) {
+                throw notifyException;
+            }
+        }
+
+        private void removeKey(final WindowKey key) {
+            synchronized (keys) {
+                keys.remove(key);
+            }
+        }
+
+        @Override
+        public synchronized void subscribe(final WindowObserver observer) {
+            super.subscribe(observer);
+        }
+
+        @Override
+        public synchronized boolean unsubscribe(final WindowObserver observer) {
+            return super.unsubscribe(observer);
+        }
+
+        /*
+         * Observers may be notified on the threads of other readers, so notifications are
+         * synchronized with each other and with subscription.
+         */
+        private synchronized void notifyFree(final Window window) throws IOException {
+            notifyWindowFree(window, this);
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[shared: " + SharedWindowCache.this + ']';
+        }
+    }
+
+
+    /*
+     * Notifies the owners of evicted windows that they have left the cache,
+     * throwing the last IOException thrown by any observer once all are notified.
+     */
+    private static void notifyEvicted(final List<WindowKey> keys, final List<Window> evicted) throws IOException {
+        IOException notifyException = null;
+        for (int i = 0; i < keys.size(); i++) {
+            try {
+                keys.get(i).owner.notifyFree(evicted.get(i));
+            } catch (IOException ex) {
+                notifyException = ex;
+            }
+        }
+        if (notifyException != null) {
+            throw notifyException;
+        }
+    }
+
+
+    /**
+     * A key for a Window, made of the reader cache it belongs to and its position.
+     */
+    private static final class WindowKey {
+
+        private final ReaderCache owner;
+        private final long position;
+
+        private WindowKey(final ReaderCache owner, final long position) {
+            this.owner = owner;
+            this.position = position;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof WindowKey)) {
+                return false;
+            }
+            final WindowKey otherKey = (WindowKey) other;
+            return owner == otherKey.owner && position == otherKey.position;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(owner) + (int) (position ^ (position >>> 32));
+        }
+    }
+
+
+    /**
+     * A least recently used segment of the shared cache, in access order.
+     * All access to a segment must be synchronized on the segment.
+     */
+    private static final class Segment extends LinkedHashMap<WindowKey, Window> {
+
+        private Segment() {
+            super(16, 0.75f, true);
+        }
+    }
+
+
+    /**
+     * Lazily creates the process-wide shared cache.
+     */
+    private static final class DefaultHolder {
+        private static final SharedWindowCache INSTANCE = new SharedWindowCache(DEFAULT_BUDGET);
+    }
+
+}
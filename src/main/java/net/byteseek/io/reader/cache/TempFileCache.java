@@ -48,6 +48,17 @@ import net.byteseek.io.reader.windows.*;
  * <p>
  * A temporary file is only created if a Window is added to the cache, and it is
  * deleted when the cache is cleared.
+ * <p>
+ * The cache keeps the bytes of a Window, not the Window itself, so once a Window added to
+ * the cache is in the file, its observers are told it has left the cache.  If it is a
+ * {@link net.byteseek.io.reader.windows.PooledWindow}, this lets the reader which owns
+ * it return its array to its {@link WindowArrayPool}.  The cache never returns arrays
+ * to a pool itself.
+ * <p>
+ * By default, each Window read back from the file is read into a new array.
+ * If the cache is constructed with the {@link WindowArrayPool} of the reader using it,
+ * Windows of the pool array size are read back into PooledWindows over arrays from the
+ * pool instead, which reload their bytes from this cache once their array is released.
  * 
  * @author Matt Palmer
  */
@@ -55,9 +66,11 @@ public final class TempFileCache extends AbstractFreeNotificationCache implement
 
     private final TLongObjectMap<WindowInfo> windowPositions;
     private final File tempDir;
+    private final WindowArrayPool arrayPool;
     private File tempFile;
     private RandomAccessFile file;
     private long nextFilePos;
+    private byte[] writeBuffer;
 
     /**
      * Constructs a TempFileCache.
@@ -75,8 +88,24 @@ public final class TempFileCache extends AbstractFreeNotificationCache implement
      * @throws java.lang.IllegalArgumentException if the tempdir supplied is not a directory.
      */
     public TempFileCache(final File tempDir) {
+        this(tempDir, null);
+    }
+
+
+    /**
+     * Constructs a TempFileCache which creates temporary files in the directory specified,
+     * and reads Windows back into arrays from the pool given.  The pool should be the pool
+     * of the reader using this cache.  If the file is null, then temporary files will be
+     * created in the default temp directory.  If the pool is null, no pool is used.
+     *
+     * @param tempDir   The directory to create temporary files in.
+     * @param arrayPool The pool of arrays to read Windows back into, or null if no pool is used.
+     * @throws java.lang.IllegalArgumentException if the tempdir supplied is not a directory.
+     */
+    public TempFileCache(final File tempDir, final WindowArrayPool arrayPool) {
         windowPositions = new TLongObjectHashMap<WindowInfo>();
         this.tempDir = tempDir;
+        this.arrayPool = arrayPool;
         if (tempDir != null && !tempDir.isDirectory()) {
             throw new IllegalArgumentException("The temp dir file supplied is not a directory: " + tempDir.getAbsolutePath());
         }
@@ -91,9 +120,16 @@ public final class TempFileCache extends AbstractFreeNotificationCache implement
         Window window = null;
         final WindowInfo info = windowPositions.get(position);
         if (info != null) {
-            final byte[] array = new byte[info.length];
-            IOUtils.readBytes(file, array, info.filePosition);
-            window = new SoftWindow(array, position, info.length, this);
+            final WindowArrayPool pool = arrayPool;
+            if (pool != null && info.length == pool.getArraySize()) {
+                final byte[] array = pool.getArray();
+                IOUtils.readBytes(file, array, info.filePosition);
+                window = new PooledWindow(array, position, info.length, this);
+            } else {
+                final byte[] array = new byte[info.length];
+                IOUtils.readBytes(file, array, info.filePosition);
+                window = new SoftWindow(array, position, info.length, this);
+            }
         }
         return window;
     }
@@ -101,6 +137,9 @@ public final class TempFileCache extends AbstractFreeNotificationCache implement
     
     /**
      * {@inheritDoc}
+     * <p>
+     * Once the bytes of the Window are in the file, observers are told the Window
+     * itself has left the cache.
      */
     @Override
     public void addWindow(final Window window) throws IOException {
@@ -109,11 +148,12 @@ public final class TempFileCache extends AbstractFreeNotificationCache implement
         if (info == null) {
             createFileIfNotExists();
             file.seek(nextFilePos);
-            file.write(window.getArray(), 0, window.length());
+            write(window);
             windowPositions.put(windowPosition,
                                 new WindowInfo(window.length(), nextFilePos));
             nextFilePos += window.length();
         }
+        notifyWindowFree(window, this);
     }
 
     
@@ -124,6 +164,7 @@ public final class TempFileCache extends AbstractFreeNotificationCache implement
     @Override
     public void clear() throws IOException {
         windowPositions.clear();
+        writeBuffer = null;
         deleteFileIfExists();
     }
     
@@ -138,6 +179,23 @@ public final class TempFileCache extends AbstractFreeNotificationCache implement
     }
     
     
+    /*
+     * The bytes of a PooledWindow are copied rather than taking its array, so it can still release it.
+     */
+    private void write(final Window window) throws IOException {
+        final int length = window.length();
+        if (window instanceof PooledWindow) {
+            if (writeBuffer == null || writeBuffer.length < length) {
+                writeBuffer = new byte[length];
+            }
+            ((PooledWindow) window).copyBytes(0, writeBuffer, 0, length);
+            file.write(writeBuffer, 0, length);
+        } else {
+            file.write(window.getArray(), 0, length);
+        }
+    }
+
+
     private void createFileIfNotExists() throws IOException {
         if (tempFile == null) {
             windowPositions.clear();
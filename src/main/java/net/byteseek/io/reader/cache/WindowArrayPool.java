@@ -0,0 +1,188 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A pool of byte arrays of a fixed size, which a reader can use to create
+ * {@link net.byteseek.io.reader.windows.Window}s instead of allocating a new array
+ * for each one.  Arrays are returned to the pool when a Window is evicted from the
+ * cache of the reader, so sustained reading re-uses the same arrays rather than
+ * producing large amounts of short-lived garbage.
+ * <p>
+ * A pool belongs to a single reader at a time.  A reader claims the pool when it is
+ * set on the reader, and releases it when it stops using it; a pool which is already
+ * owned by another reader cannot be claimed.  Only the owning reader returns arrays to
+ * the pool.
+ * <p>
+ * The reader wraps each array from the pool in a {@link net.byteseek.io.reader.windows.PooledWindow},
+ * which owns the array until the reader releases it, and only returns arrays that a
+ * PooledWindow has released.  A Window can only release its array once, and a Window whose
+ * array has been released reloads its bytes if it is read again, so a caller still holding
+ * a Window after it leaves the cache never sees the bytes of another Window.  An array
+ * handed out by {@link net.byteseek.io.reader.windows.Window#getArray()} is never released,
+ * as the pool cannot know when the caller has finished with it.
+ * <p>
+ * The pool holds no more free arrays than its capacity - any other arrays returned
+ * to it are left for the garbage collector.  It is thread-safe, so the owning reader
+ * can create and evict Windows on more than one thread, for example when prefetching.
+ *
+ * @author Matt Palmer
+ */
+public final class WindowArrayPool {
+
+    private final int arraySize;
+    private final int capacity;
+    private final byte[][] freeArrays;
+    private int numFree;
+    private Object owner;
+
+    /**
+     * Constructs a WindowArrayPool for arrays of the size given, holding up to
+     * capacity free arrays.
+     *
+     * @param arraySize The size of the arrays in the pool, which should be the window size of the reader.
+     * @param capacity  The maximum number of free arrays to hold in the pool.
+     * @throws IllegalArgumentException if the array size or capacity is less than one.
+     */
+    public WindowArrayPool(final int arraySize, final int capacity) {
+        ArgUtils.checkPositiveInteger(arraySize, "arraySize");
+        ArgUtils.checkPositiveInteger(capacity, "capacity");
+        this.arraySize  = arraySize;
+        this.capacity   = capacity;
+        this.freeArrays = new byte[capacity][];
+    }
+
+    /**
+     * Claims the pool for a reader.  A reader which already owns the pool can claim it again.
+     *
+     * @param reader The reader which will create Windows from the pool.
+     * @throws IllegalArgumentException if the reader is null.
+     * @throws IllegalStateException if the pool is already owned by a different reader.
+     */
+    public synchronized void claim(final Object reader) {
+        ArgUtils.checkNullObject(reader, "reader");
+        if (owner != null && owner != reader) {
+            throw new IllegalStateException("The pool is already owned by another reader: " + owner);
+        }
+        owner = reader;
+    }
+
+    /**
+     * Releases the pool from a reader, so another reader can claim it.  The free arrays
+     * are kept, but a reader which does not own the pool cannot release it.
+     *
+     * @param reader The reader releasing the pool.
+     */
+    public synchronized void release(final Object reader) {
+        if (owner == reader) {
+            owner = null;
+        }
+    }
+
+    /**
+     * Returns true if a reader currently owns the pool.
+     *
+     * @return true if a reader currently owns the pool.
+     */
+    public synchronized boolean isOwned() {
+        return owner != null;
+    }
+
+    /**
+     * Returns a free array from the pool, or a new array if there are none free.
+     * The contents of an array from the pool are not cleared.
+     *
+     * @return A byte array of the pool array size.
+     */
+    public synchronized byte[] getArray() {
+        if (numFree > 0) {
+            final byte[] array = freeArrays[--numFree];
+            freeArrays[numFree] = null;
+            return array;
+        }
+        return new byte[arraySize];
+    }
+
+    /**
+     * Returns an array to the pool, to be handed out again by {@link #getArray()}.
+     * Arrays which are not the size of the arrays in this pool are ignored.
+     * <p>
+     * The array must not be used by anything else once it is returned, so it should
+     * only be an array released by the {@link net.byteseek.io.reader.windows.PooledWindow}
+     * which owned it.
+     *
+     * @param array The array to return to the pool.
+     */
+    public synchronized void returnArray(final byte[] array) {
+        if (array != null && array.length == arraySize && numFree < capacity) {
+            freeArrays[numFree++] = array;
+        }
+    }
+
+    /**
+     * Returns the size of the arrays in this pool.
+     *
+     * @return The size of the arrays in this pool.
+     */
+    public int getArraySize() {
+        return arraySize;
+    }
+
+    /**
+     * Returns the number of arrays which are currently free for re-use in this pool.
+     *
+     * @return The number of arrays which are currently free for re-use.
+     */
+    public synchronized int getNumFree() {
+        return numFree;
+    }
+
+    /**
+     * Removes all the free arrays from the pool.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < numFree; i++) {
+            freeArrays[i] = null;
+        }
+        numFree = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "[array size: " + arraySize + " capacity: " + capacity +
+                                            " free: " + numFree +
+                                            " owned: " + (owner != null) + ']';
+    }
+
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.cache;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.byteseek.io.IOUtils;
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.PooledWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.utils.ArgUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link WindowCache} which stores {@link net.byteseek.io.reader.windows.Window}s in a
+ * temporary file like the {@link TempFileCache}, but which writes them on a background thread,
+ * so the thread adding Windows (e.g. a reader scanning a stream) does not stall on disk writes.
+ * <p>
+ * The temporary file is memory mapped in large chunks.  The thread adding a Window only works out
+ * where it will go in the file; the background writer maps each chunk the first time it writes to it,
+ * growing the file, and copies each Window into its place in the chunk.  Windows are read back as
+ * {@link net.byteseek.io.reader.windows.BufferWindow}s over the mapped file, with no read
+ * call or array allocation.  Until a Window has been written, a copy of its bytes is held in
+ * a staging area and returned from there instead.  The bytes are copied on the thread adding
+ * the Window, so the background writer never reads from the Window itself, or from a reader
+ * which may not be thread-safe.  The staging area holds a small number of Windows; if it is full,
+ * adding a Window waits until the writer has caught up.
+ * <p>
+ * A temporary file is only created if a Window is added to the cache.  When the cache is
+ * cleared, it waits for any outstanding writes to finish and deletes the file.  Note that
+ * some platforms cannot delete a file which is still memory mapped, in which case the file
+ * is deleted when the JVM exits.  If a background write fails, the Window is dropped from the
+ * cache, and the exception is thrown from every call to add or get a Window until the cache
+ * is cleared.
+ * <p>
+ * Like most caches, this is not thread-safe for use by more than one reader thread.
+ *
+ * @author Matt Palmer
+ */
+public final class WriteBehindTempFileCache extends AbstractFreeNotificationCache {
+
+    /**
+     * The default size of the chunks of the temporary file which are mapped into memory, which is 16 MiB.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The default number of Windows which can wait to be written before adding a Window waits, which is 4.
+     */
+    public static final int DEFAULT_MAX_STAGED = 4;
+
+    private final TLongObjectMap<WindowInfo> windowPositions;
+    private final Map<Long, Window> stagedWindows;
+    private final Semaphore stagingPermits;
+    private final Queue<Long> failedPositions;
+    private final Map<Integer, MappedByteBuffer> chunks;
+    private final File tempDir;
+    private final int chunkSize;
+
+    private File tempFile;
+    private RandomAccessFile file;
+    private int numChunks;
+    private long nextChunkFilePos;
+    private int lastChunkSize;
+    private int nextChunkOffset;
+    private ExecutorService writer;
+    private volatile IOException writeException;
+
+
+    /**
+     * Constructs a WriteBehindTempFileCache creating its file in the default temp directory.
+     */
+    public WriteBehindTempFileCache() {
+        this(null, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_STAGED);
+    }
+
+
+    /**
+     * Constructs a WriteBehindTempFileCache which creates temporary files in the directory specified,
+     * mapping chunks of the file of the size given.  If the directory is null, then temporary files
+     * will be created in the default temp directory.  A Window longer than the chunk size is given
+     * a chunk of its own.
+     *
+     * @param tempDir   The directory to create temporary files in, or null for the default temp directory.
+     * @param chunkSize The size of the chunks of the temporary file to map into memory.
+     * @throws IllegalArgumentException if the tempdir supplied is not a directory, or the chunk size
+     *                                  is less than one.
+     */
+    public WriteBehindTempFileCache(final File tempDir, final int chunkSize) {
+        this(tempDir, chunkSize, DEFAULT_MAX_STAGED);
+    }
+
+
+    /**
+     * Constructs a WriteBehindTempFileCache which creates temporary files in the directory specified,
+     * mapping chunks of the file of the size given, and holding at most the number of Windows given
+     * waiting to be written.  If the directory is null, then temporary files will be created in the
+     * default temp directory.  A Window longer than the chunk size is given a chunk of its own.
+     *
+     * @param tempDir   The directory to create temporary files in, or null for the default temp directory.
+     * @param chunkSize The size of the chunks of the temporary file to map into memory.
+     * @param maxStaged The number of Windows which can wait to be written before adding a Window waits.
+     * @throws IllegalArgumentException if the tempdir supplied is not a directory, or the chunk size
+     *                                  or maximum number of staged Windows is less than one.
+     */
+    public WriteBehindTempFileCache(final File tempDir, final int chunkSize, final int maxStaged) {
+        if (tempDir != null && !tempDir.isDirectory()) {
+            throw new IllegalArgumentException("The temp dir file supplied is not a directory: " + tempDir.getAbsolutePath());
+        }
+        ArgUtils.checkPositiveInteger(chunkSize, "chunkSize");
+        ArgUtils.checkPositiveInteger(maxStaged, "maxStaged");
+        this.windowPositions = new TLongObjectHashMap<WindowInfo>();
+        this.stagedWindows = new ConcurrentHashMap<Long, Window>();
+        this.stagingPermits = new Semaphore(maxStaged);
+        this.failedPositions = new ConcurrentLinkedQueue<Long>();
+        this.chunks = new ConcurrentHashMap<Integer, MappedByteBuffer>();
+        this.tempDir = tempDir;
+        this.chunkSize = chunkSize;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Window getWindow(final long position) throws IOException {
+        checkWriteException();
+        final WindowInfo info = windowPositions.get(position);
+        if (info != null) {
+            final Window staged = stagedWindows.get(position);
+            return staged != null? staged : new BufferWindow(slice(info), position, info.length);
+        }
+        return null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A copy of the Window is held in a staging area and queued to be written to the temporary
+     * file on a background thread, so this method does not wait for the write, unless the
+     * staging area is full.
+     */
+    @Override
+    public void addWindow(final Window window) throws IOException {
+        checkWriteException();
+        final long windowPosition = window.getWindowPosition();
+        if (!windowPositions.containsKey(windowPosition)) {
+            final Window staged = copyOf(window);
+            final WindowInfo info = allocate(staged.length());
+            acquireStagingPermit();
+            windowPositions.put(windowPosition, info);
+            stagedWindows.put(windowPosition, staged);
+            writer.execute(new WindowWrite(staged, info));
+        }
+    }
+
+
+    /**
+     * Waits for any outstanding writes to finish, clears the cache and deletes the temporary file.
+     */
+    @Override
+    public void clear() throws IOException {
+        try {
+            stopWriter();
+            checkWriteException();
+        } finally {
+            windowPositions.clear();
+            stagedWindows.clear();
+            failedPositions.clear();
+            writeException = null;
+            chunks.clear();
+            deleteFileIfExists();
+        }
+    }
+
+
+    /**
+     * Returns the temporary file backing this cache object.
+     *
+     * @return File The temporary file backing this cache object, or null if it doesn't exist.
+     */
+    public File getTempFile() {
+        return tempFile;
+    }
+
+
+    /**
+     * Returns the number of Windows which have been added but not yet written to the temporary file.
+     *
+     * @return The number of Windows waiting to be written to the temporary file.
+     */
+    public int getNumStaged() {
+        return stagedWindows.size();
+    }
+
+
+    /*
+     * Only works out where the window goes in the file; the chunk is mapped by the writer.
+     */
+    private WindowInfo allocate(final int length) throws IOException {
+        createFileIfNotExists();
+        if (numChunks > 0 && length <= lastChunkSize - nextChunkOffset) {
+            final WindowInfo info = new WindowInfo(numChunks - 1, nextChunkFilePos - lastChunkSize,
+                                                   lastChunkSize, nextChunkOffset, length);
+            nextChunkOffset += length;
+            return info;
+        }
+        lastChunkSize = length > chunkSize? length : chunkSize;
+        final WindowInfo info = new WindowInfo(numChunks++, nextChunkFilePos, lastChunkSize, 0, length);
+        nextChunkFilePos += lastChunkSize;
+        nextChunkOffset = length;
+        return info;
+    }
+
+
+    private ByteBuffer slice(final WindowInfo info) {
+        return slice(chunks.get(info.chunkIndex), info);
+    }
+
+
+    private static ByteBuffer slice(final MappedByteBuffer mappedChunk, final WindowInfo info) {
+        final ByteBuffer chunk = ((ByteBuffer) mappedChunk).duplicate();
+        ((Buffer) chunk).limit(info.chunkOffset + info.length);
+        ((Buffer) chunk).position(info.chunkOffset);
+        return chunk.slice();
+    }
+
+
+    private static Window copyOf(final Window window) throws IOException {
+        final int length = window.length();
+        final byte[] bytes = new byte[length];
+        if (window instanceof BufferWindow) {
+            ((BufferWindow) window).copyBytes(0, bytes, 0, length);
+        } else if (window instanceof PooledWindow) {
+            ((PooledWindow) window).copyBytes(0, bytes, 0, length);
+        } else {
+            System.arraycopy(window.getArray(), 0, bytes, 0, length);
+        }
+        return new HardWindow(bytes, window.getWindowPosition(), length);
+    }
+
+
+    private void acquireStagingPermit() throws IOException {
+        try {
+            stagingPermits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for windows to be written to " + tempFile, ex);
+        }
+    }
+
+
+    /*
+     * Write failures stay set until the cache is cleared.  Windows which failed to write
+     * are dropped, so they can never be read back from a part of the file never written.
+     */
+    private void checkWriteException() throws IOException {
+        final IOException exception = writeException;
+        if (exception != null) {
+            Long failedPosition;
+            while ((failedPosition = failedPositions.poll()) != null) {
+                windowPositions.remove(failedPosition);
+                stagedWindows.remove(failedPosition);
+            }
+            throw exception;
+        }
+    }
+
+
+    private void createFileIfNotExists() throws IOException {
+        if (tempFile == null) {
+            tempFile = tempDir == null? IOUtils.createTempFile()
+                                      : IOUtils.createTempFile(tempDir);
+            file = new RandomAccessFile(tempFile, "rw");
+            numChunks = 0;
+            nextChunkFilePos = 0;
+            lastChunkSize = 0;
+            nextChunkOffset = 0;
+            writer = Executors.newSingleThreadExecutor(new WriterThreadFactory());
+        }
+    }
+
+
+    private void stopWriter() throws IOException {
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                while (!writer.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // keep waiting for outstanding writes to finish.
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for windows to be written to " + tempFile, ex);
+            } finally {
+                writer = null;
+            }
+        }
+    }
+
+
+    private void deleteFileIfExists() throws IOException {
+        if (tempFile != null) {
+            IOException fileCloseException = null;
+            try {
+                file.close();
+            } catch (IOException ex) {
+                fileCloseException = ex;
+            } finally {
+                file = null;
+                if (!tempFile.delete()) {
+                    tempFile.deleteOnExit(); // the file may still be mapped.
+                }
+                tempFile = null;
+            }
+            if (fileCloseException != null) {
+                throw fileCloseException;
+            }
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[temp file: " + tempFile + " window positions recorded:" +
+                                            windowPositions.size() + " staged: " + stagedWindows.size() + ']';
+    }
+
+
+    /**
+     * Records which chunk of the temporary file a Window is stored in, where the chunk is in the file,
+     * where the Window is in the chunk, and its length.
+     */
+    private static final class WindowInfo {
+
+        final int chunkIndex;
+        final long chunkFilePos;
+        final int chunkSize;
+        final int chunkOffset;
+        final int length;
+
+        WindowInfo(final int chunkIndex, final long chunkFilePos, final int chunkSize,
+                   final int chunkOffset, final int length) {
+            this.chunkIndex = chunkIndex;
+            this.chunkFilePos = chunkFilePos;
+            this.chunkSize = chunkSize;
+            this.chunkOffset = chunkOffset;
+            this.length = length;
+        }
+    }
+
+
+    /**
+     * Copies a staged Window into its place in the mapped temporary file, mapping its chunk first if
+     * no Window has been written to it yet, then removes it from the staging area.  If the write fails,
+     * the Window stays staged until the failure is reported.
+     */
+    private final class WindowWrite implements Runnable {
+
+        private final Window window;
+        private final WindowInfo info;
+
+        private WindowWrite(final Window window, final WindowInfo info) {
+            this.window = window;
+            this.info = info;
+        }
+
+        @Override
+        public void run() {
+            final long windowPosition = window.getWindowPosition();
+            try {
+                slice(getMappedChunk(), info).put(window.getArray(), 0, window.length());
+                stagedWindows.remove(windowPosition);
+            } catch (IOException ex) {
+                writeFailed(windowPosition, ex);
+            } catch (RuntimeException ex) {
+                writeFailed(windowPosition, new IOException("Could not write the window at position " +
+                                                            windowPosition + " to the temp file", ex));
+            } finally {
+                stagingPermits.release();
+            }
+        }
+
+        private MappedByteBuffer getMappedChunk() throws IOException {
+            MappedByteBuffer chunk = chunks.get(info.chunkIndex);
+            if (chunk == null) {
+                chunk = file.getChannel().map(FileChannel.MapMode.READ_WRITE, info.chunkFilePos, info.chunkSize);
+                chunks.put(info.chunkIndex, chunk);
+            }
+            return chunk;
+        }
+
+        private void writeFailed(final long windowPosition, final IOException ex) {
+            failedPositions.add(windowPosition);
+            if (writeException == null) {
+                writeException = ex;
+            }
+        }
+    }
+
+
+    /**
+     * Creates daemon threads for the background writer, so an uncleared cache does not stop the JVM exiting.
+     */
+    private static final class WriterThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "byteseek-temp-file-writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
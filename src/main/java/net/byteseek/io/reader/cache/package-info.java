@@ -33,10 +33,17 @@
  * A set of caching strategies for net.byteseek.io.reader.Window.windows.
  * <p>
  * Most caches are in-memory caches, holding the Windows within memory.
- * There is also a temporary file disk cache.  Finally, there are two
+ * The DirectBufferCache holds them in direct buffers, off the Java heap.
+ * The CompressedMemoryCache holds them compressed in memory.
+ * There is also a temporary file disk cache, and a WriteBehindTempFileCache
+ * which writes to a memory mapped temporary file on a background thread.  Finally, there are two
  * caches which use more than one cache to achieve their strategy:
  * DoubleCache and TwoLevelCache.
  * <p>
+ * Caches are not thread-safe, with the exception of the ConcurrentLeastRecentlyUsedCache,
+ * which can be shared by readers used from more than one thread, and the caches created
+ * by a SharedWindowCache, which limits the total bytes cached by many readers.
+ * <p>
  * Note that various readers (and the TempFileCache) can use SoftWindows,
  * which allow the garbage collector to reclaim memory in low-memory conditions.
  * Therefore, even in-memory caches (depending on how the reader is configured)
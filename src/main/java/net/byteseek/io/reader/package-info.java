@@ -36,6 +36,13 @@
  * All of these classes read into Windows, which encapsulate byte arrays read from the source.
  * This allows the search and matching algorithms to access the arrays directly, and for the windows
  * to be cached using a variety of caching strategies defined in the cache sub-package.
+ * Files can be read using a RandomAccessFile (FileReader), or memory mapped in large
+ * chunks (MappedFileReader).  A ChannelReader reads a SeekableByteChannel opened from a Path
+ * on any FileSystem provider, such as a zip file system.  A CompositeReader presents
+ * several readers (e.g. the parts of a split file) as one contiguous source.  Readers can also read windows ahead of sequential access
+ * on a background executor, using startPrefetching().
+ * The GzipReader reads the uncompressed contents of gzip or zlib files, regenerating
+ * windows from checkpoints recorded in a GzipIndex, which can be saved for later use.
  * <p>
  * There are two types of Window currently defined.  HardWindows store a hard reference
  * to the underlying byte array.  SoftWindows use a SoftReference to the array, which allows
@@ -0,0 +1,226 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.windows;
+
+import net.byteseek.utils.ArgUtils;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * A BufferWindow is a {@link Window} backed by a {@link java.nio.ByteBuffer}, rather than
+ * a byte array.  If the buffer is a direct buffer, the bytes of the Window are held off
+ * the Java heap, so large numbers of them do not increase the size of the heap or the
+ * time spent in garbage collection.
+ * <p>
+ * Reading single bytes using {@link #getByte(int)}, or copying a range of bytes using
+ * {@link #copyBytes(int, byte[], int, int)}, reads directly from the buffer.
+ * There is no array backing the Window, so the first call to {@link #getArray()} copies
+ * the bytes into an array, which is kept and returned by later calls.  Code which can
+ * work with buffers should use {@link #getByteBuffer()} instead, to avoid copying the
+ * Window back onto the heap at all.
+ * <p>
+ * As the copy lives as long as the BufferWindow, a BufferWindow which is held for a long
+ * time should not be handed out to code which may call getArray().  A cache holding bytes
+ * off the heap should hand out a new BufferWindow over the same buffer each time, so the
+ * copy belongs to the caller, and is not kept on the heap along with the cached buffer.
+ * Short-lived Windows, such as those over the chunks of a memory mapped file, can be
+ * handed out directly.
+ * <p>
+ * The buffer is not copied, which means that mutable state is directly wrapped by
+ * this class, although the Window itself is immutable.  The bytes of the buffer are
+ * read using absolute positions from zero, ignoring its current position and limit.
+ *
+ * @author Matt Palmer
+ */
+public final class BufferWindow implements Window {
+
+	private final ByteBuffer buffer;
+	private final long windowPosition;
+	private final int length;
+	private volatile byte[] array;
+
+	/**
+	 * Constructs a BufferWindow using the buffer provided, recording the position
+	 * in the WindowReader from which the bytes were read, and the length of
+	 * the Window (which may be shorter than the capacity of the buffer).
+	 *
+	 * @param buffer         The buffer to wrap.
+	 * @param windowPosition The position at which the Window starts.
+	 * @param length         The length of the Window.
+	 * @throws IllegalArgumentException if the buffer is null, or the length is greater than its capacity.
+	 */
+	public BufferWindow(final ByteBuffer buffer, final long windowPosition, final int length) {
+		ArgUtils.checkNullObject(buffer, "buffer");
+		if (length > buffer.capacity()) {
+			throw new IllegalArgumentException("The length " + length +
+					                           " is greater than the buffer capacity " + buffer.capacity());
+		}
+		this.buffer = buffer;
+		this.windowPosition = windowPosition;
+		this.length = length;
+	}
+
+	/**
+	 * Gets a byte from the Window relative to the start of the Window (not
+	 * relative to the start of the WindowReader), reading it directly from the buffer.
+	 *
+	 * @param position The position in the Window to read a byte from.
+	 * @return The byte at that position in the Window.
+	 * @throws IndexOutOfBoundsException if the position is less than zero, or not smaller than the buffer limit.
+	 */
+	@Override
+	public byte getByte(final int position) {
+		return buffer.get(position);
+	}
+
+	/**
+	 * Returns a byte array containing a copy of the bytes in this Window, which is
+	 * exactly the length of the Window.  The bytes are copied on the first call, and
+	 * the same array is returned by later calls, so it must not be modified.
+	 * If more than one thread calls this method at the same time, the bytes may be
+	 * copied more than once, but every array returned has the same contents.
+	 *
+	 * @return A byte array containing a copy of the bytes in this Window.
+	 */
+	@Override
+	public byte[] getArray() {
+		byte[] bytes = array;
+		if (bytes == null) {
+			bytes = new byte[length];
+			getByteBuffer().get(bytes);
+			array = bytes;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns true if the bytes in this Window have been copied into an array by {@link #getArray()}.
+	 *
+	 * @return true if the bytes in this Window have been copied into an array.
+	 */
+	public boolean isCopied() {
+		return array != null;
+	}
+
+	/**
+	 * Copies bytes from the Window into an array, reading them directly from the buffer.
+	 *
+	 * @param position The position in the Window to copy bytes from.
+	 * @param into     The array to copy the bytes into.
+	 * @param offset   The position in the array to copy the bytes to.
+	 * @param numBytes The number of bytes to copy.
+	 * @throws IndexOutOfBoundsException if the bytes to copy are not inside the Window or the array.
+	 */
+	public void copyBytes(final int position, final byte[] into, final int offset, final int numBytes) {
+		if (position < 0 || numBytes < 0 || position + numBytes > length) {
+			throw new IndexOutOfBoundsException("Cannot copy " + numBytes + " bytes from position " + position +
+					                            " in a window of length " + length);
+		}
+		final ByteBuffer view = buffer.duplicate();
+		((Buffer) view).limit(position + numBytes);
+		((Buffer) view).position(position);
+		view.get(into, offset, numBytes);
+	}
+
+	/**
+	 * Returns a read-only view of the buffer backing this Window, with a position of
+	 * zero and a limit of the Window length.  Each call returns a new view, so callers
+	 * can change its position and limit without affecting anyone else.
+	 *
+	 * @return A read-only view of the buffer backing this Window.
+	 */
+	public ByteBuffer getByteBuffer() {
+		final ByteBuffer view = buffer.asReadOnlyBuffer();
+		((Buffer) view).limit(length);
+		((Buffer) view).position(0);
+		return view;
+	}
+
+	/**
+	 * Returns true if the buffer backing this Window is a direct buffer, held off the Java heap.
+	 *
+	 * @return true if the buffer backing this Window is a direct buffer.
+	 */
+	public boolean isDirect() {
+		return buffer.isDirect();
+	}
+
+	/**
+	 * Returns the position in the WindowReader that this Window was read from.
+	 *
+	 * @return The position in the WindowReader that this Window was read from.
+	 */
+	@Override
+	public long getWindowPosition() {
+		return windowPosition;
+	}
+
+	/**
+	 * Returns the final position in this window.  It is equivalent
+	 * to the window position plus the length of the window, minus one.
+	 *
+	 * @return the last position in this window.
+	 */
+	@Override
+	public long getWindowEndPosition() {
+		return windowPosition + length - 1;
+	}
+
+	/**
+	 * Returns the starting position of the window after this one.  It is
+	 * equivalent to the window position plus the length of this window.
+	 *
+	 * @return The starting position of the window after this one.
+	 */
+	@Override
+	public long getNextWindowPosition() {
+		return windowPosition + length;
+	}
+
+	/**
+	 * Returns the length of the Window. Note that this may be shorter than the
+	 * capacity of the buffer which backs this Window.
+	 *
+	 * @return The length of the Window.
+	 */
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[direct: " + buffer.isDirect() + " buffer capacity: " + buffer.capacity() +
+				                            " window length:" + length + " window pos:" + windowPosition + ']';
+	}
+}
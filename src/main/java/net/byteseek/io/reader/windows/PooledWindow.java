@@ -0,0 +1,227 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader.windows;
+
+import net.byteseek.utils.ArgUtils;
+
+import java.io.IOException;
+
+/**
+ * A PooledWindow is a {@link Window} over a byte array taken from a
+ * {@link net.byteseek.io.reader.cache.WindowArrayPool}.  The Window owns its array until
+ * the reader which created it releases the array back to the pool, using {@link #releaseArray()},
+ * which it does when the Window leaves the cache of the reader.  An array is only ever released
+ * once, so it is never owned by more than one Window at a time.
+ * <p>
+ * A released Window can still be used.  Reading from it reloads its bytes using its
+ * {@link SoftWindowRecovery} into a new array of its own, or throws a
+ * {@link WindowMissingException} if it has no recovery.  It never reads from an array which
+ * has been handed out to another Window.
+ * <p>
+ * Reading bytes using {@link #getByte(int)}, or copying a range of bytes using
+ * {@link #copyBytes(int, byte[], int, int)}, checks the Window still owns its array.
+ * Code holding the array returned by {@link #getArray()} cannot be checked, so once the
+ * array has been handed out, it is never released to the pool, and is left for the
+ * garbage collector when the Window is no longer used.
+ *
+ * @author Matt Palmer
+ */
+public final class PooledWindow implements Window {
+
+    private volatile byte[] bytes;
+    private boolean releasable;
+    private final long windowPosition;
+    private final int length;
+    private final SoftWindowRecovery recovery;
+
+    /**
+     * Constructs a PooledWindow which owns the array given, recording the position
+     * in the WindowReader from which the bytes were read, and the length of the Window
+     * (which may be shorter than the length of the array).
+     *
+     * @param bytes          The pool array to wrap.
+     * @param windowPosition The position at which the Window starts.
+     * @param length         The length of the Window.
+     * @param recovery       An object which can reload the Window bytes once its array has been
+     *                       released, or null if they cannot be reloaded.
+     * @throws IllegalArgumentException if the array is null.
+     */
+    public PooledWindow(final byte[] bytes, final long windowPosition,
+                        final int length, final SoftWindowRecovery recovery) {
+        ArgUtils.checkNullByteArray(bytes, "bytes");
+        this.bytes = bytes;
+        this.releasable = true;
+        this.windowPosition = windowPosition;
+        this.length = length;
+        this.recovery = recovery;
+    }
+
+    /**
+     * Gets a byte from the Window relative to the start of the Window.
+     * <p>
+     * Note that no bounds checking is done by this method. It is possible to
+     * read bytes in the byte array which are beyond the length of the Window.
+     *
+     * @param position The position in the Window to read a byte from.
+     * @return The byte at that position in the Window.
+     * @throws IndexOutOfBoundsException if the position is less than zero, or past the end of the
+     *                                   byte array which backs this Window.
+     * @throws IOException if the array has been released and the bytes could not be reloaded.
+     */
+    @Override
+    public byte getByte(final int position) throws IOException {
+        final byte[] array = bytes;
+        return array != null? array[position] : reloadBytes()[position];
+    }
+
+    /**
+     * Returns the array of bytes backing this Window.  Once the array has been returned,
+     * it is never released to the pool, as the caller may hold on to it.
+     *
+     * @return The byte array which backs this Window.
+     * @throws IOException if the array has been released and the bytes could not be reloaded.
+     */
+    @Override
+    public synchronized byte[] getArray() throws IOException {
+        releasable = false;
+        final byte[] array = bytes;
+        return array != null? array : reloadBytes();
+    }
+
+    /**
+     * Copies bytes from the Window into an array, without handing out the array of the Window.
+     *
+     * @param position The position in the Window to copy bytes from.
+     * @param into     The array to copy the bytes into.
+     * @param offset   The position in the array to copy the bytes to.
+     * @param numBytes The number of bytes to copy.
+     * @throws IndexOutOfBoundsException if the bytes to copy are not inside the Window or the array.
+     * @throws IOException if the array has been released and the bytes could not be reloaded.
+     */
+    public void copyBytes(final int position, final byte[] into, final int offset, final int numBytes)
+            throws IOException {
+        if (position < 0 || numBytes < 0 || position + numBytes > length) {
+            throw new IndexOutOfBoundsException("Cannot copy " + numBytes + " bytes from position " + position +
+                                                " in a window of length " + length);
+        }
+        final byte[] array = bytes;
+        System.arraycopy(array != null? array : reloadBytes(), position, into, offset, numBytes);
+    }
+
+    /**
+     * Gives up the array of this Window so it can be returned to a pool, if the Window still
+     * owns it and it has not been handed out by {@link #getArray()}.  After this, the Window
+     * reloads its bytes if it is read again.
+     *
+     * @return The array to return to a pool, or null if the Window cannot release its array.
+     */
+    public synchronized byte[] releaseArray() {
+        if (releasable) {
+            releasable = false;
+            final byte[] array = bytes;
+            bytes = null;
+            return array;
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the array of this Window has been released to a pool, and its bytes
+     * have not been reloaded since.
+     *
+     * @return true if the array of this Window has been released.
+     */
+    public boolean isReleased() {
+        return bytes == null;
+    }
+
+    /**
+     * Returns the position in the WindowReader that this Window was read from.
+     *
+     * @return The position in the WindowReader that this Window was read from.
+     */
+    @Override
+    public long getWindowPosition() {
+        return windowPosition;
+    }
+
+    /**
+     * Returns the final position in this window.  It is equivalent
+     * to the window position plus the length of the window, minus one.
+     *
+     * @return the last position in this window.
+     */
+    @Override
+    public long getWindowEndPosition() {
+        return windowPosition + length - 1;
+    }
+
+    /**
+     * Returns the starting position of the window after this one.  It is
+     * equivalent to the window position plus the length of this window.
+     *
+     * @return The starting position of the window after this one.
+     */
+    @Override
+    public long getNextWindowPosition() {
+        return windowPosition + length;
+    }
+
+    /**
+     * Returns the length of the Window. Note that this may be shorter than the
+     * length of the byte array which backs this Window.
+     *
+     * @return The length of the Window.
+     */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[window length:" + length + " window pos:" + windowPosition +
+                                            " released: " + isReleased() + ']';
+    }
+
+    private synchronized byte[] reloadBytes() throws IOException {
+        byte[] array = bytes;
+        if (array == null) {
+            if (recovery == null) {
+                throw new WindowMissingException("The array of the window has been returned to its pool: " + this);
+            }
+            array = recovery.reloadWindowBytes(this);
+            bytes = array;
+        }
+        return array;
+    }
+}
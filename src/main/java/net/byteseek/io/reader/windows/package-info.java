@@ -36,6 +36,7 @@
  * Two basic kinds of Window are defined.  HardWindows maintain a hard reference
  * to a byte array containing the data.  SoftWindows use a SoftReference to the
  * array, and have an implementation of SoftWindowRecovery to re-load the data if
- * the garbage collector has reclaimed it.
+ * the garbage collector has reclaimed it.  BufferWindows are backed by a ByteBuffer
+ * instead of an array, which can be a direct buffer held off the Java heap.
  */
 package net.byteseek.io.reader.windows;
\ No newline at end of file
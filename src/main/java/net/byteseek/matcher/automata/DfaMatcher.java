@@ -59,6 +59,15 @@ public class DfaMatcher<T> implements AutomataMatcher<T> {
 		this.automata = automata;
 	}
 
+	/**
+	 * Returns the deterministic automata this matcher matches.
+	 *
+	 * @return The deterministic automata this matcher matches.
+	 */
+	public Automata<T> getAutomata() {
+		return automata;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -32,6 +32,7 @@
 package net.byteseek.matcher.sequence;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -358,6 +359,33 @@ public final class ByteSequenceMatcher implements SequenceMatcher {
         }
         return true;
     }
+
+
+    /**
+     * Returns whether there is a match or not at the given position in a ByteBuffer,
+     * reading bytes with absolute gets, so the position and limit of the buffer are
+     * not used or changed.  This allows off-heap buffers to be matched without copying
+     * them into an array.
+     * <p>
+     * It is assumed that the sequence fits inside the buffer at the position given.
+     *
+     * @param buffer        The buffer to match against.
+     * @param matchPosition The position in the buffer to match at.
+     * @return boolean Whether there is a match at the given position.
+     * @throws IndexOutOfBoundsException if the sequence does not fit inside the buffer.
+     * @throws NullPointerException if the buffer is null.
+     */
+    public boolean matchesNoBoundsCheck(final ByteBuffer buffer, final int matchPosition) {
+        int position = matchPosition;
+        final byte[] matchArray = byteArray;
+        final int endingIndex = endArrayIndex;
+        for (int matchIndex = startArrayIndex; matchIndex < endingIndex; matchIndex++) {
+            if (matchArray[matchIndex] != buffer.get(position++)) {
+                return false;
+            }
+        }
+        return true;
+    }
     
     
     /**
@@ -117,6 +117,224 @@ public abstract class AbstractSearcher<T> implements Searcher<T> {
 		return searchBackwards(bytes, bytes.length - 1, 0);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation repeatedly calls
+	 * {@link #searchForwards(net.byteseek.io.reader.WindowReader, long, long)},
+	 * continuing one past the furthest match found each time.  Subclasses can
+	 * override it to search continuously without allocating results.
+	 */
+	@Override
+	public long searchForwards(final WindowReader reader, final long fromPosition,
+			final long toPosition, final MatchListener<T> listener) throws IOException {
+		long numMatches = 0;
+		long searchPosition = fromPosition;
+		while (searchPosition <= toPosition) {
+			final List<SearchResult<T>> results = searchForwards(reader, searchPosition, toPosition);
+			if (results.isEmpty()) {
+				break;
+			}
+			long furthestPosition = Long.MIN_VALUE;
+			for (final SearchResult<T> result : results) {
+				final long matchPosition = result.getMatchPosition();
+				if (matchPosition > furthestPosition) {
+					furthestPosition = matchPosition;
+				}
+				if (matchPosition <= toPosition) { // searchers can return matches outside the range.
+					numMatches++;
+					if (!listener.matchFound(matchPosition, result.getMatchingObject())) {
+						return numMatches;
+					}
+				}
+			}
+			searchPosition = furthestPosition + 1;
+		}
+		return numMatches;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation repeatedly calls {@link #searchForwards(byte[], int, int)},
+	 * continuing one past the furthest match found each time.  Subclasses can
+	 * override it to search continuously without allocating results.
+	 */
+	@Override
+	public long searchForwards(final byte[] bytes, final int fromPosition,
+			final int toPosition, final MatchListener<T> listener) {
+		long numMatches = 0;
+		int searchPosition = fromPosition;
+		while (searchPosition <= toPosition) {
+			final List<SearchResult<T>> results = searchForwards(bytes, searchPosition, toPosition);
+			if (results.isEmpty()) {
+				break;
+			}
+			int furthestPosition = Integer.MIN_VALUE;
+			for (final SearchResult<T> result : results) {
+				final int matchPosition = (int) result.getMatchPosition();
+				if (matchPosition > furthestPosition) {
+					furthestPosition = matchPosition;
+				}
+				if (matchPosition <= toPosition) { // searchers can return matches outside the range.
+					numMatches++;
+					if (!listener.matchFound(matchPosition, result.getMatchingObject())) {
+						return numMatches;
+					}
+				}
+			}
+			searchPosition = furthestPosition + 1;
+		}
+		return numMatches;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation repeatedly calls
+	 * {@link #searchBackwards(net.byteseek.io.reader.WindowReader, long, long)},
+	 * continuing one before the earliest match found each time.  Subclasses can
+	 * override it to search continuously without allocating results.
+	 */
+	@Override
+	public long searchBackwards(final WindowReader reader, final long fromPosition,
+			final long toPosition, final MatchListener<T> listener) throws IOException {
+		long numMatches = 0;
+		long searchPosition = fromPosition;
+		while (searchPosition >= toPosition) {
+			final List<SearchResult<T>> results = searchBackwards(reader, searchPosition, toPosition);
+			if (results.isEmpty()) {
+				break;
+			}
+			long earliestPosition = Long.MAX_VALUE;
+			for (final SearchResult<T> result : results) {
+				final long matchPosition = result.getMatchPosition();
+				if (matchPosition < earliestPosition) {
+					earliestPosition = matchPosition;
+				}
+				if (matchPosition >= toPosition) { // searchers can return matches outside the range.
+					numMatches++;
+					if (!listener.matchFound(matchPosition, result.getMatchingObject())) {
+						return numMatches;
+					}
+				}
+			}
+			searchPosition = earliestPosition - 1;
+		}
+		return numMatches;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation repeatedly calls {@link #searchBackwards(byte[], int, int)},
+	 * continuing one before the earliest match found each time.  Subclasses can
+	 * override it to search continuously without allocating results.
+	 */
+	@Override
+	public long searchBackwards(final byte[] bytes, final int fromPosition,
+			final int toPosition, final MatchListener<T> listener) {
+		long numMatches = 0;
+		int searchPosition = fromPosition;
+		while (searchPosition >= toPosition) {
+			final List<SearchResult<T>> results = searchBackwards(bytes, searchPosition, toPosition);
+			if (results.isEmpty()) {
+				break;
+			}
+			int earliestPosition = Integer.MAX_VALUE;
+			for (final SearchResult<T> result : results) {
+				final int matchPosition = (int) result.getMatchPosition();
+				if (matchPosition < earliestPosition) {
+					earliestPosition = matchPosition;
+				}
+				if (matchPosition >= toPosition) { // searchers can return matches outside the range.
+					numMatches++;
+					if (!listener.matchFound(matchPosition, result.getMatchingObject())) {
+						return numMatches;
+					}
+				}
+			}
+			searchPosition = earliestPosition - 1;
+		}
+		return numMatches;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation searches forwards with a listener which accepts every match,
+	 * so it counts with whatever continuous search the subclass provides.
+	 */
+	@Override
+	public long count(final WindowReader reader, final long fromPosition,
+			final long toPosition) throws IOException {
+		return searchForwards(reader, fromPosition, toPosition, AbstractSearcher.<T>acceptAll());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long count(final WindowReader reader) throws IOException {
+		return count(reader, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation searches forwards with a listener which accepts every match,
+	 * so it counts with whatever continuous search the subclass provides.
+	 */
+	@Override
+	public long count(final byte[] bytes, final int fromPosition, final int toPosition) {
+		return searchForwards(bytes, fromPosition, toPosition, AbstractSearcher.<T>acceptAll());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long count(final byte[] bytes) {
+		return count(bytes, 0, bytes.length - 1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation searches forwards with a listener which stops at the first match.
+	 */
+	@Override
+	public boolean exists(final WindowReader reader, final long fromPosition,
+			final long toPosition) throws IOException {
+		return searchForwards(reader, fromPosition, toPosition, AbstractSearcher.<T>stopAtFirst()) > 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean exists(final WindowReader reader) throws IOException {
+		return exists(reader, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation searches forwards with a listener which stops at the first match.
+	 */
+	@Override
+	public boolean exists(final byte[] bytes, final int fromPosition, final int toPosition) {
+		return searchForwards(bytes, fromPosition, toPosition, AbstractSearcher.<T>stopAtFirst()) > 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean exists(final byte[] bytes) {
+		return exists(bytes, 0, bytes.length - 1);
+	}
+
 	/**
 	 * Returns a position guaranteed to be within the length of the reader, or
 	 * -1 if the reader itself has a length of zero.
@@ -152,4 +370,29 @@ public abstract class AbstractSearcher<T> implements Searcher<T> {
 		return reader.getWindow(positionToTry) != null ? positionToTry : reader
 				.length() - 1;
 	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> MatchListener<T> acceptAll() {
+		return (MatchListener<T>) ACCEPT_ALL;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> MatchListener<T> stopAtFirst() {
+		return (MatchListener<T>) STOP_AT_FIRST;
+	}
+
+	private static final MatchListener<Object> ACCEPT_ALL = new MatchListener<Object>() {
+		@Override
+		public boolean matchFound(final long matchPosition, final Object matchingObject) {
+			return true;
+		}
+	};
+
+	private static final MatchListener<Object> STOP_AT_FIRST = new MatchListener<Object>() {
+		@Override
+		public boolean matchFound(final long matchPosition, final Object matchingObject) {
+			return false;
+		}
+	};
+
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * Searches a range of a single {@link WindowReader} in parallel, by splitting it into
+ * chunks which are searched by a {@link Searcher} on a {@link ForkJoinPool}.
+ * All the matches found are returned in position order.
+ * <p>
+ * Each chunk is responsible for the matches which start within it.  A searcher reads
+ * up to (max pattern length - 1) bytes past the end of a chunk to verify matches
+ * which start inside the chunk, so chunks overlap by that much, and any matches a
+ * searcher reports which start beyond the end of the chunk are dropped, as they
+ * belong to the next chunk.
+ * <p>
+ * The reader searched must be safe for use by more than one thread, for example a
+ * {@link net.byteseek.io.reader.ConcurrentFileReader}, and so must the Searcher.
+ * <p>
+ * This class is immutable and thread-safe.
+ *
+ * @param <T> The type of object associated with a search match.
+ * @author Matt Palmer
+ */
+public final class ParallelSearcher<T> {
+
+	/**
+	 * The default number of positions searched by each chunk, 16 MiB.
+	 */
+	public static final long DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	private final Searcher<T> searcher;
+	private final ForkJoinPool pool;
+	private final long chunkSize;
+
+	/**
+	 * Constructs a ParallelSearcher using a shared ForkJoinPool with one thread for
+	 * each available processor, and the default chunk size.
+	 *
+	 * @param searcher The searcher to run on each chunk.
+	 * @throws IllegalArgumentException if the searcher is null.
+	 */
+	public ParallelSearcher(final Searcher<T> searcher) {
+		this(searcher, DefaultPool.POOL, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Constructs a ParallelSearcher using the ForkJoinPool given, and the default chunk size.
+	 *
+	 * @param searcher The searcher to run on each chunk.
+	 * @param pool     The ForkJoinPool to search chunks on.
+	 * @throws IllegalArgumentException if the searcher or pool are null.
+	 */
+	public ParallelSearcher(final Searcher<T> searcher, final ForkJoinPool pool) {
+		this(searcher, pool, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Constructs a ParallelSearcher using the ForkJoinPool and chunk size given.
+	 *
+	 * @param searcher  The searcher to run on each chunk.
+	 * @param pool      The ForkJoinPool to search chunks on.
+	 * @param chunkSize The maximum number of positions searched by each chunk.
+	 * @throws IllegalArgumentException if the searcher or pool are null, or the chunk size is less than one.
+	 */
+	public ParallelSearcher(final Searcher<T> searcher, final ForkJoinPool pool, final long chunkSize) {
+		ArgUtils.checkNullObject(searcher, "searcher");
+		ArgUtils.checkNullObject(pool, "pool");
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("The chunk size must be positive: " + chunkSize);
+		}
+		this.searcher  = searcher;
+		this.pool      = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Searches the whole of the reader, returning all matches in position order.
+	 *
+	 * @param reader The reader to search, which must be safe for use by more than one thread.
+	 * @return A list of all the matches found, in position order.
+	 * @throws IOException If there was a problem reading the reader.
+	 * @throws IllegalArgumentException if the reader is null.
+	 */
+	public List<SearchResult<T>> searchAll(final WindowReader reader) throws IOException {
+		return searchAll(reader, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Searches the reader for matches starting from fromPosition up to toPosition,
+	 * returning all matches in position order.
+	 *
+	 * @param reader       The reader to search, which must be safe for use by more than one thread.
+	 * @param fromPosition The first position a match can start at.
+	 * @param toPosition   The last position a match can start at.
+	 * @return A list of all the matches found, in position order.
+	 * @throws IOException If there was a problem reading the reader.
+	 * @throws IllegalArgumentException if the reader is null.
+	 */
+	public List<SearchResult<T>> searchAll(final WindowReader reader, final long fromPosition,
+										   final long toPosition) throws IOException {
+		ArgUtils.checkNullObject(reader, "reader");
+		final long lastPosition = reader.length() - 1;
+		final long searchFrom = fromPosition > 0? fromPosition : 0;
+		final long searchTo = toPosition < lastPosition? toPosition : lastPosition;
+		if (searchFrom > searchTo) {
+			return Collections.emptyList();
+		}
+		final ChunkSearch<T> search = new ChunkSearch<T>(searcher, reader, searchFrom, searchTo, chunkSize);
+		pool.invoke(search);
+		if (search.failure != null) {
+			throw search.failure;
+		}
+		return search.results;
+	}
+
+	/**
+	 * @return The searcher run on each chunk.
+	 */
+	public Searcher<T> getSearcher() {
+		return searcher;
+	}
+
+	/**
+	 * @return The maximum number of positions searched by each chunk.
+	 */
+	public long getChunkSize() {
+		return chunkSize;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[searcher: " + searcher + " chunk size: " + chunkSize + ']';
+	}
+
+	/**
+	 * Searches a range of positions, splitting it in half until each part is no bigger
+	 * than the chunk size.  IOExceptions are recorded rather than thrown, so they reach
+	 * the caller unwrapped.
+	 */
+	private static final class ChunkSearch<T> extends RecursiveAction implements MatchListener<T> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Searcher<T> searcher;
+		private final WindowReader reader;
+		private final long fromPosition;
+		private final long toPosition;
+		private final long chunkSize;
+
+		private List<SearchResult<T>> results;
+		private IOException failure;
+
+		private ChunkSearch(final Searcher<T> searcher, final WindowReader reader,
+							final long fromPosition, final long toPosition, final long chunkSize) {
+			this.searcher     = searcher;
+			this.reader       = reader;
+			this.fromPosition = fromPosition;
+			this.toPosition   = toPosition;
+			this.chunkSize    = chunkSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (toPosition - fromPosition < chunkSize) {
+				results = new ArrayList<SearchResult<T>>();
+				try {
+					searcher.searchForwards(reader, fromPosition, toPosition, this);
+				} catch (IOException ex) {
+					failure = ex;
+				}
+			} else {
+				final long middle = fromPosition + (toPosition - fromPosition) / 2;
+				final ChunkSearch<T> left  = new ChunkSearch<T>(searcher, reader, fromPosition, middle, chunkSize);
+				final ChunkSearch<T> right = new ChunkSearch<T>(searcher, reader, middle + 1, toPosition, chunkSize);
+				invokeAll(left, right);
+				failure = left.failure != null? left.failure : right.failure;
+				results = left.results;
+				results.addAll(right.results);
+			}
+		}
+
+		@Override
+		public boolean matchFound(final long matchPosition, final T matchingObject) {
+			if (matchPosition > toPosition) { // belongs to the next chunk.
+				return false;
+			}
+			results.add(new SearchResult<T>(matchPosition, matchingObject));
+			return true;
+		}
+	}
+
+	/**
+	 * Holds the default pool, which is only created if it is used.
+	 */
+	private static final class DefaultPool {
+		private static final ForkJoinPool POOL = new ForkJoinPool();
+	}
+
+}
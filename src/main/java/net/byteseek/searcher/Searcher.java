@@ -218,6 +218,188 @@ public interface Searcher<T> {
 	 */
 	public List<SearchResult<T>> searchBackwards(byte[] bytes);
 
+	/**
+	 * Searches bytes forwards provided by a {@link WindowReader} object, from the
+	 * position given by fromPosition up to toPosition, passing each match found
+	 * to a {@link MatchListener} until the listener stops the search or there are
+	 * no more matches.
+	 *
+	 * @param reader
+	 *            The byte reader giving access to the bytes being searched.
+	 * @param fromPosition
+	 *            The position to search from.
+	 * @param toPosition
+	 *            The position to search up to.
+	 * @param listener
+	 *            The listener to pass matches to.
+	 * @return The number of matches passed to the listener.
+	 * @throws IOException
+	 */
+	public long searchForwards(WindowReader reader, long fromPosition,
+			long toPosition, MatchListener<T> listener) throws IOException;
+
+	/**
+	 * Searches bytes forwards provided by a byte array from the position given
+	 * by fromPosition up to toPosition, passing each match found to a
+	 * {@link MatchListener} until the listener stops the search or there are
+	 * no more matches.
+	 *
+	 * @param bytes
+	 *            The byte array giving access to the bytes being searched.
+	 * @param fromPosition
+	 *            The position to search from.
+	 * @param toPosition
+	 *            The position to search up to.
+	 * @param listener
+	 *            The listener to pass matches to.
+	 * @return The number of matches passed to the listener.
+	 */
+	public long searchForwards(byte[] bytes, int fromPosition, int toPosition,
+			MatchListener<T> listener);
+
+	/**
+	 * Searches bytes backwards provided by a {@link WindowReader} object, from the
+	 * position given by fromPosition back to toPosition, passing each match found
+	 * to a {@link MatchListener} until the listener stops the search or there are
+	 * no more matches.
+	 *
+	 * @param reader
+	 *            The byte reader giving access to the bytes being searched.
+	 * @param fromPosition
+	 *            The position to search from.
+	 * @param toPosition
+	 *            The position to search back to.
+	 * @param listener
+	 *            The listener to pass matches to.
+	 * @return The number of matches passed to the listener.
+	 * @throws IOException
+	 */
+	public long searchBackwards(WindowReader reader, long fromPosition,
+			long toPosition, MatchListener<T> listener) throws IOException;
+
+	/**
+	 * Searches bytes backwards provided by a byte array, from the position
+	 * given by fromPosition back to toPosition, passing each match found to a
+	 * {@link MatchListener} until the listener stops the search or there are
+	 * no more matches.
+	 *
+	 * @param bytes
+	 *            The byte array giving access to the bytes being searched.
+	 * @param fromPosition
+	 *            The position to search from.
+	 * @param toPosition
+	 *            The position to search back to.
+	 * @param listener
+	 *            The listener to pass matches to.
+	 * @return The number of matches passed to the listener.
+	 */
+	public long searchBackwards(byte[] bytes, int fromPosition, int toPosition,
+			MatchListener<T> listener);
+
+	/**
+	 * Counts the matches in bytes provided by a {@link WindowReader} object, from
+	 * the position given by fromPosition up to toPosition, without creating a
+	 * {@link SearchResult} for each match.
+	 *
+	 * @param reader
+	 *            The byte reader giving access to the bytes being searched.
+	 * @param fromPosition
+	 *            The position to search from.
+	 * @param toPosition
+	 *            The position to search up to.
+	 * @return The number of matches found.
+	 * @throws IOException
+	 */
+	public long count(WindowReader reader, long fromPosition, long toPosition)
+			throws IOException;
+
+	/**
+	 * Counts the matches in all the bytes provided by a {@link WindowReader} object,
+	 * without creating a {@link SearchResult} for each match.
+	 *
+	 * @param reader
+	 *            The byte reader giving access to the bytes being searched.
+	 * @return The number of matches found.
+	 * @throws IOException
+	 */
+	public long count(WindowReader reader) throws IOException;
+
+	/**
+	 * Counts the matches in a byte array from the position given by fromPosition
+	 * up to toPosition, without creating a {@link SearchResult} for each match.
+	 *
+	 * @param bytes
+	 *            The byte array giving access to the bytes being searched.
+	 * @param fromPosition
+	 *            The position to search from.
+	 * @param toPosition
+	 *            The position to search up to.
+	 * @return The number of matches found.
+	 */
+	public long count(byte[] bytes, int fromPosition, int toPosition);
+
+	/**
+	 * Counts the matches in a byte array, without creating a {@link SearchResult}
+	 * for each match.
+	 *
+	 * @param bytes
+	 *            The byte array giving access to the bytes being searched.
+	 * @return The number of matches found.
+	 */
+	public long count(byte[] bytes);
+
+	/**
+	 * Returns whether there is a match in bytes provided by a {@link WindowReader}
+	 * object, from the position given by fromPosition up to toPosition.  The search
+	 * stops at the first match found.
+	 *
+	 * @param reader
+	 *            The byte reader giving access to the bytes being searched.
+	 * @param fromPosition
+	 *            The position to search from.
+	 * @param toPosition
+	 *            The position to search up to.
+	 * @return true if there is a match.
+	 * @throws IOException
+	 */
+	public boolean exists(WindowReader reader, long fromPosition, long toPosition)
+			throws IOException;
+
+	/**
+	 * Returns whether there is a match in the bytes provided by a {@link WindowReader}
+	 * object.  The search stops at the first match found.
+	 *
+	 * @param reader
+	 *            The byte reader giving access to the bytes being searched.
+	 * @return true if there is a match.
+	 * @throws IOException
+	 */
+	public boolean exists(WindowReader reader) throws IOException;
+
+	/**
+	 * Returns whether there is a match in a byte array from the position given by
+	 * fromPosition up to toPosition.  The search stops at the first match found.
+	 *
+	 * @param bytes
+	 *            The byte array giving access to the bytes being searched.
+	 * @param fromPosition
+	 *            The position to search from.
+	 * @param toPosition
+	 *            The position to search up to.
+	 * @return true if there is a match.
+	 */
+	public boolean exists(byte[] bytes, int fromPosition, int toPosition);
+
+	/**
+	 * Returns whether there is a match in a byte array.  The search stops at the
+	 * first match found.
+	 *
+	 * @param bytes
+	 *            The byte array giving access to the bytes being searched.
+	 * @return true if there is a match.
+	 */
+	public boolean exists(byte[] bytes);
+
 	/**
 	 * Ensures that the searcher is fully prepared to search forwards. Some
 	 * searchers may defer calculating all the necessary parameters until the
@@ -0,0 +1,90 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.batch;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Receives the results of a {@link BatchSearchEngine} as each file is searched.
+ * <p>
+ * The calls for each file are made in the order: {@link #startFile(File)},
+ * {@link #matchFound(File, long, Object)} for each match in position order, then
+ * {@link #endFile(File, long)}.  Matches are passed on as they are found, so if a file
+ * fails after some matches have been reported, {@link #fileFailed(File, IOException)}
+ * is called instead of endFile.  If a file fails before any matches are found, only
+ * fileFailed is called for it.
+ * <p>
+ * Files are searched at the same time, so the calls for different files may be interleaved,
+ * and each call passes the file it belongs to.  If the same file is searched more than once
+ * in a batch, the calls for each search of it may also be interleaved.  A sink is never
+ * called by more than one thread at a time, so it does not need to be thread-safe.
+ *
+ * @param <T> The type of object associated with a search match.
+ * @author Matt Palmer
+ */
+public interface BatchResultSink<T> {
+
+    /**
+     * Called before any matches in a file are reported.
+     *
+     * @param file The file whose matches are about to be reported.
+     */
+    void startFile(File file);
+
+    /**
+     * Called for each match in a file, in position order.
+     *
+     * @param file           The file the match was found in.
+     * @param matchPosition  The position of the match in the file.
+     * @param matchingObject The object associated with the match.
+     */
+    void matchFound(File file, long matchPosition, T matchingObject);
+
+    /**
+     * Called after all the matches in a file have been reported.
+     *
+     * @param file       The file whose matches have been reported.
+     * @param numMatches The number of matches found in the file.
+     */
+    void endFile(File file, long numMatches);
+
+    /**
+     * Called if a file could not be searched, instead of the other methods, or instead of
+     * {@link #endFile(File, long)} if some of its matches have already been reported.
+     *
+     * @param file      The file which could not be searched.
+     * @param exception The exception which occurred searching the file.
+     */
+    void fileFailed(File file, IOException exception);
+
+}
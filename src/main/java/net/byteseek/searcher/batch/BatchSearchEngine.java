@@ -0,0 +1,416 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.batch;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.SharedWindowCache;
+import net.byteseek.searcher.MatchListener;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * Searches many files with a fixed set of {@link Searcher}s on a pool of workers,
+ * streaming the results of each file to a {@link BatchResultSink}.
+ * <p>
+ * Each file is searched by a single worker, using a {@link FileReader} whose Windows
+ * are cached in a {@link SharedWindowCache}, so the memory used to cache Windows is
+ * bounded by the budget of the shared cache however many files are open.  At most
+ * one file per worker is open at a time, and files are only taken from the iterator
+ * of files as workers become free, so a very large stream of files is never queued up.
+ * <p>
+ * The searchers are prepared once before the first file is searched, and are then
+ * shared read-only by all the workers, so they must be thread-safe.
+ * <p>
+ * The matches of each file are passed to the sink as each chunk of the file the size of a
+ * Window is searched, rather than being collected until the file has been searched.  The matches
+ * in a chunk are found by all the searchers in turn, sorted into position order, then reported
+ * to the sink together, so only the matches of one chunk are held in memory at a time.  The sink
+ * is only locked while a chunk of matches is reported, never while a file is being read, so
+ * the calls for different files may be interleaved, but the calls for each file are always
+ * made in order.
+ * <p>
+ * If no executor is supplied, the engine creates its own.  On a Java runtime which
+ * supports virtual threads, each file is searched on a new virtual thread, otherwise
+ * a fixed pool of platform threads is used.  An engine which created its own executor
+ * should be closed when it is no longer needed.
+ * <p>
+ * This class is thread-safe, and more than one batch can be searched at the same time.
+ *
+ * @param <T> The type of object associated with a search match.
+ * @author Matt Palmer
+ */
+public final class BatchSearchEngine<T> implements Closeable {
+
+    /**
+     * The default size of the Windows read from each file, which is 64 KiB.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024;
+
+    private final List<Searcher<T>> searchers;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int numWorkers;
+    private final int windowSize;
+    private final SharedWindowCache cache;
+
+    /**
+     * Constructs a BatchSearchEngine with one worker for each available processor,
+     * the default window size and a shared cache with the default budget.
+     * The engine creates its own executor, so it should be closed after use.
+     *
+     * @param searchers The searchers to run over each file.
+     * @throws IllegalArgumentException if the searchers are null, empty or contain a null searcher.
+     */
+    public BatchSearchEngine(final List<? extends Searcher<T>> searchers) {
+        this(searchers, Runtime.getRuntime().availableProcessors(), DEFAULT_WINDOW_SIZE,
+             new SharedWindowCache(SharedWindowCache.DEFAULT_BUDGET));
+    }
+
+    /**
+     * Constructs a BatchSearchEngine which creates its own executor, so it should be closed after use.
+     *
+     * @param searchers  The searchers to run over each file.
+     * @param numWorkers The number of files to search at the same time.
+     * @param windowSize The size of the Windows read from each file.
+     * @param cache      The shared cache which bounds the memory used by all the files searched.
+     * @throws IllegalArgumentException if the searchers are null, empty or contain a null searcher,
+     *                                  the cache is null, or the number of workers or window size
+     *                                  are less than one.
+     */
+    public BatchSearchEngine(final List<? extends Searcher<T>> searchers, final int numWorkers,
+                             final int windowSize, final SharedWindowCache cache) {
+        this(searchers, null, true, numWorkers, windowSize, cache);
+    }
+
+    /**
+     * Constructs a BatchSearchEngine which searches files on the executor given.
+     * The executor is not shut down when the engine is closed.
+     *
+     * @param searchers  The searchers to run over each file.
+     * @param executor   The executor to search files on.
+     * @param numWorkers The maximum number of files to search at the same time.
+     * @param windowSize The size of the Windows read from each file.
+     * @param cache      The shared cache which bounds the memory used by all the files searched.
+     * @throws IllegalArgumentException if the searchers are null, empty or contain a null searcher,
+     *                                  the executor or cache are null, or the number of workers or
+     *                                  window size are less than one.
+     */
+    public BatchSearchEngine(final List<? extends Searcher<T>> searchers, final ExecutorService executor,
+                             final int numWorkers, final int windowSize, final SharedWindowCache cache) {
+        this(searchers, executor, false, numWorkers, windowSize, cache);
+    }
+
+    private BatchSearchEngine(final List<? extends Searcher<T>> searchers, final ExecutorService executor,
+                              final boolean ownsExecutor, final int numWorkers, final int windowSize,
+                              final SharedWindowCache cache) {
+        ArgUtils.checkNullOrEmptyCollectionNoNullElements(searchers, "searchers");
+        ArgUtils.checkPositiveInteger(numWorkers, "numWorkers");
+        ArgUtils.checkPositiveInteger(windowSize, "windowSize");
+        ArgUtils.checkNullObject(cache, "cache");
+        if (!ownsExecutor) {
+            ArgUtils.checkNullObject(executor, "executor");
+        }
+        this.searchers    = new ArrayList<Searcher<T>>(searchers);
+        this.numWorkers   = numWorkers;
+        this.windowSize   = windowSize;
+        this.cache        = cache;
+        this.ownsExecutor = ownsExecutor;
+        this.executor     = ownsExecutor? newDefaultExecutor(numWorkers) : executor;
+        for (final Searcher<T> searcher : this.searchers) {
+            searcher.prepareForwards();
+        }
+    }
+
+    /**
+     * Searches all the files given by the iterator, reporting the results of each to the sink.
+     * Returns when all the files have been searched.
+     *
+     * @param files The files to search.
+     * @param sink  The sink to report the results of each file to.
+     * @return The throughput of the run.
+     * @throws InterruptedIOException if the calling thread is interrupted while waiting for a worker.
+     * @throws IllegalArgumentException if the files or sink are null.
+     */
+    public BatchStatistics search(final Iterator<File> files, final BatchResultSink<T> sink)
+                                  throws InterruptedIOException {
+        ArgUtils.checkNullObject(files, "files");
+        ArgUtils.checkNullObject(sink, "sink");
+        final Run run = new Run(sink);
+        try {
+            while (files.hasNext() && run.failure.get() == null) {
+                run.workers.acquire();
+                final File file = files.next();
+                try {
+                    executor.execute(new FileSearch(run, file));
+                } catch (RejectedExecutionException rejected) {
+                    run.workers.release();
+                    throw rejected;
+                }
+            }
+            run.workers.acquire(numWorkers); // wait for the files being searched to finish.
+            run.workers.release(numWorkers);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for files to be searched.");
+        }
+        final RuntimeException failure = run.failure.get();
+        if (failure != null) {
+            throw failure;
+        }
+        return run.getStatistics();
+    }
+
+    /**
+     * Searches all the files given, reporting the results of each to the sink.
+     * Returns when all the files have been searched.
+     *
+     * @param files The files to search.
+     * @param sink  The sink to report the results of each file to.
+     * @return The throughput of the run.
+     * @throws InterruptedIOException if the calling thread is interrupted while waiting for a worker.
+     * @throws IllegalArgumentException if the files or sink are null.
+     */
+    public BatchStatistics search(final Iterable<File> files, final BatchResultSink<T> sink)
+                                  throws InterruptedIOException {
+        ArgUtils.checkNullObject(files, "files");
+        return search(files.iterator(), sink);
+    }
+
+    /**
+     * Shuts down the executor, if the engine created it.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return An unmodifiable list of the searchers run over each file.
+     */
+    public List<Searcher<T>> getSearchers() {
+        return Collections.unmodifiableList(searchers);
+    }
+
+    /**
+     * @return The maximum number of files searched at the same time.
+     */
+    public int getNumWorkers() {
+        return numWorkers;
+    }
+
+    /**
+     * @return The size of the Windows read from each file.
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @return The shared cache which bounds the memory used by all the files searched.
+     */
+    public SharedWindowCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[searchers: " + searchers + " workers: " + numWorkers +
+                                            " window size: " + windowSize + " cache: " + cache + ']';
+    }
+
+    /**
+     * Returns an executor which runs each task on a new virtual thread, if the runtime
+     * supports them, or a fixed pool of platform threads if not.
+     */
+    private static ExecutorService newDefaultExecutor(final int numWorkers) {
+        try {
+            final Method virtualExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtualExecutor.invoke(null);
+        } catch (Exception noVirtualThreads) {
+            return Executors.newFixedThreadPool(numWorkers);
+        }
+    }
+
+    /**
+     * The state of a single call to search.
+     */
+    private final class Run {
+
+        private final BatchResultSink<T> sink;
+        private final Semaphore workers = new Semaphore(numWorkers);
+        private final Lock sinkLock = new ReentrantLock();
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        private final AtomicLong numFiles = new AtomicLong();
+        private final AtomicLong numFailed = new AtomicLong();
+        private final AtomicLong numBytes = new AtomicLong();
+        private final AtomicLong numMatches = new AtomicLong();
+        private final long startTime = System.nanoTime();
+
+        private Run(final BatchResultSink<T> sink) {
+            this.sink = sink;
+        }
+
+        private BatchStatistics getStatistics() {
+            return new BatchStatistics(numFiles.get(), numFailed.get(), numBytes.get(),
+                                       numMatches.get(), System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Searches a single file with all the searchers, and streams its results to the sink.
+     */
+    private final class FileSearch implements Runnable, MatchListener<T> {
+
+        private final Run run;
+        private final File file;
+        private final List<SearchResult<T>> chunkMatches = new ArrayList<SearchResult<T>>();
+        private long numMatches;
+        private boolean started;
+
+        private FileSearch(final Run run, final File file) {
+            this.run = run;
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final long length = searchFile();
+                run.numFiles.incrementAndGet();
+                run.numBytes.addAndGet(length);
+                run.numMatches.addAndGet(numMatches);
+                run.sinkLock.lock();
+                try {
+                    if (!started) {
+                        run.sink.startFile(file);
+                    }
+                    run.sink.endFile(file, numMatches);
+                } finally {
+                    run.sinkLock.unlock();
+                }
+            } catch (IOException ex) {
+                run.numFailed.incrementAndGet();
+                run.sinkLock.lock();
+                try {
+                    run.sink.fileFailed(file, ex);
+                } finally {
+                    run.sinkLock.unlock();
+                }
+            } catch (RuntimeException ex) {
+                run.failure.compareAndSet(null, ex);
+            } finally {
+                run.workers.release();
+            }
+        }
+
+        @Override
+        public boolean matchFound(final long matchPosition, final T matchingObject) {
+            chunkMatches.add(new SearchResult<T>(matchPosition, matchingObject));
+            return true;
+        }
+
+        private long searchFile() throws IOException {
+            final WindowReader reader = new FileReader(file, windowSize, cache.newCache());
+            try {
+                final long length = reader.length();
+                for (long chunkStart = 0; chunkStart < length; chunkStart += windowSize) {
+                    searchChunk(reader, chunkStart, chunkStart + windowSize - 1);
+                }
+                return length;
+            } finally {
+                reader.close();
+            }
+        }
+
+        /*
+         * Searches a chunk of the file with all the searchers, then reports the matches
+         * starting in the chunk to the sink in position order.
+         */
+        private void searchChunk(final WindowReader reader, final long chunkStart, final long chunkEnd) throws IOException {
+            for (final Searcher<T> searcher : searchers) {
+                searcher.searchForwards(reader, chunkStart, chunkEnd, this);
+            }
+            if (!chunkMatches.isEmpty()) {
+                if (searchers.size() > 1) {
+                    Collections.sort(chunkMatches, POSITION_ORDER);
+                }
+                run.sinkLock.lock();
+                try {
+                    if (!started) {
+                        run.sink.startFile(file);
+                        started = true;
+                    }
+                    for (final SearchResult<T> match : chunkMatches) {
+                        run.sink.matchFound(file, match.getMatchPosition(), match.getMatchingObject());
+                    }
+                } finally {
+                    run.sinkLock.unlock();
+                }
+                numMatches += chunkMatches.size();
+                chunkMatches.clear();
+            }
+        }
+    }
+
+    private static final Comparator<SearchResult<?>> POSITION_ORDER = new Comparator<SearchResult<?>>() {
+        @Override
+        public int compare(final SearchResult<?> first, final SearchResult<?> second) {
+            final long firstPosition = first.getMatchPosition();
+            final long secondPosition = second.getMatchPosition();
+            return firstPosition < secondPosition? -1 : firstPosition == secondPosition? 0 : 1;
+        }
+    };
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.batch;
+
+/**
+ * The throughput of a run of a {@link BatchSearchEngine}.
+ * <p>
+ * This class is immutable and thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public final class BatchStatistics {
+
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+    private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private final long numFiles;
+    private final long numFailed;
+    private final long numBytes;
+    private final long numMatches;
+    private final long elapsedNanos;
+
+    /**
+     * Constructs a BatchStatistics.
+     *
+     * @param numFiles     The number of files searched successfully.
+     * @param numFailed    The number of files which could not be searched.
+     * @param numBytes     The number of bytes in the files searched successfully.
+     * @param numMatches   The number of matches found.
+     * @param elapsedNanos The time the run took in nanoseconds.
+     */
+    public BatchStatistics(final long numFiles, final long numFailed, final long numBytes,
+                           final long numMatches, final long elapsedNanos) {
+        this.numFiles     = numFiles;
+        this.numFailed    = numFailed;
+        this.numBytes     = numBytes;
+        this.numMatches   = numMatches;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return The number of files searched successfully.
+     */
+    public long getNumFiles() {
+        return numFiles;
+    }
+
+    /**
+     * @return The number of files which could not be searched.
+     */
+    public long getNumFailed() {
+        return numFailed;
+    }
+
+    /**
+     * @return The number of bytes in the files searched successfully.
+     */
+    public long getNumBytes() {
+        return numBytes;
+    }
+
+    /**
+     * @return The number of matches found.
+     */
+    public long getNumMatches() {
+        return numMatches;
+    }
+
+    /**
+     * @return The time the run took in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return The number of files searched successfully per second.
+     */
+    public double getFilesPerSecond() {
+        return elapsedNanos == 0? 0.0 : numFiles * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    /**
+     * @return The number of megabytes (2^20 bytes) searched per second.
+     */
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0? 0.0 : numBytes / BYTES_PER_MEGABYTE * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[files: " + numFiles + " failed: " + numFailed +
+                                            " bytes: " + numBytes + " matches: " + numMatches +
+                                            " files/s: " + String.format("%.1f", getFilesPerSecond()) +
+                                            " MB/s: " + String.format("%.1f", getMegabytesPerSecond()) + ']';
+    }
+
+}
@@ -31,30 +31,36 @@
 
 package net.byteseek.searcher.bytes;
 
+import net.byteseek.io.reader.windows.BufferWindow;
 import net.byteseek.io.reader.windows.Window;
 import net.byteseek.io.reader.WindowReader;
 import net.byteseek.matcher.bytes.ByteMatcher;
 import net.byteseek.searcher.AbstractSearcher;
+import net.byteseek.searcher.MatchListener;
 import net.byteseek.searcher.SearchResult;
 import net.byteseek.searcher.SearchUtils;
 import net.byteseek.utils.ArgUtils;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
  * A Searcher which looks for a byte which matches the ByteMatcher.
  * <p>
  * This is an incredibly simple search algorithm, just looking at every single byte until it finds
- * it, or not.
+ * it, or not.  If the set of bytes matched has a suitable shape (a single byte, two bytes, a range
+ * or a bitmask), the bytes are scanned eight at a time by a {@link WordScanner}.
  */
 public final class ByteMatcherSearcher extends AbstractSearcher<ByteMatcher> {
 
     private final ByteMatcher toSearchFor;
+    private final WordScanner scanner;
 
     public ByteMatcherSearcher(final ByteMatcher value) {
         ArgUtils.checkNullObject(value, "ByteMatcher passed in cannot be null.");
         toSearchFor = value;
+        scanner = WordScanner.forMatcher(value);
     }
 
     @Override
@@ -64,7 +70,8 @@ public final class ByteMatcherSearcher extends AbstractSearcher<ByteMatcher> {
         Window window;
         // While we have a window to search in:
         while ( searchPosition <= toPosition && (window = reader.getWindow(searchPosition)) != null) {
-            final byte[] array = window.getArray();
+            final ByteBuffer buffer = window instanceof BufferWindow? ((BufferWindow) window).getByteBuffer() : null;
+            final byte[] array = buffer == null? window.getArray() : null;
 
             // Determine start and end points in the search for this window:
             final int  startWindowSearchPosition = reader.getWindowOffset(searchPosition);
@@ -74,18 +81,12 @@ public final class ByteMatcherSearcher extends AbstractSearcher<ByteMatcher> {
                     startWindowSearchPosition + distanceToWindowEnd :
                     startWindowSearchPosition + (int) distanceToSearchEnd;
 
-            //TODO: performance tests: is it better to inline an array search method here,
-            //      or just call the array search method itself?  Pros: the compiler may inline
-            //      the array search method anyway, plus the array search method does bounds
-            //      checking on the result, which may enable array bounds optimizations.
-
-            // Search in the window array:
-            for (int arraySearchPosition = startWindowSearchPosition;
-                 arraySearchPosition <= endWindowSearchPosition; arraySearchPosition++) {
-                if (searchByte.matches(array[arraySearchPosition])) {
-                    final long matchPosition = searchPosition + arraySearchPosition - startWindowSearchPosition;
-                    return SearchUtils.singleResult(matchPosition, searchByte);
-                }
+            // Scan the window a word at a time:
+            final int arrayMatchPosition = buffer == null? scanner.indexOf(array, startWindowSearchPosition, endWindowSearchPosition)
+                    : scanner.indexOf(buffer, startWindowSearchPosition, endWindowSearchPosition);
+            if (arrayMatchPosition >= 0) {
+                final long matchPosition = searchPosition + arrayMatchPosition - startWindowSearchPosition;
+                return SearchUtils.singleResult(matchPosition, searchByte);
             }
 
             // Move the search position onwards to the next window:
@@ -99,9 +100,10 @@ public final class ByteMatcherSearcher extends AbstractSearcher<ByteMatcher> {
         final ByteMatcher searchByte = toSearchFor;
         final int startPosition = fromPosition >= 0? fromPosition : 0;
         final int endPosition   = toPosition < bytes.length? toPosition : bytes.length - 1;
-        for (int searchPosition = startPosition; searchPosition <= endPosition; searchPosition++) {
-            if (searchByte.matches(bytes[searchPosition])) {
-                return SearchUtils.singleResult(searchPosition, searchByte);
+        if (startPosition <= endPosition) {
+            final int matchPosition = scanner.indexOf(bytes, startPosition, endPosition);
+            if (matchPosition >= 0) {
+                return SearchUtils.singleResult(matchPosition, searchByte);
             }
         }
         return SearchUtils.noResults();
@@ -114,7 +116,8 @@ public final class ByteMatcherSearcher extends AbstractSearcher<ByteMatcher> {
         Window window;
         // While we have a window to search in:
         while ( searchPosition >= toPosition && (window = reader.getWindow(searchPosition)) != null) {
-            final byte[] array = window.getArray();
+            final ByteBuffer buffer = window instanceof BufferWindow? ((BufferWindow) window).getByteBuffer() : null;
+            final byte[] array = buffer == null? window.getArray() : null;
 
             // Calculate safe start and end positions in the window array:
             final int  startWindowSearchPosition = reader.getWindowOffset(searchPosition);
@@ -122,18 +125,12 @@ public final class ByteMatcherSearcher extends AbstractSearcher<ByteMatcher> {
             final int  endWindowSearchPosition   = distanceToSearchEnd > startWindowSearchPosition?
                     0 : startWindowSearchPosition - (int) distanceToSearchEnd;
 
-            //TODO: performance tests: is it better to inline an array search method here,
-            //      or just call the array search method itself?  Pros: the compiler may inline
-            //      the array search method anyway, plus the array search method does bounds
-            //      checking on the result, which may enable array bounds optimizations.
-
-            // Search in the window array:
-            for (int arraySearchPosition = startWindowSearchPosition;
-                 arraySearchPosition >= endWindowSearchPosition; arraySearchPosition--) {
-                if (searchByte.matches(array[arraySearchPosition])) {
-                    final long matchPosition = searchPosition - (startWindowSearchPosition - arraySearchPosition);
-                    return SearchUtils.singleResult(matchPosition, searchByte);
-                }
+            // Scan the window back a word at a time:
+            final int arrayMatchPosition = buffer == null? scanner.lastIndexOf(array, startWindowSearchPosition, endWindowSearchPosition)
+                    : scanner.lastIndexOf(buffer, startWindowSearchPosition, endWindowSearchPosition);
+            if (arrayMatchPosition >= 0) {
+                final long matchPosition = searchPosition - (startWindowSearchPosition - arrayMatchPosition);
+                return SearchUtils.singleResult(matchPosition, searchByte);
             }
 
             // Move the search position onwards to the next window:
@@ -147,14 +144,134 @@ public final class ByteMatcherSearcher extends AbstractSearcher<ByteMatcher> {
         final ByteMatcher searchByte = toSearchFor;
         final int startPosition = fromPosition < bytes.length? fromPosition : bytes.length - 1;
         final int endPosition   = toPosition > 0? toPosition : 0;
-        for (int searchPosition = startPosition; searchPosition >= endPosition; searchPosition--) {
-            if (searchByte.matches(bytes[searchPosition])) {
-                return SearchUtils.singleResult(searchPosition, searchByte);
+        if (startPosition >= endPosition) {
+            final int matchPosition = scanner.lastIndexOf(bytes, startPosition, endPosition);
+            if (matchPosition >= 0) {
+                return SearchUtils.singleResult(matchPosition, searchByte);
             }
         }
         return SearchUtils.noResults();
     }
 
+    @Override
+    public long searchForwards(final WindowReader reader, final long fromPosition, final long toPosition,
+                               final MatchListener<ByteMatcher> listener) throws IOException {
+        final ByteMatcher resultValue = toSearchFor;
+        long numMatches = 0;
+        long searchPosition = fromPosition >=0? fromPosition : 0;
+        Window window;
+        // While we have a window to search in:
+        while ( searchPosition <= toPosition && (window = reader.getWindow(searchPosition)) != null) {
+            final ByteBuffer buffer = window instanceof BufferWindow? ((BufferWindow) window).getByteBuffer() : null;
+            final byte[] array = buffer == null? window.getArray() : null;
+
+            // Determine start and end points in the search for this window:
+            final int  startWindowSearchPosition = reader.getWindowOffset(searchPosition);
+            final int  distanceToWindowEnd = window.length() - 1 - startWindowSearchPosition;
+            final long distanceToSearchEnd = toPosition - searchPosition;
+            final int endWindowSearchPosition = distanceToWindowEnd < distanceToSearchEnd?
+                    startWindowSearchPosition + distanceToWindowEnd :
+                    startWindowSearchPosition + (int) distanceToSearchEnd;
+
+            // Pass all the matches in the window to the listener:
+            final long windowStartPosition = searchPosition - startWindowSearchPosition;
+            int arrayMatchPosition = buffer == null? scanner.indexOf(array, startWindowSearchPosition, endWindowSearchPosition)
+                    : scanner.indexOf(buffer, startWindowSearchPosition, endWindowSearchPosition);
+            while (arrayMatchPosition >= 0) {
+                numMatches++;
+                if (!listener.matchFound(windowStartPosition + arrayMatchPosition, resultValue)) {
+                    return numMatches;
+                }
+                arrayMatchPosition = arrayMatchPosition < endWindowSearchPosition?
+                        (buffer == null? scanner.indexOf(array, arrayMatchPosition + 1, endWindowSearchPosition)
+                                : scanner.indexOf(buffer, arrayMatchPosition + 1, endWindowSearchPosition)) : -1;
+            }
+
+            // Move the search position onwards to the next window:
+            searchPosition += (distanceToWindowEnd + 1);
+        }
+        return numMatches;
+    }
+
+    @Override
+    public long searchForwards(final byte[] bytes, final int fromPosition, final int toPosition,
+                               final MatchListener<ByteMatcher> listener) {
+        final ByteMatcher resultValue = toSearchFor;
+        final int lastPosition = toPosition < bytes.length?
+                                 toPosition : bytes.length - 1;
+        long numMatches = 0;
+        final int firstPosition = fromPosition > 0? fromPosition : 0;
+        int matchPosition = firstPosition <= lastPosition?
+                scanner.indexOf(bytes, firstPosition, lastPosition) : -1;
+        while (matchPosition >= 0) {
+            numMatches++;
+            if (!listener.matchFound(matchPosition, resultValue)) {
+                break;
+            }
+            matchPosition = matchPosition < lastPosition?
+                    scanner.indexOf(bytes, matchPosition + 1, lastPosition) : -1;
+        }
+        return numMatches;
+    }
+
+    @Override
+    public long searchBackwards(final WindowReader reader, final long fromPosition, final long toPosition,
+                                final MatchListener<ByteMatcher> listener) throws IOException {
+        final ByteMatcher resultValue = toSearchFor;
+        long numMatches = 0;
+        long searchPosition = fromPosition;
+        Window window;
+        // While we have a window to search in:
+        while ( searchPosition >= toPosition && (window = reader.getWindow(searchPosition)) != null) {
+            final ByteBuffer buffer = window instanceof BufferWindow? ((BufferWindow) window).getByteBuffer() : null;
+            final byte[] array = buffer == null? window.getArray() : null;
+
+            // Calculate safe start and end positions in the window array:
+            final int  startWindowSearchPosition = reader.getWindowOffset(searchPosition);
+            final long distanceToSearchEnd       = searchPosition - toPosition;
+            final int  endWindowSearchPosition   = distanceToSearchEnd > startWindowSearchPosition?
+                    0 : startWindowSearchPosition - (int) distanceToSearchEnd;
+
+            // Pass all the matches in the window to the listener:
+            final long windowStartPosition = searchPosition - startWindowSearchPosition;
+            int arrayMatchPosition = buffer == null? scanner.lastIndexOf(array, startWindowSearchPosition, endWindowSearchPosition)
+                    : scanner.lastIndexOf(buffer, startWindowSearchPosition, endWindowSearchPosition);
+            while (arrayMatchPosition >= 0) {
+                numMatches++;
+                if (!listener.matchFound(windowStartPosition + arrayMatchPosition, resultValue)) {
+                    return numMatches;
+                }
+                arrayMatchPosition = arrayMatchPosition > endWindowSearchPosition?
+                        (buffer == null? scanner.lastIndexOf(array, arrayMatchPosition - 1, endWindowSearchPosition)
+                                : scanner.lastIndexOf(buffer, arrayMatchPosition - 1, endWindowSearchPosition)) : -1;
+            }
+
+            // Move the search position onwards to the next window:
+            searchPosition -= (startWindowSearchPosition + 1);
+        }
+        return numMatches;
+    }
+
+    @Override
+    public long searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition,
+                                final MatchListener<ByteMatcher> listener) {
+        final ByteMatcher resultValue = toSearchFor;
+        final int lastPosition = toPosition > 0? toPosition : 0;
+        long numMatches = 0;
+        final int firstPosition = fromPosition < bytes.length? fromPosition : bytes.length - 1;
+        int matchPosition = firstPosition >= lastPosition?
+                scanner.lastIndexOf(bytes, firstPosition, lastPosition) : -1;
+        while (matchPosition >= 0) {
+            numMatches++;
+            if (!listener.matchFound(matchPosition, resultValue)) {
+                break;
+            }
+            matchPosition = matchPosition > lastPosition?
+                    scanner.lastIndexOf(bytes, matchPosition - 1, lastPosition) : -1;
+        }
+        return numMatches;
+    }
+
     @Override
     public void prepareForwards() {
         // Nothing to prepare in order to search.
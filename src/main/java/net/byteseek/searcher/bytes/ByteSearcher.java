@@ -31,54 +31,61 @@
 
 package net.byteseek.searcher.bytes;
 
+import net.byteseek.io.reader.windows.BufferWindow;
 import net.byteseek.io.reader.windows.Window;
 import net.byteseek.io.reader.WindowReader;
 import net.byteseek.matcher.bytes.OneByteMatcher;
 import net.byteseek.searcher.AbstractSearcher;
+import net.byteseek.searcher.MatchListener;
 import net.byteseek.searcher.SearchResult;
 import net.byteseek.searcher.SearchUtils;
 import net.byteseek.utils.ArgUtils;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
  * A Searcher which just looks for a single byte value.
  * <p>
  * This is an incredibly simple search algorithm, just looking at every single byte until it finds
- * it, or not.
+ * it, or not.  The bytes are scanned eight at a time by a {@link WordScanner}.
  */
 public final class ByteSearcher extends AbstractSearcher<Byte> {
 
     private final byte toSearchFor;
     private final Byte byteValue;
+    private final WordScanner scanner;
 
     public ByteSearcher(final byte value) {
         toSearchFor = value;
         byteValue = Byte.valueOf(value);
+        scanner = WordScanner.forByte(value);
     }
 
     public ByteSearcher(final Byte value) {
         ArgUtils.checkNullObject(value, "Byte passed in cannot be null.");
         toSearchFor = value;
         byteValue = value;
+        scanner = WordScanner.forByte(value);
     }
 
     public ByteSearcher(final OneByteMatcher value) {
         ArgUtils.checkNullObject(value, "OneByteMatcher passed in cannot be null.");
         toSearchFor = value.getMatchingBytes()[0];
         byteValue = Byte.valueOf(toSearchFor);
+        scanner = WordScanner.forByte(toSearchFor);
     }
 
     @Override
     public List<SearchResult<Byte>> searchForwards(final WindowReader reader, final long fromPosition, final long toPosition) throws IOException {
-        final byte searchByte = toSearchFor;
         final Byte resultValue = byteValue;
         long searchPosition = fromPosition >=0? fromPosition : 0;
         Window window;
         // While we have a window to search in:
         while ( searchPosition <= toPosition && (window = reader.getWindow(searchPosition)) != null) {
-            final byte[] array = window.getArray();
+            final ByteBuffer buffer = window instanceof BufferWindow? ((BufferWindow) window).getByteBuffer() : null;
+            final byte[] array = buffer == null? window.getArray() : null;
 
             // Determine start and end points in the search for this window:
             final int  startWindowSearchPosition = reader.getWindowOffset(searchPosition);
@@ -88,18 +95,12 @@ public final class ByteSearcher extends AbstractSearcher<Byte> {
                     startWindowSearchPosition + distanceToWindowEnd :
                     startWindowSearchPosition + (int) distanceToSearchEnd;
 
-            //TODO: performance tests: is it better to inline an array search method here,
-            //      or just call the array search method itself?  Pros: the compiler may inline
-            //      the array search method anyway, plus the array search method does bounds
-            //      checking on the result, which may enable array bounds optimizations.
-
-            // Search in the window array:
-            for (int arraySearchPosition = startWindowSearchPosition;
-                     arraySearchPosition <= endWindowSearchPosition; arraySearchPosition++) {
-                if (array[arraySearchPosition] == searchByte) {
-                    final long matchPosition = searchPosition + arraySearchPosition - startWindowSearchPosition;
-                    return SearchUtils.singleResult(matchPosition, resultValue);
-                }
+            // Scan the window a word at a time:
+            final int arrayMatchPosition = buffer == null? scanner.indexOf(array, startWindowSearchPosition, endWindowSearchPosition)
+                    : scanner.indexOf(buffer, startWindowSearchPosition, endWindowSearchPosition);
+            if (arrayMatchPosition >= 0) {
+                final long matchPosition = searchPosition + arrayMatchPosition - startWindowSearchPosition;
+                return SearchUtils.singleResult(matchPosition, resultValue);
             }
 
             // Move the search position onwards to the next window:
@@ -110,29 +111,28 @@ public final class ByteSearcher extends AbstractSearcher<Byte> {
 
     @Override
     public List<SearchResult<Byte>> searchForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
-        final byte searchByte = toSearchFor;
         final Byte resultValue = byteValue;
         final int lastPosition = toPosition < bytes.length?
                                  toPosition : bytes.length - 1;
-        int searchPosition = fromPosition > 0? fromPosition : 0;
-        while (searchPosition <= lastPosition) {
-            if (searchByte == bytes[searchPosition]) {
-                return SearchUtils.singleResult(searchPosition, resultValue);
+        final int searchPosition = fromPosition > 0? fromPosition : 0;
+        if (searchPosition <= lastPosition) {
+            final int matchPosition = scanner.indexOf(bytes, searchPosition, lastPosition);
+            if (matchPosition >= 0) {
+                return SearchUtils.singleResult(matchPosition, resultValue);
             }
-            searchPosition++;
         }
         return SearchUtils.noResults();
     }
 
     @Override
     public List<SearchResult<Byte>> searchBackwards(final WindowReader reader, final long fromPosition, final long toPosition) throws IOException {
-        final byte searchByte = toSearchFor;
         final Byte resultValue = byteValue;
         long searchPosition = fromPosition;
         Window window;
         // While we have a window to search in:
         while ( searchPosition >= toPosition && (window = reader.getWindow(searchPosition)) != null) {
-            final byte[] array = window.getArray();
+            final ByteBuffer buffer = window instanceof BufferWindow? ((BufferWindow) window).getByteBuffer() : null;
+            final byte[] array = buffer == null? window.getArray() : null;
 
             // Calculate safe start and end positions in the window array:
             final int  startWindowSearchPosition = reader.getWindowOffset(searchPosition);
@@ -140,18 +140,12 @@ public final class ByteSearcher extends AbstractSearcher<Byte> {
             final int  endWindowSearchPosition   = distanceToSearchEnd > startWindowSearchPosition?
                     0 : startWindowSearchPosition - (int) distanceToSearchEnd;
 
-            //TODO: performance tests: is it better to inline an array search method here,
-            //      or just call the array search method itself?  Pros: the compiler may inline
-            //      the array search method anyway, plus the array search method does bounds
-            //      checking on the result, which may enable array bounds optimizations.
-
-            // Search in the window array:
-            for (int arraySearchPosition = startWindowSearchPosition;
-                 arraySearchPosition >= endWindowSearchPosition; arraySearchPosition--) {
-                if (array[arraySearchPosition] == searchByte) {
-                    final long matchPosition = searchPosition - (startWindowSearchPosition - arraySearchPosition);
-                    return SearchUtils.singleResult(matchPosition, resultValue);
-                }
+            // Scan the window back a word at a time:
+            final int arrayMatchPosition = buffer == null? scanner.lastIndexOf(array, startWindowSearchPosition, endWindowSearchPosition)
+                    : scanner.lastIndexOf(buffer, startWindowSearchPosition, endWindowSearchPosition);
+            if (arrayMatchPosition >= 0) {
+                final long matchPosition = searchPosition - (startWindowSearchPosition - arrayMatchPosition);
+                return SearchUtils.singleResult(matchPosition, resultValue);
             }
 
             // Move the search position onwards to the next window:
@@ -162,19 +156,137 @@ public final class ByteSearcher extends AbstractSearcher<Byte> {
 
     @Override
     public List<SearchResult<Byte>> searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
-        final byte searchByte = toSearchFor;
         final Byte resultValue = byteValue;
         final int lastPosition = toPosition > 0? toPosition : 0;
-        int searchPosition = fromPosition < bytes.length? fromPosition : bytes.length - 1;
-        while (searchPosition >= lastPosition) {
-            if (searchByte == bytes[searchPosition]) {
-                return SearchUtils.singleResult(searchPosition, resultValue);
+        final int searchPosition = fromPosition < bytes.length? fromPosition : bytes.length - 1;
+        if (searchPosition >= lastPosition) {
+            final int matchPosition = scanner.lastIndexOf(bytes, searchPosition, lastPosition);
+            if (matchPosition >= 0) {
+                return SearchUtils.singleResult(matchPosition, resultValue);
             }
-            searchPosition--;
         }
         return SearchUtils.noResults();
     }
 
+    @Override
+    public long searchForwards(final WindowReader reader, final long fromPosition, final long toPosition,
+                               final MatchListener<Byte> listener) throws IOException {
+        final Byte resultValue = byteValue;
+        long numMatches = 0;
+        long searchPosition = fromPosition >=0? fromPosition : 0;
+        Window window;
+        // While we have a window to search in:
+        while ( searchPosition <= toPosition && (window = reader.getWindow(searchPosition)) != null) {
+            final ByteBuffer buffer = window instanceof BufferWindow? ((BufferWindow) window).getByteBuffer() : null;
+            final byte[] array = buffer == null? window.getArray() : null;
+
+            // Determine start and end points in the search for this window:
+            final int  startWindowSearchPosition = reader.getWindowOffset(searchPosition);
+            final int  distanceToWindowEnd = window.length() - 1 - startWindowSearchPosition;
+            final long distanceToSearchEnd = toPosition - searchPosition;
+            final int endWindowSearchPosition = distanceToWindowEnd < distanceToSearchEnd?
+                    startWindowSearchPosition + distanceToWindowEnd :
+                    startWindowSearchPosition + (int) distanceToSearchEnd;
+
+            // Pass all the matches in the window to the listener:
+            final long windowStartPosition = searchPosition - startWindowSearchPosition;
+            int arrayMatchPosition = buffer == null? scanner.indexOf(array, startWindowSearchPosition, endWindowSearchPosition)
+                    : scanner.indexOf(buffer, startWindowSearchPosition, endWindowSearchPosition);
+            while (arrayMatchPosition >= 0) {
+                numMatches++;
+                if (!listener.matchFound(windowStartPosition + arrayMatchPosition, resultValue)) {
+                    return numMatches;
+                }
+                arrayMatchPosition = arrayMatchPosition < endWindowSearchPosition?
+                        (buffer == null? scanner.indexOf(array, arrayMatchPosition + 1, endWindowSearchPosition)
+                                : scanner.indexOf(buffer, arrayMatchPosition + 1, endWindowSearchPosition)) : -1;
+            }
+
+            // Move the search position onwards to the next window:
+            searchPosition += (distanceToWindowEnd + 1);
+        }
+        return numMatches;
+    }
+
+    @Override
+    public long searchForwards(final byte[] bytes, final int fromPosition, final int toPosition,
+                               final MatchListener<Byte> listener) {
+        final Byte resultValue = byteValue;
+        final int lastPosition = toPosition < bytes.length?
+                                 toPosition : bytes.length - 1;
+        long numMatches = 0;
+        final int firstPosition = fromPosition > 0? fromPosition : 0;
+        int matchPosition = firstPosition <= lastPosition?
+                scanner.indexOf(bytes, firstPosition, lastPosition) : -1;
+        while (matchPosition >= 0) {
+            numMatches++;
+            if (!listener.matchFound(matchPosition, resultValue)) {
+                break;
+            }
+            matchPosition = matchPosition < lastPosition?
+                    scanner.indexOf(bytes, matchPosition + 1, lastPosition) : -1;
+        }
+        return numMatches;
+    }
+
+    @Override
+    public long searchBackwards(final WindowReader reader, final long fromPosition, final long toPosition,
+                                final MatchListener<Byte> listener) throws IOException {
+        final Byte resultValue = byteValue;
+        long numMatches = 0;
+        long searchPosition = fromPosition;
+        Window window;
+        // While we have a window to search in:
+        while ( searchPosition >= toPosition && (window = reader.getWindow(searchPosition)) != null) {
+            final ByteBuffer buffer = window instanceof BufferWindow? ((BufferWindow) window).getByteBuffer() : null;
+            final byte[] array = buffer == null? window.getArray() : null;
+
+            // Calculate safe start and end positions in the window array:
+            final int  startWindowSearchPosition = reader.getWindowOffset(searchPosition);
+            final long distanceToSearchEnd       = searchPosition - toPosition;
+            final int  endWindowSearchPosition   = distanceToSearchEnd > startWindowSearchPosition?
+                    0 : startWindowSearchPosition - (int) distanceToSearchEnd;
+
+            // Pass all the matches in the window to the listener:
+            final long windowStartPosition = searchPosition - startWindowSearchPosition;
+            int arrayMatchPosition = buffer == null? scanner.lastIndexOf(array, startWindowSearchPosition, endWindowSearchPosition)
+                    : scanner.lastIndexOf(buffer, startWindowSearchPosition, endWindowSearchPosition);
+            while (arrayMatchPosition >= 0) {
+                numMatches++;
+                if (!listener.matchFound(windowStartPosition + arrayMatchPosition, resultValue)) {
+                    return numMatches;
+                }
+                arrayMatchPosition = arrayMatchPosition > endWindowSearchPosition?
+                        (buffer == null? scanner.lastIndexOf(array, arrayMatchPosition - 1, endWindowSearchPosition)
+                                : scanner.lastIndexOf(buffer, arrayMatchPosition - 1, endWindowSearchPosition)) : -1;
+            }
+
+            // Move the search position onwards to the next window:
+            searchPosition -= (startWindowSearchPosition + 1);
+        }
+        return numMatches;
+    }
+
+    @Override
+    public long searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition,
+                                final MatchListener<Byte> listener) {
+        final Byte resultValue = byteValue;
+        final int lastPosition = toPosition > 0? toPosition : 0;
+        long numMatches = 0;
+        final int firstPosition = fromPosition < bytes.length? fromPosition : bytes.length - 1;
+        int matchPosition = firstPosition >= lastPosition?
+                scanner.lastIndexOf(bytes, firstPosition, lastPosition) : -1;
+        while (matchPosition >= 0) {
+            numMatches++;
+            if (!listener.matchFound(matchPosition, resultValue)) {
+                break;
+            }
+            matchPosition = matchPosition > lastPosition?
+                    scanner.lastIndexOf(bytes, matchPosition - 1, lastPosition) : -1;
+        }
+        return numMatches;
+    }
+
     @Override
     public void prepareForwards() {
         // Nothing to prepare in order to search.
@@ -0,0 +1,589 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.bytes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A WordScanner finds bytes matching a {@link ByteMatcher} in a byte array or ByteBuffer eight bytes
+ * at a time, reading each eight bytes as a long and testing all of them at once with
+ * a few arithmetic and logical operations (SIMD within a register), in the style of memchr.
+ * This replaces a data-dependent branch for each byte with one for each eight bytes,
+ * which is much more predictable when matches are neither very rare nor very common.
+ * <p>
+ * Scanners are created by {@link #forMatcher(ByteMatcher)} or {@link #forByte(byte)}, from
+ * the set of bytes a matcher matches, rather than its class.  Word-at-a-time scanning
+ * is used if the set of bytes (or the bytes not in it) is:
+ * <ul>
+ * <li>a single byte,</li>
+ * <li>two bytes,</li>
+ * <li>a range of bytes, including ranges which wrap around from 255 to 0,</li>
+ * <li>all the bytes with all the bits in a mask set, or</li>
+ * <li>all the bytes with no bits set outside a mask.</li>
+ * </ul>
+ * This covers the OneByteMatcher, TwoByteMatcher, ByteRangeMatcher, AllBitmaskMatcher and
+ * AnyBitmaskMatcher, inverted or not, and any set matchers which happen to match these
+ * sets.  For any other set of bytes, the scanner tests one byte at a time using the matcher.
+ * <p>
+ * Each lane of eight bits is tested exactly, without carries or borrows crossing into the
+ * next lane, so the lowest and highest matching lanes in a word are both accurate, and
+ * the same word test serves forwards and backwards scanning.
+ * <p>
+ * This class is immutable and thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public abstract class WordScanner {
+
+    private static final long LOW_BITS  = 0x0101010101010101L;
+    private static final long LOW_SEVEN = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final int  WORD_SIZE = 8;
+    private static final int  LONG_SCAN = 64; // shorter scans read words with shifts rather than allocating a ByteBuffer view.
+
+    /**
+     * Returns a scanner for the bytes matched by a ByteMatcher.
+     *
+     * @param matcher The ByteMatcher to create a scanner for.
+     * @return A WordScanner finding the bytes matched by the matcher.
+     * @throws IllegalArgumentException if the matcher is null.
+     */
+    public static WordScanner forMatcher(final ByteMatcher matcher) {
+        ArgUtils.checkNullObject(matcher, "matcher");
+        final int numMatching = matcher.getNumberOfMatchingBytes();
+        if (numMatching > 0 && numMatching < 256) {
+            final boolean[] matching = new boolean[256];
+            for (final byte value : matcher.getMatchingBytes()) {
+                matching[value & 0xFF] = true;
+            }
+            final WordScanner scanner = forSet(matching, numMatching, false);
+            if (scanner != null) {
+                return scanner;
+            }
+            final boolean[] notMatching = new boolean[256];
+            for (int value = 0; value < 256; value++) {
+                notMatching[value] = !matching[value];
+            }
+            final WordScanner invertedScanner = forSet(notMatching, 256 - numMatching, true);
+            if (invertedScanner != null) {
+                return invertedScanner;
+            }
+        }
+        return new MatcherScanner(matcher);
+    }
+
+    /**
+     * Returns a scanner for a single byte value.
+     *
+     * @param value The byte value to scan for.
+     * @return A WordScanner finding the byte value.
+     */
+    public static WordScanner forByte(final byte value) {
+        return new OneByteScanner(value);
+    }
+
+    private final boolean inverted;
+
+    private WordScanner(final boolean inverted) {
+        this.inverted = inverted;
+    }
+
+    /**
+     * Returns the position of the first matching byte scanning forwards from one position to another.
+     *
+     * @param bytes The bytes to scan.
+     * @param fromPosition The position to start scanning from, which must be a valid position in the array.
+     * @param toPosition The last position to scan (inclusive), which must be a valid position in the array.
+     * @return The position of the first matching byte, or -1 if there is none.
+     */
+    public int indexOf(final byte[] bytes, final int fromPosition, final int toPosition) {
+        int position = fromPosition;
+        final int lastWordPosition = toPosition - WORD_SIZE + 1;
+        if (lastWordPosition - position >= LONG_SCAN) {
+            final ByteBuffer words = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            while (position <= lastWordPosition) {
+                final long matches = matchingLanes(words.getLong(position));
+                if (matches != 0) {
+                    return position + (Long.numberOfTrailingZeros(matches) >>> 3);
+                }
+                position += WORD_SIZE;
+            }
+        }
+        while (position <= lastWordPosition) {
+            final long matches = matchingLanes(readWord(bytes, position));
+            if (matches != 0) {
+                return position + (Long.numberOfTrailingZeros(matches) >>> 3);
+            }
+            position += WORD_SIZE;
+        }
+        for (; position <= toPosition; position++) {
+            if (matches(bytes[position])) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position of the first matching byte scanning backwards from one position to another.
+     *
+     * @param bytes The bytes to scan.
+     * @param fromPosition The position to start scanning back from, which must be a valid position in the array.
+     * @param toPosition The last position to scan back to (inclusive), which must be a valid position in the array.
+     * @return The position of the first matching byte, or -1 if there is none.
+     */
+    public int lastIndexOf(final byte[] bytes, final int fromPosition, final int toPosition) {
+        int position = fromPosition;
+        final int lastWordPosition = toPosition + WORD_SIZE - 1;
+        if (position - lastWordPosition >= LONG_SCAN) {
+            final ByteBuffer words = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            while (position >= lastWordPosition) {
+                final int wordStart = position - WORD_SIZE + 1;
+                final long matches = matchingLanes(words.getLong(wordStart));
+                if (matches != 0) {
+                    return wordStart + ((63 - Long.numberOfLeadingZeros(matches)) >>> 3);
+                }
+                position -= WORD_SIZE;
+            }
+        }
+        while (position >= lastWordPosition) {
+            final int wordStart = position - WORD_SIZE + 1;
+            final long matches = matchingLanes(readWord(bytes, wordStart));
+            if (matches != 0) {
+                return wordStart + ((63 - Long.numberOfLeadingZeros(matches)) >>> 3);
+            }
+            position -= WORD_SIZE;
+        }
+        for (; position >= toPosition; position--) {
+            if (matches(bytes[position])) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position of the first matching byte scanning forwards from one position to another
+     * in a ByteBuffer, such as one backed by off-heap memory.  Positions are absolute, and the
+     * position, limit and byte order of the buffer are not changed.
+     *
+     * @param buffer The buffer to scan.
+     * @param fromPosition The position to start scanning from, which must be a valid position in the buffer.
+     * @param toPosition The last position to scan (inclusive), which must be a valid position in the buffer.
+     * @return The position of the first matching byte, or -1 if there is none.
+     */
+    public int indexOf(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+        int position = fromPosition;
+        final int lastWordPosition = toPosition - WORD_SIZE + 1;
+        if (position <= lastWordPosition) {
+            final ByteBuffer words = littleEndian(buffer);
+            while (position <= lastWordPosition) {
+                final long matches = matchingLanes(words.getLong(position));
+                if (matches != 0) {
+                    return position + (Long.numberOfTrailingZeros(matches) >>> 3);
+                }
+                position += WORD_SIZE;
+            }
+        }
+        for (; position <= toPosition; position++) {
+            if (matches(buffer.get(position))) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position of the first matching byte scanning backwards from one position to another
+     * in a ByteBuffer, such as one backed by off-heap memory.  Positions are absolute, and the
+     * position, limit and byte order of the buffer are not changed.
+     *
+     * @param buffer The buffer to scan.
+     * @param fromPosition The position to start scanning back from, which must be a valid position in the buffer.
+     * @param toPosition The last position to scan back to (inclusive), which must be a valid position in the buffer.
+     * @return The position of the first matching byte, or -1 if there is none.
+     */
+    public int lastIndexOf(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+        int position = fromPosition;
+        final int lastWordPosition = toPosition + WORD_SIZE - 1;
+        if (position >= lastWordPosition) {
+            final ByteBuffer words = littleEndian(buffer);
+            while (position >= lastWordPosition) {
+                final int wordStart = position - WORD_SIZE + 1;
+                final long matches = matchingLanes(words.getLong(wordStart));
+                if (matches != 0) {
+                    return wordStart + ((63 - Long.numberOfLeadingZeros(matches)) >>> 3);
+                }
+                position -= WORD_SIZE;
+            }
+        }
+        for (; position >= toPosition; position--) {
+            if (matches(buffer.get(position))) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether a single byte matches.
+     *
+     * @param value The byte to test.
+     * @return true if the byte matches.
+     */
+    public boolean matches(final byte value) {
+        return (matchingLanes(value & 0xFF) & 0x80) != 0;
+    }
+
+    /**
+     * Returns whether this scanner tests eight bytes at a time, or falls back to testing
+     * each byte with the matcher it was created from.
+     *
+     * @return true if this scanner tests eight bytes at a time.
+     */
+    public boolean isWordAtATime() {
+        return true;
+    }
+
+    /**
+     * Returns a word with the high bit set in each lane of eight bits whose byte matches,
+     * and all other bits clear.
+     *
+     * @param word The eight bytes to test.
+     * @return The high bits of the lanes which match.
+     */
+    protected long matchingLanes(final long word) {
+        final long lanes = lanesMatching(word);
+        return inverted ? lanes ^ HIGH_BITS : lanes;
+    }
+
+    /**
+     * Returns a word with the high bit set in each lane of eight bits whose byte is in the
+     * set of bytes the scanner was created for, before any inversion.
+     *
+     * @param word The eight bytes to test.
+     * @return The high bits of the lanes in the set.
+     */
+    abstract long lanesMatching(long word);
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[inverted:" + inverted + ']';
+    }
+
+
+    /*
+     * Reads eight bytes as a little-endian long, so the byte at the position is in the lowest lane.
+     */
+    private static long readWord(final byte[] bytes, final int position) {
+        return  (bytes[position]     & 0xFFL)        |
+               ((bytes[position + 1] & 0xFFL) << 8)  |
+               ((bytes[position + 2] & 0xFFL) << 16) |
+               ((bytes[position + 3] & 0xFFL) << 24) |
+               ((bytes[position + 4] & 0xFFL) << 32) |
+               ((bytes[position + 5] & 0xFFL) << 40) |
+               ((bytes[position + 6] & 0xFFL) << 48) |
+               ((long) bytes[position + 7]     << 56);
+    }
+
+
+    /*
+     * Returns the buffer, or a view of it, which reads words as little-endian longs.
+     */
+    private static ByteBuffer littleEndian(final ByteBuffer buffer) {
+        return buffer.order() == ByteOrder.LITTLE_ENDIAN? buffer : buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+
+    /*
+     * Lane functions.  None of them carry or borrow between lanes.
+     */
+
+    private static long broadcast(final int value) {
+        return (value & 0xFF) * LOW_BITS;
+    }
+
+    private static long zeroLanes(final long word) {
+        return ~(((word & LOW_SEVEN) + LOW_SEVEN) | word | LOW_SEVEN);
+    }
+
+    private static long nonZeroLanes(final long word) {
+        return (((word & LOW_SEVEN) + LOW_SEVEN) | word) & HIGH_BITS;
+    }
+
+    private static long subtractLanes(final long word, final long values) {
+        return ((word | HIGH_BITS) - (values & LOW_SEVEN)) ^ ((word ^ ~values) & HIGH_BITS);
+    }
+
+    private static long lessThanLanes(final long word, final long values) {
+        // The borrow out of the top bit of each lane when subtracting the values:
+        final long difference = subtractLanes(word, values);
+        return ((~word & values) | (~(word ^ values) & difference)) & HIGH_BITS;
+    }
+
+
+    /*
+     * Recognising the shape of a set of bytes.
+     */
+
+    private static WordScanner forSet(final boolean[] set, final int size, final boolean inverted) {
+        if (size == 1) {
+            final int value = firstValue(set, 0);
+            return inverted ? new RangeScanner(value + 1, 254, false) : new OneByteScanner((byte) value);
+        }
+        if (size == 2) {
+            final int first = firstValue(set, 0);
+            return new TwoByteScanner(first, firstValue(set, first + 1), inverted);
+        }
+        final int rangeStart = circularRangeStart(set, size);
+        if (rangeStart >= 0) {
+            return new RangeScanner(rangeStart, size - 1, inverted);
+        }
+        int allBits = 0xFF;
+        int anyBits = 0;
+        for (int value = 0; value < 256; value++) {
+            if (set[value]) {
+                allBits &= value;
+                anyBits |= value;
+            }
+        }
+        // Every value in the set has all the bits of allBits; if the set is the right size,
+        // it must be all the values which do:
+        if (size == 1 << (8 - Integer.bitCount(allBits))) {
+            return new AllBitsScanner(allBits, inverted);
+        }
+        // No value in the set has a bit outside anyBits; if the set is the right size,
+        // it must be all the values which do not:
+        if (size == 1 << Integer.bitCount(anyBits)) {
+            return new NoBitsOutsideScanner(anyBits, inverted);
+        }
+        return null;
+    }
+
+    private static int firstValue(final boolean[] set, final int from) {
+        for (int value = from; value < 256; value++) {
+            if (set[value]) {
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    private static int circularRangeStart(final boolean[] set, final int size) {
+        // A range starts at a value in the set whose predecessor is not in the set;
+        // there must be exactly one such value for the set to be a single range:
+        int start = -1;
+        for (int value = 0; value < 256; value++) {
+            if (set[value] && !set[(value + 255) & 0xFF]) {
+                if (start >= 0) {
+                    return -1;
+                }
+                start = value;
+            }
+        }
+        return start >= 0 && set[(start + size - 1) & 0xFF] ? start : -1;
+    }
+
+
+    /*
+     * Scanners for each shape of set.
+     */
+
+    private static final class OneByteScanner extends WordScanner {
+        private final long value;
+        private final byte byteValue;
+
+        private OneByteScanner(final byte value) {
+            super(false);
+            this.value = broadcast(value);
+            this.byteValue = value;
+        }
+
+        @Override
+        long lanesMatching(final long word) {
+            return zeroLanes(word ^ value);
+        }
+
+        @Override
+        public boolean matches(final byte value) {
+            return value == byteValue;
+        }
+    }
+
+    private static final class TwoByteScanner extends WordScanner {
+        private final long first;
+        private final long second;
+
+        private TwoByteScanner(final int first, final int second, final boolean inverted) {
+            super(inverted);
+            this.first = broadcast(first);
+            this.second = broadcast(second);
+        }
+
+        @Override
+        long lanesMatching(final long word) {
+            return zeroLanes(word ^ first) | zeroLanes(word ^ second);
+        }
+    }
+
+    private static final class RangeScanner extends WordScanner {
+        private final long start;
+        private final long limit;
+
+        /*
+         * A byte is in the range if its distance above the start, wrapping around
+         * from 255 to 0, is less than or equal to the size of the range minus one.
+         */
+        private RangeScanner(final int start, final int lengthMinusOne, final boolean inverted) {
+            super(inverted);
+            this.start = broadcast(start);
+            this.limit = broadcast(lengthMinusOne + 1);
+        }
+
+        @Override
+        long lanesMatching(final long word) {
+            return lessThanLanes(subtractLanes(word, start), limit);
+        }
+    }
+
+    private static final class AllBitsScanner extends WordScanner {
+        private final long mask;
+
+        private AllBitsScanner(final int mask, final boolean inverted) {
+            super(inverted);
+            this.mask = broadcast(mask);
+        }
+
+        @Override
+        long lanesMatching(final long word) {
+            return zeroLanes((word & mask) ^ mask);
+        }
+    }
+
+    private static final class NoBitsOutsideScanner extends WordScanner {
+        private final long outsideMask;
+
+        private NoBitsOutsideScanner(final int mask, final boolean inverted) {
+            super(inverted);
+            this.outsideMask = broadcast(~mask);
+        }
+
+        @Override
+        long lanesMatching(final long word) {
+            return zeroLanes(word & outsideMask);
+        }
+    }
+
+    private static final class MatcherScanner extends WordScanner {
+        private final ByteMatcher matcher;
+
+        private MatcherScanner(final ByteMatcher matcher) {
+            super(false);
+            this.matcher = matcher;
+        }
+
+        @Override
+        public int indexOf(final byte[] bytes, final int fromPosition, final int toPosition) {
+            final ByteMatcher localMatcher = matcher;
+            for (int position = fromPosition; position <= toPosition; position++) {
+                if (localMatcher.matches(bytes[position])) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(final byte[] bytes, final int fromPosition, final int toPosition) {
+            final ByteMatcher localMatcher = matcher;
+            for (int position = fromPosition; position >= toPosition; position--) {
+                if (localMatcher.matches(bytes[position])) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int indexOf(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+            final ByteMatcher localMatcher = matcher;
+            for (int position = fromPosition; position <= toPosition; position++) {
+                if (localMatcher.matches(buffer.get(position))) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+            final ByteMatcher localMatcher = matcher;
+            for (int position = fromPosition; position >= toPosition; position--) {
+                if (localMatcher.matches(buffer.get(position))) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean matches(final byte value) {
+            return matcher.matches(value);
+        }
+
+        @Override
+        public boolean isWordAtATime() {
+            return false;
+        }
+
+        @Override
+        long lanesMatching(final long word) {
+            long lanes = 0;
+            for (int lane = 0; lane < WORD_SIZE; lane++) {
+                if (matcher.matches((byte) (word >>> (lane * 8)))) {
+                    lanes |= 0x80L << (lane * 8);
+                }
+            }
+            return lanes;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[matcher:" + matcher + ']';
+        }
+    }
+
+}
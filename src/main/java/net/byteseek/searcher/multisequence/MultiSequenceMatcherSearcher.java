@@ -40,6 +40,7 @@ import net.byteseek.io.reader.WindowReader;
 import net.byteseek.matcher.multisequence.MultiSequenceMatcher;
 import net.byteseek.matcher.multisequence.TrieMultiSequenceMatcher;
 import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.MatchListener;
 import net.byteseek.searcher.SearchResult;
 import net.byteseek.searcher.SearchUtils;
 
@@ -109,6 +110,93 @@ public class MultiSequenceMatcherSearcher extends AbstractMultiSequenceSearcher
     }
 
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation matches continuously over each window, matching directly
+     * in the window array where all the sequences fit inside it.
+     */
+    @Override
+    public long searchForwards(final WindowReader reader, final long fromPosition,
+                               final long toPosition, final MatchListener<SequenceMatcher> listener)
+                               throws IOException {
+        // Initialise:
+        final MultiSequenceMatcher matcher = sequences;
+        final int longestMatchEndPosition = sequences.getMaximumLength() - 1;
+        long searchPosition = fromPosition > 0?
+                              fromPosition : 0;
+        long numMatches = 0;
+
+        // While there is data still to search in:
+        Window window;
+        while (searchPosition <= toPosition &&
+               (window = reader.getWindow(searchPosition)) != null) {
+
+            // Calculate bounds for searching over this window:
+            final byte[] array = window.getArray();
+            final long windowStartPosition = window.getWindowPosition();
+            final long lastWindowPosition = windowStartPosition + window.length() - 1;
+            final long lastArrayPosition = lastWindowPosition - longestMatchEndPosition;
+            final long lastSearchPosition = toPosition < lastWindowPosition?
+                                            toPosition : lastWindowPosition;
+
+            // Search forwards up to the end of this window, using the reader
+            // where a sequence could cross into the next window:
+            while (searchPosition <= lastSearchPosition) {
+                final Collection<SequenceMatcher> matches = searchPosition <= lastArrayPosition?
+                        matcher.allMatches(array, (int) (searchPosition - windowStartPosition)) :
+                        matcher.allMatches(reader, searchPosition);
+                if (!matches.isEmpty()) {
+                    for (final SequenceMatcher match : matches) {
+                        numMatches++;
+                        if (!listener.matchFound(searchPosition, match)) {
+                            return numMatches;
+                        }
+                    }
+                }
+                searchPosition++;
+            }
+        }
+        return numMatches;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation matches continuously over the array.
+     */
+    @Override
+    public long searchForwards(final byte[] bytes, final int fromPosition,
+                               final int toPosition, final MatchListener<SequenceMatcher> listener) {
+        // Initialise:
+        final MultiSequenceMatcher matcher = sequences;
+
+        // Calculate bounds for the search:
+        final int lastPossiblePosition = bytes.length - sequences.getMinimumLength();
+        final int lastPosition = toPosition < lastPossiblePosition?
+                                 toPosition : lastPossiblePosition;
+        int searchPosition = fromPosition > 0?
+                             fromPosition : 0;
+        long numMatches = 0;
+
+        // Search forwards up to the last possible position:
+        while (searchPosition <= lastPosition) {
+            final Collection<SequenceMatcher> matches = matcher.allMatches(bytes, searchPosition);
+            if (!matches.isEmpty()) {
+                for (final SequenceMatcher match : matches) {
+                    numMatches++;
+                    if (!listener.matchFound(searchPosition, match)) {
+                        return numMatches;
+                    }
+                }
+            }
+            searchPosition++;
+        }
+        return numMatches;
+    }
+
+
     /**
      * {@inheritDoc}
      */
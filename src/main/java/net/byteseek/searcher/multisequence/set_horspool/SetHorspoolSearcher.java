@@ -32,6 +32,7 @@
 package net.byteseek.searcher.multisequence.set_horspool;
 
 import java.io.IOException;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -54,6 +55,9 @@ import net.byteseek.searcher.SearchResult;
 import net.byteseek.searcher.SearchUtils;
 import net.byteseek.searcher.multisequence.AbstractMultiSequenceSearcher;
 import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.tables.PreparedTableSearcher;
+import net.byteseek.searcher.tables.PreparedTables;
+import net.byteseek.utils.ArgUtils;
 
 /**
  * The SetHorspoolSearcher implements the Boyer-Moore-Horspool algorithm for
@@ -65,11 +69,21 @@ import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
  * this algorithm will degrade.  The average shift possible will fall, since
  * the chances of finding any particular byte value close to the end of a sequence
  * rises as the number of sequences increases.
+ * <p>
+ * The safe shift tables, and the bytes matched before the verifier runs, can be saved as
+ * {@link PreparedTables}, and a searcher for the same sequences constructed from them will
+ * use them instead of calculating its own.
  * 
  * @author Matt Palmer
  */
-public class SetHorspoolSearcher extends AbstractMultiSequenceSearcher {
+public class SetHorspoolSearcher extends AbstractMultiSequenceSearcher implements PreparedTableSearcher {
+
+    private static final String FORWARD_TABLE     = "forwards";
+    private static final String BACKWARD_TABLE    = "backwards";
+    private static final String FORWARD_VERIFIER  = "forwards.verifier";
+    private static final String BACKWARD_VERIFIER = "backwards.verifier";
 
+    private final PreparedTables tables;
     private final ByteMatcherFactory byteMatcherFactory;
     private final LazyObject<SearchInfo> forwardInfo;
     private final LazyObject<SearchInfo> backwardInfo;
@@ -81,7 +95,21 @@ public class SetHorspoolSearcher extends AbstractMultiSequenceSearcher {
      * @param sequences A MultiSequenceMatcher containing the sequences to be searched for.
      */
     public SetHorspoolSearcher(final MultiSequenceMatcher sequences) {
+        this(sequences, null);
+    }
+    
+    
+    /**
+     * Constructs a SetHorspoolSearcher with {@link PreparedTables} which may contain
+     * its safe shifts.  If the tables do not contain shifts calculated for these 
+     * sequences, they are calculated as normal.
+     * 
+     * @param sequences A MultiSequenceMatcher containing the sequences to be searched for.
+     * @param tables The prepared tables to look for safe shifts in, or null if there are none.
+     */
+    public SetHorspoolSearcher(final MultiSequenceMatcher sequences, final PreparedTables tables) {
         super(sequences);
+        this.tables = tables;
         forwardInfo  = new DoubleCheckImmutableLazyObject<SearchInfo>(new ForwardInfoFactory());
         backwardInfo = new DoubleCheckImmutableLazyObject<SearchInfo>(new BackwardInfoFactory());
         
@@ -347,12 +375,66 @@ public class SetHorspoolSearcher extends AbstractMultiSequenceSearcher {
         backwardInfo.get();
     }
     
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addTables(final PreparedTables.Builder builder) {
+        ArgUtils.checkNullObject(builder, "builder");
+        final long fingerprint = PreparedTables.fingerprint(sequences);
+        final SearchInfo forwards = forwardInfo.get();
+        final SearchInfo backwards = backwardInfo.get();
+        builder.add(PreparedTables.tableKey(getClass(), fingerprint, FORWARD_TABLE), fingerprint, forwards.shifts);
+        builder.add(PreparedTables.tableKey(getClass(), fingerprint, BACKWARD_TABLE), fingerprint, backwards.shifts);
+        builder.addByteSet(PreparedTables.tableKey(getClass(), fingerprint, FORWARD_VERIFIER), fingerprint,
+                           forwards.matcher.getMatchingBytes());
+        builder.addByteSet(PreparedTables.tableKey(getClass(), fingerprint, BACKWARD_VERIFIER), fingerprint,
+                           backwards.matcher.getMatchingBytes());
+    }
+    
+    
     @Override
     public String toString() {
     	return getClass().getSimpleName() + "[sequences:" + sequences + ']'; 
     }
     
 
+    /**
+     * Returns the safe shifts in the prepared tables for these sequences, or null
+     * if there are no prepared tables, or they do not contain shifts for these sequences.
+     */
+    private int[] getPreparedShifts(final String table) {
+        if (tables != null) {
+            final long fingerprint = PreparedTables.fingerprint(sequences);
+            final IntBuffer shifts = tables.getTable(PreparedTables.tableKey(getClass(), fingerprint, table), fingerprint);
+            if (shifts != null && shifts.remaining() == 256) {
+                final int[] searchShifts = new int[256];
+                shifts.get(searchShifts);
+                return searchShifts;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Returns the bytes in the prepared tables for these sequences which are matched
+     * before the verifier runs, or null if there are no prepared tables, or they do not
+     * contain the bytes for these sequences.
+     */
+    private Set<Byte> getPreparedBytes(final String table) {
+        if (tables != null) {
+            final long fingerprint = PreparedTables.fingerprint(sequences);
+            final Set<Byte> bytes = tables.getByteSet(PreparedTables.tableKey(getClass(), fingerprint, table), fingerprint);
+            if (bytes != null && !bytes.isEmpty()) {
+                return bytes;
+            }
+        }
+        return null;
+    }
+    
+
     /**
      * A class holding information needed to search.
      */
@@ -393,8 +475,9 @@ public class SetHorspoolSearcher extends AbstractMultiSequenceSearcher {
             // Create the search info object fields:
             
             // Create a byte matcher for the last position of all the sequences:
-            final Set<Byte> allLastBytes =
-                    MultiSequenceUtils.bytesAlignedRight(0, matcher);
+            final Set<Byte> preparedLastBytes = getPreparedBytes(FORWARD_VERIFIER);
+            final Set<Byte> allLastBytes = preparedLastBytes != null? preparedLastBytes
+                                         : MultiSequenceUtils.bytesAlignedRight(0, matcher);
             final ByteMatcher lastPositionMatcher = byteMatcherFactory.create(allLastBytes);
             
             // Create a verifier which works on the reverse sequences of the
@@ -403,6 +486,12 @@ public class SetHorspoolSearcher extends AbstractMultiSequenceSearcher {
             // the original sequences).
             final MultiSequenceMatcher verifier = new MultiSequenceReverseMatcher(matcher);
 
+            // Use the prepared shifts if they were calculated for these sequences:
+            final int[] preparedShifts = getPreparedShifts(FORWARD_TABLE);
+            if (preparedShifts != null) {
+                return new SearchInfo(preparedShifts, lastPositionMatcher, verifier);
+            }
+
             //TODO: check for pathological cases of matchers matching all bytes in the sequences.
 
             // Create the array of shifts and set the default shift to the
@@ -455,12 +544,19 @@ public class SetHorspoolSearcher extends AbstractMultiSequenceSearcher {
             // Create the search info object fields
             
             // Create a byte sequences for the first position of all the sequences:
-            final Set<Byte> allFirstBytes =
-                    MultiSequenceUtils.bytesAlignedLeft(0, matcher);
+            final Set<Byte> preparedFirstBytes = getPreparedBytes(BACKWARD_VERIFIER);
+            final Set<Byte> allFirstBytes = preparedFirstBytes != null? preparedFirstBytes
+                                          : MultiSequenceUtils.bytesAlignedLeft(0, matcher);
             final ByteMatcher firstPositionMatcher = byteMatcherFactory.create(allFirstBytes);
             
             final MultiSequenceMatcher verifier = matcher;
 
+            // Use the prepared shifts if they were calculated for these sequences:
+            final int[] preparedShifts = getPreparedShifts(BACKWARD_TABLE);
+            if (preparedShifts != null) {
+                return new SearchInfo(preparedShifts, firstPositionMatcher, verifier);
+            }
+
             //TODO: check for pathological cases of matchers matching all bytes in the sequences.
 
             // Create the array of shifts and set the default shift to the
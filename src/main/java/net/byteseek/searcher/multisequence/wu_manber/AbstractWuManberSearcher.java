@@ -30,6 +30,7 @@
  */
 package net.byteseek.searcher.multisequence.wu_manber;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -46,6 +47,9 @@ import net.byteseek.utils.lazy.LazyObject;
 import net.byteseek.utils.factory.ObjectFactory;
 import net.byteseek.searcher.multisequence.AbstractMultiSequenceSearcher;
 import net.byteseek.searcher.multisequence.set_horspool.SetHorspoolSearcher;
+import net.byteseek.searcher.tables.PreparedTableSearcher;
+import net.byteseek.searcher.tables.PreparedTables;
+import net.byteseek.utils.ArgUtils;
 
 /**
  * This abstract class calculates the search information for a Wu-Manber style
@@ -94,9 +98,11 @@ import net.byteseek.searcher.multisequence.set_horspool.SetHorspoolSearcher;
  * @see <a href="http://webglimpse.net/pubs/TR94-17.pdf">Wu-Manber paper (PDF)</a>
  * @author Matt Palmer
  */
-public abstract class AbstractWuManberSearcher extends AbstractMultiSequenceSearcher {
+public abstract class AbstractWuManberSearcher extends AbstractMultiSequenceSearcher implements PreparedTableSearcher {
         
     private static final int HIGHEST_POWER_OF_TWO = 1073741824;
+    private static final String FORWARD_TABLE  = "forwards";
+    private static final String BACKWARD_TABLE = "backwards";
 
     /**
      * A class holding the search information used in the Wu-Manber search.
@@ -150,6 +156,12 @@ public abstract class AbstractWuManberSearcher extends AbstractMultiSequenceSear
     protected final LazyObject<SearchInfo> backwardInfo;
 
     
+    /**
+     * Prepared tables which may contain the shift hash-tables, or null if there are none.
+     */
+    private final PreparedTables tables;
+
+    
     /**
      * Constructs an abstract WuManberSearcher from a {@link MultiSequenceMatcher} and 
      * a block size.
@@ -158,8 +170,25 @@ public abstract class AbstractWuManberSearcher extends AbstractMultiSequenceSear
      * @param blockSize The block size of the Wu-Manber searcher.
      */
     public AbstractWuManberSearcher(final MultiSequenceMatcher matcher, final int blockSize) {
+        this(matcher, blockSize, null);
+    }
+
+    
+    /**
+     * Constructs an abstract WuManberSearcher from a {@link MultiSequenceMatcher}, 
+     * a block size, and {@link PreparedTables} which may contain its shift hash-tables.
+     * If the tables do not contain shifts calculated for these sequences and block size,
+     * they are calculated as normal.
+     * 
+     * @param matcher A MultiSequenceMatcher containing the sequences to search for.
+     * @param blockSize The block size of the Wu-Manber searcher.
+     * @param tables The prepared tables to look for shift hash-tables in, or null if there are none.
+     */
+    public AbstractWuManberSearcher(final MultiSequenceMatcher matcher, final int blockSize,
+                                    final PreparedTables tables) {
         super(matcher);
         this.blockSize = blockSize;
+        this.tables = tables;
         forwardInfo  = new DoubleCheckImmutableLazyObject<SearchInfo>(new ForwardInfoFactory());
         backwardInfo = new DoubleCheckImmutableLazyObject<SearchInfo>(new BackwardSearchInfo());
     }
@@ -182,6 +211,46 @@ public abstract class AbstractWuManberSearcher extends AbstractMultiSequenceSear
         backwardInfo.get();
     }
 
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addTables(final PreparedTables.Builder builder) {
+        ArgUtils.checkNullObject(builder, "builder");
+        final long fingerprint = PreparedTables.fingerprint(sequences);
+        builder.add(getTableKey(fingerprint, FORWARD_TABLE), fingerprint, forwardInfo.get().shifts);
+        builder.add(getTableKey(fingerprint, BACKWARD_TABLE), fingerprint, backwardInfo.get().shifts);
+    }
+
+
+    /**
+     * Returns the key of a table, which includes the block size, as the same
+     * class can calculate different tables for different block sizes.
+     */
+    private String getTableKey(final long fingerprint, final String table) {
+        return PreparedTables.tableKey(getClass(), fingerprint, table + '.' + blockSize);
+    }
+
+
+    /**
+     * Returns the shift hash-table in the prepared tables for these sequences, or null
+     * if there are no prepared tables, or they do not contain shifts for these sequences.
+     */
+    private int[] getPreparedShifts(final String table) {
+        if (tables != null) {
+            final long fingerprint = PreparedTables.fingerprint(sequences);
+            final IntBuffer shifts = tables.getTable(getTableKey(fingerprint, table), fingerprint);
+            // (the search relies on shifts being a size which is a power of two):
+            if (shifts != null && shifts.remaining() > 0 && ByteUtils.isPowerOfTwo(shifts.remaining())) {
+                final int[] searchShifts = new int[shifts.remaining()];
+                shifts.get(searchShifts);
+                return searchShifts;
+            }
+        }
+        return null;
+    }
+
 
     /**
      * For a given SequenceMatcher, builds a list of the byte values for a block.
@@ -333,6 +402,10 @@ public abstract class AbstractWuManberSearcher extends AbstractMultiSequenceSear
          * @return int[] the safe shifts for forward searching.
          */
         private int[] getShifts() {
+            final int[] preparedShifts = getPreparedShifts(FORWARD_TABLE);
+            if (preparedShifts != null) {
+                return preparedShifts;
+            }
             final int defaultShift = sequences.getMinimumLength() - blockSize + 1;        
             final int[] shifts = createShiftHashTable(defaultShift);
             // (relies on shifts being a size which is a power of two):
@@ -409,6 +482,10 @@ public abstract class AbstractWuManberSearcher extends AbstractMultiSequenceSear
          * @return int[] the safe shifts for backward searching.
          */        
         private int[] getShifts() {
+            final int[] preparedShifts = getPreparedShifts(BACKWARD_TABLE);
+            if (preparedShifts != null) {
+                return preparedShifts;
+            }
             final int minLength = sequences.getMinimumLength();
             final int defaultShift = minLength - blockSize + 1;        
             final int[] shifts = createShiftHashTable(defaultShift);
@@ -40,6 +40,7 @@ import net.byteseek.matcher.multisequence.MultiSequenceMatcher;
 import net.byteseek.matcher.sequence.SequenceMatcher;
 import net.byteseek.searcher.SearchResult;
 import net.byteseek.searcher.SearchUtils;
+import net.byteseek.searcher.tables.PreparedTables;
 
 /**
  * An implementation of the Wu-Manber search algorithm that works with a block
@@ -56,7 +57,19 @@ public class WuManberOneByteSearcher extends AbstractWuManberSearcher {
      * @param matcher The MultiSequenceMatcher containing the sequences to search for.
      */
     public WuManberOneByteSearcher(final MultiSequenceMatcher matcher) {
-        super(matcher, 1);
+        this(matcher, null);
+    }
+
+
+    /**
+     * Constructs a WuManberOneByteSearcher with {@link PreparedTables} which may
+     * contain its shift hash-tables.
+     * 
+     * @param matcher The MultiSequenceMatcher containing the sequences to search for.
+     * @param tables The prepared tables to look for shift hash-tables in, or null if there are none.
+     */
+    public WuManberOneByteSearcher(final MultiSequenceMatcher matcher, final PreparedTables tables) {
+        super(matcher, 1, tables);
     }
 
 
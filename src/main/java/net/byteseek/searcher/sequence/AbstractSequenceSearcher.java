@@ -32,12 +32,19 @@
 package net.byteseek.searcher.sequence;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 
+import net.byteseek.io.IOUtils;
+import net.byteseek.io.reader.windows.BufferWindow;
 import net.byteseek.io.reader.windows.Window;
 import net.byteseek.io.reader.WindowReader;
+import net.byteseek.matcher.sequence.ByteMatcherSequenceMatcher;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
 import net.byteseek.matcher.sequence.SequenceMatcher;
 import net.byteseek.searcher.AbstractSearcher;
+import net.byteseek.searcher.MatchListener;
 import net.byteseek.searcher.SearchResult;
 import net.byteseek.searcher.SearchUtils;
 import net.byteseek.utils.ArgUtils;
@@ -51,21 +58,45 @@ import net.byteseek.utils.ArgUtils;
  * </ul>
  * These allocate searching for sequences efficiently between searching in the
  * byte arrays provided by {@link net.byteseek.io.reader.windows.Window}s when the sequence fits in a single window,
- * only using the less efficient reader interface on the sequence for times when
- * the sequence crosses over Window boundaries.
+ * and searching the positions where the sequence crosses over Window boundaries separately.
  * <p>
- * It defines two new abstract methods:
+ * It defines two new methods to search positions crossing window boundaries:
  * <ul>
  * <li>{@link #doSearchForwards(net.byteseek.io.reader.WindowReader, long, long) }
  * <li>{@link #doSearchBackwards(net.byteseek.io.reader.WindowReader, long, long) }
  * </ul>
- * which require the implementor to use the reader interface on the sequence for
- * matching (or otherwise provide for searching sequences which cross window boundaries).
+ * By default, these copy the bytes needed by the crossing positions into an array, and search
+ * it with the array search of the subclass, so any search algorithm is also used across window
+ * boundaries.  Subclasses can override them to search using the reader interface instead.
+ * <p>
+ * Subclasses which search a ByteBuffer directly override {@link #searchForwards(java.nio.ByteBuffer, int, int)}
+ * and {@link #searchBackwards(java.nio.ByteBuffer, int, int)}, and return true from
+ * {@link #searchesBuffersDirectly()}.  Windows backed by a ByteBuffer
+ * ({@link net.byteseek.io.reader.windows.BufferWindow}s) are then searched through their buffer.
+ * Otherwise, they are searched through the array returned by {@link Window#getArray()},
+ * which a BufferWindow copies from its buffer.  Searching a BufferWindow through the
+ * array keeps a copy of it on the heap for as long as the Window is held, so searchers
+ * likely to be used over off-heap windows should search buffers directly.
+ * <p>
+ * Searches which pass matches to a {@link net.byteseek.searcher.MatchListener} run continuously
+ * over each window, passing each window array to {@link #searchForwards(byte[], int, int, MatchListener)}
+ * and {@link #searchBackwards(byte[], int, int, MatchListener)}.  These use
+ * {@link #searchPositionForwards(byte[], int, int)} and {@link #searchPositionBackwards(byte[], int, int)}
+ * to find each match in the array.  Windows searched through their buffer use
+ * {@link #searchPositionForwards(java.nio.ByteBuffer, int, int)} and
+ * {@link #searchPositionBackwards(java.nio.ByteBuffer, int, int)} in the same way.
+ * Subclasses should override these to return match positions without
+ * allocating search results, and can override the listener searches to carry state from one match to the next.
  * 
  * @author Matt Palmer
  */
 public abstract class AbstractSequenceSearcher extends AbstractSearcher<SequenceMatcher> {
     
+    /**
+     * The value returned by the search position methods if no match is found.
+     */
+    protected static final int NO_MATCH = -1;
+
     /**
      * The SequenceMatcher which the Searcher should search for.
      */
@@ -141,8 +172,9 @@ public abstract class AbstractSequenceSearcher extends AbstractSearcher<Sequence
                                        (int) distanceToEnd : lastMatchingPosition; 
                         
                 // Search forwards in the byte array of the window:
-                final List<SearchResult<SequenceMatcher>> arrayResult = 
-                    searchForwards(window.getArray(), arrayStartPosition, arrayMaxPosition);
+                final List<SearchResult<SequenceMatcher>> arrayResult = isSearchedAsBuffer(window)?
+                    searchForwards(((BufferWindow) window).getByteBuffer(), arrayStartPosition, arrayMaxPosition)
+                  : searchForwards(window.getArray(), arrayStartPosition, arrayMaxPosition);
 
                 // Did we find a match?
                 if (!arrayResult.isEmpty()) {
@@ -165,10 +197,10 @@ public abstract class AbstractSequenceSearcher extends AbstractSearcher<Sequence
             // over more bytes than this window has available.
             
             // Search up to the last position in the window, or the toPosition,
-            // whichever comes first:
-            final long lastWindowPosition = windowStartPosition + arrayLastPosition;
-            final long lastSearchPosition = toPosition < lastWindowPosition?
-                                            toPosition : lastWindowPosition;
+            // whichever comes first.  If the sequence is longer than the window,
+            // search at least as many positions as the sequence is long:
+            final long lastSearchPosition = lastCrossingPosition(searchPosition,
+                    windowStartPosition + arrayLastPosition, toPosition);
             final List<SearchResult<SequenceMatcher>> readerResult = 
                     doSearchForwards(reader, searchPosition, lastSearchPosition);
             
@@ -190,10 +222,11 @@ public abstract class AbstractSequenceSearcher extends AbstractSearcher<Sequence
      * called by the {@link #searchForwards(net.byteseek.io.reader.WindowReader, long, long)}
      * method when it encounters a sequence which crosses from one window to another.
      * <p>
-     * A simple way to implement this method is to use the WindowReader interface on the
-     * matcher sequence. This at least removes window boundaries from validating
-     * that a match exists. It will still be necessary to deal with window management
-     * in the operation of the search algorithm itself.
+     * This implementation reads all the bytes the search positions need into an array
+     * with a single bulk read, and searches it with {@link #searchPositionForwards(byte[], int, int)}.
+     * The search positions cover a window boundary, or are at least as many as the sequence is long,
+     * so the bytes read are at most about twice the number of positions searched.
+     * Subclasses can override it to search using the reader interface instead.
      * <p>
      * Implementations of this method do not need to worry about whether the search
      * position parameters are within the reader, as this bounds checking is done
@@ -202,11 +235,17 @@ public abstract class AbstractSequenceSearcher extends AbstractSearcher<Sequence
      * @param reader The reader providing bytes to search in.
      * @param fromPosition The search position to search from.
      * @param toPosition The search position to search to.
-     * @return The position of a match, or a negative number if no match was found.
+     * @return A list of search results, which is empty if no match was found.
      * @throws IOException If the reader encounters difficulties reading bytes.
      */
-    protected abstract List<SearchResult<SequenceMatcher>> doSearchForwards(WindowReader reader, 
-            long fromPosition, long toPosition) throws IOException;
+    protected List<SearchResult<SequenceMatcher>> doSearchForwards(final WindowReader reader,
+            final long fromPosition, final long toPosition) throws IOException {
+        final byte[] bytes = readBytes(reader, fromPosition, toPosition);
+        final int lastPosition = bytes.length - matcher.length();
+        final int matchPosition = lastPosition < 0? NO_MATCH : searchPositionForwards(bytes, 0, lastPosition);
+        return matchPosition < 0? SearchUtils.<SequenceMatcher>noResults()
+                                : SearchUtils.singleResult(fromPosition + matchPosition, matcher);
+    }
 
     
     
@@ -256,8 +295,11 @@ public abstract class AbstractSequenceSearcher extends AbstractSearcher<Sequence
                                              (int) endOfSearchRelativeToWindow : 0; 
                         
                 // Search backwards in the byte array of the window:
-                final List<SearchResult<SequenceMatcher>> arrayResults = 
-                        searchBackwards(window.getArray(), 
+                final List<SearchResult<SequenceMatcher>> arrayResults = isSearchedAsBuffer(window)?
+                        searchBackwards(((BufferWindow) window).getByteBuffer(),
+                                        arrayStartSearchPosition,
+                                        arrayEndSearchPosition)
+                      : searchBackwards(window.getArray(), 
                                         arrayStartSearchPosition, 
                                         arrayEndSearchPosition);
                 
@@ -293,8 +335,9 @@ public abstract class AbstractSequenceSearcher extends AbstractSearcher<Sequence
                     windowStartPosition + arrayLastPosition - lastSequencePosition;
             final long firstFitPosition = firstPossibleFitPosition < searchPosition?
                                           firstPossibleFitPosition : searchPosition;
-            final long searchToPosition = firstFitPosition > windowStartPosition?
-                                          firstFitPosition : windowStartPosition;
+            final long searchToPosition = firstCrossingPosition(searchPosition,
+                    firstFitPosition > windowStartPosition? firstFitPosition : windowStartPosition,
+                    finalSearchPosition);
             
             final List<SearchResult<SequenceMatcher>> readerResult =
                     doSearchBackwards(reader, searchPosition, searchToPosition);
@@ -312,27 +355,502 @@ public abstract class AbstractSequenceSearcher extends AbstractSearcher<Sequence
     }
     
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation searches continuously over each window, passing matches
+     * to the listener as they are found, without restarting the search or allocating
+     * results for matches found inside a window array.  Window arrays, and copies of the
+     * bytes needed by positions where the sequence crosses into the next window, are searched
+     * with {@link #searchForwards(byte[], int, int, MatchListener)}.
+     *
+     * @throws IOException If the reader encounters a problem reading bytes.
+     */
+    @Override
+    public long searchForwards(final WindowReader reader, final long fromPosition,
+            final long toPosition, final MatchListener<SequenceMatcher> listener) throws IOException {
+        // Initialise:
+        final int lastSequencePosition = matcher.length() - 1;
+        long numMatches = 0;
+        long searchPosition = fromPosition > 0?
+                              fromPosition : 0;
+
+        // While there is data to search in:
+        Window window;
+        while (searchPosition <= toPosition &&
+               (window = reader.getWindow(searchPosition)) != null) {
+            final long windowStartPosition = window.getWindowPosition();
+            final int arrayStartPosition = reader.getWindowOffset(searchPosition);
+            final int arrayLastPosition = window.length() - 1;
+
+            // Search all the matches which fit inside the window array:
+            if (arrayStartPosition + lastSequencePosition <= arrayLastPosition) {
+                final int lastMatchingPosition = arrayLastPosition - lastSequencePosition;
+                final long distanceToEnd = toPosition - windowStartPosition;
+                final int arrayMaxPosition = distanceToEnd < lastMatchingPosition?
+                                       (int) distanceToEnd : lastMatchingPosition;
+                if (isSearchedAsBuffer(window)) {
+                    final ByteBuffer buffer = ((BufferWindow) window).getByteBuffer();
+                    int arraySearchPosition = arrayStartPosition;
+                    int matchPosition;
+                    while (arraySearchPosition <= arrayMaxPosition &&
+                           (matchPosition = searchPositionForwards(buffer, arraySearchPosition, arrayMaxPosition)) >= 0) {
+                        numMatches++;
+                        if (!listener.matchFound(windowStartPosition + matchPosition, matcher)) {
+                            return numMatches;
+                        }
+                        arraySearchPosition = matchPosition + 1;
+                    }
+                } else {
+                    final OffsetListener offsetListener = new OffsetListener(listener, windowStartPosition);
+                    numMatches += searchForwards(window.getArray(), arrayStartPosition, arrayMaxPosition, offsetListener);
+                    if (offsetListener.stopped) {
+                        return numMatches;
+                    }
+                }
+                searchPosition += (arrayMaxPosition - arrayStartPosition + 1);
+                if (searchPosition > toPosition) {
+                    return numMatches;
+                }
+            }
+
+            // Search the positions where the sequence crosses into the next window,
+            // in a copy of the bytes they need:
+            final long lastSearchPosition = lastCrossingPosition(searchPosition,
+                    windowStartPosition + arrayLastPosition, toPosition);
+            final byte[] bytes = readBytes(reader, searchPosition, lastSearchPosition);
+            final int lastPosition = bytes.length - matcher.length();
+            if (lastPosition >= 0) {
+                final OffsetListener offsetListener = new OffsetListener(listener, searchPosition);
+                numMatches += searchForwards(bytes, 0, lastPosition, offsetListener);
+                if (offsetListener.stopped) {
+                    return numMatches;
+                }
+            }
+            searchPosition = lastSearchPosition + 1;
+        }
+        return numMatches;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation uses {@link #searchPositionForwards(byte[], int, int)}
+     * to find each match, without allocating results.
+     */
+    @Override
+    public long searchForwards(final byte[] bytes, final int fromPosition, final int toPosition,
+                               final MatchListener<SequenceMatcher> listener) {
+        long numMatches = 0;
+        int searchPosition = fromPosition;
+        int matchPosition;
+        while (searchPosition <= toPosition &&
+               (matchPosition = searchPositionForwards(bytes, searchPosition, toPosition)) >= 0) {
+            numMatches++;
+            if (!listener.matchFound(matchPosition, matcher)) {
+                break;
+            }
+            searchPosition = matchPosition + 1;
+        }
+        return numMatches;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation searches continuously back over each window, passing matches
+     * to the listener as they are found, without restarting the search or allocating
+     * results for matches found inside a window array.  Window arrays, and copies of the
+     * bytes needed by positions where the sequence crosses into the next window, are searched
+     * with {@link #searchBackwards(byte[], int, int, MatchListener)}.
+     *
+     * @throws IOException If the reader encounters a problem reading bytes.
+     */
+    @Override
+    public long searchBackwards(final WindowReader reader, final long fromPosition,
+            final long toPosition, final MatchListener<SequenceMatcher> listener) throws IOException {
+        // Initialise:
+        final int lastSequencePosition = matcher.length() - 1;
+        final long finalSearchPosition = toPosition > 0?
+                                         toPosition : 0;
+        long numMatches = 0;
+        long searchPosition = withinLength(reader, fromPosition);
+
+        // While there is data to search in:
+        Window window;
+        while (searchPosition >= finalSearchPosition &&
+               (window = reader.getWindow(searchPosition)) != null) {
+            final long windowStartPosition = window.getWindowPosition();
+            final int arrayStartSearchPosition = reader.getWindowOffset(searchPosition);
+            final int arrayLastPosition = window.length() - 1;
+
+            // Search all the matches which fit inside the window array:
+            if (arrayStartSearchPosition + lastSequencePosition <= arrayLastPosition) {
+                final long endOfSearchRelativeToWindow = finalSearchPosition - windowStartPosition;
+                final int arrayEndSearchPosition = endOfSearchRelativeToWindow > 0?
+                                             (int) endOfSearchRelativeToWindow : 0;
+                if (isSearchedAsBuffer(window)) {
+                    final ByteBuffer buffer = ((BufferWindow) window).getByteBuffer();
+                    int arraySearchPosition = arrayStartSearchPosition;
+                    int matchPosition;
+                    while (arraySearchPosition >= arrayEndSearchPosition &&
+                           (matchPosition = searchPositionBackwards(buffer, arraySearchPosition, arrayEndSearchPosition)) >= 0) {
+                        numMatches++;
+                        if (!listener.matchFound(windowStartPosition + matchPosition, matcher)) {
+                            return numMatches;
+                        }
+                        arraySearchPosition = matchPosition - 1;
+                    }
+                } else {
+                    final OffsetListener offsetListener = new OffsetListener(listener, windowStartPosition);
+                    numMatches += searchBackwards(window.getArray(), arrayStartSearchPosition, arrayEndSearchPosition,
+                                                  offsetListener);
+                    if (offsetListener.stopped) {
+                        return numMatches;
+                    }
+                }
+                searchPosition -= (arrayStartSearchPosition - arrayEndSearchPosition + 1);
+                if (searchPosition < finalSearchPosition) {
+                    return numMatches;
+                }
+            }
+
+            // Search back over the positions where the sequence crosses into the next window,
+            // in a copy of the bytes they need:
+            final long firstPossibleFitPosition =
+                    windowStartPosition + arrayLastPosition - lastSequencePosition;
+            final long firstFitPosition = firstPossibleFitPosition < searchPosition?
+                                          firstPossibleFitPosition : searchPosition;
+            final long searchToPosition = firstCrossingPosition(searchPosition,
+                    firstFitPosition > windowStartPosition? firstFitPosition : windowStartPosition,
+                    finalSearchPosition);
+            final byte[] bytes = readBytes(reader, searchToPosition, searchPosition);
+            final int lastPosition = bytes.length - matcher.length();
+            final int searchFrom = (int) (searchPosition - searchToPosition);
+            final int startPosition = searchFrom < lastPosition? searchFrom : lastPosition;
+            if (startPosition >= 0) {
+                final OffsetListener offsetListener = new OffsetListener(listener, searchToPosition);
+                numMatches += searchBackwards(bytes, startPosition, 0, offsetListener);
+                if (offsetListener.stopped) {
+                    return numMatches;
+                }
+            }
+            searchPosition = searchToPosition - 1;
+        }
+        return numMatches;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation uses {@link #searchPositionBackwards(byte[], int, int)}
+     * to find each match, without allocating results.
+     */
+    @Override
+    public long searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition,
+                                final MatchListener<SequenceMatcher> listener) {
+        long numMatches = 0;
+        int searchPosition = fromPosition;
+        int matchPosition;
+        while (searchPosition >= toPosition &&
+               (matchPosition = searchPositionBackwards(bytes, searchPosition, toPosition)) >= 0) {
+            numMatches++;
+            if (!listener.matchFound(matchPosition, matcher)) {
+                break;
+            }
+            searchPosition = matchPosition - 1;
+        }
+        return numMatches;
+    }
+
+
+    /**
+     * Searches forwards in a byte array, returning the position of the first match found,
+     * or {@link #NO_MATCH} if there is no match.
+     * <p>
+     * This implementation calls {@link #searchForwards(byte[], int, int)}.  Subclasses should
+     * override it to search without allocating results, and implement the list search in terms of it.
+     *
+     * @param bytes The byte array to search in.
+     * @param fromPosition The position to search from.
+     * @param toPosition The position to search to.
+     * @return The position of the first match, or NO_MATCH if there is no match.
+     */
+    protected int searchPositionForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        final List<SearchResult<SequenceMatcher>> results = searchForwards(bytes, fromPosition, toPosition);
+        return results.isEmpty()? NO_MATCH : (int) results.get(0).getMatchPosition();
+    }
+
+
+    /**
+     * Searches backwards in a byte array, returning the position of the first match found,
+     * or {@link #NO_MATCH} if there is no match.
+     * <p>
+     * This implementation calls {@link #searchBackwards(byte[], int, int)}.  Subclasses should
+     * override it to search without allocating results, and implement the list search in terms of it.
+     *
+     * @param bytes The byte array to search in.
+     * @param fromPosition The position to search from.
+     * @param toPosition The position to search back to.
+     * @return The position of the first match, or NO_MATCH if there is no match.
+     */
+    protected int searchPositionBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        final List<SearchResult<SequenceMatcher>> results = searchBackwards(bytes, fromPosition, toPosition);
+        return results.isEmpty()? NO_MATCH : (int) results.get(0).getMatchPosition();
+    }
+
+
+    /**
+     * Returns the results of searching for a position in a byte array or buffer with one of the
+     * search position methods: a single result for the matcher at that position, or no
+     * results if the position is negative.
+     *
+     * @param matchPosition The position returned by a search position method.
+     * @return A list with a single result at the match position, or an empty list if there was no match.
+     */
+    protected final List<SearchResult<SequenceMatcher>> resultsFor(final int matchPosition) {
+        return matchPosition >= 0? SearchUtils.singleResult(matchPosition, matcher)
+                                 : SearchUtils.<SequenceMatcher>noResults();
+    }
+
+
+   /**
+     * Searches forwards in a ByteBuffer, such as one backed by off-heap memory.
+     * The buffer has a position of zero and a limit of the number of bytes to search in,
+     * and the search positions are relative to the start of the buffer.
+     * <p>
+     * This implementation copies the buffer into an array and searches the array.
+     * Subclasses should override it to search the buffer directly, and return true
+     * from {@link #searchesBuffersDirectly()}.
+     *
+     * @param buffer The buffer to search in.
+     * @param fromPosition The position to search from.
+     * @param toPosition The position to search to.
+     * @return A list of search results, which is empty if no match was found.
+     */
+    protected List<SearchResult<SequenceMatcher>> searchForwards(final ByteBuffer buffer,
+            final int fromPosition, final int toPosition) {
+        return searchForwards(toArray(buffer), fromPosition, toPosition);
+    }
+
+
    /**
-     * This abstract method searches backwards crossing window boundaries.  It is
+     * Searches backwards in a ByteBuffer, such as one backed by off-heap memory.
+     * The buffer has a position of zero and a limit of the number of bytes to search in,
+     * and the search positions are relative to the start of the buffer.
+     * <p>
+     * This implementation copies the buffer into an array and searches the array.
+     * Subclasses should override it to search the buffer directly, and return true
+     * from {@link #searchesBuffersDirectly()}.
+     *
+     * @param buffer The buffer to search in.
+     * @param fromPosition The position to search from.
+     * @param toPosition The position to search back to.
+     * @return A list of search results, which is empty if no match was found.
+     */
+    protected List<SearchResult<SequenceMatcher>> searchBackwards(final ByteBuffer buffer,
+            final int fromPosition, final int toPosition) {
+        return searchBackwards(toArray(buffer), fromPosition, toPosition);
+    }
+
+
+    /**
+     * Searches forwards in a ByteBuffer, returning the position of the first match found,
+     * or {@link #NO_MATCH} if there is no match.
+     * <p>
+     * This implementation calls {@link #searchForwards(java.nio.ByteBuffer, int, int)}.  Subclasses
+     * which search buffers directly should override it to search without allocating results,
+     * and implement the list search in terms of it.
+     *
+     * @param buffer The buffer to search in.
+     * @param fromPosition The position to search from.
+     * @param toPosition The position to search to.
+     * @return The position of the first match, or NO_MATCH if there is no match.
+     */
+    protected int searchPositionForwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+        final List<SearchResult<SequenceMatcher>> results = searchForwards(buffer, fromPosition, toPosition);
+        return results.isEmpty()? NO_MATCH : (int) results.get(0).getMatchPosition();
+    }
+
+
+    /**
+     * Searches backwards in a ByteBuffer, returning the position of the first match found,
+     * or {@link #NO_MATCH} if there is no match.
+     * <p>
+     * This implementation calls {@link #searchBackwards(java.nio.ByteBuffer, int, int)}.  Subclasses
+     * which search buffers directly should override it to search without allocating results,
+     * and implement the list search in terms of it.
+     *
+     * @param buffer The buffer to search in.
+     * @param fromPosition The position to search from.
+     * @param toPosition The position to search back to.
+     * @return The position of the first match, or NO_MATCH if there is no match.
+     */
+    protected int searchPositionBackwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+        final List<SearchResult<SequenceMatcher>> results = searchBackwards(buffer, fromPosition, toPosition);
+        return results.isEmpty()? NO_MATCH : (int) results.get(0).getMatchPosition();
+    }
+
+
+    /**
+     * Returns whether a sequence matches at a position in a ByteBuffer, assuming
+     * the sequence fits inside the buffer at that position.  Sequences backed
+     * by byte arrays or byte matchers are matched directly against the buffer,
+     * other sequences are matched a byte matcher at a time.
+     *
+     * @param sequence The sequence to match.
+     * @param buffer The buffer to match in.
+     * @param matchPosition The position in the buffer to match at.
+     * @return true if the sequence matches at the position in the buffer.
+     */
+    protected static boolean matchesNoBoundsCheck(final SequenceMatcher sequence,
+            final ByteBuffer buffer, final int matchPosition) {
+        if (sequence instanceof ByteSequenceMatcher) {
+            return ((ByteSequenceMatcher) sequence).matchesNoBoundsCheck(buffer, matchPosition);
+        }
+        if (sequence instanceof ByteMatcherSequenceMatcher) {
+            return ((ByteMatcherSequenceMatcher) sequence).matchesNoBoundsCheck(buffer, matchPosition);
+        }
+        final int length = sequence.length();
+        for (int index = 0; index < length; index++) {
+            if (!sequence.getMatcherForPosition(index).matches(buffer.get(matchPosition + index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Returns true if this searcher overrides {@link #searchForwards(java.nio.ByteBuffer, int, int)}
+     * and {@link #searchBackwards(java.nio.ByteBuffer, int, int)} to search a buffer without
+     * copying it, so Windows backed by a ByteBuffer are searched through their buffer.
+     * <p>
+     * This implementation returns false, so Windows are always searched through their array.
+     *
+     * @return true if this searcher searches ByteBuffers directly.
+     */
+    protected boolean searchesBuffersDirectly() {
+        return false;
+    }
+
+
+    private boolean isSearchedAsBuffer(final Window window) {
+        return window instanceof BufferWindow && searchesBuffersDirectly();
+    }
+
+
+    private static byte[] toArray(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+
+   /**
+     * This method searches backwards crossing window boundaries.  It is
      * called by the {@link #searchBackwards(net.byteseek.io.reader.WindowReader, long, long)}
      * method when it encounters s sequence which crosses from one window to another.
      * <p>
-     * A simple way to implement this method is to use the WindowReader interface on the
-     * matcher sequence.  This at least removes window boundaries from validating
-     * that a match exists.  It may still be necessary to deal with window management
-     * in the operation of the search algorithm itself.
+     * This implementation reads all the bytes the search positions need into an array
+     * with a single bulk read, and searches it with {@link #searchPositionBackwards(byte[], int, int)}.
+     * Subclasses can override it to search using the reader interface instead.
      * 
      * @param reader The reader providing bytes to search in.
      * @param fromPosition The search position to search from.
      * @param toPosition The search position to search to.
-     * @return The position of a match, or a negative number if no match was found.
+     * @return A list of search results, which is empty if no match was found.
      * @throws IOException If the reader encounters difficulties reading bytes.
      */    
-    protected abstract List<SearchResult<SequenceMatcher>> doSearchBackwards(WindowReader reader,
-            long fromPosition, long toPosition) throws IOException;
+    protected List<SearchResult<SequenceMatcher>> doSearchBackwards(final WindowReader reader,
+            final long fromPosition, final long toPosition) throws IOException {
+        final byte[] bytes = readBytes(reader, toPosition, fromPosition);
+        final int lastPosition = bytes.length - matcher.length();
+        final int searchFrom = (int) (fromPosition - toPosition);
+        final int startPosition = searchFrom < lastPosition? searchFrom : lastPosition;
+        final int matchPosition = startPosition < 0? NO_MATCH : searchPositionBackwards(bytes, startPosition, 0);
+        return matchPosition < 0? SearchUtils.<SequenceMatcher>noResults()
+                                : SearchUtils.singleResult(toPosition + matchPosition, matcher);
+    }
+
+
+    /**
+     * Returns the last position to search to for positions where the sequence crosses
+     * a window boundary, searching forwards.  This is the last position in the window,
+     * unless the sequence is longer than the window, in which case it is far enough to search
+     * as many positions as the sequence is long.  It is never after the final search position.
+     *
+     * @param searchPosition The first crossing position to search.
+     * @param lastWindowPosition The last position in the window containing the search position.
+     * @param toPosition The final position of the whole search.
+     * @return The last crossing position to search to.
+     */
+    protected final long lastCrossingPosition(final long searchPosition, final long lastWindowPosition,
+                                              final long toPosition) {
+        final long lastSequencePosition = searchPosition + matcher.length() - 2;
+        final long lastPosition = lastWindowPosition > lastSequencePosition? lastWindowPosition : lastSequencePosition;
+        return toPosition < lastPosition? toPosition : lastPosition;
+    }
+
+
+    /**
+     * Returns the first position to search back to for positions where the sequence crosses
+     * a window boundary, searching backwards.  This is the position given, unless the sequence is
+     * longer than the window, in which case it is far enough back to search as many positions as the
+     * sequence is long.  It is never before the final search position.
+     *
+     * @param searchPosition The first crossing position to search back from.
+     * @param searchToPosition The position to search back to in the window containing the search position.
+     * @param finalSearchPosition The final position of the whole search.
+     * @return The crossing position to search back to.
+     */
+    protected final long firstCrossingPosition(final long searchPosition, final long searchToPosition,
+                                               final long finalSearchPosition) {
+        final long firstSequencePosition = searchPosition - matcher.length() + 2;
+        final long firstPosition = searchToPosition < firstSequencePosition? searchToPosition : firstSequencePosition;
+        return finalSearchPosition > firstPosition? finalSearchPosition : firstPosition;
+    }
+
+
+    /*
+     * Reads all the bytes needed to match the sequence at the search positions given
+     * into an array, which is shorter if the reader ends before all of them.
+     */
+    private byte[] readBytes(final WindowReader reader, final long fromPosition,
+                             final long toPosition) throws IOException {
+        final byte[] bytes = new byte[(int) (toPosition - fromPosition) + matcher.length()];
+        final int bytesRead = IOUtils.readBytes(reader, fromPosition, bytes, 0, bytes.length);
+        return bytesRead < bytes.length? Arrays.copyOf(bytes, bytesRead) : bytes;
+    }
     
     
     
+    /*
+     * Passes matches found in a copy of bytes from a reader on to a listener at their
+     * positions in the reader, recording whether the listener stopped the search.
+     */
+    private static final class OffsetListener implements MatchListener<SequenceMatcher> {
+
+        private final MatchListener<SequenceMatcher> listener;
+        private final long offset;
+        private boolean stopped;
+
+        private OffsetListener(final MatchListener<SequenceMatcher> listener, final long offset) {
+            this.listener = listener;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean matchFound(final long matchPosition, final SequenceMatcher matchingObject) {
+            stopped = !listener.matchFound(offset + matchPosition, matchingObject);
+            return !stopped;
+        }
+    }
+
+
     /**
      * Returns a string representation of this searcher.
      * The precise format returned is subject to change, but in general it will
@@ -30,14 +30,13 @@
 
 package net.byteseek.searcher.sequence;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
-import net.byteseek.io.reader.windows.Window;
 import net.byteseek.io.reader.WindowReader;
 import net.byteseek.matcher.sequence.SequenceMatcher;
 import net.byteseek.searcher.SearchResult;
-import net.byteseek.searcher.SearchUtils;
+import net.byteseek.searcher.bytes.WordScanner;
 
 /**
  * SequenceMatcherSearcher searches for a sequence by trying for a match in each position.
@@ -48,8 +47,15 @@ import net.byteseek.searcher.SearchUtils;
  * The algorithm used by this search is exactly the same as that used for the
  * {@link net.byteseek.searcher.MatcherSearcher} searcher.  However, since we know that we are looking for
  * a sequence with a defined length, the search can be more efficiently partitioned
- * between searching directly in byte arrays when the sequence fits, only using
- * the less efficient reader interface when the sequence crosses over windows.
+ * between searching directly in window arrays when the sequence fits, and searching
+ * a copy of the bytes needed where the sequence crosses over windows.
+ * <p>
+ * Candidate positions are found by scanning for the first byte of the sequence eight
+ * bytes at a time with a {@link WordScanner}, only trying the rest of the sequence where
+ * the first byte matches.  This is done forwards and backwards, in byte arrays, in windows
+ * backed by a ByteBuffer, and in the bytes copied where the sequence crosses windows.
+ * This suits short sequences, where the shift tables of other searchers give little benefit.
+ * The shift searchers, such as the Horspool and Sunday searchers, do not scan in this way.
  * <p>
  * Thread safety: this class is immutable, so it is safe to use this
  * searcher in multiple threads simultaneously. However, note that {@link WindowReader}
@@ -60,6 +66,7 @@ import net.byteseek.searcher.SearchUtils;
  */
 public final class SequenceMatcherSearcher extends AbstractSequenceSearcher {
 
+    private final WordScanner firstByteScanner;
 
     /**
      * Constructs a SequenceMatcherSearcher given a {@link SequenceMatcher}.
@@ -68,14 +75,24 @@ public final class SequenceMatcherSearcher extends AbstractSequenceSearcher {
      */
     public SequenceMatcherSearcher(final SequenceMatcher sequence) {
         super(sequence);
+        firstByteScanner = WordScanner.forMatcher(sequence.getMatcherForPosition(0));
     }
 
 
     /**
      * {@inheritDoc}
-     */    
+     */
     @Override
     public List<SearchResult<SequenceMatcher>> searchForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */    
+    @Override
+    protected int searchPositionForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
         // Initialise:
         final SequenceMatcher sequence = matcher;
         
@@ -83,59 +100,91 @@ public final class SequenceMatcherSearcher extends AbstractSequenceSearcher {
         final int lastPossiblePosition = bytes.length - sequence.length();
         final int lastPosition = toPosition < lastPossiblePosition?
                                  toPosition : lastPossiblePosition;
+        final WordScanner scanner = firstByteScanner;
         int searchPosition = fromPosition > 0?
                              fromPosition : 0;
         
-        // Search forwards
+        // Search forwards, skipping to positions where the first byte matches:
         while (searchPosition <= lastPosition) {
+            searchPosition = scanner.indexOf(bytes, searchPosition, lastPosition);
+            if (searchPosition < 0) {
+                break;
+            }
             if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
-                return SearchUtils.singleResult(searchPosition, sequence);
+                return searchPosition;
             }
             searchPosition++;
         }
-        return SearchUtils.noResults();    
+        return NO_MATCH;    
     }    
     
     
+    /**
+     * Returns true, as this searcher searches ByteBuffers without copying them.
+     *
+     * @return true
+     */
+    @Override
+    protected boolean searchesBuffersDirectly() {
+        return true;
+    }
+
+
     /**
      * {@inheritDoc}
      */
     @Override
-    public List<SearchResult<SequenceMatcher>> doSearchForwards(final WindowReader reader, final long fromPosition, 
-            final long toPosition) throws IOException {
+    protected List<SearchResult<SequenceMatcher>> searchForwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(buffer, fromPosition, toPosition));
+    }
+
+
+    /**
+     * Searches forward in a ByteBuffer, scanning for the first byte of the sequence
+     * directly in the buffer, so off-heap buffers are not copied.
+     */
+    @Override
+    protected int searchPositionForwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
         // Initialise:
-        final SequenceMatcher sequence = matcher;  
-        long searchPosition = fromPosition > 0? 
-                              fromPosition : 0;
-        
-        // While there is data still to search in:
-        Window window;
-        while (searchPosition <= toPosition &&
-               (window = reader.getWindow(searchPosition)) != null) {
-
-            // Calculate bounds for searching over this window:
-            final int searchLength = window.length() - reader.getWindowOffset(searchPosition);
-            final long endWindowPosition = searchPosition + searchLength - 1;
-            final long lastPosition = endWindowPosition < toPosition?
-                                      endWindowPosition : toPosition;
-            
-            // Search forwards up to the end of this window:
-            while (searchPosition <= lastPosition) {
-                if (sequence.matches(reader, searchPosition)) {
-                    return SearchUtils.singleResult(searchPosition, sequence);
-                }
-                searchPosition++;
+        final SequenceMatcher sequence = matcher;
+
+        // Calculate safe bounds for the search:
+        final int lastPossiblePosition = buffer.limit() - sequence.length();
+        final int lastPosition = toPosition < lastPossiblePosition?
+                                 toPosition : lastPossiblePosition;
+        final WordScanner scanner = firstByteScanner;
+        int searchPosition = fromPosition > 0?
+                             fromPosition : 0;
+
+        // Search forwards, skipping to positions where the first byte matches:
+        while (searchPosition <= lastPosition) {
+            searchPosition = scanner.indexOf(buffer, searchPosition, lastPosition);
+            if (searchPosition < 0) {
+                break;
+            }
+            if (matchesNoBoundsCheck(sequence, buffer, searchPosition)) {
+                return searchPosition;
             }
+            searchPosition++;
         }
-        return SearchUtils.noResults();
+        return NO_MATCH;
     }
-    
-   
+
+
     /**
      * {@inheritDoc}
      */
     @Override
     public List<SearchResult<SequenceMatcher>> searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
         // Initialise:
         final SequenceMatcher sequence = matcher;
         
@@ -143,17 +192,22 @@ public final class SequenceMatcherSearcher extends AbstractSequenceSearcher {
         final int lastPosition = toPosition > 0?
                                  toPosition : 0;
         final int firstPossiblePosition = bytes.length - sequence.length();
+        final WordScanner scanner = firstByteScanner;
         int searchPosition = fromPosition < firstPossiblePosition?
                              fromPosition : firstPossiblePosition;
         
-        // Search backwards:
+        // Search backwards, skipping to positions where the first byte matches:
         while (searchPosition >= lastPosition) {
+            searchPosition = scanner.lastIndexOf(bytes, searchPosition, lastPosition);
+            if (searchPosition < 0) {
+                break;
+            }
             if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
-                return  SearchUtils.singleResult(searchPosition, sequence);
+                return searchPosition;
             }
             searchPosition--;
         }
-        return SearchUtils.noResults();
+        return NO_MATCH;
     }
     
     
@@ -161,34 +215,43 @@ public final class SequenceMatcherSearcher extends AbstractSequenceSearcher {
      * {@inheritDoc}
      */
     @Override
-    public List<SearchResult<SequenceMatcher>> doSearchBackwards(final WindowReader reader, final long fromPosition, 
-            final long toPosition) throws IOException {
+    protected List<SearchResult<SequenceMatcher>> searchBackwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(buffer, fromPosition, toPosition));
+    }
+
+
+    /**
+     * Searches backwards in a ByteBuffer, scanning for the first byte of the sequence
+     * directly in the buffer, so off-heap buffers are not copied.
+     */
+    @Override
+    protected int searchPositionBackwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
         // Initialise:
         final SequenceMatcher sequence = matcher;
-        long searchPosition = withinLength(reader, fromPosition);
-        
-        // While there is data to search in:
-        Window window;        
-        while (searchPosition >= toPosition &&
-               (window = reader.getWindow(searchPosition)) != null) {
-            
-            // Calculate bounds for searching back across this window:
-            final long windowStartPosition = window.getWindowPosition();
-            final long lastSearchPosition = toPosition > windowStartPosition?
-                                            toPosition : windowStartPosition;
-            
-            // Search backwards:
-            while (searchPosition >= lastSearchPosition) {
-                if (sequence.matches(reader, searchPosition)) {
-                    return SearchUtils.singleResult(searchPosition, sequence);
-                }
-                searchPosition--;
+
+        // Calculate safe bounds for the search:
+        final int lastPosition = toPosition > 0?
+                                 toPosition : 0;
+        final int firstPossiblePosition = buffer.limit() - sequence.length();
+        final WordScanner scanner = firstByteScanner;
+        int searchPosition = fromPosition < firstPossiblePosition?
+                             fromPosition : firstPossiblePosition;
+
+        // Search backwards, skipping to positions where the first byte matches:
+        while (searchPosition >= lastPosition) {
+            searchPosition = scanner.lastIndexOf(buffer, searchPosition, lastPosition);
+            if (searchPosition < 0) {
+                break;
+            }
+            if (matchesNoBoundsCheck(sequence, buffer, searchPosition)) {
+                return searchPosition;
             }
+            searchPosition--;
         }
-        return SearchUtils.noResults();
+        return NO_MATCH;
     }
 
-   
+
     /**
      * {@inheritDoc}
      */
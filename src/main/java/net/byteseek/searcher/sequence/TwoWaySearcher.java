@@ -0,0 +1,548 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence;
+
+import java.util.List;
+
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.MatchListener;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.sequence.bitparallel.ShiftOrSearcher;
+import net.byteseek.utils.factory.ObjectFactory;
+import net.byteseek.utils.lazy.DoubleCheckImmutableLazyObject;
+import net.byteseek.utils.lazy.LazyObject;
+
+/**
+ * TwoWaySearcher searches for a sequence using the Two-Way algorithm of
+ * Crochemore and Perrin, which takes linear time in the worst case and only
+ * a constant amount of extra space.
+ * <p>
+ * Searchers which shift by a table of bad characters, such as the Horspool and
+ * Sunday searchers, are fast on typical data but degrade to O(n * m) on adversarial
+ * data.  For example, searching for 00{200} 01 in a long run of zero bytes verifies
+ * almost the whole sequence at every position.  The Two-Way algorithm never examines
+ * a byte more than a small constant number of times, giving predictable performance
+ * on hostile content at some cost to its best case.
+ * <p>
+ * The sequence is split at a critical factorisation into a left and a right part.  The
+ * right part is matched forwards first; a mismatch there shifts past the bytes already
+ * matched.  Only if the right part matches is the left part matched backwards, after
+ * which the search shifts by the period of the sequence.  If the sequence is periodic,
+ * the search remembers how much of the sequence is already known to match after a
+ * shift, so it is never compared again.  Searching backwards uses a critical
+ * factorisation of the reversed sequence in the same way.
+ * <p>
+ * The factorisation depends on the ordering of byte values, so it is only calculated
+ * for sequences in which every position matches a single byte.  Sequences containing
+ * byte classes are searched by a {@link ShiftOrSearcher}, which reads each byte once
+ * however many bytes each position matches, so the search remains linear in the length
+ * of the data, although each byte costs one step for every 64 positions of the sequence.
+ * <p>
+ * In a reader, each window array is searched with the Two-Way algorithm, remembering what
+ * is already matched from one match to the next when a listener is used.  Positions where
+ * the sequence crosses a window boundary are searched in the same way, over a copy of the
+ * bytes around the boundary which covers at least as many positions as the sequence is long.
+ * The search only restarts at window boundaries, so it stays linear in the length of the data.
+ * <p>
+ * Thread safety: this class is immutable, so it is safe to use this
+ * searcher in multiple threads simultaneously.
+ *
+ * @author Matt Palmer
+ */
+public final class TwoWaySearcher extends AbstractSequenceSearcher {
+
+    private final LazyObject<SearchInfo> forwardInfo;
+    private final LazyObject<SearchInfo> backwardInfo;
+    private final AbstractSequenceSearcher fallbackSearcher;
+
+
+    /**
+     * Constructs a TwoWaySearcher given a {@link SequenceMatcher} to search for.
+     *
+     * @param sequence The SequenceMatcher to search for.
+     */
+    public TwoWaySearcher(final SequenceMatcher sequence) {
+        super(sequence);
+        forwardInfo  = new DoubleCheckImmutableLazyObject<SearchInfo>(new ForwardInfoFactory());
+        backwardInfo = new DoubleCheckImmutableLazyObject<SearchInfo>(new BackwardInfoFactory());
+        fallbackSearcher = new ShiftOrSearcher(sequence);
+    }
+
+
+    /**
+     * Returns whether the sequence is searched using the Two-Way algorithm, which is the
+     * case if every position in the sequence matches a single byte.  If not, it is
+     * searched by a {@link ShiftOrSearcher}.
+     *
+     * @return true if the sequence is searched using the Two-Way algorithm.
+     */
+    public boolean isTwoWay() {
+        return forwardInfo.get() != SearchInfo.NOT_LITERAL;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        final SearchInfo info = forwardInfo.get();
+        if (info == SearchInfo.NOT_LITERAL) {
+            return fallbackSearcher.searchPositionForwards(bytes, fromPosition, toPosition);
+        }
+        return searchForwards(info, bytes, fromPosition, toPosition, -1);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation continues the search after each match, keeping the
+     * shift and memory of the Two-Way algorithm, so finding all the matches
+     * of a periodic sequence still takes linear time.
+     */
+    @Override
+    public long searchForwards(final byte[] bytes, final int fromPosition, final int toPosition,
+                               final MatchListener<SequenceMatcher> listener) {
+        final SearchInfo info = forwardInfo.get();
+        if (info == SearchInfo.NOT_LITERAL) {
+            return super.searchForwards(bytes, fromPosition, toPosition, listener);
+        }
+        long numMatches = 0;
+        int searchPosition = fromPosition;
+        int memory = -1;
+        int matchPosition;
+        while (searchPosition <= toPosition &&
+               (matchPosition = searchForwards(info, bytes, searchPosition, toPosition, memory)) >= 0) {
+            numMatches++;
+            if (!listener.matchFound(matchPosition, matcher)) {
+                break;
+            }
+            searchPosition = matchPosition + info.shiftAfterMatch;
+            memory = info.memoryAfterMatch;
+        }
+        return numMatches;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        final SearchInfo info = backwardInfo.get();
+        if (info == SearchInfo.NOT_LITERAL) {
+            return fallbackSearcher.searchPositionBackwards(bytes, fromPosition, toPosition);
+        }
+        return searchBackwards(info, bytes, fromPosition, toPosition, -1);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation continues the search after each match, keeping the
+     * shift and memory of the Two-Way algorithm, so finding all the matches
+     * of a periodic sequence still takes linear time.
+     */
+    @Override
+    public long searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition,
+                                final MatchListener<SequenceMatcher> listener) {
+        final SearchInfo info = backwardInfo.get();
+        if (info == SearchInfo.NOT_LITERAL) {
+            return super.searchBackwards(bytes, fromPosition, toPosition, listener);
+        }
+        long numMatches = 0;
+        int searchPosition = fromPosition;
+        int memory = -1;
+        int matchPosition;
+        while (searchPosition >= toPosition &&
+               (matchPosition = searchBackwards(info, bytes, searchPosition, toPosition, memory)) >= 0) {
+            numMatches++;
+            if (!listener.matchFound(matchPosition, matcher)) {
+                break;
+            }
+            searchPosition = matchPosition - info.shiftAfterMatch;
+            memory = info.memoryAfterMatch;
+        }
+        return numMatches;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareForwards() {
+        if (forwardInfo.get() == SearchInfo.NOT_LITERAL) {
+            fallbackSearcher.prepareForwards();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareBackwards() {
+        if (backwardInfo.get() == SearchInfo.NOT_LITERAL) {
+            fallbackSearcher.prepareBackwards();
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[sequence:" + matcher + ']';
+    }
+
+
+    /**
+     * Searches forwards using the Two-Way algorithm.
+     *
+     * @param info The factorisation of the sequence.
+     * @param bytes The bytes to search in.
+     * @param fromPosition The position to search from.
+     * @param toPosition The last position a match can start at.
+     * @param initialMemory The length of the sequence already known to match at the from position, minus one,
+     *                      or -1 if nothing is known.
+     * @return The position of the first match, or NO_MATCH if there is no match.
+     */
+    private static int searchForwards(final SearchInfo info, final byte[] bytes,
+                                      final int fromPosition, final int toPosition, final int initialMemory) {
+        final byte[] pattern = info.pattern;
+        final int length = pattern.length;
+        final int split = info.split;
+        final int lastPossiblePosition = bytes.length - length;
+        final int lastPosition = toPosition < lastPossiblePosition?
+                                 toPosition : lastPossiblePosition;
+        int searchPosition = fromPosition;
+        int memory = initialMemory;
+        if (searchPosition < 0) {
+            searchPosition = 0;
+            memory = -1;
+        }
+
+        if (info.periodic) {
+            final int period = info.period;
+            while (searchPosition <= lastPosition) {
+                // Match the right part, skipping any part already known to match:
+                int position = (split > memory? split : memory) + 1;
+                while (position < length && pattern[position] == bytes[searchPosition + position]) {
+                    position++;
+                }
+                if (position < length) {
+                    searchPosition += position - split;
+                    memory = -1;
+                } else {
+                    // Match the left part, back to the part already known to match:
+                    position = split;
+                    while (position > memory && pattern[position] == bytes[searchPosition + position]) {
+                        position--;
+                    }
+                    if (position <= memory) {
+                        return searchPosition;
+                    }
+                    searchPosition += period;
+                    memory = length - period - 1;
+                }
+            }
+        } else {
+            final int shift = info.shiftAfterMatch;
+            while (searchPosition <= lastPosition) {
+                // Match the right part:
+                int position = split + 1;
+                while (position < length && pattern[position] == bytes[searchPosition + position]) {
+                    position++;
+                }
+                if (position < length) {
+                    searchPosition += position - split;
+                } else {
+                    // Match the left part:
+                    position = split;
+                    while (position >= 0 && pattern[position] == bytes[searchPosition + position]) {
+                        position--;
+                    }
+                    if (position < 0) {
+                        return searchPosition;
+                    }
+                    searchPosition += shift;
+                }
+            }
+        }
+        return NO_MATCH;
+    }
+
+
+    /**
+     * Searches backwards using the Two-Way algorithm on the reversed sequence.
+     * Position i of the reversed sequence at search position s is the byte at s + length - 1 - i.
+     *
+     * @param info The factorisation of the reversed sequence.
+     * @param bytes The bytes to search in.
+     * @param fromPosition The position to search back from.
+     * @param toPosition The last position to search back to.
+     * @param initialMemory The length of the reversed sequence already known to match at the from position,
+     *                      minus one, or -1 if nothing is known.
+     * @return The position of the first match searching backwards, or NO_MATCH if there is no match.
+     */
+    private static int searchBackwards(final SearchInfo info, final byte[] bytes,
+                                       final int fromPosition, final int toPosition, final int initialMemory) {
+        final byte[] pattern = info.pattern;
+        final int length = pattern.length;
+        final int lastIndex = length - 1;
+        final int split = info.split;
+        final int lastPosition = toPosition > 0?
+                                 toPosition : 0;
+        final int firstPossiblePosition = bytes.length - length;
+        int searchPosition = fromPosition;
+        int memory = initialMemory;
+        if (searchPosition > firstPossiblePosition) {
+            searchPosition = firstPossiblePosition;
+            memory = -1;
+        }
+
+        if (info.periodic) {
+            final int period = info.period;
+            while (searchPosition >= lastPosition) {
+                final int end = searchPosition + lastIndex;
+                int position = (split > memory? split : memory) + 1;
+                while (position < length && pattern[position] == bytes[end - position]) {
+                    position++;
+                }
+                if (position < length) {
+                    searchPosition -= position - split;
+                    memory = -1;
+                } else {
+                    position = split;
+                    while (position > memory && pattern[position] == bytes[end - position]) {
+                        position--;
+                    }
+                    if (position <= memory) {
+                        return searchPosition;
+                    }
+                    searchPosition -= period;
+                    memory = length - period - 1;
+                }
+            }
+        } else {
+            final int shift = info.shiftAfterMatch;
+            while (searchPosition >= lastPosition) {
+                final int end = searchPosition + lastIndex;
+                int position = split + 1;
+                while (position < length && pattern[position] == bytes[end - position]) {
+                    position++;
+                }
+                if (position < length) {
+                    searchPosition -= position - split;
+                } else {
+                    position = split;
+                    while (position >= 0 && pattern[position] == bytes[end - position]) {
+                        position--;
+                    }
+                    if (position < 0) {
+                        return searchPosition;
+                    }
+                    searchPosition -= shift;
+                }
+            }
+        }
+        return NO_MATCH;
+    }
+
+
+    /**
+     * Returns the bytes of a sequence in which every position matches a single byte,
+     * optionally reversed, or null if any position matches more than one byte.
+     */
+    private static byte[] literalBytes(final SequenceMatcher sequence, final boolean reversed) {
+        final int length = sequence.length();
+        final byte[] bytes = new byte[length];
+        for (int position = 0; position < length; position++) {
+            final byte[] matching = sequence.getMatcherForPosition(position).getMatchingBytes();
+            if (matching.length != 1) {
+                return null;
+            }
+            bytes[reversed? length - 1 - position : position] = matching[0];
+        }
+        return bytes;
+    }
+
+
+    /**
+     * Calculates the maximal suffix of a pattern under an ordering of byte values,
+     * returning the position before the suffix starts in the first element, and
+     * the period of the suffix in the second.
+     */
+    private static int[] maximalSuffix(final byte[] pattern, final boolean reverseOrder) {
+        final int length = pattern.length;
+        int suffix = -1;
+        int candidate = 0;
+        int offset = 1;
+        int period = 1;
+        while (candidate + offset < length) {
+            final int candidateByte = pattern[candidate + offset] & 0xFF;
+            final int suffixByte = pattern[suffix + offset] & 0xFF;
+            if (reverseOrder? candidateByte > suffixByte : candidateByte < suffixByte) {
+                // The candidate suffix is smaller; skip past it:
+                candidate += offset;
+                offset = 1;
+                period = candidate - suffix;
+            } else if (candidateByte == suffixByte) {
+                // Still matching the period so far:
+                if (offset != period) {
+                    offset++;
+                } else {
+                    candidate += period;
+                    offset = 1;
+                }
+            } else {
+                // The candidate suffix is larger; it becomes the maximal suffix:
+                suffix = candidate;
+                candidate = suffix + 1;
+                offset = 1;
+                period = 1;
+            }
+        }
+        return new int[] {suffix, period};
+    }
+
+
+    /**
+     * The critical factorisation of a literal sequence (or its reverse), and the
+     * shifts to use when searching with it.
+     */
+    private static final class SearchInfo {
+
+        /**
+         * Search info for sequences containing byte classes, which are not searched with Two-Way.
+         */
+        private static final SearchInfo NOT_LITERAL = new SearchInfo();
+
+        private final byte[] pattern;
+        private final int split;
+        private final int period;
+        private final boolean periodic;
+        private final int shiftAfterMatch;
+        private final int memoryAfterMatch;
+
+        private SearchInfo() {
+            pattern = null;
+            split = period = shiftAfterMatch = memoryAfterMatch = 0;
+            periodic = false;
+        }
+
+        private SearchInfo(final byte[] pattern) {
+            this.pattern = pattern;
+            final int length = pattern.length;
+
+            // The critical factorisation is the later of the maximal suffixes
+            // under the two orderings of byte values:
+            final int[] lessThan = maximalSuffix(pattern, false);
+            final int[] greaterThan = maximalSuffix(pattern, true);
+            final int[] critical = lessThan[0] > greaterThan[0]? lessThan : greaterThan;
+            split = critical[0];
+            final int suffixPeriod = critical[1];
+
+            // The sequence is periodic with the period of its suffix if the left
+            // part also occurs that period further along:
+            boolean leftRepeats = split + 1 + suffixPeriod <= length;
+            for (int position = 0; leftRepeats && position <= split; position++) {
+                leftRepeats = pattern[position] == pattern[position + suffixPeriod];
+            }
+            periodic = leftRepeats;
+            if (periodic) {
+                period = suffixPeriod;
+                shiftAfterMatch = suffixPeriod;
+                memoryAfterMatch = length - suffixPeriod - 1;
+            } else {
+                // The period is larger than either part, so this shift is safe:
+                period = (split + 1 > length - split - 1? split + 1 : length - split - 1) + 1;
+                shiftAfterMatch = period;
+                memoryAfterMatch = -1;
+            }
+        }
+    }
+
+
+    private final class ForwardInfoFactory implements ObjectFactory<SearchInfo> {
+
+        private ForwardInfoFactory() {
+        }
+
+        /**
+         * Calculates the critical factorisation of the sequence, if it is literal.
+         */
+        @Override
+        public SearchInfo create() {
+            final byte[] pattern = literalBytes(getMatcher(), false);
+            return pattern == null? SearchInfo.NOT_LITERAL : new SearchInfo(pattern);
+        }
+    }
+
+
+    private final class BackwardInfoFactory implements ObjectFactory<SearchInfo> {
+
+        private BackwardInfoFactory() {
+        }
+
+        /**
+         * Calculates the critical factorisation of the reversed sequence, if it is literal.
+         */
+        @Override
+        public SearchInfo create() {
+            final byte[] pattern = literalBytes(getMatcher(), true);
+            return pattern == null? SearchInfo.NOT_LITERAL : new SearchInfo(pattern);
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence.bitparallel;
+
+import net.byteseek.matcher.sequence.SequenceMatcher;
+
+/**
+ * Static utility methods for building the bitmask tables used by bit-parallel searchers.
+ * <p>
+ * A table holds a mask for each of the 256 byte values, with a bit for each position in
+ * the sequence.  Sequences longer than 64 positions use more than one long word for each
+ * mask, so the table holds 256 * numberOfWords longs, with the words for each byte value
+ * stored together, least significant word first.  Byte classes cost nothing extra: a
+ * position simply sets its bit in the mask of every byte it matches.
+ *
+ * @author Matt Palmer
+ */
+final class BitParallelUtils {
+
+    private BitParallelUtils() {
+    }
+
+
+    /**
+     * Returns the number of long words needed to hold a bit for each position in a sequence.
+     *
+     * @param length The length of the sequence.
+     * @return The number of long words needed to hold a bit for each position.
+     */
+    static int numberOfWords(final int length) {
+        return (length + 63) >>> 6;
+    }
+
+
+    /**
+     * Builds a table of bitmasks for each byte value from a sequence.  The bit for position i in
+     * the sequence is bit i, or bit (length - 1 - i) if reversed, and it is set in the masks of
+     * all the bytes which match at that position.  If inverted, all the bits in the table are
+     * flipped, so the bits for matching positions are zero instead.
+     *
+     * @param sequence The sequence to build masks for.
+     * @param reversed Whether the bits are numbered from the end of the sequence.
+     * @param inverted Whether the bits of the masks are inverted.
+     * @return A table of 256 * numberOfWords(sequence.length()) longs.
+     */
+    static long[] getMasks(final SequenceMatcher sequence, final boolean reversed, final boolean inverted) {
+        final int length = sequence.length();
+        final int words = numberOfWords(length);
+        final long[] masks = new long[256 * words];
+        for (int position = 0; position < length; position++) {
+            final int bit = reversed? length - 1 - position : position;
+            final int wordOffset = bit >>> 6;
+            final long bitMask = 1L << (bit & 63);
+            for (final byte value : sequence.getMatcherForPosition(position).getMatchingBytes()) {
+                masks[(value & 0xFF) * words + wordOffset] |= bitMask;
+            }
+        }
+        if (inverted) {
+            for (int index = 0; index < masks.length; index++) {
+                masks[index] = ~masks[index];
+            }
+        }
+        return masks;
+    }
+
+}
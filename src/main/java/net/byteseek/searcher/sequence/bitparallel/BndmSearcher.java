@@ -0,0 +1,311 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence.bitparallel;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
+import net.byteseek.utils.factory.ObjectFactory;
+import net.byteseek.utils.lazy.DoubleCheckImmutableLazyObject;
+import net.byteseek.utils.lazy.LazyObject;
+
+/**
+ * BndmSearcher searches for a sequence using the Backward Nondeterministic DAWG Matching
+ * algorithm of Navarro and Raffinot.
+ * <p>
+ * The bytes in a window the length of the sequence are read backwards, simulating an
+ * automaton which recognises all the factors of the sequence with a bit for each position
+ * in a state word.  When no factor of the sequence remains the window is shifted past the
+ * bytes read, aligning it with the longest prefix of the sequence which was recognised on
+ * the way.  Like the Horspool searchers it is sub-linear, but its shifts depend on whole
+ * factors of the sequence rather than on the last byte alone, so they stay long even when
+ * positions in the sequence match many bytes.  The Sunday and Horspool searchers must take
+ * the minimum shift over every byte a position can match, so a single wide byte class near
+ * the end of a sequence cuts their shifts to one or two bytes.
+ * <p>
+ * Byte classes are handled natively, by setting a position's bit in the mask of every byte
+ * it matches.  Sequences up to 64 positions use a single long for the state; longer sequences
+ * use as many longs as required.
+ * <p>
+ * Thread safety: this class is immutable, so it is safe to use this
+ * searcher in multiple threads simultaneously.
+ *
+ * @author Matt Palmer
+ */
+public final class BndmSearcher extends AbstractSequenceSearcher {
+
+    private final LazyObject<long[]> forwardInfo;
+    private final LazyObject<long[]> backwardInfo;
+
+
+    /**
+     * Constructs a BndmSearcher given a {@link SequenceMatcher} to search for.
+     *
+     * @param sequence The SequenceMatcher to search for.
+     */
+    public BndmSearcher(final SequenceMatcher sequence) {
+        super(sequence);
+        forwardInfo  = new DoubleCheckImmutableLazyObject<long[]>(new ForwardInfoFactory());
+        backwardInfo = new DoubleCheckImmutableLazyObject<long[]>(new BackwardInfoFactory());
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+
+        // Get the objects needed to search:
+        final long[] masks = forwardInfo.get();
+        final int length = matcher.length();
+
+        // Calculate safe bounds for the search:
+        final int lastPossiblePosition = bytes.length - length;
+        final int lastPosition = toPosition < lastPossiblePosition?
+                                 toPosition : lastPossiblePosition;
+        int searchPosition = fromPosition > 0?
+                             fromPosition : 0;
+
+        // Search forwards, reading each window backwards.  The state can only be non-zero
+        // after reading the whole window if the prefix bit is set, so the reads never go
+        // before the start of the window.
+        if (length <= 64) {
+            final long prefixBit = 1L << (length - 1);
+            while (searchPosition <= lastPosition) {
+                int position = length - 1;
+                int shift = length;
+                long state = masks[bytes[searchPosition + position] & 0xFF];
+                while (state != 0) {
+                    if ((state & prefixBit) != 0) {
+                        if (position == 0) {
+                            return searchPosition;
+                        }
+                        shift = position;
+                    }
+                    state = (state << 1) & masks[bytes[searchPosition + --position] & 0xFF];
+                }
+                searchPosition += shift;
+            }
+        } else {
+            final int words = BitParallelUtils.numberOfWords(length);
+            final int topWord = words - 1;
+            final long prefixBit = 1L << ((length - 1) & 63);
+            final long[] state = new long[words];
+            while (searchPosition <= lastPosition) {
+                int position = length - 1;
+                int shift = length;
+                Arrays.fill(state, ~0L);
+                while (andMasks(state, masks, (bytes[searchPosition + position] & 0xFF) * words)) {
+                    if ((state[topWord] & prefixBit) != 0) {
+                        if (position == 0) {
+                            return searchPosition;
+                        }
+                        shift = position;
+                    }
+                    shiftLeft(state);
+                    position--;
+                }
+                searchPosition += shift;
+            }
+        }
+
+        return NO_MATCH;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+
+        // Get the objects needed to search:
+        final long[] masks = backwardInfo.get();
+        final int length = matcher.length();
+        final int lastOffset = length - 1;
+
+        // Calculate safe bounds for the search:
+        final int firstPossiblePosition = bytes.length - length;
+        int searchPosition = fromPosition < firstPossiblePosition?
+                             fromPosition : firstPossiblePosition;
+        final int lastPosition = toPosition > 0?
+                                 toPosition : 0;
+
+        // Search backwards, reading each window forwards, which matches the
+        // reversed sequence in the same way as searching forwards:
+        if (length <= 64) {
+            final long prefixBit = 1L << lastOffset;
+            while (searchPosition >= lastPosition) {
+                int offset = 0;
+                int shift = length;
+                long state = masks[bytes[searchPosition] & 0xFF];
+                while (state != 0) {
+                    if ((state & prefixBit) != 0) {
+                        if (offset == lastOffset) {
+                            return searchPosition;
+                        }
+                        shift = lastOffset - offset;
+                    }
+                    state = (state << 1) & masks[bytes[searchPosition + ++offset] & 0xFF];
+                }
+                searchPosition -= shift;
+            }
+        } else {
+            final int words = BitParallelUtils.numberOfWords(length);
+            final int topWord = words - 1;
+            final long prefixBit = 1L << (lastOffset & 63);
+            final long[] state = new long[words];
+            while (searchPosition >= lastPosition) {
+                int offset = 0;
+                int shift = length;
+                Arrays.fill(state, ~0L);
+                while (andMasks(state, masks, (bytes[searchPosition + offset] & 0xFF) * words)) {
+                    if ((state[topWord] & prefixBit) != 0) {
+                        if (offset == lastOffset) {
+                            return searchPosition;
+                        }
+                        shift = lastOffset - offset;
+                    }
+                    shiftLeft(state);
+                    offset++;
+                }
+                searchPosition -= shift;
+            }
+        }
+
+        return NO_MATCH;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareForwards() {
+        forwardInfo.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareBackwards() {
+        backwardInfo.get();
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[sequence:" + matcher + ']';
+    }
+
+
+    /**
+     * Ands a multi-word state with the mask of a byte, returning whether any bits remain set.
+     */
+    private static boolean andMasks(final long[] state, final long[] masks, final int maskIndex) {
+        long anyBits = 0;
+        for (int word = 0; word < state.length; word++) {
+            anyBits |= (state[word] &= masks[maskIndex + word]);
+        }
+        return anyBits != 0;
+    }
+
+
+    /**
+     * Shifts a multi-word state left by one bit.
+     */
+    private static void shiftLeft(final long[] state) {
+        for (int word = state.length - 1; word > 0; word--) {
+            state[word] = (state[word] << 1) | (state[word - 1] >>> 63);
+        }
+        state[0] <<= 1;
+    }
+
+
+    private final class ForwardInfoFactory implements ObjectFactory<long[]> {
+
+        private ForwardInfoFactory() {
+        }
+
+        /**
+         * Calculates the masks to use searching forwards, in which the bits are numbered
+         * from the end of the sequence, and are set for the bytes which match at that position.
+         */
+        @Override
+        public long[] create() {
+            return BitParallelUtils.getMasks(getMatcher(), true, false);
+        }
+    }
+
+
+    private final class BackwardInfoFactory implements ObjectFactory<long[]> {
+
+        private BackwardInfoFactory() {
+        }
+
+        /**
+         * Calculates the masks to use searching backwards, in which the bit for each
+         * position in the sequence is set for the bytes which match at that position.
+         */
+        @Override
+        public long[] create() {
+            return BitParallelUtils.getMasks(getMatcher(), false, false);
+        }
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence.bitparallel;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
+import net.byteseek.utils.factory.ObjectFactory;
+import net.byteseek.utils.lazy.DoubleCheckImmutableLazyObject;
+import net.byteseek.utils.lazy.LazyObject;
+
+/**
+ * ShiftOrSearcher searches for a sequence using the bit-parallel Shift-Or algorithm
+ * of Baeza-Yates and Gonnet.
+ * <p>
+ * Each position in the sequence is a bit in a state word, which records which prefixes
+ * of the sequence end at the current byte.  Every byte is read exactly once, updating the
+ * state with a shift and a lookup in a table of 256 bitmasks.  Byte classes are handled
+ * natively, by setting a position's bit in the mask of every byte it matches, so the
+ * search takes the same time however many bytes each position can match.  This makes it
+ * a good choice for short sequences with many byte classes, where the shifts of the
+ * Horspool and Sunday searchers become very small.
+ * <p>
+ * Sequences up to 64 positions use a single long for the state; longer sequences use
+ * as many longs as required.
+ * <p>
+ * Thread safety: this class is immutable, so it is safe to use this
+ * searcher in multiple threads simultaneously.
+ *
+ * @author Matt Palmer
+ */
+public final class ShiftOrSearcher extends AbstractSequenceSearcher {
+
+    private final LazyObject<long[]> forwardInfo;
+    private final LazyObject<long[]> backwardInfo;
+
+
+    /**
+     * Constructs a ShiftOrSearcher given a {@link SequenceMatcher} to search for.
+     *
+     * @param sequence The SequenceMatcher to search for.
+     */
+    public ShiftOrSearcher(final SequenceMatcher sequence) {
+        super(sequence);
+        forwardInfo  = new DoubleCheckImmutableLazyObject<long[]>(new ForwardInfoFactory());
+        backwardInfo = new DoubleCheckImmutableLazyObject<long[]>(new BackwardInfoFactory());
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+
+        // Get the objects needed to search:
+        final long[] masks = forwardInfo.get();
+        final int length = matcher.length();
+
+        // Calculate safe bounds for the search:
+        final int lastPossiblePosition = bytes.length - length;
+        final int lastPosition = toPosition < lastPossiblePosition?
+                                 toPosition : lastPossiblePosition;
+        final int startPosition = fromPosition > 0?
+                                  fromPosition : 0;
+        final int lastBytePosition = lastPosition + length - 1;
+
+        // Search forwards, reading each byte once:
+        if (length <= 64) {
+            final long matchBit = 1L << (length - 1);
+            long state = ~0L;
+            for (int bytePosition = startPosition; bytePosition <= lastBytePosition; bytePosition++) {
+                state = (state << 1) | masks[bytes[bytePosition] & 0xFF];
+                if ((state & matchBit) == 0) {
+                    return bytePosition - length + 1;
+                }
+            }
+        } else {
+            final int words = BitParallelUtils.numberOfWords(length);
+            final int topWord = words - 1;
+            final long matchBit = 1L << ((length - 1) & 63);
+            final long[] state = new long[words];
+            Arrays.fill(state, ~0L);
+            for (int bytePosition = startPosition; bytePosition <= lastBytePosition; bytePosition++) {
+                final int maskIndex = (bytes[bytePosition] & 0xFF) * words;
+                for (int word = topWord; word > 0; word--) {
+                    state[word] = (state[word] << 1) | (state[word - 1] >>> 63) | masks[maskIndex + word];
+                }
+                state[0] = (state[0] << 1) | masks[maskIndex];
+                if ((state[topWord] & matchBit) == 0) {
+                    return bytePosition - length + 1;
+                }
+            }
+        }
+
+        return NO_MATCH;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+
+        // Get the objects needed to search:
+        final long[] masks = backwardInfo.get();
+        final int length = matcher.length();
+
+        // Calculate safe bounds for the search:
+        final int firstPossiblePosition = bytes.length - length;
+        final int startPosition = fromPosition < firstPossiblePosition?
+                                  fromPosition : firstPossiblePosition;
+        final int lastPosition = toPosition > 0?
+                                 toPosition : 0;
+
+        // Search backwards, reading each byte once.  The state records the prefixes
+        // of the reversed sequence which end at the current byte:
+        if (length <= 64) {
+            final long matchBit = 1L << (length - 1);
+            long state = ~0L;
+            for (int bytePosition = startPosition + length - 1; bytePosition >= lastPosition; bytePosition--) {
+                state = (state << 1) | masks[bytes[bytePosition] & 0xFF];
+                if ((state & matchBit) == 0) {
+                    return bytePosition;
+                }
+            }
+        } else {
+            final int words = BitParallelUtils.numberOfWords(length);
+            final int topWord = words - 1;
+            final long matchBit = 1L << ((length - 1) & 63);
+            final long[] state = new long[words];
+            Arrays.fill(state, ~0L);
+            for (int bytePosition = startPosition + length - 1; bytePosition >= lastPosition; bytePosition--) {
+                final int maskIndex = (bytes[bytePosition] & 0xFF) * words;
+                for (int word = topWord; word > 0; word--) {
+                    state[word] = (state[word] << 1) | (state[word - 1] >>> 63) | masks[maskIndex + word];
+                }
+                state[0] = (state[0] << 1) | masks[maskIndex];
+                if ((state[topWord] & matchBit) == 0) {
+                    return bytePosition;
+                }
+            }
+        }
+
+        return NO_MATCH;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareForwards() {
+        forwardInfo.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareBackwards() {
+        backwardInfo.get();
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[sequence:" + matcher + ']';
+    }
+
+
+    private final class ForwardInfoFactory implements ObjectFactory<long[]> {
+
+        private ForwardInfoFactory() {
+        }
+
+        /**
+         * Calculates the masks to use searching forwards, in which the bit for each
+         * position in the sequence is zero for the bytes which match at that position.
+         */
+        @Override
+        public long[] create() {
+            return BitParallelUtils.getMasks(getMatcher(), false, true);
+        }
+    }
+
+
+    private final class BackwardInfoFactory implements ObjectFactory<long[]> {
+
+        private BackwardInfoFactory() {
+        }
+
+        /**
+         * Calculates the masks to use searching backwards, in which the bits are numbered from
+         * the end of the sequence, and are zero for the bytes which match at that position.
+         */
+        @Override
+        public long[] create() {
+            return BitParallelUtils.getMasks(getMatcher(), true, true);
+        }
+    }
+
+}
@@ -31,21 +31,24 @@
 
 package net.byteseek.searcher.sequence.horspool;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
-import net.byteseek.io.reader.windows.Window;
-import net.byteseek.io.reader.WindowReader;
 import net.byteseek.matcher.bytes.AnyByteMatcher;
 import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.bytes.OptimalByteMatcherFactory;
 import net.byteseek.matcher.sequence.SequenceMatcher;
 import net.byteseek.utils.lazy.DoubleCheckImmutableLazyObject;
 import net.byteseek.utils.lazy.LazyObject;
 import net.byteseek.utils.factory.ObjectFactory;
 import net.byteseek.searcher.SearchResult;
-import net.byteseek.searcher.SearchUtils;
 import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
+import net.byteseek.searcher.tables.PreparedTableSearcher;
+import net.byteseek.searcher.tables.PreparedTables;
+import net.byteseek.utils.ArgUtils;
 
 
 
@@ -78,11 +81,21 @@ import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
  * One initially counter-intuitive consequence of this type of search is that
  * the longer the pattern you are searching for, the better the performance
  * can be, as the possible shifts will be correspondingly bigger. 
+ * <p>
+ * The safe shift tables, and the bytes matched before the verifier runs, can be saved as
+ * {@link PreparedTables}, and a searcher for the same sequence constructed from them will
+ * use them instead of calculating its own.
  * 
  * @author Matt Palmer
  */
-public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
+public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher implements PreparedTableSearcher {
+
+    private static final String FORWARD_TABLE     = "forwards";
+    private static final String BACKWARD_TABLE    = "backwards";
+    private static final String FORWARD_VERIFIER  = "forwards.verifier";
+    private static final String BACKWARD_VERIFIER = "backwards.verifier";
 
+    private final PreparedTables tables;
     private final LazyObject<SearchInfo> forwardInfo;
     private final LazyObject<SearchInfo> backwardInfo;
 
@@ -93,7 +106,21 @@ public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
      * @param sequence The SequenceMatcher to search for.
      */
     public BoyerMooreHorspoolSearcher(final SequenceMatcher sequence) {
+        this(sequence, null);
+    }
+
+    /**
+     * Constructs a BoyerMooreHorspool searcher given a {@link SequenceMatcher}
+     * to search for, and {@link PreparedTables} which may contain its safe shifts.
+     * If the tables do not contain shifts calculated for this sequence, they
+     * are calculated as normal.
+     * 
+     * @param sequence The SequenceMatcher to search for.
+     * @param tables The prepared tables to look for safe shifts in, or null if there are none.
+     */
+    public BoyerMooreHorspoolSearcher(final SequenceMatcher sequence, final PreparedTables tables) {
         super(sequence);
+        this.tables = tables;
         forwardInfo  = new DoubleCheckImmutableLazyObject<SearchInfo>(new ForwardInfoFactory());
         backwardInfo = new DoubleCheckImmutableLazyObject<SearchInfo>(new BackwardInfoFactory());
     }
@@ -101,9 +128,18 @@ public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
     
     /**
      * {@inheritDoc}
-     */    
+     */
     @Override
     public List<SearchResult<SequenceMatcher>> searchForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */    
+    @Override
+    protected int searchPositionForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
         
         // Get the objects needed to search:
         final SearchInfo info = forwardInfo.get();
@@ -131,7 +167,7 @@ public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
             while (!endOfSequence.matches(currentByte)) {
                 searchPosition += safeShifts[currentByte & 0xff];
                 if (searchPosition > finalPosition) {
-                    return SearchUtils.noResults();
+                    return NO_MATCH;
                 }
                 currentByte = bytes[searchPosition];                
             }
@@ -139,90 +175,103 @@ public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
             // The last byte matched - verify there is a complete match:
             final int startMatchPosition = searchPosition - lastMatcherPosition;
             if (verifier.matchesNoBoundsCheck(bytes, startMatchPosition)) {
-                return SearchUtils.singleResult(startMatchPosition, matcher); // match found.
+                return startMatchPosition; // match found.
             }
             
             // No match was found - shift forward by the shift for the current byte:
             searchPosition += safeShifts[currentByte & 0xff];
         }
         
-        return SearchUtils.noResults();
+        return NO_MATCH;
     }    
-        
-    
+
+
     /**
-     * Searches forward using the Boyer Moore Horspool algorithm, using 
-     * byte arrays from Windows to handle shifting, and the WindowReader interface
-     * on the SequenceMatcher to verify whether a match exists.
+     * Returns true, as this searcher searches ByteBuffers without copying them.
+     *
+     * @return true
      */
     @Override
-    protected List<SearchResult<SequenceMatcher>> doSearchForwards(final WindowReader reader, final long fromPosition, 
-        final long toPosition) throws IOException {
-            
+    protected boolean searchesBuffersDirectly() {
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<SearchResult<SequenceMatcher>> searchForwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(buffer, fromPosition, toPosition));
+    }
+
+
+    /**
+     * Searches forward in a ByteBuffer using the Boyer Moore Horspool algorithm,
+     * reading bytes directly from the buffer, so off-heap buffers are not copied.
+     */
+    @Override
+    protected int searchPositionForwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+
         // Get the objects needed to search:
         final SearchInfo info = forwardInfo.get();
         final int[] safeShifts = info.shifts;
-        final ByteMatcher endOfSequence = info.matcher;      
+        final ByteMatcher endOfSequence = info.matcher;
         final SequenceMatcher verifier = info.verifier;
-        
-        // Initialise window search:
-        final long endSequencePosition = matcher.length() - 1;
-        final long finalPosition = toPosition + endSequencePosition;
-        long searchPosition = fromPosition + endSequencePosition;
-            
-        // While there is a window to search in:
-        Window window;            
-        while (searchPosition <= finalPosition &&
-               (window = reader.getWindow(searchPosition)) != null) {
-            
-            // Initialise array search:
-            final byte[] array = window.getArray();
-            final int arrayStartPosition = reader.getWindowOffset(searchPosition);
-            final int arrayEndPosition = window.length() - 1;
-            final int lastMatcherPosition = matcher.length() - 1;
-            final long distanceToEnd = finalPosition - window.getWindowPosition() + lastMatcherPosition;     
-            final int lastSearchPosition = distanceToEnd < arrayEndPosition?
-                                     (int) distanceToEnd : arrayEndPosition;
-            int arraySearchPosition = arrayStartPosition;            
-                        
-            // Search forwards in this array:
-            ARRAY_SEARCH: while (arraySearchPosition <= lastSearchPosition) {
-
-                // Shift forwards until we match the last position in the sequence,
-                // or we run out of search space.
-                byte currentByte = array[arraySearchPosition];
-                while (!endOfSequence.matches(currentByte)) {
-                    arraySearchPosition += safeShifts[currentByte & 0xff];
-                    if (arraySearchPosition > lastSearchPosition) {
-                        break ARRAY_SEARCH; // outside the array, move on.
-                    }
-                    currentByte = array[arraySearchPosition];                
-                }
 
-                // The last byte matched - verify there is a complete match:
-                final long arrayBytesSearched = arraySearchPosition - arrayStartPosition;
-                final long matchPosition = searchPosition + arrayBytesSearched - endSequencePosition;
-                if (verifier.matches(reader, matchPosition)) {
-                    return SearchUtils.singleResult(matchPosition, matcher); // match found.
+        // Determine a safe position to start searching at.
+        final int lastMatcherPosition = getMatcher().length() - 1;
+        int searchPosition = fromPosition > 0?
+                             fromPosition + lastMatcherPosition : lastMatcherPosition;
+
+        // Calculate safe bounds for the end of the search:
+        final int lastPossiblePosition = buffer.limit() - 1;
+        final int lastPossibleSearchPosition = toPosition + lastMatcherPosition;
+        final int finalPosition = lastPossibleSearchPosition < lastPossiblePosition?
+                                  lastPossibleSearchPosition : lastPossiblePosition;
+
+        // Search forwards:
+        while (searchPosition <= finalPosition) {
+
+            // Shift forwards until we match the last position in the sequence,
+            // or we run out of search space (in which case just return not found).
+            byte currentByte = buffer.get(searchPosition);
+            while (!endOfSequence.matches(currentByte)) {
+                searchPosition += safeShifts[currentByte & 0xff];
+                if (searchPosition > finalPosition) {
+                    return NO_MATCH;
                 }
-                
-                // No match was found - shift forward by the shift for the current byte:
-                arraySearchPosition += safeShifts[currentByte & 0xff];
-            } 
-            
-            // No match was found in this array - calculate the current search position:
-            searchPosition += arraySearchPosition - arrayStartPosition;
+                currentByte = buffer.get(searchPosition);
+            }
+
+            // The last byte matched - verify there is a complete match:
+            final int startMatchPosition = searchPosition - lastMatcherPosition;
+            if (matchesNoBoundsCheck(verifier, buffer, startMatchPosition)) {
+                return startMatchPosition; // match found.
+            }
+
+            // No match was found - shift forward by the shift for the current byte:
+            searchPosition += safeShifts[currentByte & 0xff];
         }
 
-        return SearchUtils.noResults();        
+        return NO_MATCH;
     }
-
+        
     
     /**
      * {@inheritDoc}
      */
     @Override
     public List<SearchResult<SequenceMatcher>> searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
         
         // Get objects needed for the search:
         final SearchInfo info = backwardInfo.get();
@@ -248,7 +297,7 @@ public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
             while (!startOfSequence.matches(currentByte)) {
                 searchPosition -= safeShifts[currentByte & 0xFF];
                 if (searchPosition < lastPosition) {
-                    return SearchUtils.noResults();
+                    return NO_MATCH;
                 }
                 currentByte = bytes[searchPosition];
             }
@@ -257,75 +306,72 @@ public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
             // There is only a verifier if the sequence length was greater than one;
             // if the sequence is only one in length, we have already found it.
             if (verifier == null || verifier.matchesNoBoundsCheck(bytes, searchPosition + 1)) {
-                return SearchUtils.singleResult(searchPosition, matcher); // match found.
+                return searchPosition; // match found.
             }
 
             // No match was found - shift backward by the shift for the current byte:
             searchPosition -= safeShifts[currentByte & 0xff];            
         }
         
-        return SearchUtils.noResults();
+        return NO_MATCH;
     }
 
-    
+
     /**
      * {@inheritDoc}
      */
     @Override
-    protected List<SearchResult<SequenceMatcher>> doSearchBackwards(final WindowReader reader, 
-            final long fromPosition, final long toPosition ) throws IOException {
-        
-        // Initialise:
+    protected List<SearchResult<SequenceMatcher>> searchBackwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(buffer, fromPosition, toPosition));
+    }
+
+
+    /**
+     * Searches backwards in a ByteBuffer using the Boyer Moore Horspool algorithm,
+     * reading bytes directly from the buffer, so off-heap buffers are not copied.
+     */
+    @Override
+    protected int searchPositionBackwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+
+        // Get objects needed for the search:
         final SearchInfo info = backwardInfo.get();
         final int[] safeShifts = info.shifts;
         final ByteMatcher startOfSequence = info.matcher;
-        final SequenceMatcher verifier = info.verifier;        
-        long searchPosition = fromPosition;
-        
-        // Search backwards across the windows:
-        Window window;        
-        while (searchPosition >= toPosition && 
-               (window = reader.getWindow(searchPosition))!= null) {
-            
-            // Initialise the window search:
-            final byte[] array = window.getArray();
-            final int arrayStartPosition = reader.getWindowOffset(searchPosition);   
-            final long distanceToEnd = toPosition - window.getWindowPosition();
-            final int lastSearchPosition = distanceToEnd > 0?
-                                     (int) distanceToEnd : 0;
-            int arraySearchPosition = arrayStartPosition;
-            
-            // Search using the byte array for shifts, using the WindowReader
-            // for verifiying the sequence with the matcher:          
-            ARRAY_SEARCH: while (arraySearchPosition >= lastSearchPosition) {
-                
-                // Shift backwards until we match the first position in the sequence,
-                // or we run out of search space.
-                byte currentByte = array[arraySearchPosition];
-                while (!startOfSequence.matches(currentByte)) {
-                    arraySearchPosition -= safeShifts[currentByte & 0xff];
-                    if (arraySearchPosition < lastSearchPosition) {
-                        break ARRAY_SEARCH;
-                    }
-                    currentByte = array[arraySearchPosition];
-                }
-                
-                // The first byte matched - verify there is a complete match.
-                final int totalShift = arrayStartPosition - arraySearchPosition;
-                final long sequencePosition = searchPosition - totalShift;
-                if (verifier == null || verifier.matches(reader, sequencePosition + 1)) {
-                    return SearchUtils.singleResult(sequencePosition, matcher); // match found.
+        final SequenceMatcher verifier = info.verifier;
+
+        // Calculate safe bounds for the start of the search:
+        final int firstPossiblePosition = buffer.limit() - getMatcher().length();
+        int searchPosition = fromPosition < firstPossiblePosition?
+                             fromPosition : firstPossiblePosition;
+
+        // Calculate safe bounds for the end of the search:
+        final int lastPosition = toPosition > 0?
+                                 toPosition : 0;
+
+        // Search backwards:
+        while (searchPosition >= lastPosition) {
+
+            // Shift backwards until we match the first position in the
+            // sequence, or we run out of search space:
+            byte currentByte = buffer.get(searchPosition);
+            while (!startOfSequence.matches(currentByte)) {
+                searchPosition -= safeShifts[currentByte & 0xFF];
+                if (searchPosition < lastPosition) {
+                    return NO_MATCH;
                 }
-                
-                // No match was found - shift backward by the shift for the current byte:
-                arraySearchPosition -= safeShifts[currentByte & 0xff];                
+                currentByte = buffer.get(searchPosition);
             }
-            
-            // No match was found in this array - calculate the current search position:
-            searchPosition -= (arrayStartPosition - arraySearchPosition);
+
+            // The first byte matched - verify there is a complete match.
+            if (verifier == null || matchesNoBoundsCheck(verifier, buffer, searchPosition + 1)) {
+                return searchPosition; // match found.
+            }
+
+            // No match was found - shift backward by the shift for the current byte:
+            searchPosition -= safeShifts[currentByte & 0xff];
         }
 
-        return SearchUtils.noResults();
+        return NO_MATCH;
     }
 
     
@@ -347,11 +393,63 @@ public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
     }
     
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addTables(final PreparedTables.Builder builder) {
+        ArgUtils.checkNullObject(builder, "builder");
+        final long fingerprint = PreparedTables.fingerprint(getMatcher());
+        final SearchInfo forwards = forwardInfo.get();
+        final SearchInfo backwards = backwardInfo.get();
+        builder.add(PreparedTables.tableKey(getClass(), fingerprint, FORWARD_TABLE), fingerprint, forwards.shifts);
+        builder.add(PreparedTables.tableKey(getClass(), fingerprint, BACKWARD_TABLE), fingerprint, backwards.shifts);
+        builder.addByteSet(PreparedTables.tableKey(getClass(), fingerprint, FORWARD_VERIFIER), fingerprint,
+                           forwards.matcher.getMatchingBytes());
+        builder.addByteSet(PreparedTables.tableKey(getClass(), fingerprint, BACKWARD_VERIFIER), fingerprint,
+                           backwards.matcher.getMatchingBytes());
+    }
+    
+    
     @Override
     public String toString() {
     	return getClass().getSimpleName() + "[sequence:" + matcher + ']'; 
     }
 
+
+    /**
+     * Returns the safe shifts in the prepared tables for this sequence, or null
+     * if there are no prepared tables, or they do not contain shifts for this sequence.
+     */
+    private int[] getPreparedShifts(final String table) {
+        if (tables != null) {
+            final long fingerprint = PreparedTables.fingerprint(getMatcher());
+            final IntBuffer shifts = tables.getTable(PreparedTables.tableKey(getClass(), fingerprint, table), fingerprint);
+            if (shifts != null && shifts.remaining() == 256) {
+                final int[] searchShifts = new int[256];
+                shifts.get(searchShifts);
+                return searchShifts;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Returns a ByteMatcher for the bytes in the prepared tables for this sequence which are
+     * matched before the verifier runs, or the matcher given if there are none.
+     */
+    private ByteMatcher getPreparedMatcher(final String table, final ByteMatcher matcher) {
+        if (tables != null) {
+            final long fingerprint = PreparedTables.fingerprint(getMatcher());
+            final Set<Byte> bytes = tables.getByteSet(PreparedTables.tableKey(getClass(), fingerprint, table), fingerprint);
+            if (bytes != null && !bytes.isEmpty()) {
+                return OptimalByteMatcherFactory.FACTORY.create(bytes);
+            }
+        }
+        return matcher;
+    }
+
     
     private static final class SearchInfo {
         private final int[] shifts;
@@ -389,6 +487,12 @@ public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
             final SequenceMatcher verifier = (lastPosition == 0)? AnyByteMatcher.ANY_BYTE_MATCHER
             												    : sequence.subsequence(0, lastPosition); 
 
+            // Use the prepared shifts if they were calculated for this sequence:
+            final int[] preparedShifts = getPreparedShifts(FORWARD_TABLE);
+            if (preparedShifts != null) {
+                return new SearchInfo(preparedShifts, getPreparedMatcher(FORWARD_VERIFIER, byteMatcher), verifier);
+            }
+
             // Check for the pathological case of positions matching all bytes, from the end to the start.
             // If there is such a matcher in the sequence, no shift can be bigger than this length.
             // The shift code would still work if we did not do this, but long gaps like .{2048) would
@@ -453,6 +557,12 @@ public final class BoyerMooreHorspoolSearcher extends AbstractSequenceSearcher {
             final SequenceMatcher verifier = (lastPosition == 0)? null 
             													: sequence.subsequence(1, sequenceLength);
 
+            // Use the prepared shifts if they were calculated for this sequence:
+            final int[] preparedShifts = getPreparedShifts(BACKWARD_TABLE);
+            if (preparedShifts != null) {
+                return new SearchInfo(preparedShifts, getPreparedMatcher(BACKWARD_VERIFIER, byteMatcher), verifier);
+            }
+
             // Check for the pathological case of positions matching all bytes, from the end to the start.
             // If there is such a matcher in the sequence, no shift can be bigger than this length.
             // The shift code would still work if we did not do this, but long gaps like .{2048) would
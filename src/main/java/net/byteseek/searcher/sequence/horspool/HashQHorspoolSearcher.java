@@ -0,0 +1,418 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence.horspool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
+import net.byteseek.utils.ArgUtils;
+import net.byteseek.utils.collections.BytePermutationIterator;
+import net.byteseek.utils.factory.ObjectFactory;
+import net.byteseek.utils.lazy.DoubleCheckImmutableLazyObject;
+import net.byteseek.utils.lazy.LazyObject;
+
+/**
+ * HashQHorspoolSearcher searches for a sequence using a variant of the Horspool
+ * algorithm which shifts on a hash of the last q bytes in the window, rather than on
+ * the last byte alone, as in Lecroq's Hash-q family of algorithms.
+ * <p>
+ * On text and structured binary data only a few byte values are common, so most of
+ * them occur near the end of any long pattern, and a shift table indexed by a single
+ * byte is limited to small shifts.  A group of q bytes is far less likely to occur near
+ * the end of the pattern, so shifts approach the length of the pattern minus q.  It gives
+ * much larger average shifts than the Horspool searcher for sequences longer than about
+ * 16 bytes.  When the hash of the last q bytes matches the end of the sequence, the whole
+ * sequence is verified.
+ * <p>
+ * Positions matching more than one byte are handled by enumerating all the permutations
+ * of bytes each group of q positions can match, using a {@link BytePermutationIterator}.
+ * If a group can match more than {@link #MAX_PERMUTATIONS} permutations, it is not
+ * enumerated; instead no shift in the table may exceed its distance from the end.
+ * <p>
+ * Thread safety: this class is immutable, so it is safe to use this
+ * searcher in multiple threads simultaneously.
+ *
+ * @author Matt Palmer
+ */
+public final class HashQHorspoolSearcher extends AbstractSequenceSearcher {
+
+    /**
+     * The number of bytes hashed if not specified.
+     */
+    public static final int DEFAULT_Q = 3;
+
+    /**
+     * The maximum number of permutations of bytes enumerated for each group of q positions.
+     */
+    public static final int MAX_PERMUTATIONS = 4096;
+
+    private static final int TABLE_BITS = 12;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+
+    private final int q;
+    private final LazyObject<SearchInfo> forwardInfo;
+    private final LazyObject<SearchInfo> backwardInfo;
+
+
+    /**
+     * Constructs a HashQHorspoolSearcher given a {@link SequenceMatcher} to search for,
+     * hashing the default number of bytes.
+     *
+     * @param sequence The SequenceMatcher to search for.
+     */
+    public HashQHorspoolSearcher(final SequenceMatcher sequence) {
+        this(sequence, DEFAULT_Q);
+    }
+
+
+    /**
+     * Constructs a HashQHorspoolSearcher given a {@link SequenceMatcher} to search for,
+     * and the number of bytes to hash.  If the sequence is shorter than q, its length
+     * is used instead.
+     *
+     * @param sequence The SequenceMatcher to search for.
+     * @param q The number of bytes to hash, from 2 to 4.
+     * @throws IllegalArgumentException if q is not between 2 and 4.
+     */
+    public HashQHorspoolSearcher(final SequenceMatcher sequence, final int q) {
+        super(sequence);
+        ArgUtils.checkRangeInclusive(q, 2, 4, "q");
+        this.q = q;
+        forwardInfo  = new DoubleCheckImmutableLazyObject<SearchInfo>(new ForwardInfoFactory());
+        backwardInfo = new DoubleCheckImmutableLazyObject<SearchInfo>(new BackwardInfoFactory());
+    }
+
+
+    /**
+     * Returns the number of bytes hashed to look up shifts.
+     *
+     * @return The number of bytes hashed to look up shifts.
+     */
+    public int getQ() {
+        return q < matcher.length()? q : matcher.length();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+
+        // Get the objects needed to search:
+        final SearchInfo info = forwardInfo.get();
+        final int[] safeShifts = info.shifts;
+        final int shiftAfterVerify = info.shiftAfterVerify;
+        final int hashLength = info.hashLength;
+        final SequenceMatcher sequence = matcher;
+        final int hashOffset = sequence.length() - hashLength;
+
+        // Calculate safe bounds for the search:
+        final int lastPossiblePosition = bytes.length - sequence.length();
+        final int lastPosition = toPosition < lastPossiblePosition?
+                                 toPosition : lastPossiblePosition;
+        int searchPosition = fromPosition > 0?
+                             fromPosition : 0;
+
+        // Search forwards, shifting on the hash of the last q bytes in each window:
+        while (searchPosition <= lastPosition) {
+            final int shift = safeShifts[hash(bytes, searchPosition + hashOffset, hashLength)];
+            if (shift == 0) {
+                if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
+                    return searchPosition;
+                }
+                searchPosition += shiftAfterVerify;
+            } else {
+                searchPosition += shift;
+            }
+        }
+
+        return NO_MATCH;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+
+        // Get the objects needed to search:
+        final SearchInfo info = backwardInfo.get();
+        final int[] safeShifts = info.shifts;
+        final int shiftAfterVerify = info.shiftAfterVerify;
+        final int hashLength = info.hashLength;
+        final SequenceMatcher sequence = matcher;
+
+        // Calculate safe bounds for the search:
+        final int firstPossiblePosition = bytes.length - sequence.length();
+        int searchPosition = fromPosition < firstPossiblePosition?
+                             fromPosition : firstPossiblePosition;
+        final int lastPosition = toPosition > 0?
+                                 toPosition : 0;
+
+        // Search backwards, shifting on the hash of the first q bytes in each window:
+        while (searchPosition >= lastPosition) {
+            final int shift = safeShifts[hash(bytes, searchPosition, hashLength)];
+            if (shift == 0) {
+                if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
+                    return searchPosition;
+                }
+                searchPosition -= shiftAfterVerify;
+            } else {
+                searchPosition -= shift;
+            }
+        }
+
+        return NO_MATCH;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareForwards() {
+        forwardInfo.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareBackwards() {
+        backwardInfo.get();
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[q:" + q + " sequence:" + matcher + ']';
+    }
+
+
+    /**
+     * Returns the position in the shift table of the hash of up to four bytes.
+     * The bytes are packed into an int, which is then hashed multiplicatively.
+     */
+    private static int hash(final byte[] bytes, final int position, final int length) {
+        int value = bytes[position] & 0xFF;
+        for (int index = 1; index < length; index++) {
+            value = (value << 8) | (bytes[position + index] & 0xFF);
+        }
+        return (value * 0x9E3779B1) >>> (32 - TABLE_BITS);
+    }
+
+
+    /**
+     * Returns the number of permutations of bytes which the positions in a sequence can match,
+     * or a number greater than MAX_PERMUTATIONS if there are more than that.
+     */
+    private static long numberOfPermutations(final SequenceMatcher sequence, final int position, final int length) {
+        long permutations = 1;
+        for (int index = position; index < position + length && permutations <= MAX_PERMUTATIONS; index++) {
+            permutations *= sequence.getMatcherForPosition(index).getNumberOfMatchingBytes();
+        }
+        return permutations;
+    }
+
+
+    /**
+     * Returns an iterator over the permutations of bytes which the positions in a sequence can match.
+     */
+    private static BytePermutationIterator permutations(final SequenceMatcher sequence, final int position,
+                                                        final int length) {
+        final List<byte[]> matchingBytes = new ArrayList<byte[]>(length);
+        for (int index = position; index < position + length; index++) {
+            final ByteMatcher byteMatcher = sequence.getMatcherForPosition(index);
+            matchingBytes.add(byteMatcher.getMatchingBytes());
+        }
+        return new BytePermutationIterator(matchingBytes);
+    }
+
+
+    /**
+     * Builds the search info for a sequence, given the starting positions of the groups
+     * of bytes in the order of their distance, from the largest to the smallest, where
+     * the final group is hashed at a match.
+     *
+     * @param sequence The sequence to build search info for.
+     * @param hashLength The number of bytes hashed.
+     * @param groupStarts The starting positions of each group of bytes in the sequence.
+     *                    The group at index i is at a distance of groupStarts.length - 1 - i.
+     * @return The search info for the sequence.
+     */
+    private static SearchInfo createSearchInfo(final SequenceMatcher sequence, final int hashLength,
+                                               final int[] groupStarts) {
+        final int[] shifts = new int[TABLE_SIZE];
+        final int defaultShift = groupStarts.length;
+        Arrays.fill(shifts, defaultShift);
+
+        // Set the shifts for each group of bytes which is not at the end, from the furthest to the nearest.
+        // If a group has too many permutations, no shift can exceed its distance:
+        final int finalGroup = groupStarts.length - 1;
+        int maximumShift = defaultShift;
+        for (int group = 0; group < finalGroup; group++) {
+            final int distance = finalGroup - group;
+            if (numberOfPermutations(sequence, groupStarts[group], hashLength) > MAX_PERMUTATIONS) {
+                maximumShift = distance;
+            } else {
+                final BytePermutationIterator permutation = permutations(sequence, groupStarts[group], hashLength);
+                while (permutation.hasNext()) {
+                    shifts[hash(permutation.next(), 0, hashLength)] = distance;
+                }
+            }
+        }
+        if (maximumShift < defaultShift) {
+            for (int index = 0; index < TABLE_SIZE; index++) {
+                if (shifts[index] > maximumShift) {
+                    shifts[index] = maximumShift;
+                }
+            }
+        }
+
+        // The final group of bytes has a shift of zero, to verify the sequence.  The shift after
+        // verifying is the smallest shift the final group would otherwise have had:
+        int shiftAfterVerify = defaultShift;
+        if (numberOfPermutations(sequence, groupStarts[finalGroup], hashLength) > MAX_PERMUTATIONS) {
+            for (int index = 0; index < TABLE_SIZE; index++) {
+                if (shifts[index] < shiftAfterVerify) {
+                    shiftAfterVerify = shifts[index];
+                }
+                shifts[index] = 0;
+            }
+        } else {
+            final List<Integer> finalHashes = new ArrayList<Integer>();
+            final BytePermutationIterator permutation = permutations(sequence, groupStarts[finalGroup], hashLength);
+            while (permutation.hasNext()) {
+                finalHashes.add(hash(permutation.next(), 0, hashLength));
+            }
+            for (final Integer hashValue : finalHashes) {
+                if (shifts[hashValue] < shiftAfterVerify) {
+                    shiftAfterVerify = shifts[hashValue];
+                }
+            }
+            for (final Integer hashValue : finalHashes) {
+                shifts[hashValue] = 0;
+            }
+        }
+
+        return new SearchInfo(shifts, shiftAfterVerify, hashLength);
+    }
+
+
+    /**
+     * The shift table to search with, the shift to use after verifying the sequence,
+     * and the number of bytes hashed.
+     */
+    private static final class SearchInfo {
+
+        private final int[] shifts;
+        private final int shiftAfterVerify;
+        private final int hashLength;
+
+        private SearchInfo(final int[] shifts, final int shiftAfterVerify, final int hashLength) {
+            this.shifts = shifts;
+            this.shiftAfterVerify = shiftAfterVerify;
+            this.hashLength = hashLength;
+        }
+    }
+
+
+    private final class ForwardInfoFactory implements ObjectFactory<SearchInfo> {
+
+        private ForwardInfoFactory() {
+        }
+
+        /**
+         * Calculates the shifts to use searching forwards.  The groups of bytes start at
+         * the beginning of the sequence, and the final group ends at the end of it.
+         */
+        @Override
+        public SearchInfo create() {
+            final int hashLength = getQ();
+            final int[] groupStarts = new int[getMatcher().length() - hashLength + 1];
+            for (int group = 0; group < groupStarts.length; group++) {
+                groupStarts[group] = group;
+            }
+            return createSearchInfo(getMatcher(), hashLength, groupStarts);
+        }
+    }
+
+
+    private final class BackwardInfoFactory implements ObjectFactory<SearchInfo> {
+
+        private BackwardInfoFactory() {
+        }
+
+        /**
+         * Calculates the shifts to use searching backwards.  The groups of bytes start at
+         * the end of the sequence, and the final group starts at the beginning of it.
+         */
+        @Override
+        public SearchInfo create() {
+            final int hashLength = getQ();
+            final int[] groupStarts = new int[getMatcher().length() - hashLength + 1];
+            for (int group = 0; group < groupStarts.length; group++) {
+                groupStarts[group] = groupStarts.length - 1 - group;
+            }
+            return createSearchInfo(getMatcher(), hashLength, groupStarts);
+        }
+    }
+
+}
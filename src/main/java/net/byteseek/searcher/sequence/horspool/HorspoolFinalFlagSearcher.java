@@ -31,12 +31,10 @@
 
 package net.byteseek.searcher.sequence.horspool;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
-import net.byteseek.io.reader.windows.Window;
-import net.byteseek.io.reader.WindowReader;
 import net.byteseek.matcher.bytes.AnyByteMatcher;
 import net.byteseek.matcher.bytes.ByteMatcher;
 import net.byteseek.matcher.sequence.SequenceMatcher;
@@ -44,7 +42,6 @@ import net.byteseek.utils.lazy.DoubleCheckImmutableLazyObject;
 import net.byteseek.utils.lazy.LazyObject;
 import net.byteseek.utils.factory.ObjectFactory;
 import net.byteseek.searcher.SearchResult;
-import net.byteseek.searcher.SearchUtils;
 import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
 
 
@@ -128,9 +125,18 @@ public final class HorspoolFinalFlagSearcher extends AbstractSequenceSearcher {
     
     /**
      * {@inheritDoc}
-     */    
+     */
     @Override
     public List<SearchResult<SequenceMatcher>> searchForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */    
+    @Override
+    protected int searchPositionForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
         
         // Get the objects needed to search:
         final SearchInfo info = forwardInfo.get();
@@ -157,7 +163,7 @@ public final class HorspoolFinalFlagSearcher extends AbstractSequenceSearcher {
             while (shift > 0) {
                 searchPosition += shift;
                 if (searchPosition > finalPosition) {
-                    return SearchUtils.noResults();
+                    return NO_MATCH;
                 }
                 shift = safeShifts[bytes[searchPosition] & 0xFF];
             }
@@ -165,7 +171,7 @@ public final class HorspoolFinalFlagSearcher extends AbstractSequenceSearcher {
             // The last byte matched - verify there is a complete match:
             final int startMatchPosition = searchPosition - lastMatcherPosition;
             if (verifier.matchesNoBoundsCheck(bytes, startMatchPosition)) {
-                return SearchUtils.singleResult(startMatchPosition, matcher); // match found.
+                return startMatchPosition; // match found.
             }
             
             // No match was found - shift forward by the next closest shift for
@@ -173,75 +179,79 @@ public final class HorspoolFinalFlagSearcher extends AbstractSequenceSearcher {
             searchPosition -= shift;
         }
         
-        return SearchUtils.noResults();
+        return NO_MATCH;
     }    
         
     
     /**
-     * Searches forward using the Boyer Moore Horspool algorithm, using 
-     * byte arrays from Windows to handle shifting, and the WindowReader interface
-     * on the SequenceMatcher to verify whether a match exists.
+     * Returns true, as this searcher searches ByteBuffers without copying them.
+     *
+     * @return true
      */
     @Override
-    protected List<SearchResult<SequenceMatcher>> doSearchForwards(final WindowReader reader, final long fromPosition, 
-        final long toPosition) throws IOException {
-            
+    protected boolean searchesBuffersDirectly() {
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<SearchResult<SequenceMatcher>> searchForwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(buffer, fromPosition, toPosition));
+    }
+
+
+    /**
+     * Searches forward in a ByteBuffer using the Horspool final flag algorithm,
+     * reading bytes directly from the buffer, so off-heap buffers are not copied.
+     */
+    @Override
+    protected int searchPositionForwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+
         // Get the objects needed to search:
         final SearchInfo info = forwardInfo.get();
         final int[] safeShifts = info.shifts;
         final SequenceMatcher verifier = info.verifier;
-        
-        // Initialise window search:
-        final long endSequencePosition = matcher.length() - 1;
-        final long finalPosition = toPosition + endSequencePosition;
-        long searchPosition = fromPosition + endSequencePosition;        
-        
-        // While there is a window to search in:
-        Window window;      
-        while (searchPosition <= finalPosition &&
-               (window = reader.getWindow(searchPosition)) != null) {
-            
-            // Initialise array search:
-            final byte[] array = window.getArray();
-            final int arrayStartPosition = reader.getWindowOffset(searchPosition);
-            final int arrayEndPosition = window.length() - 1;
-            final int lastMatcherPosition = matcher.length() - 1;
-            final long distanceToEnd = finalPosition - window.getWindowPosition() + lastMatcherPosition;     
-            final int lastSearchPosition = distanceToEnd < arrayEndPosition?
-                                     (int) distanceToEnd : arrayEndPosition;
-            int arraySearchPosition = arrayStartPosition;            
-                        
-            // Search forwards in this array:
-            ARRAY_SEARCH: while (arraySearchPosition <= lastSearchPosition) {
-
-                // Shift forward until there is a negative shift or we run out of
-                // search space.
-                int shift = safeShifts[array[arraySearchPosition] & 0xFF];
-                while (shift > 0) {
-                    arraySearchPosition += shift;
-                    if (arraySearchPosition > lastSearchPosition) {
-                        break ARRAY_SEARCH; // outside the array, move on.
-                    }
-                    shift = safeShifts[array[arraySearchPosition] & 0xFF];
-                }
-                 
-                // The last byte matched - verify there is a complete match:
-                final long totalShift = arraySearchPosition - arrayStartPosition;
-                final long matchPosition = searchPosition + totalShift - endSequencePosition;
-                if (verifier.matches(reader, matchPosition)) {
-                    return SearchUtils.singleResult(matchPosition, matcher); // match found.
+
+        // Calculate safe bounds for the start of the search:
+        final int lastMatcherPosition = getMatcher().length() - 1;
+        int searchPosition = fromPosition > 0?
+                             fromPosition + lastMatcherPosition : lastMatcherPosition;
+
+        // Calculate safe bounds for the end of the search:
+        final int lastPossiblePosition = buffer.limit() - 1;
+        final int lastPossibleSearchPosition = toPosition + lastMatcherPosition;
+        final int finalPosition = lastPossibleSearchPosition < lastPossiblePosition?
+                                  lastPossibleSearchPosition : lastPossiblePosition;
+
+        // Search forwards:
+        while (searchPosition <= finalPosition) {
+
+            // Shift forward until there is a negative shift or we run out of
+            // search space.
+            int shift = safeShifts[buffer.get(searchPosition) & 0xFF];
+            while (shift > 0) {
+                searchPosition += shift;
+                if (searchPosition > finalPosition) {
+                    return NO_MATCH;
                 }
-                
-                // No match was found - shift forward by the next closest shift for
-                // the current byte. Subtract because the shift is negative.
-                arraySearchPosition -= shift;
-            } 
-            
-            // No match was found in this array - calculate the current search position:
-            searchPosition += arraySearchPosition - arrayStartPosition;
+                shift = safeShifts[buffer.get(searchPosition) & 0xFF];
+            }
+
+            // The last byte matched - verify there is a complete match:
+            final int startMatchPosition = searchPosition - lastMatcherPosition;
+            if (matchesNoBoundsCheck(verifier, buffer, startMatchPosition)) {
+                return startMatchPosition; // match found.
+            }
+
+            // No match was found - shift forward by the next closest shift for
+            // the current byte. Subtract because the shift is negative.
+            searchPosition -= shift;
         }
 
-        return SearchUtils.noResults();        
+        return NO_MATCH;
     }
 
     
@@ -250,6 +260,15 @@ public final class HorspoolFinalFlagSearcher extends AbstractSequenceSearcher {
      */
     @Override
     public List<SearchResult<SequenceMatcher>> searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
         
         // Get objects needed for the search:
         final SearchInfo info = backwardInfo.get();
@@ -274,7 +293,7 @@ public final class HorspoolFinalFlagSearcher extends AbstractSequenceSearcher {
             while (shift > 0) {
                 searchPosition -= shift;
                 if (searchPosition < lastPosition) {
-                    return SearchUtils.noResults();
+                    return NO_MATCH;
                 }
                 shift = safeShifts[bytes[searchPosition] & 0xFF];
             }
@@ -283,7 +302,7 @@ public final class HorspoolFinalFlagSearcher extends AbstractSequenceSearcher {
             // A null verifier means we don't need a verifier, as the sequence
             // is only one byte long - which we have just matched above.
             if (verifier == null || verifier.matchesNoBoundsCheck(bytes, searchPosition + 1)) {
-                return SearchUtils.singleResult(searchPosition, matcher); // match found.
+                return searchPosition; // match found.
             }
 
             // No match was found - shift backward by the shift for the current byte.
@@ -291,7 +310,7 @@ public final class HorspoolFinalFlagSearcher extends AbstractSequenceSearcher {
             searchPosition += shift;     
         }
         
-        return SearchUtils.noResults();
+        return NO_MATCH;
     }
 
     
@@ -299,62 +318,59 @@ public final class HorspoolFinalFlagSearcher extends AbstractSequenceSearcher {
      * {@inheritDoc}
      */
     @Override
-    protected List<SearchResult<SequenceMatcher>> doSearchBackwards(final WindowReader reader, 
-            final long fromPosition, final long toPosition ) throws IOException {
-        
-        // Initialise search:
+    protected List<SearchResult<SequenceMatcher>> searchBackwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(buffer, fromPosition, toPosition));
+    }
+
+
+    /**
+     * Searches backwards in a ByteBuffer using the Horspool final flag algorithm,
+     * reading bytes directly from the buffer, so off-heap buffers are not copied.
+     */
+    @Override
+    protected int searchPositionBackwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+
+        // Get objects needed for the search:
         final SearchInfo info = backwardInfo.get();
         final int[] safeShifts = info.shifts;
-        final SequenceMatcher verifier = info.verifier;        
-        long searchPosition = fromPosition;
-        
-        // Search backwards across the windows:
-        Window window;
-        while (searchPosition >= toPosition &&
-               (window = reader.getWindow(searchPosition))!= null) {
-            
-            // Initialise the window search:
-            final byte[] array = window.getArray();
-            final int arrayStartPosition = reader.getWindowOffset(searchPosition);   
-            final long distanceToEnd = toPosition - window.getWindowPosition();
-            final int lastSearchPosition = distanceToEnd > 0?
-                                     (int) distanceToEnd : 0;
-            int arraySearchPosition = arrayStartPosition;
-            
-            // Search using the byte array for shifts, using the WindowReader
-            // for verifiying the sequence with the matcher:          
-            ARRAY_SEARCH: while (arraySearchPosition >= lastSearchPosition) {
-                
-                // Shift backward until there is a negative shift or we run out of
-                // search space.
-                int shift = safeShifts[array[arraySearchPosition] & 0xFF];
-                while (shift > 0) {
-                    arraySearchPosition -= shift;
-                    if (arraySearchPosition < lastSearchPosition) {
-                        break ARRAY_SEARCH; // outside the array, move on.
-                    }
-                    shift = safeShifts[array[arraySearchPosition] & 0xFF];
-                }
-                
-                // The first byte matched - verify there is a complete match:
-                // A null verifier means we don't need a verifier, as the sequence
-                // is only one byte long - which we have just matched above.
-                final int totalShift = arrayStartPosition - arraySearchPosition;
-                final long startMatchPosition = searchPosition - totalShift;
-                if (verifier == null || verifier.matches(reader, startMatchPosition + 1)) {
-                    return SearchUtils.singleResult(startMatchPosition, matcher); // match found.
+        final SequenceMatcher verifier = info.verifier;
+
+        // Calculate safe bounds for the start of the search:
+        final int firstPossiblePosition = buffer.limit() - getMatcher().length();
+        int searchPosition = fromPosition < firstPossiblePosition?
+                             fromPosition : firstPossiblePosition;
+
+        // Calculate safe bounds for the end of the search:
+        final int lastPosition = toPosition > 0?
+                                 toPosition : 0;
+
+        // Search backwards:
+        while (searchPosition >= lastPosition) {
+
+            // Shift backwards until there is a negative shift or we run out of
+            // search space.
+            int shift = safeShifts[buffer.get(searchPosition) & 0xFF];
+            while (shift > 0) {
+                searchPosition -= shift;
+                if (searchPosition < lastPosition) {
+                    return NO_MATCH;
                 }
-                
-                // No match was found - shift backward by the shift for the current byte.
-                // We add the shift, because it is negative.
-                arraySearchPosition += shift;                
+                shift = safeShifts[buffer.get(searchPosition) & 0xFF];
             }
-            
-            // No match was found in this array - calculate the current search position:
-            searchPosition -= (arrayStartPosition - arraySearchPosition);
+
+            // The first byte matched - verify there is a complete match:
+            // A null verifier means we don't need a verifier, as the sequence
+            // is only one byte long - which we have just matched above.
+            if (verifier == null || matchesNoBoundsCheck(verifier, buffer, searchPosition + 1)) {
+                return searchPosition; // match found.
+            }
+
+            // No match was found - shift backward by the shift for the current byte.
+            // We add the shift, because it is negative.
+            searchPosition += shift;
         }
 
-        return SearchUtils.noResults();
+        return NO_MATCH;
     }
 
     
@@ -0,0 +1,315 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence.oracle;
+
+import java.util.List;
+
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
+import net.byteseek.searcher.sequence.SequenceMatcherSearcher;
+import net.byteseek.utils.factory.ObjectFactory;
+import net.byteseek.utils.lazy.DoubleCheckImmutableLazyObject;
+import net.byteseek.utils.lazy.LazyObject;
+
+/**
+ * BomSearcher searches for a sequence using the Backward Oracle Matching algorithm of
+ * Allauzen, Crochemore and Raffinot.
+ * <p>
+ * The bytes in a window the length of the sequence are read backwards through a
+ * {@link FactorOracle} of the reversed sequence.  As soon as the oracle has no transition,
+ * the bytes read are not a factor of the sequence, so the window can be shifted past them.
+ * If all the bytes in the window are read, the sequence is verified at that position.
+ * Shifts depend on how much of the window is a factor of the sequence, not only on its last
+ * byte, so they stay close to the length of the sequence for long sequences, where the
+ * last byte shift of the Horspool searchers is a poor heuristic.  It is best suited to
+ * sequences of hundreds or thousands of bytes.
+ * <p>
+ * An oracle can only be built over single byte values, so the oracle is built for the
+ * longest run of positions in the sequence which each match a single byte, and the whole
+ * sequence is verified wherever the oracle reads the entire run.  Shifts are limited by the
+ * length of the run.  Sequences in which every position matches more than one byte are
+ * searched by a {@link SequenceMatcherSearcher}.
+ * <p>
+ * In a reader, positions where the sequence crosses a window boundary are also searched
+ * through the oracle, over a copy of the bytes around the boundary.
+ * <p>
+ * Thread safety: this class is immutable, so it is safe to use this
+ * searcher in multiple threads simultaneously.
+ *
+ * @author Matt Palmer
+ */
+public final class BomSearcher extends AbstractSequenceSearcher {
+
+    private final LazyObject<SearchInfo> forwardInfo;
+    private final LazyObject<SearchInfo> backwardInfo;
+    private final SequenceMatcherSearcher fallbackSearcher;
+
+
+    /**
+     * Constructs a BomSearcher given a {@link SequenceMatcher} to search for.
+     *
+     * @param sequence The SequenceMatcher to search for.
+     */
+    public BomSearcher(final SequenceMatcher sequence) {
+        super(sequence);
+        forwardInfo  = new DoubleCheckImmutableLazyObject<SearchInfo>(new ForwardInfoFactory());
+        backwardInfo = new DoubleCheckImmutableLazyObject<SearchInfo>(new BackwardInfoFactory());
+        fallbackSearcher = new SequenceMatcherSearcher(sequence);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+
+        // Get the objects needed to search:
+        final SearchInfo info = forwardInfo.get();
+        if (info == SearchInfo.NO_FACTOR) {
+            final List<SearchResult<SequenceMatcher>> results = fallbackSearcher.searchForwards(bytes, fromPosition, toPosition);
+            return results.isEmpty()? NO_MATCH : (int) results.get(0).getMatchPosition();
+        }
+        final FactorOracle oracle = info.oracle;
+        final SequenceMatcher sequence = matcher;
+        final int factorLength = oracle.length();
+        final int factorEnd = info.factorStart + factorLength - 1;
+
+        // Calculate safe bounds for the search:
+        final int lastPossiblePosition = bytes.length - sequence.length();
+        final int lastPosition = toPosition < lastPossiblePosition?
+                                 toPosition : lastPossiblePosition;
+        int searchPosition = fromPosition > 0?
+                             fromPosition : 0;
+
+        // Search forwards, reading the factor in each window backwards through the oracle:
+        while (searchPosition <= lastPosition) {
+            final int factorEndPosition = searchPosition + factorEnd;
+            int state = oracle.initialTransition(bytes[factorEndPosition]);
+            int factorPosition = 1;
+            while (state != FactorOracle.NO_STATE && factorPosition < factorLength) {
+                state = oracle.transition(state, bytes[factorEndPosition - factorPosition++]);
+            }
+            if (state != FactorOracle.NO_STATE) {
+                if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
+                    return searchPosition;
+                }
+                searchPosition++;
+            } else {
+                // Shift past the bytes which are not a factor:
+                searchPosition += factorLength - factorPosition + 1;
+            }
+        }
+
+        return NO_MATCH;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+
+        // Get the objects needed to search:
+        final SearchInfo info = backwardInfo.get();
+        if (info == SearchInfo.NO_FACTOR) {
+            final List<SearchResult<SequenceMatcher>> results = fallbackSearcher.searchBackwards(bytes, fromPosition, toPosition);
+            return results.isEmpty()? NO_MATCH : (int) results.get(0).getMatchPosition();
+        }
+        final FactorOracle oracle = info.oracle;
+        final SequenceMatcher sequence = matcher;
+        final int factorLength = oracle.length();
+        final int factorStart = info.factorStart;
+
+        // Calculate safe bounds for the search:
+        final int firstPossiblePosition = bytes.length - sequence.length();
+        int searchPosition = fromPosition < firstPossiblePosition?
+                             fromPosition : firstPossiblePosition;
+        final int lastPosition = toPosition > 0?
+                                 toPosition : 0;
+
+        // Search backwards, reading the factor in each window forwards through the
+        // oracle of the factor itself:
+        while (searchPosition >= lastPosition) {
+            final int factorStartPosition = searchPosition + factorStart;
+            int state = oracle.initialTransition(bytes[factorStartPosition]);
+            int factorPosition = 1;
+            while (state != FactorOracle.NO_STATE && factorPosition < factorLength) {
+                state = oracle.transition(state, bytes[factorStartPosition + factorPosition++]);
+            }
+            if (state != FactorOracle.NO_STATE) {
+                if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
+                    return searchPosition;
+                }
+                searchPosition--;
+            } else {
+                // Shift back past the bytes which are not a factor:
+                searchPosition -= factorLength - factorPosition + 1;
+            }
+        }
+
+        return NO_MATCH;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareForwards() {
+        forwardInfo.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareBackwards() {
+        backwardInfo.get();
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[sequence:" + matcher + ']';
+    }
+
+
+    /**
+     * Returns the bytes of the longest run of positions in a sequence which each match a single byte,
+     * optionally reversed, setting the start of the run in the sequence in the first element of runStart.
+     * Returns null if no position matches a single byte.
+     */
+    private static byte[] longestLiteralRun(final SequenceMatcher sequence, final boolean reversed,
+                                            final int[] runStart) {
+        final int length = sequence.length();
+        int bestStart = 0;
+        int bestLength = 0;
+        int currentStart = 0;
+        for (int position = 0; position < length; position++) {
+            if (sequence.getMatcherForPosition(position).getNumberOfMatchingBytes() != 1) {
+                currentStart = position + 1;
+            } else if (position - currentStart + 1 > bestLength && bestLength < FactorOracle.MAX_LENGTH) {
+                bestStart = currentStart;
+                bestLength = position - currentStart + 1;
+            }
+        }
+        if (bestLength == 0) {
+            return null;
+        }
+        final byte[] run = new byte[bestLength];
+        for (int index = 0; index < bestLength; index++) {
+            final byte value = sequence.getMatcherForPosition(bestStart + index).getMatchingBytes()[0];
+            run[reversed? bestLength - 1 - index : index] = value;
+        }
+        runStart[0] = bestStart;
+        return run;
+    }
+
+
+    /**
+     * The factor oracle to search with, and the position in the sequence of the run of bytes it was built for.
+     */
+    private static final class SearchInfo {
+
+        /**
+         * Search info for sequences with no positions matching a single byte, which are not searched with an oracle.
+         */
+        private static final SearchInfo NO_FACTOR = new SearchInfo(null, 0);
+
+        private final FactorOracle oracle;
+        private final int factorStart;
+
+        private SearchInfo(final FactorOracle oracle, final int factorStart) {
+            this.oracle = oracle;
+            this.factorStart = factorStart;
+        }
+    }
+
+
+    private final class ForwardInfoFactory implements ObjectFactory<SearchInfo> {
+
+        private ForwardInfoFactory() {
+        }
+
+        /**
+         * Builds a factor oracle of the reversed run of single bytes in the sequence.
+         */
+        @Override
+        public SearchInfo create() {
+            final int[] runStart = new int[1];
+            final byte[] run = longestLiteralRun(getMatcher(), true, runStart);
+            return run == null? SearchInfo.NO_FACTOR : new SearchInfo(new FactorOracle(run), runStart[0]);
+        }
+    }
+
+
+    private final class BackwardInfoFactory implements ObjectFactory<SearchInfo> {
+
+        private BackwardInfoFactory() {
+        }
+
+        /**
+         * Builds a factor oracle of the run of single bytes in the sequence.
+         */
+        @Override
+        public SearchInfo create() {
+            final int[] runStart = new int[1];
+            final byte[] run = longestLiteralRun(getMatcher(), false, runStart);
+            return run == null? SearchInfo.NO_FACTOR : new SearchInfo(new FactorOracle(run), runStart[0]);
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence.oracle;
+
+import java.util.Arrays;
+
+/**
+ * A factor oracle of a string of bytes, as defined by Allauzen, Crochemore and Raffinot.
+ * <p>
+ * The oracle is an automaton with one state more than the length of the string, which
+ * accepts at least all the factors (substrings) of the string.  It may accept some strings
+ * which are not factors, but a string it rejects is definitely not a factor.  It has at most
+ * twice as many transitions as the string has bytes, and can be built in linear time.
+ * <p>
+ * The transitions are held in compact int arrays.  Transitions from the initial state, which
+ * is visited for every window in a search, are held in a table indexed by byte value.  The
+ * transitions from the other states are packed into a single array, indexed by the offset of
+ * each state in another array.  Each transition stores the byte value in its low 8 bits and
+ * the target state in the remaining bits.  No transition leads to the initial state, so zero
+ * is used to signify that there is no transition.
+ * <p>
+ * This class is immutable and thread-safe.
+ *
+ * @author Matt Palmer
+ */
+final class FactorOracle {
+
+    /**
+     * The state returned if there is no transition for a byte.
+     */
+    static final int NO_STATE = 0;
+
+    /**
+     * The maximum length of string an oracle can be built for, limited by the bits
+     * available for the target state in each packed transition.
+     */
+    static final int MAX_LENGTH = 0x7FFFFF;
+
+    private final int length;
+    private final int[] initialTransitions;
+    private final int[] stateOffsets;
+    private final int[] transitions;
+
+
+    /**
+     * Constructs a factor oracle for a string of bytes.
+     *
+     * @param string The string of bytes to build an oracle for.
+     * @throws IllegalArgumentException if the string is empty, or longer than MAX_LENGTH.
+     */
+    FactorOracle(final byte[] string) {
+        length = string.length;
+        if (length == 0 || length > MAX_LENGTH) {
+            throw new IllegalArgumentException("The length of the string must be between 1 and " +
+                                               MAX_LENGTH + ". Actual length was " + length);
+        }
+
+        // Build the oracle using a linked list of transitions for each state, which
+        // never has more than twice as many transitions as there are bytes:
+        final int[] firstTransition = new int[length + 1];
+        Arrays.fill(firstTransition, -1);
+        final int[] nextTransition = new int[2 * length];
+        final int[] packedTransitions = new int[2 * length];
+        final int[] supply = new int[length + 1];
+        supply[0] = -1;
+        int numTransitions = 0;
+        for (int state = 1; state <= length; state++) {
+            final int value = string[state - 1] & 0xFF;
+            final int packed = value | (state << 8);
+
+            // Add the internal transition, and transitions from the supply states which lack one:
+            int supplyState = state - 1;
+            do {
+                packedTransitions[numTransitions] = packed;
+                nextTransition[numTransitions] = firstTransition[supplyState];
+                firstTransition[supplyState] = numTransitions++;
+                supplyState = supply[supplyState];
+            } while (supplyState > -1 && findTransition(supplyState, value, firstTransition,
+                                                        nextTransition, packedTransitions) == NO_STATE);
+            supply[state] = supplyState == -1? 0
+                          : findTransition(supplyState, value, firstTransition, nextTransition, packedTransitions);
+        }
+
+        // Pack the transitions into the compact representation:
+        initialTransitions = new int[256];
+        int numInitialTransitions = 0;
+        for (int index = firstTransition[0]; index >= 0; index = nextTransition[index]) {
+            initialTransitions[packedTransitions[index] & 0xFF] = packedTransitions[index] >>> 8;
+            numInitialTransitions++;
+        }
+        stateOffsets = new int[length + 2];
+        transitions = new int[numTransitions - numInitialTransitions];
+        int offset = 0;
+        for (int state = 1; state <= length; state++) {
+            stateOffsets[state] = offset;
+            for (int index = firstTransition[state]; index >= 0; index = nextTransition[index]) {
+                transitions[offset++] = packedTransitions[index];
+            }
+        }
+        stateOffsets[length + 1] = offset;
+    }
+
+
+    /**
+     * Returns the length of the string the oracle was built for.
+     *
+     * @return The length of the string the oracle was built for.
+     */
+    int length() {
+        return length;
+    }
+
+
+    /**
+     * Returns the state reached from the initial state on a byte, or NO_STATE if there is no transition.
+     *
+     * @param value The byte to transition on.
+     * @return The state reached from the initial state, or NO_STATE if there is no transition.
+     */
+    int initialTransition(final byte value) {
+        return initialTransitions[value & 0xFF];
+    }
+
+
+    /**
+     * Returns the state reached from a state other than the initial state on a byte,
+     * or NO_STATE if there is no transition.
+     *
+     * @param state The state to transition from, which must not be the initial state.
+     * @param value The byte to transition on.
+     * @return The state reached, or NO_STATE if there is no transition.
+     */
+    int transition(final int state, final byte value) {
+        final int byteValue = value & 0xFF;
+        final int end = stateOffsets[state + 1];
+        for (int index = stateOffsets[state]; index < end; index++) {
+            final int packed = transitions[index];
+            if ((packed & 0xFF) == byteValue) {
+                return packed >>> 8;
+            }
+        }
+        return NO_STATE;
+    }
+
+
+    /**
+     * Returns the number of transitions in the oracle.
+     *
+     * @return The number of transitions in the oracle.
+     */
+    int numberOfTransitions() {
+        int count = transitions.length;
+        for (final int target : initialTransitions) {
+            if (target != NO_STATE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    private static int findTransition(final int state, final int value, final int[] firstTransition,
+                                      final int[] nextTransition, final int[] packedTransitions) {
+        for (int index = firstTransition[state]; index >= 0; index = nextTransition[index]) {
+            if ((packedTransitions[index] & 0xFF) == value) {
+                return packedTransitions[index] >>> 8;
+            }
+        }
+        return NO_STATE;
+    }
+
+}
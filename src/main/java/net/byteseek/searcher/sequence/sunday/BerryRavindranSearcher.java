@@ -0,0 +1,303 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence.sunday;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
+import net.byteseek.utils.factory.ObjectFactory;
+import net.byteseek.utils.lazy.DoubleCheckImmutableLazyObject;
+import net.byteseek.utils.lazy.LazyObject;
+
+/**
+ * BerryRavindranSearcher searches for a sequence using the Berry-Ravindran algorithm,
+ * which extends the Sunday Quick Search algorithm to shift on the two bytes following
+ * the current window, rather than only the first byte after it.
+ * <p>
+ * A pair of bytes is far less likely to occur in the sequence than a single byte, so
+ * shifts are longer on average, up to the length of the sequence plus two.  The shift
+ * table has an entry for each of the 65536 pairs of bytes.  It is stored as a char array,
+ * taking 128Kb, half the size of an int table.  Shifts for sequences longer than 65533
+ * bytes are limited to 65535.
+ * <p>
+ * Byte classes are supported by setting the shifts for all the pairs of bytes which two
+ * adjacent positions in the sequence can match.
+ * <p>
+ * Thread safety: this class is immutable, so it is safe to use this
+ * searcher in multiple threads simultaneously.
+ *
+ * @author Matt Palmer
+ */
+public final class BerryRavindranSearcher extends AbstractSequenceSearcher {
+
+    private static final int MAX_SHIFT = Character.MAX_VALUE;
+
+    private final LazyObject<char[]> forwardInfo;
+    private final LazyObject<char[]> backwardInfo;
+
+
+    /**
+     * Constructs a Berry-Ravindran searcher given a {@link SequenceMatcher}
+     * to search for.
+     *
+     * @param sequence The sequence to search for.
+     */
+    public BerryRavindranSearcher(final SequenceMatcher sequence) {
+        super(sequence);
+        forwardInfo  = new DoubleCheckImmutableLazyObject<char[]>(new ForwardInfoFactory());
+        backwardInfo = new DoubleCheckImmutableLazyObject<char[]>(new BackwardInfoFactory());
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+
+        // Get the objects needed to search:
+        final char[] safeShifts = forwardInfo.get();
+        final SequenceMatcher sequence = getMatcher();
+
+        // Calculate safe bounds for the search:
+        final int length = sequence.length();
+        final int finalPosition = bytes.length - length;
+        final int lastLoopPosition = finalPosition - 2;
+        final int lastPosition = toPosition < finalPosition?
+                                 toPosition : finalPosition;
+        final int lastShiftPosition = toPosition < lastLoopPosition?
+                                      toPosition : lastLoopPosition;
+        int searchPosition = fromPosition > 0?
+                             fromPosition : 0;
+
+        // Search forwards.  The loop does not check the final two positions,
+        // as we shift on the two bytes after the sequence.
+        while (searchPosition <= lastShiftPosition) {
+            if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
+                return searchPosition;
+            }
+            final int pairPosition = searchPosition + length;
+            searchPosition += safeShifts[((bytes[pairPosition] & 0xFF) << 8) | (bytes[pairPosition + 1] & 0xFF)];
+        }
+
+        // Check the final positions if necessary:
+        while (searchPosition <= lastPosition) {
+            if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
+                return searchPosition;
+            }
+            searchPosition++;
+        }
+
+        return NO_MATCH;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+
+        // Get the objects needed to search:
+        final char[] safeShifts = backwardInfo.get();
+        final SequenceMatcher sequence = getMatcher();
+
+        // Calculate safe bounds for the search:
+        final int lastPosition = toPosition > 0?
+                                 toPosition : 0;
+        final int lastShiftPosition = toPosition > 2?
+                                      toPosition : 2;
+        final int firstPossiblePosition = bytes.length - sequence.length();
+        int searchPosition = fromPosition < firstPossiblePosition?
+                             fromPosition : firstPossiblePosition;
+
+        // Search backwards.  The loop does not check the first two positions
+        // in the array, as we shift on the two bytes before the sequence.
+        while (searchPosition >= lastShiftPosition) {
+            if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
+                return searchPosition;
+            }
+            searchPosition -= safeShifts[((bytes[searchPosition - 1] & 0xFF) << 8) | (bytes[searchPosition - 2] & 0xFF)];
+        }
+
+        // Check the first positions if necessary:
+        while (searchPosition >= lastPosition) {
+            if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
+                return searchPosition;
+            }
+            searchPosition--;
+        }
+
+        return NO_MATCH;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareForwards() {
+        forwardInfo.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareBackwards() {
+        backwardInfo.get();
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[sequence:" + matcher + ']';
+    }
+
+
+    /**
+     * Calculates the safe shifts for each pair of bytes following a window, indexed by
+     * the first byte following the window in the high byte, and the second in the low byte.
+     * <p>
+     * Searching backwards is the same as searching forwards for the reversed sequence,
+     * where the bytes following the window are the bytes before it in reverse order.
+     *
+     * @param sequence The sequence to calculate shifts for.
+     * @param reversed Whether to calculate the shifts for the reversed sequence.
+     * @return The safe shifts for each pair of bytes following a window.
+     */
+    private static char[] createShifts(final SequenceMatcher sequence, final boolean reversed) {
+        final int length = sequence.length();
+        final int lastPosition = length - 1;
+        final char[] shifts = new char[65536];
+
+        // The default shift is the length of the sequence plus two:
+        Arrays.fill(shifts, shiftValue(length + 2));
+
+        // If the second byte matches the first position, shift by the length plus one.
+        // Each position can match more than one byte (e.g. if a byte class appears).
+        final char firstShift = shiftValue(length + 1);
+        for (final byte second : matchingBytes(sequence, 0, reversed)) {
+            final int secondByte = second & 0xFF;
+            for (int first = 0; first < 256; first++) {
+                shifts[(first << 8) | secondByte] = firstShift;
+            }
+        }
+
+        // For each pair of adjacent positions, from the start, the shift is their distance
+        // from the end plus one.  As these get smaller, later pairs override earlier ones:
+        for (int position = 0; position < lastPosition; position++) {
+            final char pairShift = shiftValue(length - position);
+            final byte[] secondBytes = matchingBytes(sequence, position + 1, reversed);
+            for (final byte first : matchingBytes(sequence, position, reversed)) {
+                final int firstIndex = (first & 0xFF) << 8;
+                for (final byte second : secondBytes) {
+                    shifts[firstIndex | (second & 0xFF)] = pairShift;
+                }
+            }
+        }
+
+        // If the first byte matches the last position, shift by one:
+        for (final byte first : matchingBytes(sequence, lastPosition, reversed)) {
+            final int firstIndex = (first & 0xFF) << 8;
+            Arrays.fill(shifts, firstIndex, firstIndex + 256, (char) 1);
+        }
+
+        return shifts;
+    }
+
+
+    private static byte[] matchingBytes(final SequenceMatcher sequence, final int position, final boolean reversed) {
+        final int index = reversed? sequence.length() - 1 - position : position;
+        return sequence.getMatcherForPosition(index).getMatchingBytes();
+    }
+
+
+    private static char shiftValue(final int shift) {
+        return (char) (shift < MAX_SHIFT? shift : MAX_SHIFT);
+    }
+
+
+    private final class ForwardInfoFactory implements ObjectFactory<char[]> {
+
+        private ForwardInfoFactory() {
+        }
+
+        /**
+         * Calculates the safe shifts to use if searching forwards.
+         */
+        @Override
+        public char[] create() {
+            return createShifts(getMatcher(), false);
+        }
+    }
+
+
+    private final class BackwardInfoFactory implements ObjectFactory<char[]> {
+
+        private BackwardInfoFactory() {
+        }
+
+        /**
+         * Calculates the safe shifts to use if searching backwards.
+         */
+        @Override
+        public char[] create() {
+            return createShifts(getMatcher(), true);
+        }
+    }
+
+}
@@ -31,19 +31,16 @@
 
 package net.byteseek.searcher.sequence.sunday;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
-import net.byteseek.io.reader.windows.Window;
-import net.byteseek.io.reader.WindowReader;
 import net.byteseek.matcher.bytes.ByteMatcher;
 import net.byteseek.matcher.sequence.SequenceMatcher;
 import net.byteseek.utils.lazy.DoubleCheckImmutableLazyObject;
 import net.byteseek.utils.lazy.LazyObject;
 import net.byteseek.utils.factory.ObjectFactory;
 import net.byteseek.searcher.SearchResult;
-import net.byteseek.searcher.SearchUtils;
 import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
 
 
@@ -71,9 +68,18 @@ public final class SundayQuickSearcher extends AbstractSequenceSearcher {
 
     /**
      * {@inheritDoc}
-     */    
+     */
     @Override
     public List<SearchResult<SequenceMatcher>> searchForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */    
+    @Override
+    protected int searchPositionForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
         
         // Get the objects needed to search:
         final int[] safeShifts = forwardInfo.get();
@@ -92,7 +98,7 @@ public final class SundayQuickSearcher extends AbstractSequenceSearcher {
         // position, as we shift on the byte after the sequence.
         while (searchPosition <= lastPosition) {
             if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
-                return SearchUtils.singleResult(searchPosition, sequence);
+                return searchPosition;
             }
             searchPosition += safeShifts[bytes[searchPosition + length] & 0xFF];
         }
@@ -101,74 +107,87 @@ public final class SundayQuickSearcher extends AbstractSequenceSearcher {
         if (searchPosition == finalPosition && 
             toPosition     >= finalPosition &&
             sequence.matches(bytes, finalPosition)) {
-            return SearchUtils.singleResult(finalPosition, sequence);
+            return finalPosition;
         }
 
-        return SearchUtils.noResults();
+        return NO_MATCH;
     }        
     
     
+    /**
+     * Returns true, as this searcher searches ByteBuffers without copying them.
+     *
+     * @return true
+     */
+    @Override
+    protected boolean searchesBuffersDirectly() {
+        return true;
+    }
+
+
     /**
      * {@inheritDoc}
      */
     @Override
-    public List<SearchResult<SequenceMatcher>> doSearchForwards(final WindowReader reader, 
-            final long fromPosition, final long toPosition ) throws IOException {
-        
-        // Initialise
+    protected List<SearchResult<SequenceMatcher>> searchForwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(buffer, fromPosition, toPosition));
+    }
+
+
+    /**
+     * Searches forward in a ByteBuffer using the Sunday Quick algorithm,
+     * reading bytes directly from the buffer, so off-heap buffers are not copied.
+     */
+    @Override
+    protected int searchPositionForwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+
+        // Get the objects needed to search:
         final int[] safeShifts = forwardInfo.get();
         final SequenceMatcher sequence = getMatcher();
+
+        // Calculate safe bounds for the search:
         final int length = sequence.length();
-        long searchPosition = fromPosition;
-        
-        // While there is a window to search in...
-        // If there is no window immediately after the sequence,
-        // then there is no match, since this is only invoked if the 
-        // sequence is already crossing into another window.         
-        Window window;
-        while (searchPosition <= toPosition &&
-               (window = reader.getWindow(searchPosition + length)) != null) {
-            
-            // Initialise array search:
-            final byte[] array = window.getArray();
-            final int arrayStartPosition = reader.getWindowOffset(searchPosition + length);
-            final int arrayEndPosition = window.length() - 1;
-            final long distanceToEnd = toPosition - window.getWindowPosition() + length ;
-            final int finalPosition = distanceToEnd < arrayEndPosition?
-                                (int) distanceToEnd : arrayEndPosition;
-            int arraySearchPosition = arrayStartPosition;
-            
-            // Search fowards in the array using the reader interface to match.
-            // The loop does not check the final position, as we shift on the byte
-            // after the sequence (so would get an IndexOutOfBoundsException in the final position).
-            while (arraySearchPosition < finalPosition) {
-                if (sequence.matches(reader, searchPosition)) {
-                    return SearchUtils.singleResult(searchPosition, sequence);
-                }
-                final int shift = safeShifts[array[arraySearchPosition] & 0xFF];
-                searchPosition += shift;
-                arraySearchPosition += shift;
-            }
+        final int finalPosition = buffer.limit() - length;
+        final int lastLoopPosition = finalPosition - 1;
+        final int lastPosition = toPosition < lastLoopPosition?
+                                 toPosition : lastLoopPosition;
+        int searchPosition = fromPosition > 0?
+                             fromPosition : 0;
 
-            // Check final position if necessary:
-            if (arraySearchPosition == finalPosition ||
-                searchPosition == toPosition) {
-                if (sequence.matches(reader, searchPosition)) {
-                    return SearchUtils.singleResult(searchPosition, sequence);
-                }
-                searchPosition += safeShifts[array[arraySearchPosition] & 0xFF];
+        // Search forwards.  The loop does not check for the final
+        // position, as we shift on the byte after the sequence.
+        while (searchPosition <= lastPosition) {
+            if (matchesNoBoundsCheck(sequence, buffer, searchPosition)) {
+                return searchPosition;
             }
+            searchPosition += safeShifts[buffer.get(searchPosition + length) & 0xFF];
+        }
+
+        // Check the final position if necessary:
+        if (searchPosition == finalPosition &&
+            toPosition     >= finalPosition &&
+            matchesNoBoundsCheck(sequence, buffer, finalPosition)) {
+            return finalPosition;
         }
 
-        return SearchUtils.noResults();
+        return NO_MATCH;
     }
-    
+
 
     /**
      * {@inheritDoc}
      */
     @Override
     public List<SearchResult<SequenceMatcher>> searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
         
         // Get objects needed to search:
         final int[] safeShifts = backwardInfo.get();
@@ -186,7 +205,7 @@ public final class SundayQuickSearcher extends AbstractSequenceSearcher {
         // immediately before the current search position.
         while (searchPosition >= lastLoopPosition) {
             if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
-                return SearchUtils.singleResult(searchPosition, sequence);
+                return searchPosition;
             }
             searchPosition -= safeShifts[bytes[searchPosition - 1] & 0xFF];             
         }
@@ -195,10 +214,10 @@ public final class SundayQuickSearcher extends AbstractSequenceSearcher {
         if (searchPosition == 0 &&
             toPosition < 1 &&
             sequence.matches(bytes, 0)) {
-            return SearchUtils.singleResult(0, sequence);
+            return 0;
         }
 
-        return SearchUtils.noResults();
+        return NO_MATCH;
     }
     
     
@@ -206,56 +225,47 @@ public final class SundayQuickSearcher extends AbstractSequenceSearcher {
      * {@inheritDoc}
      */
     @Override
-    public List<SearchResult<SequenceMatcher>> doSearchBackwards(final WindowReader reader, 
-            final long fromPosition, final long toPosition ) throws IOException {
-        
-         // Initialise 
-        final int[] safeShifts = forwardInfo.get();
+    protected List<SearchResult<SequenceMatcher>> searchBackwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(buffer, fromPosition, toPosition));
+    }
+
+
+    /**
+     * Searches backwards in a ByteBuffer using the Sunday Quick algorithm,
+     * reading bytes directly from the buffer, so off-heap buffers are not copied.
+     */
+    @Override
+    protected int searchPositionBackwards(final ByteBuffer buffer, final int fromPosition, final int toPosition) {
+
+        // Get objects needed to search:
+        final int[] safeShifts = backwardInfo.get();
         final SequenceMatcher sequence = getMatcher();
-        long searchPosition = fromPosition;
-        
-        // While there is a window to search in...
-        // If there is no window immediately before the sequence,
-        // then there is no match, since this is only invoked if the 
-        // sequence is already crossing into another window.        
-        Window window;
-        while (searchPosition >= toPosition &&
-               (window = reader.getWindow(searchPosition - 1)) != null) {
-            
-            // Initialise array search:
-            final byte[] array = window.getArray();
-            final int arrayStartPosition = reader.getWindowOffset(searchPosition - 1);
-            
-            // Search to the beginning of the array, or the final search position,
-            // whichver comes first.
-            final long endRelativeToWindow = toPosition - window.getWindowPosition();
-            final int arrayEndSearchPosition = endRelativeToWindow > 0?
-                                         (int) endRelativeToWindow : 0;
-            int arraySearchPosition = arrayStartPosition;
-            
-            // Search backwards in the array using the reader interface to match.
-            // The loop does not check the final position, as we shift on the byte
-            // before it.
-            while (arraySearchPosition > arrayEndSearchPosition) {
-                if (sequence.matches(reader, searchPosition)) {
-                    return SearchUtils.singleResult(searchPosition, sequence);
-                }
-                final int shift = safeShifts[array[arraySearchPosition] & 0xFF];
-                searchPosition -= shift;
-                arraySearchPosition -= shift;
-            }
 
-            // Check final position if necessary:
-            if (arraySearchPosition == arrayEndSearchPosition ||
-                searchPosition == toPosition) {
-                if (sequence.matches(reader, searchPosition)) {
-                    return SearchUtils.singleResult(searchPosition, sequence);
-                }
-                searchPosition -= safeShifts[array[arraySearchPosition] & 0xFF];
+        // Calculate safe bounds for the search:
+        final int lastLoopPosition = toPosition > 1?
+                                     toPosition : 1;
+        final int firstPossiblePosition = buffer.limit() - sequence.length();
+        int searchPosition = fromPosition < firstPossiblePosition ?
+                             fromPosition : firstPossiblePosition;
+
+        // Search backwards.  The loop does not check the
+        // first position in the buffer, because we shift on the byte
+        // immediately before the current search position.
+        while (searchPosition >= lastLoopPosition) {
+            if (matchesNoBoundsCheck(sequence, buffer, searchPosition)) {
+                return searchPosition;
             }
+            searchPosition -= safeShifts[buffer.get(searchPosition - 1) & 0xFF];
         }
-        
-        return SearchUtils.noResults();
+
+        // Check for first position if necessary:
+        if (searchPosition == 0 &&
+            toPosition < 1 &&
+            matchesNoBoundsCheck(sequence, buffer, 0)) {
+            return 0;
+        }
+
+        return NO_MATCH;
     }
 
 
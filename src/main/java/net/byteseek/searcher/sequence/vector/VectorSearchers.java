@@ -0,0 +1,120 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence.vector;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
+import net.byteseek.searcher.sequence.SequenceMatcherSearcher;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * Creates VectorSequenceSearchers when the incubating Vector API is available,
+ * falling back to a scalar {@link SequenceMatcherSearcher} when it is not.
+ * <p>
+ * The VectorSequenceSearcher needs JDK 17 or later, so it is not part of the core library,
+ * which runs on Java 7.  It is built into a separate jar with the classifier "vector" by
+ * the vector profile.  The Vector API is available if that jar is on the classpath, and
+ * the JVM was started with the jdk.incubator.vector module added.  It is not available
+ * otherwise, or if the platform's preferred vectors hold fewer than 32 bytes.
+ * Either way, the searchers returned find the same matches.
+ * <p>
+ * This class only refers to the vector searcher by name, so it can be loaded on any Java runtime.
+ *
+ * @author Matt Palmer
+ */
+public final class VectorSearchers {
+
+    private static final String VECTOR_SEARCHER = "net.byteseek.searcher.sequence.vector.VectorSequenceSearcher";
+
+    private static final Constructor<? extends AbstractSequenceSearcher> CONSTRUCTOR = findConstructor();
+
+    private VectorSearchers() {
+    }
+
+    /**
+     * Returns whether the Vector API is available to search with.
+     *
+     * @return true if the Vector API is available.
+     */
+    public static boolean isAvailable() {
+        return CONSTRUCTOR != null;
+    }
+
+    /**
+     * Returns a searcher for a sequence, which uses the Vector API if it is available.
+     *
+     * @param sequence The SequenceMatcher to search for.
+     * @return A VectorSequenceSearcher if the Vector API is available, or a SequenceMatcherSearcher if not.
+     * @throws IllegalArgumentException if the sequence is null.
+     */
+    public static AbstractSequenceSearcher newSequenceSearcher(final SequenceMatcher sequence) {
+        ArgUtils.checkNullObject(sequence, "sequence");
+        if (CONSTRUCTOR == null) {
+            return new SequenceMatcherSearcher(sequence);
+        }
+        try {
+            return CONSTRUCTOR.newInstance(sequence);
+        } catch (InvocationTargetException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Could not create a " + VECTOR_SEARCHER, cause);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Could not create a " + VECTOR_SEARCHER, ex);
+        }
+    }
+
+    /*
+     * Loading the vector searcher fails if its jar is not on the classpath, if the runtime is
+     * older than Java 17, or if the Vector API module was not added, in which case it is not available.
+     */
+    private static Constructor<? extends AbstractSequenceSearcher> findConstructor() {
+        try {
+            final Class<? extends AbstractSequenceSearcher> searcherClass =
+                    Class.forName(VECTOR_SEARCHER).asSubclass(AbstractSequenceSearcher.class);
+            final int vectorLength = (Integer) searcherClass.getMethod("getVectorLength").invoke(null);
+            return vectorLength >= 32? searcherClass.getConstructor(SequenceMatcher.class) : null;
+        } catch (ReflectiveOperationException unavailable) {
+            return null;
+        } catch (LinkageError unavailable) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.stream;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import net.byteseek.searcher.MatchListener;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * An abstract base class for {@link StreamSearchSession}s, which tracks the position
+ * in the stream, reports matches to the listener, and stops reporting matches once
+ * the listener returns false.
+ * <p>
+ * Subclasses implement {@link #search(byte[], int, int)} to search each chunk,
+ * {@link #searchRemaining()} to report matches at the end of the stream, and
+ * {@link #clearState()} to discard any state carried between chunks.
+ *
+ * @param <T> The type of object associated with a match.
+ * @author Matt Palmer
+ */
+public abstract class AbstractStreamSession<T> implements StreamSearchSession {
+
+    private static final int BUFFER_COPY_SIZE = 8192;
+
+    private final MatchListener<T> listener;
+    private long position;
+    private boolean stopped;
+    private byte[] bufferCopy;
+
+    /**
+     * Constructs an AbstractStreamSession which reports matches to the listener given.
+     *
+     * @param listener The listener to report matches to.
+     * @throws IllegalArgumentException if the listener is null.
+     */
+    public AbstractStreamSession(final MatchListener<T> listener) {
+        ArgUtils.checkNullObject(listener, "listener");
+        this.listener = listener;
+    }
+
+    @Override
+    public long feed(final byte[] bytes) {
+        ArgUtils.checkNullByteArray(bytes);
+        return feed(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public long feed(final byte[] bytes, final int offset, final int length) {
+        ArgUtils.checkNullByteArray(bytes);
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IllegalArgumentException("The range offset " + offset + " length " + length +
+                                               " does not fit in an array of length " + bytes.length);
+        }
+        final long numMatches = stopped || length == 0? 0 : search(bytes, offset, length);
+        position += length;
+        return numMatches;
+    }
+
+    @Override
+    public long feed(final ByteBuffer buffer) {
+        ArgUtils.checkNullObject(buffer, "buffer");
+        long numMatches = 0;
+        if (buffer.hasArray()) {
+            final int start = buffer.position();
+            final int remaining = buffer.remaining();
+            numMatches = feed(buffer.array(), buffer.arrayOffset() + start, remaining);
+            ((Buffer) buffer).position(start + remaining);
+        } else {
+            if (bufferCopy == null) {
+                bufferCopy = new byte[BUFFER_COPY_SIZE];
+            }
+            while (buffer.hasRemaining()) {
+                final int toCopy = Math.min(buffer.remaining(), bufferCopy.length);
+                buffer.get(bufferCopy, 0, toCopy);
+                numMatches += feed(bufferCopy, 0, toCopy);
+            }
+        }
+        return numMatches;
+    }
+
+    @Override
+    public long finish() {
+        final long numMatches = stopped? 0 : searchRemaining();
+        clearState();
+        return numMatches;
+    }
+
+    @Override
+    public void reset() {
+        clearState();
+        position = 0;
+        stopped = false;
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns true if the listener has asked for no more matches to be reported.
+     *
+     * @return true if the listener has asked for no more matches to be reported.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Reports a match to the listener.  If the listener returns false, the session is stopped.
+     *
+     * @param matchPosition  The position of the match in the stream.
+     * @param matchingObject The object associated with the match.
+     * @return true if the search should continue, false if it should stop.
+     */
+    protected final boolean report(final long matchPosition, final T matchingObject) {
+        if (!listener.matchFound(matchPosition, matchingObject)) {
+            stopped = true;
+        }
+        return !stopped;
+    }
+
+    /**
+     * Searches the next chunk of the stream, reporting any matches which can be determined.
+     * When this is called, {@link #getPosition()} returns the position of the first byte
+     * of the chunk in the stream.  The chunk will not be empty.
+     *
+     * @param bytes  The array containing the next chunk of bytes in the stream.
+     * @param offset The offset of the chunk in the array.
+     * @param length The length of the chunk.
+     * @return The number of matches reported.
+     */
+    protected abstract long search(byte[] bytes, int offset, int length);
+
+    /**
+     * Reports any matches which could only be determined at the end of the stream.
+     * When this is called, {@link #getPosition()} returns the length of the stream.
+     *
+     * @return The number of matches reported.
+     */
+    protected abstract long searchRemaining();
+
+    /**
+     * Discards any state carried between chunks.
+     */
+    protected abstract void clearState();
+
+}
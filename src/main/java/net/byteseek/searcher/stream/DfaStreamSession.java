@@ -0,0 +1,235 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.stream;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import net.byteseek.automata.State;
+import net.byteseek.matcher.MatchResult;
+import net.byteseek.matcher.automata.DfaMatcher;
+import net.byteseek.searcher.MatchListener;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A {@link StreamSearchSession} which matches the deterministic automata of a
+ * {@link DfaMatcher} at every position of a stream.
+ * <p>
+ * Rather than keeping any bytes of the stream, the session keeps the partial matches
+ * in progress: the position each one started at, and the state of the automata it has
+ * reached.  Each byte fed starts a new partial match, and advances all the partial
+ * matches in progress, discarding those which have no next state.  A match is reported
+ * as soon as a partial match reaches a final state, with a {@link MatchResult} giving its
+ * length and the objects associated with the final state.  A partial match continues
+ * after reaching a final state, so longer matches from the same start are also reported.
+ * <p>
+ * Two partial matches which reach the same state will behave identically from then on,
+ * so only the one which started earliest is kept, and the later one is dropped.  At most
+ * one partial match is in progress for each state of the automata, so the memory used is
+ * bounded by the number of states, even for automata with cycles such as <code>a.*b</code>,
+ * which could otherwise start a partial match at every position of the stream.
+ * As a result, only the earliest starting (longest) match is reported for each final state
+ * reached at a position.  If no two partial matches ever reach the same state, as in a trie,
+ * all the matches the automata can make at each position are reported, as they are by
+ * {@link DfaMatcher#allMatches(byte[], int)}.
+ * <p>
+ * Matches are reported in the order they complete, which is not necessarily the order
+ * of the positions they started at.
+ * <p>
+ * This class is not thread-safe, but the matcher can be shared with other sessions.
+ *
+ * @param <T> The type of object associated with the final states of the automata.
+ * @author Matt Palmer
+ */
+public final class DfaStreamSession<T> extends AbstractStreamSession<MatchResult<T>> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final DfaMatcher<T> matcher;
+    private final State<T> initialState;
+    private long[] startPositions;
+    private State<T>[] states;
+    private int numActive;
+
+    /**
+     * Constructs a DfaStreamSession.
+     *
+     * @param matcher  The matcher whose automata is matched at every position of the stream.
+     * @param listener The listener to report matches to.
+     * @throws IllegalArgumentException if the matcher or listener are null, or the matcher has no initial state.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public DfaStreamSession(final DfaMatcher<T> matcher, final MatchListener<MatchResult<T>> listener) {
+        super(listener);
+        ArgUtils.checkNullObject(matcher, "matcher");
+        this.matcher        = matcher;
+        this.initialState   = matcher.getAutomata().getInitialState();
+        ArgUtils.checkNullObject(initialState, "initial state");
+        this.startPositions = new long[INITIAL_CAPACITY];
+        this.states         = (State<T>[]) new State[INITIAL_CAPACITY];
+    }
+
+    @Override
+    protected long search(final byte[] bytes, final int offset, final int length) {
+        final long chunkPosition = getPosition() - offset;
+        final int endOffset = offset + length;
+        long numMatches = 0;
+        for (int arrayPosition = offset; arrayPosition < endOffset; arrayPosition++) {
+            final long streamPosition = chunkPosition + arrayPosition;
+
+            // Start a new partial match at this position:
+            if (initialState.isFinal()) {
+                numMatches++;
+                if (!report(streamPosition, new StreamMatchResult<T>(streamPosition, 0, initialState))) {
+                    return numMatches;
+                }
+            }
+            addActive(streamPosition, initialState);
+
+            // Advance all the partial matches by the byte at this position, dropping any which
+            // reach the same state as a partial match which started earlier:
+            final byte currentByte = bytes[arrayPosition];
+            int numKept = 0;
+            for (int active = 0; active < numActive; active++) {
+                final State<T> nextState = states[active].getNextState(currentByte);
+                if (nextState != null && !isKept(nextState, numKept)) {
+                    final long startPosition = startPositions[active];
+                    if (nextState.isFinal()) {
+                        numMatches++;
+                        final long matchLength = streamPosition - startPosition + 1;
+                        if (!report(startPosition, new StreamMatchResult<T>(startPosition, matchLength, nextState))) {
+                            return numMatches;
+                        }
+                    }
+                    startPositions[numKept] = startPosition;
+                    states[numKept++] = nextState;
+                }
+            }
+            Arrays.fill(states, numKept, numActive, null);
+            numActive = numKept;
+        }
+        return numMatches;
+    }
+
+    @Override
+    protected long searchRemaining() {
+        return 0; // matches are reported as soon as they complete.
+    }
+
+    @Override
+    protected void clearState() {
+        Arrays.fill(states, 0, numActive, null);
+        numActive = 0;
+    }
+
+    /**
+     * @return The number of partial matches currently in progress.
+     */
+    public int getNumActive() {
+        return numActive;
+    }
+
+    /**
+     * @return The matcher whose automata is matched at every position of the stream.
+     */
+    public DfaMatcher<T> getMatcher() {
+        return matcher;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[matcher: " + matcher + " position: " + getPosition() +
+                                            " active: " + numActive + ']';
+    }
+
+    /**
+     * Returns true if one of the partial matches already kept has reached the state.
+     * Partial matches are held in the order they started, so any kept partial match
+     * started earlier than the one being advanced.
+     */
+    private boolean isKept(final State<T> state, final int numKept) {
+        final State<T>[] localStates = states;
+        for (int kept = 0; kept < numKept; kept++) {
+            if (localStates[kept] == state) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addActive(final long startPosition, final State<T> state) {
+        if (numActive == states.length) {
+            final int newCapacity = states.length * 2;
+            startPositions = Arrays.copyOf(startPositions, newCapacity);
+            states = Arrays.copyOf(states, newCapacity);
+        }
+        startPositions[numActive] = startPosition;
+        states[numActive++] = state;
+    }
+
+    /**
+     * A match found in the stream, with the objects associated with the final state reached.
+     */
+    private static final class StreamMatchResult<T> implements MatchResult<T> {
+
+        private final long matchPosition;
+        private final long matchLength;
+        private final State<T> matchingState;
+
+        private StreamMatchResult(final long matchPosition, final long matchLength, final State<T> matchingState) {
+            this.matchPosition = matchPosition;
+            this.matchLength   = matchLength;
+            this.matchingState = matchingState;
+        }
+
+        @Override
+        public long getMatchPosition() {
+            return matchPosition;
+        }
+
+        @Override
+        public long getMatchLength() {
+            return matchLength;
+        }
+
+        @Override
+        public Collection<T> getMatchingObjects() {
+            return matchingState.getAssociations();
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[position: " + matchPosition + " length: " + matchLength + ']';
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.stream;
+
+import java.util.Arrays;
+
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.MatchListener;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.multisequence.AbstractMultiSequenceSearcher;
+import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A {@link StreamSearchSession} which runs a {@link Searcher} over each chunk of a stream,
+ * given the maximum length of a match the searcher can find.
+ * <p>
+ * Positions whose matches lie entirely within the bytes fed so far are searched in the
+ * chunk array itself.  Only the last (maximum match length - 1) bytes of the stream are
+ * kept between chunks.  When the next chunk arrives, the start of the chunk is joined onto
+ * them, and the positions which cross the chunk boundary are searched in the joined bytes.
+ * Positions in the last (maximum match length - 1) bytes of the stream are searched when
+ * the session is finished, as shorter matches can still occur there.
+ * <p>
+ * Any searcher can be used, including the sequence searchers and the multi-sequence
+ * searchers such as Wu-Manber and Set Horspool.  Static factory methods are provided
+ * which obtain the maximum match length from the searcher's matcher.
+ * <p>
+ * This class is not thread-safe, but the searcher can be shared with other sessions.
+ *
+ * @param <T> The type of object associated with a match.
+ * @author Matt Palmer
+ */
+public final class SearcherStreamSession<T> extends AbstractStreamSession<T> {
+
+    private final Searcher<T> searcher;
+    private final int maxMatchLength;
+    private final byte[] tail;
+    private final OffsetListener offsetListener = new OffsetListener();
+    private int tailLength;
+
+    /**
+     * Constructs a SearcherStreamSession.
+     *
+     * @param searcher       The searcher to run over each chunk of the stream.
+     * @param maxMatchLength The maximum length of a match the searcher can find.
+     * @param listener       The listener to report matches to.
+     * @throws IllegalArgumentException if the searcher or listener are null,
+     *                                  or the maximum match length is less than one.
+     */
+    public SearcherStreamSession(final Searcher<T> searcher, final int maxMatchLength,
+                                 final MatchListener<T> listener) {
+        super(listener);
+        ArgUtils.checkNullObject(searcher, "searcher");
+        ArgUtils.checkPositiveInteger(maxMatchLength, "maxMatchLength");
+        this.searcher       = searcher;
+        this.maxMatchLength = maxMatchLength;
+        this.tail           = new byte[maxMatchLength - 1];
+        searcher.prepareForwards();
+    }
+
+    /**
+     * Returns a session for a sequence searcher, whose maximum match length is the length of its matcher.
+     *
+     * @param searcher The sequence searcher to run over each chunk of the stream.
+     * @param listener The listener to report matches to.
+     * @return A session for the sequence searcher.
+     * @throws IllegalArgumentException if the searcher or listener are null.
+     */
+    public static SearcherStreamSession<SequenceMatcher> forSequenceSearcher(
+            final AbstractSequenceSearcher searcher, final MatchListener<SequenceMatcher> listener) {
+        ArgUtils.checkNullObject(searcher, "searcher");
+        return new SearcherStreamSession<SequenceMatcher>(searcher, searcher.getMatcher().length(), listener);
+    }
+
+    /**
+     * Returns a session for a multi-sequence searcher, whose maximum match length is the
+     * length of the longest sequence in its matcher.
+     *
+     * @param searcher The multi-sequence searcher to run over each chunk of the stream.
+     * @param listener The listener to report matches to.
+     * @return A session for the multi-sequence searcher.
+     * @throws IllegalArgumentException if the searcher or listener are null.
+     */
+    public static SearcherStreamSession<SequenceMatcher> forMultiSequenceSearcher(
+            final AbstractMultiSequenceSearcher searcher, final MatchListener<SequenceMatcher> listener) {
+        ArgUtils.checkNullObject(searcher, "searcher");
+        return new SearcherStreamSession<SequenceMatcher>(searcher, searcher.getMatcher().getMaximumLength(), listener);
+    }
+
+    @Override
+    protected long search(final byte[] bytes, final int offset, final int length) {
+        final long chunkPosition = getPosition();
+        long numMatches = 0;
+
+        // Search the positions crossing from the bytes kept into the new chunk:
+        if (tailLength > 0) {
+            final int joinLength = Math.min(length, tail.length);
+            final byte[] joined = Arrays.copyOf(tail, tailLength + joinLength);
+            System.arraycopy(bytes, offset, joined, tailLength, joinLength);
+            final int lastPosition = Math.min(tailLength - 1, joined.length - maxMatchLength);
+            if (lastPosition >= 0) {
+                numMatches += search(joined, 0, lastPosition, chunkPosition - tailLength);
+            }
+        }
+
+        // Search the positions whose matches lie entirely within the chunk:
+        final int lastPosition = offset + length - maxMatchLength;
+        if (lastPosition >= offset && !isStopped()) {
+            numMatches += search(bytes, offset, lastPosition, chunkPosition - offset);
+        }
+
+        keepTail(bytes, offset, length);
+        return numMatches;
+    }
+
+    @Override
+    protected long searchRemaining() {
+        return tailLength == 0? 0 : search(Arrays.copyOf(tail, tailLength), 0, tailLength - 1,
+                                           getPosition() - tailLength);
+    }
+
+    @Override
+    protected void clearState() {
+        tailLength = 0;
+    }
+
+    /**
+     * @return The searcher run over each chunk of the stream.
+     */
+    public Searcher<T> getSearcher() {
+        return searcher;
+    }
+
+    /**
+     * @return The maximum length of a match the searcher can find.
+     */
+    public int getMaxMatchLength() {
+        return maxMatchLength;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[searcher: " + searcher + " max match length: " + maxMatchLength +
+                                            " position: " + getPosition() + " bytes kept: " + tailLength + ']';
+    }
+
+    private long search(final byte[] bytes, final int fromPosition, final int toPosition, final long streamOffset) {
+        offsetListener.streamOffset = streamOffset;
+        return searcher.searchForwards(bytes, fromPosition, toPosition, offsetListener);
+    }
+
+    /**
+     * Keeps the last bytes of the stream, up to one less than the maximum match length.
+     */
+    private void keepTail(final byte[] bytes, final int offset, final int length) {
+        final int newTailLength = Math.min(tail.length, tailLength + length);
+        if (length >= newTailLength) {
+            System.arraycopy(bytes, offset + length - newTailLength, tail, 0, newTailLength);
+        } else {
+            final int keepFromTail = newTailLength - length;
+            System.arraycopy(tail, tailLength - keepFromTail, tail, 0, keepFromTail);
+            System.arraycopy(bytes, offset, tail, keepFromTail, length);
+        }
+        tailLength = newTailLength;
+    }
+
+    /**
+     * Translates positions in the array being searched into positions in the stream.
+     */
+    private final class OffsetListener implements MatchListener<T> {
+
+        private long streamOffset;
+
+        @Override
+        public boolean matchFound(final long matchPosition, final T matchingObject) {
+            return report(streamOffset + matchPosition, matchingObject);
+        }
+    }
+
+}
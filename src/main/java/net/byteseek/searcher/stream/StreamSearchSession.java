@@ -0,0 +1,108 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A stateful search over a stream of bytes which arrives in chunks, for example from
+ * a socket, when the data cannot be provided by a {@link net.byteseek.io.reader.WindowReader}.
+ * <p>
+ * Each chunk is passed to one of the feed methods, and matches are reported to the
+ * {@link net.byteseek.searcher.MatchListener} the session was created with as soon as they
+ * can be determined.  Partial matches which cross from one chunk into the next are
+ * carried over between calls, so a match is found however the stream is divided into
+ * chunks.  Positions reported are positions in the stream as a whole, starting at zero.
+ * If the listener returns false, the session stops reporting matches until it is reset.
+ * <p>
+ * When the stream ends, {@link #finish()} must be called to report any matches which
+ * could not be determined until it was known that no more bytes were coming.
+ * <p>
+ * Sessions are not thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public interface StreamSearchSession {
+
+    /**
+     * Searches the next chunk of the stream.
+     *
+     * @param bytes The next chunk of bytes in the stream.
+     * @return The number of matches reported.
+     * @throws IllegalArgumentException if the bytes are null.
+     */
+    long feed(byte[] bytes);
+
+    /**
+     * Searches the next chunk of the stream, given as a range of a byte array.
+     * The array is not retained after the call returns.
+     *
+     * @param bytes  The array containing the next chunk of bytes in the stream.
+     * @param offset The offset of the chunk in the array.
+     * @param length The length of the chunk.
+     * @return The number of matches reported.
+     * @throws IllegalArgumentException if the bytes are null, or the range does not fit in the array.
+     */
+    long feed(byte[] bytes, int offset, int length);
+
+    /**
+     * Searches the remaining bytes of the buffer as the next chunk of the stream.
+     * The position of the buffer is advanced to its limit.
+     *
+     * @param buffer The buffer containing the next chunk of bytes in the stream.
+     * @return The number of matches reported.
+     * @throws IllegalArgumentException if the buffer is null.
+     */
+    long feed(ByteBuffer buffer);
+
+    /**
+     * Reports any matches remaining at the end of the stream, and discards any
+     * partial matches still in progress.
+     *
+     * @return The number of matches reported.
+     */
+    long finish();
+
+    /**
+     * Discards all state, so the session can search a new stream from position zero.
+     */
+    void reset();
+
+    /**
+     * Returns the position in the stream of the next byte to be fed,
+     * which is the number of bytes fed so far.
+     *
+     * @return The position in the stream of the next byte to be fed.
+     */
+    long getPosition();
+
+}
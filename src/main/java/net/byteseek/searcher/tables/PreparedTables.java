@@ -0,0 +1,530 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.tables;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.multisequence.MultiSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.utils.ArgUtils;
+
+/**
+ * A compact, versioned binary store of the pre-computed shift tables used by searchers,
+ * so a searcher for a large set of patterns can be prepared without recalculating them.
+ * <p>
+ * Each table is stored under a key, together with a fingerprint of the patterns it was
+ * calculated from.  Searchers build their keys with {@link #tableKey(Class, long, String)},
+ * which includes the fingerprint, so the tables of many searchers for different patterns
+ * can be stored together.  A searcher constructed with a PreparedTables object looks up its
+ * tables lazily when it first searches, and only uses them if the fingerprint matches its
+ * own patterns; otherwise it calculates them as normal.  Searchers implementing
+ * {@link PreparedTableSearcher} can add their tables to a {@link Builder}, which writes
+ * them out in this format.
+ * <p>
+ * As well as shift tables, a searcher can store the set of bytes it checks before running
+ * its verifier, using {@link Builder#addByteSet(String, long, byte[])}.  These are stored
+ * as a table of eight ints, with one bit for each byte value.
+ * <p>
+ * The format is a header of the magic number "BSPT", the version, the number of tables,
+ * then the key, fingerprint, length and offset of each table, followed by the tables
+ * themselves as big-endian ints aligned on four byte boundaries.  As the tables are read
+ * directly from a ByteBuffer, a file can be memory mapped using {@link #map(java.io.File)},
+ * which only reads the pages of the tables actually used, and lets several processes
+ * share the same physical memory.
+ * <p>
+ * This class is immutable and thread-safe.
+ *
+ * @author Matt Palmer
+ */
+public final class PreparedTables {
+
+    private static final int MAGIC = 0x42535054; // "BSPT"
+    private static final int VERSION = 1;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int BYTE_SET_LENGTH = 8;
+
+    private final ByteBuffer data;
+    private final Map<String, Entry> entries;
+
+    private PreparedTables(final ByteBuffer data, final Map<String, Entry> entries) {
+        this.data = data;
+        this.entries = entries;
+    }
+
+    /**
+     * Memory maps a file of prepared tables.  The file is closed once mapped, but the
+     * mapping remains valid for as long as the PreparedTables object is reachable.
+     *
+     * @param file The file of prepared tables to map.
+     * @return A PreparedTables object reading its tables from the mapped file.
+     * @throws IOException If there is a problem mapping the file, or it does not contain prepared tables.
+     * @throws IllegalArgumentException if the file is null.
+     */
+    public static PreparedTables map(final File file) throws IOException {
+        ArgUtils.checkNullObject(file, "file");
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads prepared tables fully into memory from an InputStream.  The stream is not closed.
+     *
+     * @param in The InputStream to read the prepared tables from.
+     * @return A PreparedTables object read from the stream.
+     * @throws IOException If there is a problem reading the stream, or it does not contain prepared tables.
+     * @throws IllegalArgumentException if the stream is null.
+     */
+    public static PreparedTables read(final InputStream in) throws IOException {
+        ArgUtils.checkNullObject(in, "in");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            bytes.write(buffer, 0, read);
+        }
+        return wrap(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * Reads prepared tables from a ByteBuffer, from its current position to its limit.
+     * The tables are read from the buffer when they are requested, so it must not be
+     * modified afterwards.
+     *
+     * @param buffer The ByteBuffer containing the prepared tables.
+     * @return A PreparedTables object reading its tables from the buffer.
+     * @throws IOException If the buffer does not contain prepared tables.
+     * @throws IllegalArgumentException if the buffer is null.
+     */
+    public static PreparedTables wrap(final ByteBuffer buffer) throws IOException {
+        ArgUtils.checkNullObject(buffer, "buffer");
+        final ByteBuffer data = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (data.getInt() != MAGIC) {
+                throw new IOException("The data does not contain prepared tables.");
+            }
+            final int version = data.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported prepared tables version: " + version);
+            }
+            final int numTables = data.getInt();
+            if (numTables < 0) {
+                throw new IOException("Invalid number of prepared tables: " + numTables);
+            }
+            final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+            for (int tableNo = 0; tableNo < numTables; tableNo++) {
+                final String key = readUTF(data);
+                final long fingerprint = data.getLong();
+                final int length = data.getInt();
+                final int offset = data.getInt();
+                if (length < 0 || offset < 0 || (offset & 3) != 0 ||
+                    (long) offset + (long) length * 4 > data.limit()) {
+                    throw new IOException("Invalid table " + key + " of length " + length + " at offset " + offset);
+                }
+                entries.put(key, new Entry(fingerprint, offset, length));
+            }
+            return new PreparedTables(data, Collections.unmodifiableMap(entries));
+        } catch (BufferUnderflowException truncated) {
+            throw new EOFException("The prepared tables are truncated.");
+        }
+    }
+
+    /**
+     * Returns a read-only view of the table stored under the key given, if it was
+     * calculated from patterns with the fingerprint given.  The table is not copied;
+     * the view reads directly from the underlying data, so the values of a mapped
+     * file are only paged in when they are read.
+     *
+     * @param key The key of the table.
+     * @param fingerprint The fingerprint of the patterns the table must have been calculated from.
+     * @return A read-only view of the table, or null if there is no such table with a matching fingerprint.
+     * @throws IllegalArgumentException if the key is null.
+     */
+    public IntBuffer getTable(final String key, final long fingerprint) {
+        ArgUtils.checkNullObject(key, "key");
+        final Entry entry = entries.get(key);
+        if (entry == null || entry.fingerprint != fingerprint) {
+            return null;
+        }
+        final ByteBuffer tableBytes = data.duplicate();
+        ((Buffer) tableBytes).limit(entry.offset + entry.length * 4);
+        ((Buffer) tableBytes).position(entry.offset);
+        return tableBytes.slice().order(ByteOrder.BIG_ENDIAN).asIntBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the set of bytes stored under the key given by {@link Builder#addByteSet(String, long, byte[])},
+     * if it was calculated from patterns with the fingerprint given.
+     *
+     * @param key The key of the byte set.
+     * @param fingerprint The fingerprint of the patterns the byte set must have been calculated from.
+     * @return The set of bytes, or null if there is no such byte set with a matching fingerprint.
+     * @throws IllegalArgumentException if the key is null.
+     */
+    public Set<Byte> getByteSet(final String key, final long fingerprint) {
+        final IntBuffer table = getTable(key, fingerprint);
+        if (table == null || table.remaining() != BYTE_SET_LENGTH) {
+            return null;
+        }
+        final Set<Byte> bytes = new LinkedHashSet<Byte>();
+        for (int value = 0; value < 256; value++) {
+            if ((table.get(value >>> 5) & (1 << (value & 31))) != 0) {
+                bytes.add((byte) value);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns whether a table is stored under the key given.
+     *
+     * @param key The key of the table.
+     * @return true if a table is stored under the key.
+     */
+    public boolean containsTable(final String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Returns the keys of all the tables stored, in the order they were written.
+     *
+     * @return An unmodifiable set of the keys of the tables stored.
+     */
+    public Set<String> getKeys() {
+        return entries.keySet();
+    }
+
+    /**
+     * Returns the number of tables stored.
+     *
+     * @return The number of tables stored.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[tables:" + entries.keySet() + ']';
+    }
+
+    /**
+     * Returns the key a searcher stores one of its tables under.  The key includes the
+     * fingerprint of the patterns the table was calculated from, so searchers of the same
+     * class for different patterns do not replace each other's tables.
+     *
+     * @param searcherClass The class of the searcher which calculated the table.
+     * @param fingerprint The fingerprint of the patterns the table was calculated from.
+     * @param tableName The name of the table within the searcher.
+     * @return The key to store the table under.
+     * @throws IllegalArgumentException if the searcher class or table name is null.
+     */
+    public static String tableKey(final Class<?> searcherClass, final long fingerprint, final String tableName) {
+        ArgUtils.checkNullObject(searcherClass, "searcherClass");
+        ArgUtils.checkNullObject(tableName, "tableName");
+        return searcherClass.getName() + '.' + Long.toHexString(fingerprint) + '.' + tableName;
+    }
+
+    /**
+     * Calculates a fingerprint of a SequenceMatcher, from the bytes matched at each position.
+     *
+     * @param sequence The SequenceMatcher to fingerprint.
+     * @return A 64 bit fingerprint of the SequenceMatcher.
+     * @throws IllegalArgumentException if the sequence is null.
+     */
+    public static long fingerprint(final SequenceMatcher sequence) {
+        ArgUtils.checkNullObject(sequence, "sequence");
+        return addSequence(FNV_OFFSET_BASIS, sequence);
+    }
+
+    /**
+     * Calculates a fingerprint of all the sequences in a MultiSequenceMatcher, in order.
+     *
+     * @param sequences The MultiSequenceMatcher to fingerprint.
+     * @return A 64 bit fingerprint of the sequences in the MultiSequenceMatcher.
+     * @throws IllegalArgumentException if the sequences are null.
+     */
+    public static long fingerprint(final MultiSequenceMatcher sequences) {
+        ArgUtils.checkNullObject(sequences, "sequences");
+        long hash = FNV_OFFSET_BASIS;
+        for (final SequenceMatcher sequence : sequences.getSequenceMatchers()) {
+            hash = addSequence(hash, sequence);
+        }
+        return hash;
+    }
+
+    private static long addSequence(final long hashSoFar, final SequenceMatcher sequence) {
+        final int length = sequence.length();
+        long hash = addInt(hashSoFar, length);
+        for (int position = 0; position < length; position++) {
+            final ByteMatcher matcher = sequence.getMatcherForPosition(position);
+            final int numMatching = matcher.getNumberOfMatchingBytes();
+            hash = addInt(hash, numMatching);
+            if (numMatching < 256) {
+                for (final byte value : matcher.getMatchingBytes()) {
+                    hash = (hash ^ (value & 0xFF)) * FNV_PRIME;
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static long addInt(final long hashSoFar, final int value) {
+        long hash = hashSoFar;
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            hash = (hash ^ ((value >>> shift) & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static String readUTF(final ByteBuffer data) throws IOException {
+        final byte[] encoded = new byte[data.getShort() & 0xFFFF];
+        data.get(encoded);
+        final char[] chars = new char[encoded.length];
+        int numChars = 0;
+        int index = 0;
+        while (index < encoded.length) {
+            final int first = encoded[index++] & 0xFF;
+            if (first < 0x80) {
+                chars[numChars++] = (char) first;
+            } else if ((first & 0xE0) == 0xC0 && index < encoded.length) {
+                chars[numChars++] = (char) (((first & 0x1F) << 6) | (encoded[index++] & 0x3F));
+            } else if ((first & 0xF0) == 0xE0 && index + 1 < encoded.length) {
+                chars[numChars++] = (char) (((first & 0x0F) << 12) | ((encoded[index++] & 0x3F) << 6) |
+                                            (encoded[index++] & 0x3F));
+            } else {
+                throw new UTFDataFormatException("Invalid table key encoding.");
+            }
+        }
+        return new String(chars, 0, numChars);
+    }
+
+
+    /**
+     * A builder of prepared tables, which can be written out to a stream or file.
+     * <p>
+     * This class is not thread-safe.
+     */
+    public static final class Builder {
+
+        private final Map<String, Table> tables = new LinkedHashMap<String, Table>();
+
+        /**
+         * Adds a table to the builder, replacing any table already added under the same key.
+         *
+         * @param key The key of the table.
+         * @param fingerprint The fingerprint of the patterns the table was calculated from.
+         * @param table The table to add.  The table is not copied, so must not be modified afterwards.
+         * @return This builder.
+         * @throws IllegalArgumentException if the key or table is null.
+         */
+        public Builder add(final String key, final long fingerprint, final int[] table) {
+            ArgUtils.checkNullObject(key, "key");
+            ArgUtils.checkNullObject(table, "table");
+            tables.put(key, new Table(fingerprint, table));
+            return this;
+        }
+
+        /**
+         * Adds a set of bytes to the builder, replacing any table already added under the same key.
+         * The set is stored as a table of eight ints, with one bit for each byte value.
+         *
+         * @param key The key of the byte set.
+         * @param fingerprint The fingerprint of the patterns the byte set was calculated from.
+         * @param bytes The bytes in the set.
+         * @return This builder.
+         * @throws IllegalArgumentException if the key or bytes are null.
+         */
+        public Builder addByteSet(final String key, final long fingerprint, final byte[] bytes) {
+            ArgUtils.checkNullObject(bytes, "bytes");
+            final int[] table = new int[BYTE_SET_LENGTH];
+            for (final byte value : bytes) {
+                table[(value & 0xFF) >>> 5] |= 1 << (value & 31);
+            }
+            return add(key, fingerprint, table);
+        }
+
+        /**
+         * Adds all the tables of a searcher to the builder, preparing the searcher if necessary.
+         *
+         * @param searcher The searcher whose tables should be added.
+         * @return This builder.
+         * @throws IllegalArgumentException if the searcher is null.
+         */
+        public Builder add(final PreparedTableSearcher searcher) {
+            ArgUtils.checkNullObject(searcher, "searcher");
+            searcher.addTables(this);
+            return this;
+        }
+
+        /**
+         * Returns the number of tables added.
+         *
+         * @return The number of tables added.
+         */
+        public int size() {
+            return tables.size();
+        }
+
+        /**
+         * Writes the tables out to an OutputStream.  The stream is not closed.
+         *
+         * @param out The OutputStream to write the tables to.
+         * @throws IOException If there is a problem writing to the stream.
+         * @throws IllegalArgumentException if the stream is null.
+         */
+        public void write(final OutputStream out) throws IOException {
+            ArgUtils.checkNullObject(out, "out");
+            // The header has a fixed size whatever the offsets are, so write it once
+            // to measure it, then again with the real table offsets.
+            final int headerLength = (writeHeader(0).size() + 3) & ~3;
+            final ByteArrayOutputStream header = writeHeader(headerLength);
+            while (header.size() < headerLength) {
+                header.write(0);
+            }
+            header.writeTo(out);
+            final DataOutputStream data = new DataOutputStream(out);
+            for (final Table table : tables.values()) {
+                for (final int value : table.values) {
+                    data.writeInt(value);
+                }
+            }
+            data.flush();
+        }
+
+        /**
+         * Writes the tables out to a file, replacing any existing file.
+         *
+         * @param file The file to write the tables to.
+         * @throws IOException If there is a problem writing to the file.
+         * @throws IllegalArgumentException if the file is null.
+         */
+        public void write(final File file) throws IOException {
+            ArgUtils.checkNullObject(file, "file");
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                write(new BufferedOutputStream(out));
+            } finally {
+                out.close();
+            }
+        }
+
+        /**
+         * Builds a PreparedTables object from the tables added, held in memory.
+         *
+         * @return A PreparedTables object containing the tables added.
+         */
+        public PreparedTables build() {
+            try {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                write(out);
+                return wrap(ByteBuffer.wrap(out.toByteArray()));
+            } catch (IOException cannotHappen) {
+                throw new IllegalStateException(cannotHappen);
+            }
+        }
+
+        private ByteArrayOutputStream writeHeader(final int firstTableOffset) throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream header = new DataOutputStream(bytes);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(tables.size());
+            long offset = firstTableOffset;
+            for (final Map.Entry<String, Table> entry : tables.entrySet()) {
+                final Table table = entry.getValue();
+                header.writeUTF(entry.getKey());
+                header.writeLong(table.fingerprint);
+                header.writeInt(table.values.length);
+                header.writeInt((int) offset);
+                offset += table.values.length * 4L;
+            }
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("The tables are too large to write: " + offset + " bytes.");
+            }
+            header.flush();
+            return bytes;
+        }
+    }
+
+
+    private static final class Entry {
+        private final long fingerprint;
+        private final int offset;
+        private final int length;
+
+        private Entry(final long fingerprint, final int offset, final int length) {
+            this.fingerprint = fingerprint;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+
+    private static final class Table {
+        private final long fingerprint;
+        private final int[] values;
+
+        private Table(final long fingerprint, final int[] values) {
+            this.fingerprint = fingerprint;
+            this.values = values;
+        }
+    }
+
+}
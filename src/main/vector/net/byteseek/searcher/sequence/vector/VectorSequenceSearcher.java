@@ -0,0 +1,295 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence.vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
+
+/**
+ * VectorSequenceSearcher searches for a sequence using the incubating Vector API
+ * (jdk.incubator.vector) to find candidate positions as many bytes at a time as the
+ * platform's preferred vectors hold: 32 or 64.
+ * <p>
+ * For each block of search positions, it loads the bytes at the first and last
+ * positions of the sequence as vectors, and tests all the lanes at once against the
+ * bytes matched at those positions.  Only positions where both the first and the last
+ * bytes match are verified with the sequence itself.  Positions matching a single byte
+ * are tested for equality, and any other byte class is tested by looking up each byte
+ * in a 256-bit set held in one 32 byte vector.  Positions matching any byte are not tested.
+ * <p>
+ * This is a good choice for short sequences, or sequences whose first and last bytes are
+ * uncommon, where the shifts of Horspool style searchers give little benefit.
+ * <p>
+ * This class needs JDK 17 or later running with the jdk.incubator.vector module, on a
+ * platform whose preferred vectors hold at least 32 bytes.  Use {@link VectorSearchers}
+ * to create a searcher which falls back to a scalar searcher when they are not available.
+ * <p>
+ * Thread safety: this class is immutable, so it is safe to use this
+ * searcher in multiple threads simultaneously.
+ *
+ * @author Matt Palmer
+ */
+public final class VectorSequenceSearcher extends AbstractSequenceSearcher {
+
+    /*
+     * The preferred species of the platform.  It must have at least 32 lanes so the
+     * 256-bit set fits in one vector, which VectorSearchers checks before using this class.
+     */
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private static final ByteVector ONES = ByteVector.broadcast(SPECIES, (byte) 1);
+
+    /*
+     * Up to two positions of the sequence are tested: the first and the last.  Each is
+     * tested either for a single byte value, or for membership of a 256-bit set.  The
+     * tests are held in fields rather than objects so the vector code can be compiled
+     * into vector instructions without boxing.
+     */
+    private final int numTests;
+    private final int firstOffset;
+    private final byte firstValue;
+    private final ByteVector firstSet;
+    private final int secondOffset;
+    private final byte secondValue;
+    private final ByteVector secondSet;
+
+
+    /**
+     * Constructs a VectorSequenceSearcher given a {@link SequenceMatcher} to search for.
+     *
+     * @param sequence The SequenceMatcher to search for.
+     * @throws IllegalArgumentException if the sequence is null.
+     * @throws UnsupportedOperationException if the platform's preferred vectors hold fewer than 32 bytes.
+     */
+    public VectorSequenceSearcher(final SequenceMatcher sequence) {
+        super(sequence);
+        if (SPECIES.length() < 32) {
+            throw new UnsupportedOperationException("Preferred vectors hold fewer than 32 bytes: " + SPECIES);
+        }
+        final List<Integer> offsets = new ArrayList<Integer>(2);
+        final int lastPosition = sequence.length() - 1;
+        if (sequence.getMatcherForPosition(0).getNumberOfMatchingBytes() < 256) {
+            offsets.add(0);
+        }
+        if (lastPosition > 0 && sequence.getMatcherForPosition(lastPosition).getNumberOfMatchingBytes() < 256) {
+            offsets.add(lastPosition);
+        }
+        numTests = offsets.size();
+        firstOffset = numTests > 0? offsets.get(0) : 0;
+        final ByteMatcher first = sequence.getMatcherForPosition(firstOffset);
+        firstValue = first.getMatchingBytes()[0];
+        firstSet = first.getNumberOfMatchingBytes() == 1? null : setFor(first);
+        secondOffset = numTests > 1? offsets.get(1) : firstOffset;
+        final ByteMatcher second = sequence.getMatcherForPosition(secondOffset);
+        secondValue = second.getMatchingBytes()[0];
+        secondSet = second.getNumberOfMatchingBytes() == 1? null : setFor(second);
+    }
+
+
+    /**
+     * Returns the number of search positions tested at a time.
+     *
+     * @return The number of search positions tested at a time.
+     */
+    public static int getVectorLength() {
+        return SPECIES.length();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionForwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionForwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        // Calculate safe bounds for the search:
+        final SequenceMatcher sequence = matcher;
+        final int lastPossiblePosition = bytes.length - sequence.length();
+        final int lastPosition = toPosition < lastPossiblePosition?
+                                 toPosition : lastPossiblePosition;
+        int searchPosition = fromPosition > 0?
+                             fromPosition : 0;
+
+        // Test a block of positions at a time while a whole block of positions is valid:
+        if (numTests > 0) {
+            final int vectorLength = SPECIES.length();
+            while (searchPosition <= lastPosition - vectorLength + 1) {
+                long candidates = candidatesAt(bytes, searchPosition);
+                while (candidates != 0) {
+                    final int matchPosition = searchPosition + Long.numberOfTrailingZeros(candidates);
+                    if (sequence.matchesNoBoundsCheck(bytes, matchPosition)) {
+                        return matchPosition;
+                    }
+                    candidates &= candidates - 1;
+                }
+                searchPosition += vectorLength;
+            }
+        }
+
+        // Test any remaining positions one at a time:
+        for (; searchPosition <= lastPosition; searchPosition++) {
+            if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
+                return searchPosition;
+            }
+        }
+        return NO_MATCH;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SearchResult<SequenceMatcher>> searchBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        return resultsFor(searchPositionBackwards(bytes, fromPosition, toPosition));
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int searchPositionBackwards(final byte[] bytes, final int fromPosition, final int toPosition) {
+        // Calculate safe bounds for the search:
+        final SequenceMatcher sequence = matcher;
+        final int lastPosition = toPosition > 0?
+                                 toPosition : 0;
+        final int firstPossiblePosition = bytes.length - sequence.length();
+        int searchPosition = fromPosition < firstPossiblePosition?
+                             fromPosition : firstPossiblePosition;
+
+        // Test a block of positions at a time while a whole block of positions is valid:
+        if (numTests > 0) {
+            final int vectorLength = SPECIES.length();
+            while (searchPosition - vectorLength + 1 >= lastPosition) {
+                final int blockStart = searchPosition - vectorLength + 1;
+                long candidates = candidatesAt(bytes, blockStart);
+                while (candidates != 0) {
+                    final int lane = 63 - Long.numberOfLeadingZeros(candidates);
+                    if (sequence.matchesNoBoundsCheck(bytes, blockStart + lane)) {
+                        return blockStart + lane;
+                    }
+                    candidates &= ~(1L << lane);
+                }
+                searchPosition -= vectorLength;
+            }
+        }
+
+        // Test any remaining positions one at a time:
+        for (; searchPosition >= lastPosition; searchPosition--) {
+            if (sequence.matchesNoBoundsCheck(bytes, searchPosition)) {
+                return searchPosition;
+            }
+        }
+        return NO_MATCH;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareForwards() {
+        // no preparation necessary.
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareBackwards() {
+        // no preparation necessary.
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[vectorLength:" + SPECIES.length() + " sequence:" + matcher + ']';
+    }
+
+
+    /**
+     * Returns a bit set of the positions in a block starting at a position where all
+     * the tested positions of the sequence match, with bit zero for the first position.
+     */
+    private long candidatesAt(final byte[] bytes, final int blockStart) {
+        final ByteVector firstBytes = ByteVector.fromArray(SPECIES, bytes, blockStart + firstOffset);
+        VectorMask<Byte> candidates = firstSet == null? firstBytes.eq(firstValue)
+                                                      : inSet(firstBytes, firstSet);
+        if (numTests > 1) {
+            final ByteVector secondBytes = ByteVector.fromArray(SPECIES, bytes, blockStart + secondOffset);
+            candidates = candidates.and(secondSet == null? secondBytes.eq(secondValue)
+                                                         : inSet(secondBytes, secondSet));
+        }
+        // (most blocks have no candidates, and testing for any is cheaper than converting the mask):
+        return candidates.anyTrue()? candidates.toLong() : 0;
+    }
+
+
+    /**
+     * Looks up each byte in a 256-bit set: the top five bits of the byte select one of
+     * the 32 bytes of the set, and the bottom three bits select a bit in that byte.
+     */
+    private static VectorMask<Byte> inSet(final ByteVector bytes, final ByteVector set) {
+        final ByteVector setIndexes = bytes.lanewise(VectorOperators.LSHR, 3);
+        final ByteVector bitsToTest = ONES.lanewise(VectorOperators.LSHL, bytes.and((byte) 7));
+        return setIndexes.selectFrom(set).and(bitsToTest).compare(VectorOperators.NE, (byte) 0);
+    }
+
+
+    private static ByteVector setFor(final ByteMatcher byteMatcher) {
+        final byte[] setBytes = new byte[SPECIES.length()];
+        for (final byte value : byteMatcher.getMatchingBytes()) {
+            setBytes[(value & 0xFF) >>> 3] |= (byte) (1 << (value & 7));
+        }
+        return ByteVector.fromArray(SPECIES, setBytes, 0);
+    }
+
+}
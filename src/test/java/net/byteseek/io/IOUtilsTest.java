@@ -1,5 +1,8 @@
 package net.byteseek.io;
 
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -8,6 +11,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Iterator;
 
 import static org.junit.Assert.*;
 
@@ -57,6 +61,42 @@ public class IOUtilsTest {
 
     }
 
+    @Test
+    public void testReadBytesFromWindowReader() throws Exception {
+        final byte[] expected = IOUtils.readEntireFile(asciiFile);
+        final FileReader reader = new FileReader(asciiFile, 1000);
+        try {
+            testReadBytes(reader, expected);
+            testReadBytes(new WindowsOnlyReader(reader), expected);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void testReadBytes(final WindowReader reader, final byte[] expected) throws IOException {
+        for (final int length : new int[] {1, 999, 1000, 1001, 2500}) {
+            for (int position = 0; position < expected.length; position += 733) {
+                final byte[] bytes = new byte[length + 2];
+                final int read = IOUtils.readBytes(reader, position, bytes, 2, length);
+                assertEquals("Length read at " + position, Math.min(length, expected.length - position), read);
+                for (int i = 0; i < read; i++) {
+                    assertEquals("Byte at " + (position + i), expected[position + i], bytes[2 + i]);
+                }
+            }
+        }
+        assertEquals(0, IOUtils.readBytes(reader, expected.length, new byte[10], 0, 10));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testReadBytesFromWindowReaderPastArrayEnd() throws Exception {
+        final FileReader reader = new FileReader(asciiFile);
+        try {
+            IOUtils.readBytes(new WindowsOnlyReader(reader), 0, new byte[10], 6, 5);
+        } finally {
+            reader.close();
+        }
+    }
+
     @Test
     public void testReadBytes1() throws Exception {
 
@@ -122,6 +162,48 @@ public class IOUtilsTest {
     }
 
 
+    /**
+     * A WindowReader which is not an AbstractReader, so bytes are read from its Windows.
+     */
+    private static final class WindowsOnlyReader implements WindowReader {
+
+        private final WindowReader reader;
+
+        private WindowsOnlyReader(final WindowReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int readByte(final long position) throws IOException {
+            return reader.readByte(position);
+        }
+
+        @Override
+        public Window getWindow(final long position) throws IOException {
+            return reader.getWindow(position);
+        }
+
+        @Override
+        public int getWindowOffset(final long position) {
+            return reader.getWindowOffset(position);
+        }
+
+        @Override
+        public long length() throws IOException {
+            return reader.length();
+        }
+
+        @Override
+        public Iterator<Window> iterator() {
+            return reader.iterator();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
     private File getFile(final String resourceName) {
         return new File(getFilePath(resourceName));
     }
@@ -0,0 +1,164 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.byteseek.io.reader.windows.Window;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the bulk read and view methods of an AbstractReader.
+ *
+ * @author Matt Palmer
+ */
+public class AbstractReaderTest {
+
+	private static final int[] WINDOW_SIZES = {1, 7, 255, 4096};
+	private static final int[] LENGTHS      = {1, 2, 6, 7, 8, 300, 5000};
+
+	private byte[] expected;
+
+	@Before
+	public void setUp() throws IOException {
+		final File file = getFile();
+		expected = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(expected);
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testReadNegativeOffset() throws IOException {
+		new ByteArrayReader(new byte[10]).read(0, new byte[10], -1, 5);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testReadNegativeLength() throws IOException {
+		new ByteArrayReader(new byte[10]).read(0, new byte[10], 0, -1);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testReadPastArrayEnd() throws IOException {
+		new ByteArrayReader(new byte[10]).read(0, new byte[10], 6, 5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testViewZeroLength() throws IOException {
+		new ByteArrayReader(new byte[10]).getView(0, 0);
+	}
+
+	@Test
+	public void testReadOutsideReader() throws IOException {
+		final ByteArrayReader reader = new ByteArrayReader(new byte[10]);
+		assertEquals(0, reader.read(-1, new byte[5], 0, 5));
+		assertEquals(0, reader.read(10, new byte[5], 0, 5));
+		assertEquals(3, reader.read(7, new byte[5], 0, 5));
+		assertEquals(0, reader.read(0, new byte[5], 0, 0));
+		assertNull(reader.getView(-1, 5));
+		assertNull(reader.getView(10, 5));
+	}
+
+	@Test
+	public void testReadAcrossWindows() throws IOException {
+		for (final int windowSize : WINDOW_SIZES) {
+			final FileReader reader = new FileReader(getFile(), windowSize, 2);
+			try {
+				for (final int length : LENGTHS) {
+					final byte[] readInto = new byte[length + 2];
+					for (int position = 0; position < expected.length; position += 997) {
+						final int totalRead = reader.read(position, readInto, 1, length);
+						assertEquals(Math.min(length, expected.length - position), totalRead);
+						for (int i = 0; i < totalRead; i++) {
+							assertEquals("Window size " + windowSize + " position " + position,
+									     expected[position + i], readInto[i + 1]);
+						}
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	@Test
+	public void testViewAcrossWindows() throws IOException {
+		for (final int windowSize : WINDOW_SIZES) {
+			final FileReader reader = new FileReader(getFile(), windowSize, 2);
+			try {
+				for (final int length : LENGTHS) {
+					for (int position = 0; position < expected.length; position += 499) {
+						final Window view = reader.getView(position, length);
+						final int offset = (int) (position - view.getWindowPosition());
+						final int available = Math.min(length, expected.length - position);
+						assertTrue(offset >= 0);
+						assertTrue(view.length() - offset >= available);
+						final byte[] array = view.getArray();
+						for (int i = 0; i < available; i++) {
+							assertEquals("Window size " + windowSize + " position " + position,
+									     expected[position + i], array[offset + i]);
+						}
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	@Test
+	public void testViewInsideWindowIsWindow() throws IOException {
+		final FileReader reader = new FileReader(getFile(), 4096);
+		try {
+			assertSame(reader.getWindow(100), reader.getView(100, 50));
+			assertNotSame(reader.getWindow(4090), reader.getView(4090, 50));
+			assertSame("View at end is last window", reader.getWindow(expected.length - 1),
+					   reader.getView(expected.length - 1, 50));
+		} finally {
+			reader.close();
+		}
+	}
+
+	private File getFile() {
+		return new File(getClass().getResource("/TestASCII.txt").getPath());
+	}
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.WindowCache;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for reading SeekableByteChannels opened from Paths.
+ *
+ * @author Matt Palmer
+ */
+public class ChannelReaderTest {
+
+	private File file;
+	private byte[] expected;
+
+	@Before
+	public void setUp() throws IOException {
+		file = new File(getClass().getResource("/TestASCII.txt").getPath());
+		expected = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(expected);
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullPath() throws IOException {
+		new ChannelReader((Path) null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWindowSizeCheckedBeforeOpening() throws IOException {
+		// The file doesn't exist, so opening a channel before checking the arguments would fail differently.
+		new ChannelReader(new File(file.getParentFile(), "no such file.bin").toPath(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullCacheCheckedBeforeOpening() throws IOException {
+		new ChannelReader(new File(file.getParentFile(), "no such file.bin").toPath(), (WindowCache) null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullChannel() throws IOException {
+		new ChannelReader((SeekableByteChannel) null);
+	}
+
+	@Test
+	public void testDefaultFileSystem() throws IOException {
+		final ChannelReader reader = new ChannelReader(file.toPath(), 127);
+		try {
+			assertEquals(file.toPath(), reader.getPath());
+			assertReadsCorrectly(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testZipFileSystem() throws IOException {
+		final File zip = File.createTempFile("byteseek", ".zip");
+		try {
+			final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+			try {
+				out.putNextEntry(new ZipEntry("TestASCII.txt"));
+				out.write(expected);
+				out.closeEntry();
+			} finally {
+				out.close();
+			}
+			final FileSystem zipFileSystem = FileSystems.newFileSystem(zip.toPath(), (ClassLoader) null);
+			try {
+				final ChannelReader reader = new ChannelReader(zipFileSystem.getPath("TestASCII.txt"), 4096);
+				try {
+					assertReadsCorrectly(reader);
+				} finally {
+					reader.close();
+				}
+			} finally {
+				zipFileSystem.close();
+			}
+		} finally {
+			zip.delete();
+		}
+	}
+
+	@Test
+	public void testChannelWhichCannotPosition() throws IOException {
+		final SeekableByteChannel channel = new ForwardOnlyChannel(
+				Files.newByteChannel(file.toPath(), StandardOpenOption.READ));
+		final ChannelReader reader = new ChannelReader(channel, 1000, new LeastRecentlyUsedCache(2), true);
+		try {
+			for (int pos = 0; pos < expected.length; pos += 3001) {
+				assertEquals(expected[pos] & 0xFF, reader.readByte(pos));
+			}
+			assertEquals(-1, reader.readByte(expected.length));
+			try {
+				reader.readByte(0);
+				fail("Expected an IOException going backwards without a path to re-open");
+			} catch (IOException expectedException) {
+			}
+		} finally {
+			reader.close();
+		}
+		assertFalse(channel.isOpen());
+	}
+
+	private void assertReadsCorrectly(final ChannelReader reader) throws IOException {
+		assertEquals(expected.length, reader.length());
+		for (int pos = 0; pos < expected.length; pos++) {
+			assertEquals(expected[pos] & 0xFF, reader.readByte(pos));
+		}
+		for (int pos = expected.length - 1; pos >= 0; pos -= 7) {
+			assertEquals(expected[pos] & 0xFF, reader.readByte(pos));
+		}
+		assertEquals(-1, reader.readByte(expected.length));
+		assertEquals(-1, reader.readByte(-1));
+	}
+
+	/**
+	 * A channel which cannot change its position, like some zip file system channels.
+	 */
+	private static final class ForwardOnlyChannel implements SeekableByteChannel {
+
+		private final SeekableByteChannel channel;
+
+		ForwardOnlyChannel(final SeekableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public int read(final ByteBuffer dst) throws IOException {
+			return channel.read(dst);
+		}
+
+		@Override
+		public int write(final ByteBuffer src) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long position() throws IOException {
+			return channel.position();
+		}
+
+		@Override
+		public SeekableByteChannel position(final long newPosition) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long size() throws IOException {
+			return channel.size();
+		}
+
+		@Override
+		public SeekableByteChannel truncate(final long size) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.byteseek.io.reader.cache.NoCache;
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for reading several readers as one contiguous source.
+ *
+ * @author Matt Palmer
+ */
+public class CompositeReaderTest {
+
+	private File file;
+	private byte[] expected;
+
+	@Before
+	public void setUp() throws IOException {
+		file = new File(getClass().getResource("/TestASCII.txt").getPath());
+		expected = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(expected);
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullSegments() throws IOException {
+		new CompositeReader((List<WindowReader>) null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullSegment() throws IOException {
+		new CompositeReader(new ByteArrayReader(new byte[10]), null);
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		final CompositeReader reader = new CompositeReader();
+		assertEquals(0, reader.length());
+		assertEquals(-1, reader.readByte(0));
+		assertNull(reader.getWindow(0));
+		reader.close();
+	}
+
+	@Test
+	public void testSegmentIndex() throws IOException {
+		final CompositeReader reader = new CompositeReader(new ByteArrayReader(new byte[10]),
+				new InputStreamReader(new ByteArrayInputStream(new byte[0])), new ByteArrayReader(new byte[5]), new ByteArrayReader(new byte[1]));
+		assertEquals(4, reader.getNumSegments());
+		assertEquals(16, reader.length());
+		assertEquals(0, reader.getSegmentIndex(0));
+		assertEquals(0, reader.getSegmentIndex(9));
+		assertEquals("Empty segment skipped", 2, reader.getSegmentIndex(10));
+		assertEquals(2, reader.getSegmentIndex(14));
+		assertEquals(3, reader.getSegmentIndex(15));
+		assertEquals(10, reader.getSegmentStart(1));
+		assertEquals(10, reader.getSegmentStart(2));
+		assertEquals(15, reader.getSegmentStart(3));
+	}
+
+	@Test
+	public void testReadsAcrossSegments() throws IOException {
+		final int[] windowSizes = {1, 100, 4096, 200000};
+		for (final int windowSize : windowSizes) {
+			final CompositeReader reader = new CompositeReader(windowSize, NoCache.NO_CACHE, split(), true);
+			try {
+				assertEquals(expected.length, reader.length());
+				for (int pos = 0; pos < expected.length; pos++) {
+					assertEquals(expected[pos] & 0xFF, reader.readByte(pos));
+				}
+				assertEquals(-1, reader.readByte(expected.length));
+				final byte[] bytes = new byte[expected.length];
+				assertEquals(expected.length, reader.read(0, bytes, 0, bytes.length));
+				assertArrayEquals(expected, bytes);
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	@Test
+	public void testFindsMatchesAcrossSegmentBoundaries() throws IOException {
+		final CompositeReader reader = new CompositeReader(split());
+		try {
+			for (int segment = 1; segment < reader.getNumSegments(); segment++) {
+				final int boundary = (int) reader.getSegmentStart(segment);
+				final byte[] spanning = Arrays.copyOfRange(expected, boundary - 3, boundary + 3);
+				final BoyerMooreHorspoolSearcher searcher = new BoyerMooreHorspoolSearcher(new ByteSequenceMatcher(spanning));
+				final List<SearchResult<SequenceMatcher>> results = searcher.searchForwards(reader, boundary - 3);
+				assertFalse(results.isEmpty());
+				assertEquals(boundary - 3, results.get(0).getMatchPosition());
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testWindowsInsideSegmentWindowsAreNotCopied() throws IOException {
+		// Two file segments whose windows line up with the composite windows, and a byte array
+		// segment whose single window does not, so composite windows in it start part way through:
+		final FileReader first = new FileReader(file, 1024);
+		final FileReader second = new FileReader(file, 1024);
+		final ByteArrayReader third = new ByteArrayReader(Arrays.copyOfRange(expected, 0, 10000));
+		final CompositeReader reader = new CompositeReader(1024, NoCache.NO_CACHE,
+				Arrays.<WindowReader>asList(first, second, third), true);
+		try {
+			final Window inFirst = reader.getWindow(2048);
+			assertEquals(HardWindow.class, inFirst.getClass());
+			assertSame("Array shared with the segment window", first.getWindow(2048).getArray(), inFirst.getArray());
+
+			final long secondStart = reader.getSegmentStart(1);
+			final long straddling = secondStart - secondStart % 1024;
+			final Window acrossSegments = reader.getWindow(straddling);
+			assertEquals(straddling, acrossSegments.getWindowPosition());
+			assertEquals(1024, acrossSegments.length());
+			assertNotSame(first.getWindow(straddling).getArray(), acrossSegments.getArray());
+
+			final long inThirdPosition = reader.getSegmentStart(2) + 5000;
+			final Window inThird = reader.getWindow(inThirdPosition);
+			assertEquals("Part of the segment array is wrapped", BufferWindow.class, inThird.getClass());
+			assertFalse(((BufferWindow) inThird).isCopied());
+
+			final byte[] bytes = new byte[(int) reader.length()];
+			assertEquals(bytes.length, reader.read(0, bytes, 0, bytes.length));
+			assertArrayEquals(Arrays.copyOfRange(expected, 0, expected.length), Arrays.copyOfRange(bytes, 0, expected.length));
+			assertArrayEquals(expected, Arrays.copyOfRange(bytes, expected.length, expected.length * 2));
+			assertArrayEquals(Arrays.copyOfRange(expected, 0, 10000), Arrays.copyOfRange(bytes, expected.length * 2, bytes.length));
+			for (final Window window : reader) {
+				final long position = window.getWindowPosition();
+				for (int i = 0; i < window.length(); i++) {
+					assertEquals("byte at " + (position + i), bytes[(int) position + i], window.getByte(i));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private List<WindowReader> split() {
+		final List<WindowReader> segments = new ArrayList<WindowReader>();
+		segments.add(new ByteArrayReader(Arrays.copyOfRange(expected, 0, 12345)));
+		segments.add(new InputStreamReader(new ByteArrayInputStream(new byte[0])));
+		segments.add(new ByteArrayReader(Arrays.copyOfRange(expected, 12345, 70001)));
+		segments.add(new ByteArrayReader(Arrays.copyOfRange(expected, 70001, expected.length)));
+		return segments;
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import net.byteseek.io.IOUtils;
+import net.byteseek.io.reader.cache.ConcurrentLeastRecentlyUsedCache;
+import net.byteseek.io.reader.cache.NoCache;
+import net.byteseek.io.reader.windows.Window;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the ConcurrentFileReader and ConcurrentLeastRecentlyUsedCache.
+ *
+ * @author Matt Palmer
+ */
+public class ConcurrentFileReaderTest {
+
+	private final static int NUM_THREADS = 8;
+
+	@Test
+	public void testLength() throws IOException {
+		final File file = getFile("/TestASCII.zip");
+		assertEquals("length ZIP", file.length(), new ConcurrentFileReader(file).length());
+		assertEquals("length empty", 0, new ConcurrentFileReader(getFile("/TestEmpty.empty")).length());
+	}
+
+	@Test
+	public void testSumOfWindowLengths() throws IOException {
+		final File file = getFile("/TestASCII.txt");
+		for (int windowSize : new int[] {1, 255, 4096, 4097, 65536}) {
+			final ConcurrentFileReader reader = new ConcurrentFileReader(file, windowSize, 3);
+			long totalLength = 0;
+			for (Window window : reader) {
+				totalLength += window.length();
+			}
+			assertEquals("sum of window lengths " + reader, file.length(), totalLength);
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testWindowsOutsideFile() throws IOException {
+		final ConcurrentFileReader reader = new ConcurrentFileReader(getFile("/TestASCII.txt"));
+		assertNull("No window before 0",     reader.getWindow(-1));
+		assertNull("No window after length", reader.getWindow(reader.length()));
+		assertNotNull("Window at 0",         reader.getWindow(0));
+	}
+
+	@Test
+	public void testConcurrentReads() throws Exception {
+		final File file = getFile("/TestASCII.zip");
+		final byte[] expected = IOUtils.readEntireFile(file);
+		testConcurrentReads(new ConcurrentFileReader(file, 127, 16), expected);
+		testConcurrentReads(new ConcurrentFileReader(file, 4096, new ConcurrentLeastRecentlyUsedCache(4, 2)), expected);
+		testConcurrentReads(new ConcurrentFileReader(file, 1000, new ConcurrentLeastRecentlyUsedCache(1)), expected);
+		testConcurrentReads(new ConcurrentFileReader(file, 4096, new NoCache()), expected);
+	}
+
+	@Test
+	public void testCloseBeforeReading() throws IOException {
+		final ConcurrentFileReader reader = new ConcurrentFileReader(getFile("/TestASCII.zip"));
+		reader.close();
+		try {
+			reader.getWindow(0);
+			fail("Expected IOException");
+		} catch (IOException expected) {}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNullFile() throws FileNotFoundException {
+		new ConcurrentFileReader((File) null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNullCache() throws FileNotFoundException {
+		new ConcurrentFileReader(getFile("/TestASCII.txt"), null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateZeroCapacityCache() {
+		new ConcurrentLeastRecentlyUsedCache(0);
+	}
+
+	private void testConcurrentReads(final WindowReader reader, final byte[] expected) throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		try {
+			final List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int thread = 0; thread < NUM_THREADS; thread++) {
+				final long seed = System.nanoTime() + thread;
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						final Random rand = new Random(seed);
+						for (int count = 0; count < 5000; count++) {
+							final int position = rand.nextInt(expected.length);
+							final int value = reader.readByte(position);
+							if ((byte) value != expected[position]) {
+								return "Byte " + value + " at position " + position + " in " + reader + " with seed " + seed;
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<String> result : results) {
+				assertNull(result.get(), result.get());
+			}
+		} finally {
+			executor.shutdown();
+			reader.close();
+		}
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+}
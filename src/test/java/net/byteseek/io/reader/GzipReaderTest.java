@@ -0,0 +1,337 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for reading gzip and zlib files with decompression checkpoints.
+ *
+ * @author Matt Palmer
+ */
+public class GzipReaderTest {
+
+	private static final int SPACING = 20000;
+
+	private byte[] expected;
+	private File compressed;
+
+	@Before
+	public void setUp() throws IOException {
+		final File file = new File(getClass().getResource("/TestASCII.txt").getPath());
+		final byte[] text = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(text);
+		} finally {
+			raf.close();
+		}
+		// Several copies of the text with some random bytes in between, giving many deflate blocks.
+		final Random random = new Random(5);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (int copy = 0; copy < 5; copy++) {
+			bytes.write(text);
+			final byte[] noise = new byte[3000];
+			random.nextBytes(noise);
+			bytes.write(noise);
+		}
+		expected = bytes.toByteArray();
+		compressed = File.createTempFile("byteseek", ".gz");
+	}
+
+	@After
+	public void tearDown() {
+		compressed.delete();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullFile() throws IOException {
+		new GzipReader(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIndexForDifferentFile() throws IOException {
+		writeGzip(Deflater.DEFAULT_COMPRESSION);
+		final GzipReader reader = new GzipReader(compressed);
+		try {
+			reader.length();
+		} finally {
+			reader.close();
+		}
+		compressed.delete();
+		writeGzip(Deflater.NO_COMPRESSION);
+		new GzipReader(compressed, reader.getIndex());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIndexForChangedFileOfSameLength() throws IOException {
+		writeGzip(Deflater.DEFAULT_COMPRESSION);
+		final GzipReader reader = new GzipReader(compressed);
+		try {
+			reader.length();
+		} finally {
+			reader.close();
+		}
+		corruptByte(4); // the modification time in the gzip header.
+		new GzipReader(compressed, reader.getIndex());
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptCrc() throws IOException {
+		writeGzip(Deflater.DEFAULT_COMPRESSION);
+		corruptByte(compressed.length() - 8);
+		readToEnd();
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptMemberLength() throws IOException {
+		writeGzip(Deflater.DEFAULT_COMPRESSION);
+		corruptByte(compressed.length() - 4);
+		readToEnd();
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptAdler() throws IOException {
+		final OutputStream out = new DeflaterOutputStream(new FileOutputStream(compressed));
+		try {
+			out.write(expected);
+		} finally {
+			out.close();
+		}
+		corruptByte(compressed.length() - 1);
+		readToEnd();
+	}
+
+	@Test
+	public void testLongHuffmanCodes() throws IOException {
+		// Byte values with exponentially falling frequencies need codes longer than the decoding table.
+		final Random random = new Random(7);
+		expected = new byte[200000];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = (byte) Math.min(255, Integer.numberOfTrailingZeros(random.nextInt() | 0x80000000));
+		}
+		writeGzip(Deflater.BEST_COMPRESSION);
+		assertReadsCorrectly();
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotCompressed() throws IOException {
+		final GzipReader reader = new GzipReader(new File(getClass().getResource("/TestASCII.txt").getPath()));
+		try {
+			reader.readByte(0);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testGzip() throws IOException {
+		writeGzip(Deflater.DEFAULT_COMPRESSION);
+		assertReadsCorrectly();
+	}
+
+	@Test
+	public void testStoredBlocks() throws IOException {
+		writeGzip(Deflater.NO_COMPRESSION);
+		assertReadsCorrectly();
+	}
+
+	@Test
+	public void testZlib() throws IOException {
+		final OutputStream out = new DeflaterOutputStream(new FileOutputStream(compressed));
+		try {
+			out.write(expected);
+		} finally {
+			out.close();
+		}
+		assertReadsCorrectly();
+	}
+
+	@Test
+	public void testMultiMemberWithFlushes() throws IOException {
+		final FileOutputStream file = new FileOutputStream(compressed);
+		try {
+			final int half = expected.length / 2;
+			final GZIPOutputStream first = new GZIPOutputStream(file, 512, true);
+			for (int pos = 0; pos < half; pos += 10000) {
+				first.write(expected, pos, Math.min(10000, half - pos));
+				first.flush();
+			}
+			first.finish();
+			final GZIPOutputStream second = new GZIPOutputStream(file);
+			second.write(expected, half, expected.length - half);
+			second.finish();
+		} finally {
+			file.close();
+		}
+		assertReadsCorrectly();
+	}
+
+	@Test
+	public void testPersistedIndex() throws IOException {
+		writeGzip(Deflater.DEFAULT_COMPRESSION);
+		final GzipReader reader = new GzipReader(compressed, 4096, new LeastRecentlyUsedCache(4), new GzipIndex(SPACING));
+		final ByteArrayOutputStream saved = new ByteArrayOutputStream();
+		try {
+			assertFalse(reader.getIndex().isComplete());
+			assertEquals(expected.length, reader.length());
+			assertTrue(reader.getIndex().isComplete());
+			reader.getIndex().write(saved);
+		} finally {
+			reader.close();
+		}
+
+		final GzipIndex index = GzipIndex.read(new ByteArrayInputStream(saved.toByteArray()));
+		assertTrue(index.isComplete());
+		assertEquals(compressed.length(), index.getCompressedLength());
+		assertEquals(reader.getIndex().getSourceChecksum(), index.getSourceChecksum());
+		assertEquals(SPACING, index.getSpacing());
+		assertEquals(reader.getIndex().size(), index.size());
+		assertEquals(expected.length, index.getUncompressedLength());
+		final GzipReader indexed = new GzipReader(compressed, 4096, new LeastRecentlyUsedCache(4), index);
+		try {
+			assertEquals(expected.length, indexed.length());
+			for (int pos = expected.length - 1; pos >= 0; pos -= 997) {
+				assertEquals(expected[pos] & 0xFF, indexed.readByte(pos));
+			}
+			assertEquals(-1, indexed.readByte(expected.length));
+		} finally {
+			indexed.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadInvalidIndex() throws IOException {
+		GzipIndex.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+	}
+
+	@Test
+	public void testLengthWhilePrefetching() throws IOException {
+		writeGzip(Deflater.DEFAULT_COMPRESSION);
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final GzipReader reader = new GzipReader(compressed, 4096, new LeastRecentlyUsedCache(4), new GzipIndex(SPACING));
+		try {
+			reader.startPrefetching(executor, 8);
+			assertEquals(expected[0] & 0xFF, reader.readByte(0));
+			assertEquals(expected[4096] & 0xFF, reader.readByte(4096));
+			// Finding the length decompresses the rest of the file while windows are read ahead.
+			assertEquals(expected.length, reader.length());
+			for (int pos = expected.length - 1; pos >= 0; pos -= 7) {
+				assertEquals(expected[pos] & 0xFF, reader.readByte(pos));
+			}
+		} finally {
+			reader.close();
+			executor.shutdown();
+		}
+	}
+
+	private void assertReadsCorrectly() throws IOException {
+		final GzipReader reader = new GzipReader(compressed, 4096, new LeastRecentlyUsedCache(4), new GzipIndex(SPACING));
+		try {
+			// Forwards builds the index; then backwards and randomly uses it.
+			final byte[] bytes = new byte[expected.length + 10];
+			assertEquals(expected.length, reader.read(0, bytes, 0, bytes.length));
+			for (int pos = 0; pos < expected.length; pos++) {
+				assertEquals(expected[pos], bytes[pos]);
+			}
+			assertTrue("Checkpoints recorded", reader.getIndex().size() > 1);
+			assertEquals(expected.length, reader.length());
+			for (int pos = expected.length - 1; pos >= 0; pos -= 13) {
+				assertEquals(expected[pos] & 0xFF, reader.readByte(pos));
+			}
+			final Random random = new Random(6);
+			for (int i = 0; i < 1000; i++) {
+				final int pos = random.nextInt(expected.length);
+				assertEquals(expected[pos] & 0xFF, reader.readByte(pos));
+			}
+			assertEquals(-1, reader.readByte(expected.length));
+			assertEquals(-1, reader.readByte(-1));
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void readToEnd() throws IOException {
+		final GzipReader reader = new GzipReader(compressed, 4096, new LeastRecentlyUsedCache(4), new GzipIndex(SPACING));
+		try {
+			reader.length();
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void corruptByte(final long position) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(compressed, "rw");
+		try {
+			raf.seek(position);
+			final int value = raf.read();
+			raf.seek(position);
+			raf.write(value ^ 0xFF);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void writeGzip(final int level) throws IOException {
+		final OutputStream out = new GZIPOutputStream(new FileOutputStream(compressed)) {
+			{
+				def.setLevel(level);
+			}
+		};
+		try {
+			out.write(expected);
+		} finally {
+			out.close();
+		}
+	}
+
+}
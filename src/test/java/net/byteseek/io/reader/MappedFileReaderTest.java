@@ -0,0 +1,324 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.byteseek.io.IOUtils;
+import net.byteseek.io.reader.cache.AllWindowsCache;
+import net.byteseek.io.reader.cache.NoCache;
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.SoftWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.bytes.OneByteMatcher;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.MatchListener;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.bytes.ByteMatcherSearcher;
+import net.byteseek.searcher.bytes.ByteSearcher;
+import net.byteseek.searcher.sequence.SequenceMatcherSearcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.sequence.horspool.HorspoolFinalFlagSearcher;
+import net.byteseek.searcher.sequence.bitparallel.ShiftOrSearcher;
+import net.byteseek.searcher.sequence.sunday.SundayQuickSearcher;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the MappedFileReader.
+ *
+ * @author Matt Palmer
+ */
+public class MappedFileReaderTest {
+
+	private final static Random rand = new Random();
+
+	private final static int[] WINDOW_SIZES = new int[] { 1, 7, 255, 256, 1023, 4096, 4097, 65536 };
+	private final static int[] CHUNK_SIZES  = new int[] { 4096, 10000, 65536, Integer.MAX_VALUE };
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		final long seed = System.currentTimeMillis();
+		rand.setSeed(seed);
+		System.out.println("Seeding random number generator with: " + Long.toString(seed));
+		System.out.println("To repeat these exact tests, set the seed to the value above.");
+	}
+
+	@Test
+	public void testLength() throws IOException {
+		assertEquals("length ASCII", getFile("/TestASCII.txt").length(), new MappedFileReader(getFile("/TestASCII.txt")).length());
+		assertEquals("length ZIP",   45846, new MappedFileReader(getFile("/TestASCII.zip")).length());
+		assertEquals("length empty", 0,     new MappedFileReader(getFile("/TestEmpty.empty")).length());
+	}
+
+	@Test
+	public void testSumOfWindowLengths() throws IOException {
+		testSumOfWindowLengths("/TestASCII.txt", getFile("/TestASCII.txt").length());
+		testSumOfWindowLengths("/TestASCII.zip", 45846);
+		testSumOfWindowLengths("/TestEmpty.empty", 0);
+	}
+
+	@Test
+	public void testChunkSizeIsMultipleOfWindowSize() throws IOException {
+		for (int windowSize : WINDOW_SIZES) {
+			for (int chunkSize : CHUNK_SIZES) {
+				final MappedFileReader reader = createReader("/TestASCII.txt", windowSize, chunkSize);
+				assertEquals("Chunk size " + reader.getChunkSize() + " is a multiple of window size " + windowSize,
+							 0, reader.getChunkSize() % windowSize);
+				assertTrue("Chunk size at least window size", reader.getChunkSize() >= windowSize);
+				reader.close();
+			}
+		}
+	}
+
+	@Test
+	public void testGetWindowData() throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(getFile("/TestASCII.zip"), "r");
+		for (int windowSize : WINDOW_SIZES) {
+			for (int chunkSize : CHUNK_SIZES) {
+				final MappedFileReader reader = createReader("/TestASCII.zip", windowSize, chunkSize);
+				for (Window window : reader) {
+					final byte[] fileBytes = new byte[window.length()];
+					IOUtils.readBytes(raf, fileBytes, window.getWindowPosition());
+					final byte[] windowArray = window.getArray();
+					for (int i = 0; i < fileBytes.length; i++) {
+						assertEquals("Bytes identical for window" + window + " at position " + i, fileBytes[i], windowArray[i]);
+					}
+				}
+				reader.close();
+			}
+		}
+		raf.close();
+	}
+
+	@Test
+	public void testReadRandomPositions() throws IOException {
+		final File asciiFile = getFile("/TestASCII.txt");
+		final int fileLength = (int) asciiFile.length();
+		final RandomAccessFile raf = new RandomAccessFile(asciiFile, "r");
+		for (int windowSize : WINDOW_SIZES) {
+			for (int chunkSize : CHUNK_SIZES) {
+				final MappedFileReader reader = createReader("/TestASCII.txt", windowSize, chunkSize);
+				for (int count = 0; count < 200; count++) {
+					final int randomPosition = rand.nextInt(fileLength);
+					raf.seek(randomPosition);
+					assertEquals("Random position " + randomPosition + " in " + reader,
+							     raf.readByte(), (byte) reader.readByte(randomPosition));
+				}
+				assertEquals("No byte past the end", -1, reader.readByte(fileLength));
+				reader.close();
+			}
+		}
+		raf.close();
+	}
+
+	@Test
+	public void testWindowsOutsideFile() throws IOException {
+		final MappedFileReader reader = new MappedFileReader(getFile("/TestASCII.txt"));
+		assertNull("No window before 0",       reader.getWindow(-1));
+		assertNull("No window after length",   reader.getWindow(reader.length()));
+		assertNull("No window long after length", reader.createWindow(200000));
+		assertNotNull("Window at 0",           reader.getWindow(0));
+		assertEquals("Window starts at zero", 0, reader.getWindow(0).getWindowPosition());
+	}
+
+	@Test
+	public void testWindowsValidAfterChunkReleased() throws IOException {
+		final MappedFileReader reader = new MappedFileReader(getFile("/TestASCII.txt"), 1024,
+													 new NoCache(), 1024, 1);
+		final Window first = reader.getWindow(0);
+		final byte firstByte = first.getByte(0);
+		for (Window window : reader) {
+			window.getByte(0); // roll through all the chunks.
+		}
+		assertEquals("Window still valid after its chunk is released", firstByte, first.getByte(0));
+	}
+
+	@Test
+	public void testWindowsAreMappedBuffers() throws IOException {
+		final File file = getFile("/TestASCII.zip");
+		final byte[] expected = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(expected);
+		} finally {
+			raf.close();
+		}
+		final MappedFileReader reader = new MappedFileReader(file, 1000, new NoCache(), 3000, 2);
+		try {
+			for (Window window : reader) {
+				assertEquals("Buffer windows are returned", BufferWindow.class, window.getClass());
+				assertTrue("Window is backed by the mapped file", ((BufferWindow) window).isDirect());
+				final byte[] array = window.getArray();
+				assertSame("Array is only copied once", array, window.getArray());
+				final int windowStart = (int) window.getWindowPosition();
+				for (int i = 0; i < window.length(); i++) {
+					assertEquals("Byte at " + (windowStart + i), expected[windowStart + i], array[i]);
+				}
+			}
+			final byte[] read = new byte[expected.length];
+			assertEquals(expected.length, reader.read(0, read, 0, read.length));
+			assertArrayEquals(expected, read);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testBufferSearchersDoNotCopyWindows() throws IOException {
+		final SequenceMatcher sequence = new ByteSequenceMatcher("Midsommer");
+		final List<Searcher<SequenceMatcher>> searchers = new ArrayList<Searcher<SequenceMatcher>>();
+		searchers.add(new SequenceMatcherSearcher(sequence));
+		searchers.add(new BoyerMooreHorspoolSearcher(sequence));
+		searchers.add(new HorspoolFinalFlagSearcher(sequence));
+		searchers.add(new SundayQuickSearcher(sequence));
+		for (final Searcher<SequenceMatcher> searcher : searchers) {
+			assertWindowsCopied(searcher, false);
+		}
+		assertWindowsCopied(new ByteSearcher((byte) 'M'), false);
+		assertWindowsCopied(new ByteMatcherSearcher(OneByteMatcher.valueOf((byte) 'M')), false);
+		assertWindowsCopied(new ShiftOrSearcher(sequence), true);
+	}
+
+	private <T> void assertWindowsCopied(final Searcher<T> searcher, final boolean copied) throws IOException {
+		final MappedFileReader reader = new MappedFileReader(getFile("/TestASCII.txt"), 1024, new AllWindowsCache());
+		try {
+			final CountingListener<T> forwards = new CountingListener<T>();
+			searcher.searchForwards(reader, 0, Long.MAX_VALUE, forwards);
+			final CountingListener<T> backwards = new CountingListener<T>();
+			searcher.searchBackwards(reader, reader.length() - 1, 0, backwards);
+			assertTrue(searcher.toString(), forwards.matches > 0);
+			assertEquals(searcher.toString(), forwards.matches, backwards.matches);
+			boolean anyCopied = false;
+			for (final Window window : reader) {
+				anyCopied |= ((BufferWindow) window).isCopied();
+			}
+			assertEquals(searcher + " copies windows", copied, anyCopied);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testSoftWindows() throws IOException {
+		final MappedFileReader reader = new MappedFileReader(getFile("/TestASCII.zip"), 1000, new AllWindowsCache());
+		reader.useSoftWindows(true);
+		assertEquals("Soft windows are returned", SoftWindow.class, reader.getWindow(0).getClass());
+		for (Window window : reader) {
+			final byte[] original  = window.getArray();
+			final byte[] recovered = reader.reloadWindowBytes(window);
+			for (int i = 0; i < window.length(); i++) {
+				assertEquals("Recovered byte at " + i + " in window " + window, original[i], recovered[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testCloseBeforeReading() throws IOException {
+		final MappedFileReader reader = new MappedFileReader(getFile("/TestASCII.zip"));
+		reader.close();
+		try {
+			reader.getWindow(0);
+			fail("Expected IOException");
+		} catch (IOException expected) {}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNullFile() throws FileNotFoundException {
+		new MappedFileReader((File) null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNullPath() throws FileNotFoundException {
+		new MappedFileReader((String) null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNullCache() throws FileNotFoundException {
+		new MappedFileReader(getFile("/TestASCII.txt"), 1024, null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateZeroChunkSize() throws FileNotFoundException {
+		new MappedFileReader(getFile("/TestASCII.txt"), 1024, new NoCache(), 0, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateZeroMappedChunks() throws FileNotFoundException {
+		new MappedFileReader(getFile("/TestASCII.txt"), 1024, new NoCache(), 4096, 0);
+	}
+
+	private void testSumOfWindowLengths(final String resourceName, final long expectedLength) throws IOException {
+		for (int windowSize : WINDOW_SIZES) {
+			for (int chunkSize : CHUNK_SIZES) {
+				final MappedFileReader reader = createReader(resourceName, windowSize, chunkSize);
+				long totalLength = 0;
+				for (Window window : reader) {
+					totalLength += window.length();
+				}
+				assertEquals("sum of window lengths " + reader, expectedLength, totalLength);
+				reader.close();
+			}
+		}
+	}
+
+	private MappedFileReader createReader(final String resourceName, final int windowSize,
+										  final int chunkSize) throws FileNotFoundException {
+		return new MappedFileReader(getFile(resourceName), windowSize, new NoCache(), chunkSize, 2);
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+	private static final class CountingListener<T> implements MatchListener<T> {
+
+		private int matches;
+
+		@Override
+		public boolean matchFound(final long matchPosition, final T matchingObject) {
+			matches++;
+			return true;
+		}
+	}
+
+}
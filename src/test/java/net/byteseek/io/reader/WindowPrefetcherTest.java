@@ -0,0 +1,184 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.io.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for prefetching windows in an AbstractReader.
+ *
+ * @author Matt Palmer
+ */
+public class WindowPrefetcherTest {
+
+	private static final int[] WINDOW_SIZES = {1, 7, 255, 4096};
+
+	private ExecutorService executor;
+	private byte[] expected;
+
+	@Before
+	public void setUp() throws IOException {
+		executor = Executors.newFixedThreadPool(2);
+		final File file = getFile("/TestASCII.txt");
+		expected = new byte[(int) file.length()];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(expected);
+		} finally {
+			raf.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullExecutor() throws IOException {
+		final FileReader reader = new FileReader(getFile("/TestASCII.txt"));
+		try {
+			reader.startPrefetching(null, 4);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroWindows() throws IOException {
+		final FileReader reader = new FileReader(getFile("/TestASCII.txt"));
+		try {
+			reader.startPrefetching(executor, 0);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testInputStreamReaderCannotPrefetch() throws IOException {
+		final InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(new byte[10]));
+		try {
+			reader.startPrefetching(executor, 4);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testStartAndStopPrefetching() throws IOException {
+		final FileReader reader = new FileReader(getFile("/TestASCII.txt"));
+		try {
+			assertFalse(reader.isPrefetching());
+			reader.startPrefetching(executor, 4);
+			assertTrue(reader.isPrefetching());
+			reader.stopPrefetching();
+			assertFalse(reader.isPrefetching());
+			reader.stopPrefetching();
+			assertFalse(reader.isPrefetching());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testForwardsFileReader() throws IOException {
+		for (final int windowSize : WINDOW_SIZES) {
+			final FileReader reader = new FileReader(getFile("/TestASCII.txt"), windowSize, 4);
+			reader.startPrefetching(executor, 8);
+			try {
+				for (int position = 0; position < expected.length; position++) {
+					assertByte(reader, position, windowSize);
+				}
+				assertEquals(-1, reader.readByte(expected.length));
+			} finally {
+				reader.close();
+			}
+			assertFalse(reader.isPrefetching());
+		}
+	}
+
+	@Test
+	public void testBackwardsMappedFileReader() throws IOException {
+		for (final int windowSize : WINDOW_SIZES) {
+			final MappedFileReader reader = new MappedFileReader(getFile("/TestASCII.txt"), windowSize);
+			reader.startPrefetching(executor, 3);
+			try {
+				for (int position = expected.length - 1; position >= 0; position--) {
+					assertByte(reader, position, windowSize);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	@Test
+	public void testRandomAccessConcurrentFileReader() throws IOException {
+		final Random random = new Random(42);
+		for (final int windowSize : WINDOW_SIZES) {
+			final ConcurrentFileReader reader = new ConcurrentFileReader(getFile("/TestASCII.txt"), windowSize, 2);
+			reader.startPrefetching(executor, 4);
+			try {
+				int position = 0;
+				for (int read = 0; read < 20000; read++) {
+					position = random.nextInt(4) == 0? random.nextInt(expected.length)
+							                         : (position + 1) % expected.length;
+					assertByte(reader, position, windowSize);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	private void assertByte(final WindowReader reader, final int position, final int windowSize) throws IOException {
+		assertEquals("Byte at position " + position + " window size " + windowSize,
+				     expected[position] & 0xFF, reader.readByte(position));
+	}
+
+	private File getFile(final String resourceName) {
+		return new File(this.getClass().getResource(resourceName).getPath());
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.io.reader.cache;
+
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompressedMemoryCacheTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroBudget() {
+        new CompressedMemoryCache(0);
+    }
+
+    @Test
+    public void testCompressibleWindow() throws IOException {
+        final CompressedMemoryCache cache = new CompressedMemoryCache();
+        final byte[] bytes = new byte[4096];
+        Arrays.fill(bytes, 0, 4000, (byte) 'x');
+        cache.addWindow(new HardWindow(bytes, 8192, 4000));
+        assertTrue("Compressed", cache.getBytesCached() < 400);
+        final Window window = cache.getWindow(8192);
+        assertEquals(8192, window.getWindowPosition());
+        assertEquals(4000, window.length());
+        assertArrayEquals(Arrays.copyOf(bytes, 4000), Arrays.copyOf(window.getArray(), 4000));
+        assertNull(cache.getWindow(0));
+    }
+
+    @Test
+    public void testIncompressibleWindow() throws IOException {
+        final CompressedMemoryCache cache = new CompressedMemoryCache();
+        final byte[] bytes = new byte[4096];
+        new Random(1).nextBytes(bytes);
+        cache.addWindow(new HardWindow(bytes, 0, 4096));
+        assertEquals(4096, cache.getBytesCached());
+        final Window window = cache.getWindow(0);
+        assertArrayEquals(bytes, window.getArray());
+        assertNotSame(bytes, window.getArray());
+    }
+
+    @Test
+    public void testEvictsOverBudget() throws IOException {
+        final CompressedMemoryCache cache = new CompressedMemoryCache(10000);
+        final List<Window> freed = new ArrayList<Window>();
+        cache.subscribe(new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                freed.add(window);
+            }
+        });
+        final Random random = new Random(2);
+        final byte[][] arrays = new byte[3][4096];
+        for (int i = 0; i < 3; i++) {
+            random.nextBytes(arrays[i]);
+            cache.addWindow(new HardWindow(arrays[i], i * 4096, 4096));
+        }
+        assertEquals(1, freed.size());
+        assertEquals(0, freed.get(0).getWindowPosition());
+        assertArrayEquals("Freed windows decompressed", arrays[0], freed.get(0).getArray());
+        assertNull(cache.getWindow(0));
+        assertNotNull(cache.getWindow(4096));
+        assertEquals(8192, cache.getBytesCached());
+
+        cache.clear();
+        assertEquals(0, cache.getBytesCached());
+        assertNull(cache.getWindow(4096));
+        cache.addWindow(new HardWindow(arrays[0], 0, 4096));
+        assertNotNull("Usable after clear", cache.getWindow(0));
+    }
+
+    @Test
+    public void testInputStreamReaderRereadsThroughCompressedCache() throws IOException {
+        final File file = new File(getClass().getResource("/TestASCII.txt").getPath());
+        final byte[] expected = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(expected);
+        } finally {
+            raf.close();
+        }
+        final CompressedMemoryCache compressed = new CompressedMemoryCache();
+        final TempFileCache tempFile = new TempFileCache();
+        final InputStreamReader reader = new InputStreamReader(new FileInputStream(file), 4096,
+                TwoLevelCache.create(new LeastRecentlyUsedCache(2), TwoLevelCache.create(compressed, tempFile)));
+        try {
+            for (int position = 0; position < expected.length; position++) {
+                assertEquals(expected[position] & 0xFF, reader.readByte(position));
+            }
+            for (int position = expected.length - 1; position >= 0; position--) {
+                assertEquals(expected[position] & 0xFF, reader.readByte(position));
+            }
+            assertTrue(compressed.getBytesCached() > 0);
+            assertNull("Nothing spilled to disk", tempFile.getTempFile());
+        } finally {
+            reader.close();
+        }
+    }
+
+}
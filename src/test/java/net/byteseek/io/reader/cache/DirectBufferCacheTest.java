@@ -0,0 +1,201 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.io.reader.cache;
+
+import net.byteseek.compiler.matcher.MatcherCompilerUtils;
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.BufferWindow;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.sequence.horspool.HorspoolFinalFlagSearcher;
+import net.byteseek.searcher.sequence.sunday.SundayQuickSearcher;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DirectBufferCacheTest {
+
+    private static final int[] WINDOW_SIZES = {127, 4096};
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() {
+        new DirectBufferCache(0);
+    }
+
+    @Test
+    public void testBufferWindow() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+        for (int i = 0; i < 16; i++) {
+            buffer.put((byte) i);
+        }
+        final BufferWindow window = new BufferWindow(buffer, 1024, 10);
+        assertTrue(window.isDirect());
+        assertEquals(1024, window.getWindowPosition());
+        assertEquals(1033, window.getWindowEndPosition());
+        assertEquals(1034, window.getNextWindowPosition());
+        assertEquals(10, window.length());
+        assertEquals(5, window.getByte(5));
+        final byte[] array = window.getArray();
+        assertEquals(10, array.length);
+        assertEquals(9, array[9]);
+        assertSame("Array only copied once", array, window.getArray());
+        final byte[] copied = new byte[4];
+        window.copyBytes(6, copied, 1, 3);
+        assertArrayEquals(new byte[] {0, 6, 7, 8}, copied);
+        final ByteBuffer view = window.getByteBuffer();
+        assertTrue(view.isReadOnly());
+        assertEquals(0, view.position());
+        assertEquals(10, view.limit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBufferWindowLengthTooLong() {
+        new BufferWindow(ByteBuffer.allocate(10), 0, 11);
+    }
+
+    @Test
+    public void testAddAndGetWindows() throws IOException {
+        final DirectBufferCache cache = new DirectBufferCache(2);
+        final List<Window> freed = new ArrayList<Window>();
+        cache.subscribe(new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                freed.add(window);
+            }
+        });
+        final byte[] bytes = {1, 2, 3, 4, 5, 6};
+        cache.addWindow(new HardWindow(bytes, 0, 4));
+        final Window cached = cache.getWindow(0);
+        assertTrue(cached instanceof BufferWindow);
+        assertTrue(((BufferWindow) cached).isDirect());
+        assertEquals(4, cached.length());
+        assertEquals(4, cached.getByte(3));
+        bytes[3] = 99;
+        assertEquals("Bytes copied off heap", 4, cached.getByte(3));
+
+        final Window again = cache.getWindow(0);
+        assertNotSame("New window for each lookup", cached, again);
+        assertNotSame("Heap copies belong to the caller's window", cached.getArray(), again.getArray());
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(4);
+        cache.addWindow(new BufferWindow(direct, 4, 4));
+        direct.put(0, (byte) 42);
+        assertEquals("Direct buffer windows not copied again", 42, cache.getWindow(4).getByte(0));
+
+        cache.addWindow(new HardWindow(bytes, 8, 4));
+        assertNull(cache.getWindow(0));
+        assertNotNull(cache.getWindow(4));
+        assertNotNull(cache.getWindow(8));
+        assertEquals(1, freed.size());
+        assertEquals(0, freed.get(0).getWindowPosition());
+
+        cache.clear();
+        assertNull(cache.getWindow(4));
+    }
+
+    @Test
+    public void testSearchOffHeapWindows() throws IOException {
+        final SequenceMatcher[] sequences = {
+                new ByteSequenceMatcher("the"),
+                new ByteSequenceMatcher("Midsommer"),
+                new ByteSequenceMatcher("e"),
+                MatcherCompilerUtils.createCaseInsensitiveMatcher("midsommer night"),
+        };
+        for (final int windowSize : WINDOW_SIZES) {
+            for (final SequenceMatcher sequence : sequences) {
+                final List<Searcher<SequenceMatcher>> searchers = new ArrayList<Searcher<SequenceMatcher>>();
+                searchers.add(new BoyerMooreHorspoolSearcher(sequence));
+                searchers.add(new SundayQuickSearcher(sequence));
+                searchers.add(new HorspoolFinalFlagSearcher(sequence));
+                for (final Searcher<SequenceMatcher> searcher : searchers) {
+                    final FileReader heapReader = new FileReader(getFile(), windowSize);
+                    final FileReader directReader = new FileReader(getFile(), windowSize, new DirectBufferCache(2048));
+                    try {
+                        final List<Long> expectedForwards = searchForwards(searcher, heapReader);
+                        final List<Long> expectedBackwards = searchBackwards(searcher, heapReader);
+                        searchForwards(searcher, directReader); // populate the cache.
+                        assertTrue(directReader.getWindow(windowSize) instanceof BufferWindow);
+                        final String description = searcher + " window size " + windowSize;
+                        assertFalse(description, expectedForwards.isEmpty());
+                        assertEquals(description, expectedForwards, searchForwards(searcher, directReader));
+                        assertEquals(description, expectedBackwards, searchBackwards(searcher, directReader));
+                    } finally {
+                        heapReader.close();
+                        directReader.close();
+                    }
+                }
+            }
+        }
+    }
+
+    private List<Long> searchForwards(final Searcher<SequenceMatcher> searcher, final WindowReader reader)
+            throws IOException {
+        final List<Long> positions = new ArrayList<Long>();
+        long position = 0;
+        List<SearchResult<SequenceMatcher>> results;
+        while (!(results = searcher.searchForwards(reader, position)).isEmpty()) {
+            final long matchPosition = results.get(0).getMatchPosition();
+            positions.add(matchPosition);
+            position = matchPosition + 1;
+        }
+        return positions;
+    }
+
+    private List<Long> searchBackwards(final Searcher<SequenceMatcher> searcher, final WindowReader reader)
+            throws IOException {
+        final List<Long> positions = new ArrayList<Long>();
+        long position = reader.length() - 1;
+        List<SearchResult<SequenceMatcher>> results;
+        while (position >= 0 && !(results = searcher.searchBackwards(reader, position)).isEmpty()) {
+            final long matchPosition = results.get(0).getMatchPosition();
+            positions.add(matchPosition);
+            position = matchPosition - 1;
+        }
+        return positions;
+    }
+
+    private File getFile() {
+        return new File(getClass().getResource("/TestASCII.txt").getPath());
+    }
+
+}
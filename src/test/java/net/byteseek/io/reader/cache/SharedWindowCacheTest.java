@@ -0,0 +1,281 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.io.reader.cache;
+
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class SharedWindowCacheTest {
+
+    private static final byte[] ARRAY = new byte[100];
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroBudget() {
+        new SharedWindowCache(0);
+    }
+
+    @Test
+    public void testDefault() {
+        assertSame(SharedWindowCache.getDefault(), SharedWindowCache.getDefault());
+        assertEquals(SharedWindowCache.DEFAULT_BUDGET, SharedWindowCache.getDefault().getBudget());
+    }
+
+    @Test
+    public void testReadersDoNotShareWindows() throws IOException {
+        final SharedWindowCache shared = new SharedWindowCache(1000);
+        final WindowCache first = shared.newCache();
+        final WindowCache second = shared.newCache();
+        final Window window = new HardWindow(ARRAY, 0, 100);
+        first.addWindow(window);
+        assertSame(window, first.getWindow(0));
+        assertNull(second.getWindow(0));
+        second.addWindow(new HardWindow(ARRAY, 0, 50));
+        assertEquals(2, shared.size());
+        assertEquals(150, shared.getBytesCached());
+
+        first.clear();
+        assertNull(first.getWindow(0));
+        assertNotNull(second.getWindow(0));
+        assertEquals(1, shared.size());
+        assertEquals(50, shared.getBytesCached());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroConcurrency() {
+        new SharedWindowCache(100, 0);
+    }
+
+    @Test
+    public void testEvictsAcrossReaders() throws IOException {
+        final SharedWindowCache shared = new SharedWindowCache(250, 1); // one segment is strictly least recently used.
+        final WindowCache first = shared.newCache();
+        final WindowCache second = shared.newCache();
+        final List<Window> firstFreed = new ArrayList<Window>();
+        final List<Window> secondFreed = new ArrayList<Window>();
+        first.subscribe(new RecordingObserver(firstFreed, first));
+        second.subscribe(new RecordingObserver(secondFreed, second));
+
+        final Window window0 = new HardWindow(ARRAY, 0, 100);
+        final Window window1 = new HardWindow(ARRAY, 100, 100);
+        first.addWindow(window0);
+        first.addWindow(window1);
+        first.getWindow(0); // window0 is now more recently used than window1.
+        second.addWindow(new HardWindow(ARRAY, 0, 100));
+
+        assertNull("Least recently used evicted", first.getWindow(100));
+        assertNotNull(first.getWindow(0));
+        assertNotNull(second.getWindow(0));
+        assertEquals(1, firstFreed.size());
+        assertSame(window1, firstFreed.get(0));
+        assertTrue(secondFreed.isEmpty());
+        assertEquals(200, shared.getBytesCached());
+    }
+
+    @Test
+    public void testClearNotifiesOnlyItsOwnObservers() throws IOException {
+        final SharedWindowCache shared = new SharedWindowCache(1000);
+        final WindowCache first = shared.newCache();
+        final WindowCache second = shared.newCache();
+        final List<Window> firstFreed = new ArrayList<Window>();
+        final List<Window> secondFreed = new ArrayList<Window>();
+        first.subscribe(new RecordingObserver(firstFreed, first));
+        second.subscribe(new RecordingObserver(secondFreed, second));
+
+        final Window window0 = new HardWindow(ARRAY, 0, 100);
+        final Window window1 = new HardWindow(ARRAY, 100, 100);
+        first.addWindow(window0);
+        first.addWindow(window1);
+        second.addWindow(new HardWindow(ARRAY, 0, 100));
+
+        first.clear();
+        assertEquals(2, firstFreed.size());
+        assertTrue(firstFreed.contains(window0));
+        assertTrue(firstFreed.contains(window1));
+        assertTrue(secondFreed.isEmpty());
+        assertEquals(1, shared.size());
+
+        first.clear();
+        assertEquals("Nothing left to clear", 2, firstFreed.size());
+        first.addWindow(window0);
+        assertSame(window0, first.getWindow(0));
+        assertEquals(200, shared.getBytesCached());
+    }
+
+    @Test
+    public void testClearAfterEviction() throws IOException {
+        final SharedWindowCache shared = new SharedWindowCache(150);
+        final WindowCache first = shared.newCache();
+        final WindowCache second = shared.newCache();
+        final List<Window> firstFreed = new ArrayList<Window>();
+        first.subscribe(new RecordingObserver(firstFreed, first));
+        first.addWindow(new HardWindow(ARRAY, 0, 100));
+        second.addWindow(new HardWindow(ARRAY, 0, 100)); // evicts the window of the first reader.
+        assertEquals(1, firstFreed.size());
+
+        first.clear();
+        assertEquals("Evicted windows are not notified again", 1, firstFreed.size());
+        assertEquals(1, shared.size());
+        assertEquals(100, shared.getBytesCached());
+    }
+
+    @Test
+    public void testEvictsFromOtherSegments() throws IOException {
+        final SharedWindowCache shared = new SharedWindowCache(1000, 64);
+        final WindowCache cache = shared.newCache();
+        final List<Window> freed = new ArrayList<Window>();
+        cache.subscribe(new RecordingObserver(freed, cache));
+        for (int i = 0; i < 100; i++) {
+            cache.addWindow(new HardWindow(ARRAY, i * 100, 100));
+            assertTrue(shared.getBytesCached() <= shared.getBudget());
+            assertNotNull("Added window is cached", cache.getWindow(i * 100));
+        }
+        assertEquals(10, shared.size());
+        assertEquals(90, freed.size());
+        cache.clear();
+        assertEquals(100, freed.size());
+        assertEquals(0, shared.getBytesCached());
+    }
+
+    @Test
+    public void testWindowBiggerThanBudget() throws IOException {
+        final SharedWindowCache shared = new SharedWindowCache(50);
+        final WindowCache cache = shared.newCache();
+        final List<Window> freed = new ArrayList<Window>();
+        cache.subscribe(new RecordingObserver(freed, cache));
+        final Window window = new HardWindow(ARRAY, 0, 100);
+        cache.addWindow(window);
+        assertNull(cache.getWindow(0));
+        assertEquals(1, freed.size());
+        assertEquals(0, shared.getBytesCached());
+    }
+
+    @Test
+    public void testManyReadersStayInBudget() throws IOException {
+        final File file = new File(getClass().getResource("/TestASCII.txt").getPath());
+        final SharedWindowCache shared = new SharedWindowCache(10 * 4096);
+        final List<FileReader> readers = new ArrayList<FileReader>();
+        try {
+            for (int i = 0; i < 5; i++) {
+                readers.add(new FileReader(file, 4096, shared.newCache()));
+            }
+            final long length = file.length();
+            for (long position = 0; position < length; position += 1000) {
+                for (final FileReader reader : readers) {
+                    assertEquals(readers.get(0).readByte(position), reader.readByte(position));
+                }
+                assertTrue(shared.getBytesCached() <= shared.getBudget());
+            }
+        } finally {
+            for (final FileReader reader : readers) {
+                reader.close();
+            }
+        }
+        assertEquals(0, shared.size());
+        assertEquals(0, shared.getBytesCached());
+    }
+
+    @Test
+    public void testPooledReadersOnManyThreads() throws Exception {
+        final File file = new File(getClass().getResource("/TestASCII.txt").getPath());
+        final byte[] expected = new byte[(int) file.length()];
+        final FileReader expectedReader = new FileReader(file);
+        try {
+            assertEquals(expected.length, expectedReader.read(0, expected, 0, expected.length));
+        } finally {
+            expectedReader.close();
+        }
+        final SharedWindowCache shared = new SharedWindowCache(8 * 1024);
+        final int numThreads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int thread = 0; thread < numThreads; thread++) {
+                final int stride = 97 + thread * 31;
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        final FileReader reader = new FileReader(file, 1024, shared.newCache());
+                        reader.setWindowArrayPool(new WindowArrayPool(1024, 4));
+                        try {
+                            for (int pass = 0; pass < 20; pass++) {
+                                for (long position = pass; position < expected.length; position += stride) {
+                                    assertEquals("Byte at " + position, expected[(int) position] & 0xFF,
+                                                 reader.readByte(position));
+                                }
+                            }
+                        } finally {
+                            reader.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, shared.size());
+        assertEquals(0, shared.getBytesCached());
+    }
+
+    private static final class RecordingObserver implements WindowCache.WindowObserver {
+
+        private final List<Window> freed;
+        private final WindowCache expectedCache;
+
+        private RecordingObserver(final List<Window> freed, final WindowCache expectedCache) {
+            this.freed = freed;
+            this.expectedCache = expectedCache;
+        }
+
+        @Override
+        public void windowFree(final Window window, final WindowCache fromCache) {
+            assertSame(expectedCache, fromCache);
+            freed.add(window);
+        }
+    }
+
+}
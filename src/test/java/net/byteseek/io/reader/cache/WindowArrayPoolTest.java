@@ -0,0 +1,334 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.io.reader.cache;
+
+import net.byteseek.io.reader.AbstractReader;
+import net.byteseek.io.reader.ChannelReader;
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.PooledWindow;
+import net.byteseek.io.reader.windows.SoftWindow;
+import net.byteseek.io.reader.windows.SoftWindowRecovery;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowMissingException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WindowArrayPoolTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroArraySize() {
+        new WindowArrayPool(0, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() {
+        new WindowArrayPool(4096, 0);
+    }
+
+    @Test
+    public void testNewArraysWhenEmpty() {
+        final WindowArrayPool pool = new WindowArrayPool(128, 4);
+        final byte[] first = pool.getArray();
+        final byte[] second = pool.getArray();
+        assertEquals(128, first.length);
+        assertEquals(128, second.length);
+        assertNotSame(first, second);
+        assertEquals(0, pool.getNumFree());
+    }
+
+    @Test
+    public void testReturnedArrayReused() {
+        final WindowArrayPool pool = new WindowArrayPool(128, 8);
+        final byte[] array = pool.getArray();
+        pool.returnArray(array);
+        assertEquals(1, pool.getNumFree());
+        assertSame(array, pool.getArray());
+        assertEquals(0, pool.getNumFree());
+    }
+
+    @Test
+    public void testPooledWindowReleasesArrayOnce() throws IOException {
+        final byte[] array = new byte[128];
+        array[5] = 5;
+        final PooledWindow window = new PooledWindow(array, 0, 128, null);
+        assertEquals(5, window.getByte(5));
+        assertSame(array, window.releaseArray());
+        assertTrue(window.isReleased());
+        assertNull("An array is only released once", window.releaseArray());
+        try {
+            window.getByte(5);
+            fail("Expected a WindowMissingException reading a released window with no recovery");
+        } catch (WindowMissingException expected) {
+        }
+    }
+
+    @Test
+    public void testReleasedPooledWindowReloads() throws IOException {
+        final byte[] array = new byte[128];
+        array[5] = 5;
+        final PooledWindow window = new PooledWindow(array, 0, 128, new SoftWindowRecovery() {
+            @Override
+            public byte[] reloadWindowBytes(final Window window) {
+                final byte[] reloaded = new byte[128];
+                reloaded[5] = 5;
+                return reloaded;
+            }
+        });
+        assertSame(array, window.releaseArray());
+        array[5] = 99; // the array is re-used by another window.
+        assertEquals(5, window.getByte(5));
+        final byte[] copy = new byte[10];
+        window.copyBytes(0, copy, 0, 10);
+        assertEquals(5, copy[5]);
+        assertNotSame(array, window.getArray());
+        assertNull("A reloaded array is not released", window.releaseArray());
+    }
+
+    @Test
+    public void testPooledWindowArrayHandedOutIsNotReleased() throws IOException {
+        final byte[] array = new byte[128];
+        final PooledWindow window = new PooledWindow(array, 0, 128, null);
+        final byte[] copy = new byte[128];
+        window.copyBytes(0, copy, 0, 128);
+        assertSame(array, window.getArray());
+        assertNull("The caller may still hold the array", window.releaseArray());
+        assertFalse(window.isReleased());
+    }
+
+    @Test
+    public void testOwnership() {
+        final WindowArrayPool pool = new WindowArrayPool(128, 8);
+        final Object first = new Object();
+        final Object second = new Object();
+        assertFalse(pool.isOwned());
+        pool.claim(first);
+        pool.claim(first);
+        assertTrue(pool.isOwned());
+        try {
+            pool.claim(second);
+            fail("Expected an IllegalStateException claiming a pool owned by another reader.");
+        } catch (IllegalStateException expected) {
+        }
+        pool.release(second);
+        assertTrue("Only the owner can release the pool", pool.isOwned());
+        pool.release(first);
+        assertFalse(pool.isOwned());
+        pool.claim(second);
+        assertTrue(pool.isOwned());
+    }
+
+    @Test
+    public void testCapacityAndWrongSizes() {
+        final WindowArrayPool pool = new WindowArrayPool(128, 2);
+        pool.returnArray(null);
+        pool.returnArray(new byte[127]);
+        pool.returnArray(new byte[129]);
+        assertEquals("Wrong sized arrays ignored", 0, pool.getNumFree());
+        pool.returnArray(new byte[128]);
+        pool.returnArray(new byte[128]);
+        pool.returnArray(new byte[128]);
+        assertEquals("No more than capacity", 2, pool.getNumFree());
+        pool.clear();
+        assertEquals(0, pool.getNumFree());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReaderRejectsWrongPoolSize() throws Exception {
+        final FileReader reader = new FileReader(getFile("/TestASCII.txt"), 4096);
+        try {
+            reader.setWindowArrayPool(new WindowArrayPool(1024, 4));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testReadersCannotSharePool() throws Exception {
+        final WindowArrayPool pool = new WindowArrayPool(4096, 4);
+        final FileReader first = new FileReader(getFile("/TestASCII.txt"), 4096);
+        final FileReader second = new FileReader(getFile("/TestASCII.txt"), 4096);
+        try {
+            first.setWindowArrayPool(pool);
+            try {
+                second.setWindowArrayPool(pool);
+                fail("Expected an IllegalStateException sharing a pool between readers.");
+            } catch (IllegalStateException expected) {
+            }
+            assertNull(second.getWindowArrayPool());
+            first.close();
+            assertFalse("Closing the reader releases the pool", pool.isOwned());
+            second.setWindowArrayPool(pool);
+            assertSame(pool, second.getWindowArrayPool());
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void testReaderWithPoolReadsCorrectBytes() throws Exception {
+        final File file = getFile("/TestASCII.txt");
+        final byte[] expected = readAll(file);
+        for (final int windowSize : new int[] {7, 255, 4096}) {
+            final WindowArrayPool pool = new WindowArrayPool(windowSize, 4);
+            final FileReader reader = new FileReader(file, windowSize, 2);
+            reader.setWindowArrayPool(pool);
+            assertSame(pool, reader.getWindowArrayPool());
+            try {
+                for (int pass = 0; pass < 2; pass++) {
+                    for (int position = 0; position < expected.length; position++) {
+                        assertEquals("Byte at position " + position + " window size " + windowSize,
+                                     expected[position] & 0xFF, reader.readByte(position));
+                    }
+                }
+                assertTrue("Arrays returned to pool", pool.getNumFree() > 0);
+                reader.setWindowArrayPool(null);
+                assertNull(reader.getWindowArrayPool());
+                assertFalse(pool.isOwned());
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Test
+    public void testHeldWindowsKeepTheirBytes() throws Exception {
+        final File file = getFile("/TestASCII.txt");
+        final FileReader reader = new FileReader(file, 4096, new LeastRecentlyUsedCache(1));
+        final FileReader expected = new FileReader(file, 4096);
+        try {
+            reader.setWindowArrayPool(new WindowArrayPool(4096, 4));
+            final Window first = reader.getWindow(0);
+            final Window second = reader.getWindow(4096);
+            final Window third = reader.getWindow(8192);
+            assertArrayEquals(expected.getWindow(0).getArray(), first.getArray());
+            assertArrayEquals(expected.getWindow(4096).getArray(), second.getArray());
+            assertArrayEquals(expected.getWindow(8192).getArray(), third.getArray());
+        } finally {
+            reader.close();
+            expected.close();
+        }
+    }
+
+    @Test
+    public void testReleasedWindowsReloadTheirBytes() throws Exception {
+        final File file = getFile("/TestASCII.txt");
+        final byte[] expected = readAll(file);
+        final AbstractReader[] readers = {
+                new FileReader(file, 1024, new LeastRecentlyUsedCache(1)),
+                new ChannelReader(file.toPath(), 1024, new LeastRecentlyUsedCache(1)),
+                new InputStreamReader(new ByteArrayInputStream(expected), 1024,
+                                      TwoLevelCache.create(new LeastRecentlyUsedCache(1), new TempFileCache()))};
+        for (final AbstractReader reader : readers) {
+            reader.setWindowArrayPool(new WindowArrayPool(1024, 4));
+            try {
+                final Window held = reader.getWindow(0);
+                assertTrue(held instanceof PooledWindow);
+                for (int position = 1024; position < 10240; position += 1024) {
+                    reader.getWindow(position);
+                }
+                assertTrue(reader + " released the held window", ((PooledWindow) held).isReleased());
+                for (int i = 0; i < 1024; i++) {
+                    assertEquals(reader + " byte " + i, expected[i], held.getByte(i));
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Test
+    public void testTempFileCacheReadsIntoPoolArrays() throws Exception {
+        final WindowArrayPool pool = new WindowArrayPool(128, 8);
+        final byte[] free = new byte[128];
+        pool.returnArray(free);
+        final TempFileCache cache = new TempFileCache(null, pool);
+        final List<Window> freed = new ArrayList<Window>();
+        cache.subscribe(new WindowCache.WindowObserver() {
+            @Override
+            public void windowFree(final Window window, final WindowCache fromCache) {
+                freed.add(window);
+            }
+        });
+        try {
+            final byte[] bytes = new byte[128];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) i;
+            }
+            final Window added = new HardWindow(bytes, 0, 128);
+            cache.addWindow(added);
+            assertEquals("The cache does not return arrays to the pool", 1, pool.getNumFree());
+            assertEquals("Observers told the window has left", 1, freed.size());
+            assertSame(added, freed.get(0));
+
+            final Window window = cache.getWindow(0);
+            assertTrue(window instanceof PooledWindow);
+            assertEquals(0, pool.getNumFree());
+            for (int i = 0; i < bytes.length; i++) {
+                assertEquals(i, window.getByte(i));
+            }
+            assertSame("Read back into the pool array", free, ((PooledWindow) window).releaseArray());
+            assertEquals("Released window reloaded from the file", 100, window.getByte(100));
+
+            cache.addWindow(new HardWindow(new byte[64], 128, 64));
+            assertTrue("Short windows are not read into pool arrays",
+                       cache.getWindow(128) instanceof SoftWindow);
+        } finally {
+            cache.clear();
+        }
+    }
+
+    private static byte[] readAll(final File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        return bytes;
+    }
+
+    private File getFile(final String resourceName) {
+        return new File(getClass().getResource(resourceName).getPath());
+    }
+
+}
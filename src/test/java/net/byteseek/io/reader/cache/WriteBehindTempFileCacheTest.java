@@ -0,0 +1,222 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.io.reader.cache;
+
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindTempFileCacheTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotADirectory() throws IOException {
+        final File file = new File(getClass().getResource("/TestASCII.txt").getPath());
+        new WriteBehindTempFileCache(file, 1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroChunkSize() {
+        new WriteBehindTempFileCache(null, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroMaxStaged() {
+        new WriteBehindTempFileCache(null, 1024, 0);
+    }
+
+    @Test
+    public void testStagingIsBounded() throws IOException {
+        final WriteBehindTempFileCache cache = new WriteBehindTempFileCache(null, 10000, 2);
+        final byte[] bytes = new byte[1024];
+        new Random(5).nextBytes(bytes);
+        for (int i = 0; i < 50; i++) {
+            cache.addWindow(new HardWindow(bytes, i * 1024, 1024));
+            assertTrue("At most two windows staged", cache.getNumStaged() <= 2);
+        }
+        for (int i = 0; i < 50; i++) {
+            assertEquals(bytes[i], cache.getWindow(i * 1024).getByte(i));
+        }
+        cache.clear();
+    }
+
+    @Test
+    public void testWindowBytesCopiedWhenAdded() throws IOException {
+        final WriteBehindTempFileCache cache = new WriteBehindTempFileCache();
+        final byte[] bytes = new byte[4096];
+        new Random(6).nextBytes(bytes);
+        final byte original = bytes[10];
+        cache.addWindow(new HardWindow(bytes, 0, 4096));
+        bytes[10] = (byte) ~original;
+        assertEquals("Reused arrays do not change the cached window", original, cache.getWindow(0).getByte(10));
+        cache.clear();
+    }
+
+    @Test
+    public void testWindowWhichCannotBeReadIsNotCached() throws IOException {
+        final WriteBehindTempFileCache cache = new WriteBehindTempFileCache();
+        final byte[] bytes = new byte[100];
+        try {
+            cache.addWindow(new UnreadableWindow(0, 100));
+            fail("Expected an IOException reading the window");
+        } catch (IOException expected) {
+            // the window bytes are read when the window is added.
+        }
+        assertNull(cache.getWindow(0));
+        cache.addWindow(new HardWindow(bytes, 0, 100));
+        assertNotNull(cache.getWindow(0));
+        cache.clear();
+    }
+
+    @Test
+    public void testAddGetAndClear() throws IOException {
+        final WriteBehindTempFileCache cache = new WriteBehindTempFileCache(null, 10000);
+        assertNull("No temp file before first window", cache.getTempFile());
+        final Random random = new Random(3);
+        final byte[][] arrays = new byte[5][4096];
+        for (int i = 0; i < arrays.length; i++) {
+            random.nextBytes(arrays[i]);
+            cache.addWindow(new HardWindow(arrays[i], i * 4096, i == 4? 1000 : 4096));
+        }
+        final File tempFile = cache.getTempFile();
+        assertNotNull(tempFile);
+        for (int i = 0; i < arrays.length; i++) {
+            final Window window = cache.getWindow(i * 4096);
+            assertEquals(i * 4096, window.getWindowPosition());
+            final int length = i == 4? 1000 : 4096;
+            assertEquals(length, window.length());
+            for (int pos = 0; pos < length; pos++) {
+                assertEquals(arrays[i][pos], window.getByte(pos));
+            }
+        }
+        assertNull(cache.getWindow(1));
+
+        cache.clear();
+        assertNull(cache.getTempFile());
+        assertNull(cache.getWindow(0));
+        assertEquals(0, cache.getNumStaged());
+
+        cache.addWindow(new HardWindow(arrays[0], 0, 4096));
+        assertEquals(arrays[0][100], cache.getWindow(0).getByte(100));
+        cache.clear();
+    }
+
+    @Test
+    public void testWindowLargerThanChunk() throws IOException {
+        final WriteBehindTempFileCache cache = new WriteBehindTempFileCache(null, 1024);
+        final byte[] bytes = new byte[5000];
+        new Random(4).nextBytes(bytes);
+        cache.addWindow(new HardWindow(bytes, 0, 5000));
+        cache.addWindow(new HardWindow(bytes, 5000, 100));
+        final Window window = cache.getWindow(0);
+        assertEquals(5000, window.length());
+        assertEquals(bytes[4999], window.getByte(4999));
+        assertEquals(bytes[99], cache.getWindow(5000).getByte(99));
+        cache.clear();
+    }
+
+    @Test
+    public void testInputStreamReaderRereadsThroughWriteBehindCache() throws IOException {
+        final File file = new File(getClass().getResource("/TestASCII.txt").getPath());
+        final byte[] expected = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(expected);
+        } finally {
+            raf.close();
+        }
+        final WriteBehindTempFileCache tempFile = new WriteBehindTempFileCache();
+        final InputStreamReader reader = new InputStreamReader(new FileInputStream(file), 4096,
+                TwoLevelCache.create(new LeastRecentlyUsedCache(2), tempFile));
+        try {
+            for (int position = 0; position < expected.length; position++) {
+                assertEquals(expected[position] & 0xFF, reader.readByte(position));
+            }
+            for (int position = expected.length - 1; position >= 0; position--) {
+                assertEquals(expected[position] & 0xFF, reader.readByte(position));
+            }
+            assertNotNull(tempFile.getTempFile());
+        } finally {
+            reader.close();
+        }
+        assertNull("Temp file deleted on close", tempFile.getTempFile());
+    }
+
+    private static final class UnreadableWindow implements Window {
+
+        private final long position;
+        private final int length;
+
+        private UnreadableWindow(final long position, final int length) {
+            this.position = position;
+            this.length = length;
+        }
+
+        @Override
+        public byte getByte(final int position) throws IOException {
+            throw new IOException("Cannot read the window");
+        }
+
+        @Override
+        public byte[] getArray() throws IOException {
+            throw new IOException("Cannot read the window");
+        }
+
+        @Override
+        public long getWindowPosition() {
+            return position;
+        }
+
+        @Override
+        public long getWindowEndPosition() {
+            return position + length - 1;
+        }
+
+        @Override
+        public long getNextWindowPosition() {
+            return position + length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.searcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.matcher.bytes.OneByteMatcher;
+import net.byteseek.matcher.multisequence.ListMultiSequenceMatcher;
+import net.byteseek.matcher.multisequence.MultiSequenceMatcher;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.bytes.ByteMatcherSearcher;
+import net.byteseek.searcher.bytes.ByteSearcher;
+import net.byteseek.searcher.multisequence.MultiSequenceMatcherSearcher;
+import net.byteseek.searcher.sequence.SequenceMatcherSearcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.sequence.horspool.HorspoolFinalFlagSearcher;
+import net.byteseek.searcher.sequence.sunday.SundayQuickSearcher;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for counting matches and testing whether a match exists.
+ *
+ * @author Matt Palmer
+ */
+public class CountAndExistsTest {
+
+    private static final int[] WINDOW_SIZES = {5, 127, 4096};
+
+    private File file;
+    private byte[] bytes;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(getClass().getResource("/TestASCII.txt").getPath());
+        bytes = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testSequenceSearchers() throws IOException {
+        final SequenceMatcher[] matchers = {new ByteSequenceMatcher("the"),
+                                            new ByteSequenceMatcher("A Midsommer Nights Dreame"),
+                                            new ByteSequenceMatcher("not in the text")};
+        for (final SequenceMatcher matcher : matchers) {
+            final List<Integer> expected = new ArrayList<Integer>();
+            for (int position = 0; position <= bytes.length - matcher.length(); position++) {
+                if (matcher.matches(bytes, position)) {
+                    expected.add(position);
+                }
+            }
+            final List<Searcher<SequenceMatcher>> searchers = new ArrayList<Searcher<SequenceMatcher>>();
+            searchers.add(new SequenceMatcherSearcher(matcher));
+            searchers.add(new BoyerMooreHorspoolSearcher(matcher));
+            searchers.add(new HorspoolFinalFlagSearcher(matcher));
+            searchers.add(new SundayQuickSearcher(matcher));
+            for (final Searcher<SequenceMatcher> searcher : searchers) {
+                assertCountsAndExists(searcher, expected);
+            }
+        }
+    }
+
+    @Test
+    public void testByteSearchers() throws IOException {
+        final List<Integer> expected = new ArrayList<Integer>();
+        for (int position = 0; position < bytes.length; position++) {
+            if (bytes[position] == 'e') {
+                expected.add(position);
+            }
+        }
+        assertCountsAndExists(new ByteSearcher((byte) 'e'), expected);
+        assertCountsAndExists(new ByteMatcherSearcher(OneByteMatcher.valueOf((byte) 'e')), expected);
+        assertCountsAndExists(new ByteSearcher((byte) 0), new ArrayList<Integer>());
+    }
+
+    @Test
+    public void testMultiSequenceSearcher() throws IOException {
+        final MultiSequenceMatcher matcher = new ListMultiSequenceMatcher(
+                Arrays.asList(new ByteSequenceMatcher("the"), new ByteSequenceMatcher("and"),
+                              new ByteSequenceMatcher("A Midsommer Nights Dreame")));
+        final List<Integer> expected = new ArrayList<Integer>();
+        for (int position = 0; position < bytes.length; position++) {
+            if (matcher.matches(bytes, position)) {
+                expected.add(position);
+            }
+        }
+        assertCountsAndExists(new MultiSequenceMatcherSearcher(matcher), expected);
+    }
+
+    private <T> void assertCountsAndExists(final Searcher<T> searcher, final List<Integer> expected)
+                                           throws IOException {
+        final int lastPosition = bytes.length - 1;
+        final int middle = bytes.length / 2;
+        final int countToMiddle = countUpTo(expected, middle);
+        final boolean existsAfterMiddle = expected.size() > countToMiddle;
+
+        assertEquals(searcher.toString(), expected.size(), searcher.count(bytes));
+        assertEquals(searcher.toString(), countToMiddle, searcher.count(bytes, 0, middle));
+        assertEquals(searcher.toString(), !expected.isEmpty(), searcher.exists(bytes));
+        assertEquals(searcher.toString(), existsAfterMiddle, searcher.exists(bytes, middle + 1, lastPosition));
+
+        for (final int windowSize : WINDOW_SIZES) {
+            final WindowReader reader = new FileReader(file, windowSize);
+            try {
+                assertEquals(searcher + " window size " + windowSize, expected.size(), searcher.count(reader));
+                assertEquals(searcher + " window size " + windowSize, countToMiddle, searcher.count(reader, 0, middle));
+                assertEquals(searcher + " window size " + windowSize, !expected.isEmpty(), searcher.exists(reader));
+                assertEquals(searcher + " window size " + windowSize, existsAfterMiddle,
+                             searcher.exists(reader, middle + 1, Long.MAX_VALUE));
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private static int countUpTo(final List<Integer> positions, final int lastPosition) {
+        int count = 0;
+        for (final int position : positions) {
+            if (position <= lastPosition) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
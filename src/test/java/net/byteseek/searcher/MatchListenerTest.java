@@ -0,0 +1,228 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.searcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.byteseek.compiler.matcher.MatcherCompilerUtils;
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.MappedFileReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.bytes.OneByteMatcher;
+import net.byteseek.matcher.multisequence.ListMultiSequenceMatcher;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.bytes.ByteMatcherSearcher;
+import net.byteseek.searcher.bytes.ByteSearcher;
+import net.byteseek.searcher.multisequence.MultiSequenceMatcherSearcher;
+import net.byteseek.searcher.sequence.SequenceMatcherSearcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.sequence.horspool.HorspoolFinalFlagSearcher;
+import net.byteseek.searcher.sequence.sunday.SundayQuickSearcher;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for searching with a MatchListener.
+ *
+ * @author Matt Palmer
+ */
+public class MatchListenerTest {
+
+    private static final int[] WINDOW_SIZES = {5, 127, 4096};
+
+    private File file;
+    private byte[] bytes;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(getClass().getResource("/TestASCII.txt").getPath());
+        bytes = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testSequenceSearchers() throws IOException {
+        final SequenceMatcher[] matchers = {new ByteSequenceMatcher("the"),
+                                            new ByteSequenceMatcher("e"),
+                                            new ByteSequenceMatcher("A Midsommer Nights Dreame"),
+                                            MatcherCompilerUtils.createCaseInsensitiveMatcher("midsommer")};
+        for (final SequenceMatcher matcher : matchers) {
+            final List<Long> expected = new ArrayList<Long>();
+            for (int position = 0; position <= bytes.length - matcher.length(); position++) {
+                if (matcher.matches(bytes, position)) {
+                    expected.add((long) position);
+                }
+            }
+            assertFalse(expected.isEmpty());
+            final List<Searcher<SequenceMatcher>> searchers = new ArrayList<Searcher<SequenceMatcher>>();
+            searchers.add(new SequenceMatcherSearcher(matcher));
+            searchers.add(new BoyerMooreHorspoolSearcher(matcher));
+            searchers.add(new HorspoolFinalFlagSearcher(matcher));
+            searchers.add(new SundayQuickSearcher(matcher));
+            for (final Searcher<SequenceMatcher> searcher : searchers) {
+                assertFindsAll(searcher, expected);
+            }
+        }
+    }
+
+    @Test
+    public void testByteSearchers() throws IOException {
+        final List<Long> expected = new ArrayList<Long>();
+        for (int position = 0; position < bytes.length; position++) {
+            if (bytes[position] == 'e') {
+                expected.add((long) position);
+            }
+        }
+        assertFindsAll(new ByteSearcher((byte) 'e'), expected);
+        assertFindsAll(new ByteMatcherSearcher(OneByteMatcher.valueOf((byte) 'e')), expected);
+    }
+
+    @Test
+    public void testMultiSequenceSearcher() throws IOException {
+        final ListMultiSequenceMatcher matcher = new ListMultiSequenceMatcher(
+                Arrays.asList("the".getBytes("US-ASCII"), "and".getBytes("US-ASCII")));
+        final MultiSequenceMatcherSearcher searcher = new MultiSequenceMatcherSearcher(matcher);
+
+        PositionCollector<SequenceMatcher> collector = new PositionCollector<SequenceMatcher>(Integer.MAX_VALUE);
+        searcher.searchForwards(bytes, 0, bytes.length - 1, collector);
+        assertEquals(positionsOf(SearchUtils.searchAllForwards(searcher, bytes)), collector.positions);
+
+        collector = new PositionCollector<SequenceMatcher>(Integer.MAX_VALUE);
+        searcher.searchBackwards(bytes, bytes.length - 1, 0, collector);
+        assertEquals(positionsOf(SearchUtils.searchAllBackwards(searcher, bytes)), collector.positions);
+
+        for (final int windowSize : WINDOW_SIZES) {
+            final WindowReader reader = new FileReader(file, windowSize);
+            try {
+                collector = new PositionCollector<SequenceMatcher>(Integer.MAX_VALUE);
+                searcher.searchForwards(reader, 0, Long.MAX_VALUE, collector);
+                assertEquals(positionsOf(SearchUtils.searchAllForwards(searcher, reader)), collector.positions);
+
+                collector = new PositionCollector<SequenceMatcher>(Integer.MAX_VALUE);
+                searcher.searchBackwards(reader, reader.length() - 1, 0, collector);
+                assertEquals(positionsOf(SearchUtils.searchAllBackwards(searcher, reader)), collector.positions);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Test
+    public void testListenerStopsSearch() throws IOException {
+        final BoyerMooreHorspoolSearcher searcher = new BoyerMooreHorspoolSearcher(new ByteSequenceMatcher("the"));
+        final PositionCollector<SequenceMatcher> collector = new PositionCollector<SequenceMatcher>(3);
+        final WindowReader reader = new FileReader(file, 127);
+        try {
+            assertEquals(3, searcher.searchForwards(reader, 0, Long.MAX_VALUE, collector));
+            assertEquals(3, collector.positions.size());
+        } finally {
+            reader.close();
+        }
+        final PositionCollector<SequenceMatcher> arrayCollector = new PositionCollector<SequenceMatcher>(1);
+        assertEquals(1, searcher.searchBackwards(bytes, bytes.length - 1, 0, arrayCollector));
+    }
+
+    private <T> void assertFindsAll(final Searcher<T> searcher, final List<Long> expected) throws IOException {
+        final List<Long> reversed = new ArrayList<Long>(expected);
+        Collections.reverse(reversed);
+
+        PositionCollector<T> collector = new PositionCollector<T>(Integer.MAX_VALUE);
+        assertEquals(expected.size(), searcher.searchForwards(bytes, 0, bytes.length - 1, collector));
+        assertEquals(searcher.toString(), expected, collector.positions);
+
+        collector = new PositionCollector<T>(Integer.MAX_VALUE);
+        assertEquals(expected.size(), searcher.searchBackwards(bytes, bytes.length - 1, 0, collector));
+        assertEquals(searcher.toString(), reversed, collector.positions);
+
+        for (final int windowSize : WINDOW_SIZES) {
+            assertReaderFindsAll(searcher, new FileReader(file, windowSize), expected, reversed);
+            // Mapped files have windows backed by ByteBuffers, searched through the buffer by searchers which can:
+            assertReaderFindsAll(searcher, new MappedFileReader(file, windowSize), expected, reversed);
+        }
+    }
+
+    private <T> void assertReaderFindsAll(final Searcher<T> searcher, final WindowReader reader,
+                                          final List<Long> expected, final List<Long> reversed) throws IOException {
+        final String description = searcher + " " + reader;
+        try {
+            PositionCollector<T> collector = new PositionCollector<T>(Integer.MAX_VALUE);
+            assertEquals(expected.size(), searcher.searchForwards(reader, 0, Long.MAX_VALUE, collector));
+            assertEquals(description, expected, collector.positions);
+
+            collector = new PositionCollector<T>(Integer.MAX_VALUE);
+            assertEquals(expected.size(), searcher.searchBackwards(reader, reader.length() - 1, 0, collector));
+            assertEquals(description, reversed, collector.positions);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static <T> List<Long> positionsOf(final List<SearchResult<T>> results) {
+        final List<Long> positions = new ArrayList<Long>();
+        for (final SearchResult<T> result : results) {
+            positions.add(result.getMatchPosition());
+        }
+        return positions;
+    }
+
+    private static final class PositionCollector<T> implements MatchListener<T> {
+
+        private final List<Long> positions = new ArrayList<Long>();
+        private final int maxMatches;
+
+        private PositionCollector(final int maxMatches) {
+            this.maxMatches = maxMatches;
+        }
+
+        @Override
+        public boolean matchFound(final long matchPosition, final T matchingObject) {
+            assertNotNull(matchingObject);
+            positions.add(matchPosition);
+            return positions.size() < maxMatches;
+        }
+    }
+
+}
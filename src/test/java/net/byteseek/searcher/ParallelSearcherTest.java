@@ -0,0 +1,167 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.searcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import net.byteseek.io.reader.ByteArrayReader;
+import net.byteseek.io.reader.ConcurrentFileReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.sequence.SequenceMatcherSearcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.sequence.sunday.SundayQuickSearcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for searching a reader in parallel chunks.
+ *
+ * @author Matt Palmer
+ */
+public class ParallelSearcherTest {
+
+    private static final long[] CHUNK_SIZES = {1, 7, 1000, 65536, ParallelSearcher.DEFAULT_CHUNK_SIZE};
+
+    private File file;
+    private byte[] bytes;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(getClass().getResource("/TestASCII.txt").getPath());
+        bytes = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullSearcher() {
+        new ParallelSearcher<SequenceMatcher>(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullPool() {
+        new ParallelSearcher<SequenceMatcher>(new SequenceMatcherSearcher(new ByteSequenceMatcher("the")), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroChunkSize() {
+        new ParallelSearcher<SequenceMatcher>(new SequenceMatcherSearcher(new ByteSequenceMatcher("the")), pool, 0);
+    }
+
+    @Test
+    public void testFindsAllMatchesInOrder() throws IOException {
+        final SequenceMatcher[] matchers = {new ByteSequenceMatcher("the"),
+                                            new ByteSequenceMatcher("e"),
+                                            new ByteSequenceMatcher("A Midsommer Nights Dreame")};
+        for (final SequenceMatcher matcher : matchers) {
+            final List<Long> expected = matchesOf(matcher, 0, bytes.length - 1);
+            final List<Searcher<SequenceMatcher>> searchers = new ArrayList<Searcher<SequenceMatcher>>();
+            searchers.add(new SequenceMatcherSearcher(matcher));
+            searchers.add(new BoyerMooreHorspoolSearcher(matcher));
+            searchers.add(new SundayQuickSearcher(matcher));
+            for (final Searcher<SequenceMatcher> searcher : searchers) {
+                for (final long chunkSize : CHUNK_SIZES) {
+                    final ParallelSearcher<SequenceMatcher> parallel =
+                            new ParallelSearcher<SequenceMatcher>(searcher, pool, chunkSize);
+                    final WindowReader reader = new ConcurrentFileReader(file, 127, 16);
+                    try {
+                        assertEquals(parallel.toString(), expected, positionsOf(parallel.searchAll(reader)));
+                    } finally {
+                        reader.close();
+                    }
+                    assertEquals(parallel.toString(), expected,
+                                 positionsOf(parallel.searchAll(new ByteArrayReader(bytes))));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSearchRange() throws IOException {
+        final SequenceMatcher matcher = new ByteSequenceMatcher("the");
+        final ParallelSearcher<SequenceMatcher> parallel =
+                new ParallelSearcher<SequenceMatcher>(new BoyerMooreHorspoolSearcher(matcher), pool, 100);
+        final WindowReader reader = new ByteArrayReader(bytes);
+        assertEquals(matchesOf(matcher, 1000, 50000), positionsOf(parallel.searchAll(reader, 1000, 50000)));
+        assertEquals(matchesOf(matcher, 0, 2000), positionsOf(parallel.searchAll(reader, -100, 2000)));
+        assertTrue(parallel.searchAll(reader, 5000, 4999).isEmpty());
+        assertTrue(parallel.searchAll(reader, bytes.length, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testDefaultPool() throws IOException {
+        final SequenceMatcher matcher = new ByteSequenceMatcher("the");
+        final ParallelSearcher<SequenceMatcher> parallel =
+                new ParallelSearcher<SequenceMatcher>(new BoyerMooreHorspoolSearcher(matcher));
+        assertEquals(ParallelSearcher.DEFAULT_CHUNK_SIZE, parallel.getChunkSize());
+        assertEquals(matchesOf(matcher, 0, bytes.length - 1), positionsOf(parallel.searchAll(new ByteArrayReader(bytes))));
+    }
+
+    private List<Long> matchesOf(final SequenceMatcher matcher, final int from, final int to) {
+        final List<Long> positions = new ArrayList<Long>();
+        for (int position = from; position <= to && position <= bytes.length - matcher.length(); position++) {
+            if (matcher.matches(bytes, position)) {
+                positions.add((long) position);
+            }
+        }
+        return positions;
+    }
+
+    private static <T> List<Long> positionsOf(final List<SearchResult<T>> results) {
+        final List<Long> positions = new ArrayList<Long>();
+        for (final SearchResult<T> result : results) {
+            positions.add(result.getMatchPosition());
+        }
+        return positions;
+    }
+
+}
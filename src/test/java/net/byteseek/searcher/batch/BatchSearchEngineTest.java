@@ -0,0 +1,378 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.searcher.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.SharedWindowCache;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.AbstractSearcher;
+import net.byteseek.searcher.MatchListener;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for searching many files with a BatchSearchEngine.
+ *
+ * @author Matt Palmer
+ */
+public class BatchSearchEngineTest {
+
+    private static final SequenceMatcher THE = new ByteSequenceMatcher("the");
+    private static final SequenceMatcher AND = new ByteSequenceMatcher("and");
+
+    private File asciiFile;
+    private File zipFile;
+    private File emptyFile;
+    private File missingFile;
+    private File tempDir;
+    private List<Searcher<SequenceMatcher>> searchers;
+
+    @Before
+    public void setUp() {
+        asciiFile   = new File(getClass().getResource("/TestASCII.txt").getPath());
+        zipFile     = new File(getClass().getResource("/TestASCII.zip").getPath());
+        emptyFile   = new File(getClass().getResource("/TestEmpty.empty").getPath());
+        missingFile = new File(asciiFile.getParentFile(), "DoesNotExist.txt");
+        searchers   = new ArrayList<Searcher<SequenceMatcher>>();
+        searchers.add(new BoyerMooreHorspoolSearcher(THE));
+        searchers.add(new BoyerMooreHorspoolSearcher(AND));
+    }
+
+    @After
+    public void tearDown() {
+        if (tempDir != null) {
+            for (final File file : tempDir.listFiles()) {
+                file.delete();
+            }
+            tempDir.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullSearchers() {
+        new BatchSearchEngine<SequenceMatcher>(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptySearchers() {
+        new BatchSearchEngine<SequenceMatcher>(new ArrayList<Searcher<SequenceMatcher>>());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullExecutor() {
+        new BatchSearchEngine<SequenceMatcher>(searchers, null, 2, 4096, new SharedWindowCache(65536));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroWorkers() {
+        new BatchSearchEngine<SequenceMatcher>(searchers, 0, 4096, new SharedWindowCache(65536));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullCache() {
+        new BatchSearchEngine<SequenceMatcher>(searchers, 2, 4096, null);
+    }
+
+    @Test
+    public void testSearchFiles() throws IOException {
+        final SharedWindowCache cache = new SharedWindowCache(16 * 1024);
+        final BatchSearchEngine<SequenceMatcher> engine =
+                new BatchSearchEngine<SequenceMatcher>(searchers, 3, 1024, cache);
+        try {
+            final Map<File, File> originals = new HashMap<File, File>();
+            final List<File> files = new ArrayList<File>();
+            for (int i = 0; i < 5; i++) {
+                for (final File file : Arrays.asList(asciiFile, zipFile, emptyFile)) {
+                    final File copy = copyOf(file, i);
+                    originals.put(copy, file);
+                    files.add(copy);
+                }
+                files.add(new File(getTempDir(), "missing" + i));
+            }
+            final RecordingSink sink = new RecordingSink();
+            final BatchStatistics statistics = engine.search(files, sink);
+
+            assertEquals(15, statistics.getNumFiles());
+            assertEquals(5, statistics.getNumFailed());
+            assertEquals(5 * (asciiFile.length() + zipFile.length()), statistics.getNumBytes());
+            assertEquals(5, sink.failed.size());
+            for (final File failed : sink.failed) {
+                assertTrue(failed.getName().startsWith("missing"));
+            }
+            assertTrue(sink.inProgress.isEmpty());
+            long numMatches = 0;
+            for (final Map.Entry<File, File> copy : originals.entrySet()) {
+                final List<Long> expected = expectedMatches(copy.getValue());
+                assertEquals(copy.getKey().toString(), expected, sink.results.get(copy.getKey()));
+                numMatches += expected.size();
+            }
+            assertEquals(numMatches, statistics.getNumMatches());
+            assertTrue(cache.getBytesCached() <= cache.getBudget());
+            assertTrue(statistics.getElapsedNanos() > 0);
+            assertTrue(statistics.getFilesPerSecond() > 0);
+            assertTrue(statistics.getMegabytesPerSecond() > 0);
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void testSuppliedExecutor() throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final BatchSearchEngine<SequenceMatcher> engine =
+                    new BatchSearchEngine<SequenceMatcher>(searchers, executor, 2, 4096, new SharedWindowCache(65536));
+            final RecordingSink sink = new RecordingSink();
+            final File first = copyOf(asciiFile, 0);
+            final File second = copyOf(asciiFile, 1);
+            final BatchStatistics statistics = engine.search(Arrays.asList(first, second), sink);
+            engine.close();
+            assertFalse(executor.isShutdown());
+            assertEquals(2, statistics.getNumFiles());
+            assertEquals(expectedMatches(asciiFile), sink.results.get(first));
+            assertEquals(expectedMatches(asciiFile), sink.results.get(second));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSingleSearcherStreamsMatches() throws IOException {
+        final List<Searcher<SequenceMatcher>> theSearcher = new ArrayList<Searcher<SequenceMatcher>>();
+        theSearcher.add(new BoyerMooreHorspoolSearcher(THE));
+        final BatchSearchEngine<SequenceMatcher> engine =
+                new BatchSearchEngine<SequenceMatcher>(theSearcher, 2, 1024, new SharedWindowCache(16 * 1024));
+        try {
+            final RecordingSink sink = new RecordingSink();
+            final List<File> files = Arrays.asList(copyOf(asciiFile, 0), copyOf(zipFile, 0), copyOf(asciiFile, 1));
+            final BatchStatistics statistics = engine.search(files, sink);
+            assertEquals(3, statistics.getNumFiles());
+            assertEquals(expectedMatches(asciiFile, THE), sink.results.get(files.get(0)));
+            assertEquals(expectedMatches(zipFile, THE), sink.results.get(files.get(1)));
+            assertEquals(expectedMatches(asciiFile, THE), sink.results.get(files.get(2)));
+        } finally {
+            engine.close();
+        }
+    }
+
+    /*
+     * Each file waits in its second chunk until both files have been started in the sink,
+     * which can only happen if a file does not hold the sink while it is being read.
+     */
+    @Test
+    public void testSinkNotHeldWhileFilesAreRead() throws IOException {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final GatedSearcher gated = new GatedSearcher(new BoyerMooreHorspoolSearcher(THE), bothStarted);
+        final BatchSearchEngine<SequenceMatcher> engine = new BatchSearchEngine<SequenceMatcher>(
+                Arrays.<Searcher<SequenceMatcher>>asList(gated, new BoyerMooreHorspoolSearcher(AND)),
+                2, 1024, new SharedWindowCache(16 * 1024));
+        try {
+            final RecordingSink sink = new RecordingSink() {
+                @Override
+                public void startFile(final File file) {
+                    super.startFile(file);
+                    bothStarted.countDown();
+                }
+            };
+            final List<File> files = Arrays.asList(copyOf(asciiFile, 0), copyOf(asciiFile, 1));
+            engine.search(files, sink);
+            assertFalse("Files waited for each other", gated.timedOut);
+            for (final File file : files) {
+                assertEquals(expectedMatches(asciiFile), sink.results.get(file));
+            }
+        } finally {
+            engine.close();
+        }
+    }
+
+    private File getTempDir() throws IOException {
+        if (tempDir == null) {
+            tempDir = Files.createTempDirectory("byteseek").toFile();
+        }
+        return tempDir;
+    }
+
+    private File copyOf(final File file, final int copyNumber) throws IOException {
+        final File copy = new File(getTempDir(), copyNumber + file.getName());
+        Files.copy(file.toPath(), copy.toPath());
+        return copy;
+    }
+
+    private List<Long> expectedMatches(final File file) throws IOException {
+        return expectedMatches(file, THE, AND);
+    }
+
+    private List<Long> expectedMatches(final File file, final SequenceMatcher... sequences) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        final List<Long> positions = new ArrayList<Long>();
+        for (int position = 0; position <= bytes.length - 3; position++) {
+            for (final SequenceMatcher sequence : sequences) {
+                if (sequence.matches(bytes, position)) {
+                    positions.add((long) position);
+                    break;
+                }
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Records the results reported for each file, and checks the calls for each file are made in order.
+     */
+    private static class RecordingSink implements BatchResultSink<SequenceMatcher> {
+
+        private final Map<File, List<Long>> results = new HashMap<File, List<Long>>();
+        private final Map<File, List<Long>> inProgress = new HashMap<File, List<Long>>();
+        private final List<File> failed = new ArrayList<File>();
+
+        @Override
+        public void startFile(final File file) {
+            assertFalse(results.containsKey(file));
+            assertNull(inProgress.put(file, new ArrayList<Long>()));
+        }
+
+        @Override
+        public void matchFound(final File file, final long matchPosition, final SequenceMatcher matchingObject) {
+            final List<Long> positions = inProgress.get(file);
+            assertNotNull(positions);
+            assertTrue(matchingObject == THE || matchingObject == AND);
+            assertTrue(positions.isEmpty() || positions.get(positions.size() - 1) < matchPosition);
+            positions.add(matchPosition);
+        }
+
+        @Override
+        public void endFile(final File file, final long numMatches) {
+            final List<Long> positions = inProgress.remove(file);
+            assertNotNull(positions);
+            assertEquals(positions.size(), numMatches);
+            results.put(file, positions);
+        }
+
+        @Override
+        public void fileFailed(final File file, final IOException exception) {
+            assertFalse(results.containsKey(file));
+            inProgress.remove(file);
+            failed.add(file);
+        }
+    }
+
+    /**
+     * Waits before searching any chunk after the first until the latch is released, or until it has timed out once.
+     */
+    private static final class GatedSearcher extends AbstractSearcher<SequenceMatcher> {
+
+        private final Searcher<SequenceMatcher> searcher;
+        private final CountDownLatch gate;
+        private volatile boolean timedOut;
+
+        private GatedSearcher(final Searcher<SequenceMatcher> searcher, final CountDownLatch gate) {
+            this.searcher = searcher;
+            this.gate = gate;
+        }
+
+        @Override
+        public long searchForwards(final WindowReader reader, final long fromPosition, final long toPosition,
+                                   final MatchListener<SequenceMatcher> listener) throws IOException {
+            if (fromPosition > 0 && !timedOut) {
+                try {
+                    if (!gate.await(2, TimeUnit.SECONDS)) {
+                        timedOut = true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return searcher.searchForwards(reader, fromPosition, toPosition, listener);
+        }
+
+        @Override
+        public List<SearchResult<SequenceMatcher>> searchForwards(final WindowReader reader, final long fromPosition,
+                                                                  final long toPosition) throws IOException {
+            return searcher.searchForwards(reader, fromPosition, toPosition);
+        }
+
+        @Override
+        public List<SearchResult<SequenceMatcher>> searchForwards(final byte[] bytes, final int fromPosition,
+                                                                  final int toPosition) {
+            return searcher.searchForwards(bytes, fromPosition, toPosition);
+        }
+
+        @Override
+        public List<SearchResult<SequenceMatcher>> searchBackwards(final WindowReader reader, final long fromPosition,
+                                                                   final long toPosition) throws IOException {
+            return searcher.searchBackwards(reader, fromPosition, toPosition);
+        }
+
+        @Override
+        public List<SearchResult<SequenceMatcher>> searchBackwards(final byte[] bytes, final int fromPosition,
+                                                                   final int toPosition) {
+            return searcher.searchBackwards(bytes, fromPosition, toPosition);
+        }
+
+        @Override
+        public void prepareForwards() {
+            searcher.prepareForwards();
+        }
+
+        @Override
+        public void prepareBackwards() {
+            searcher.prepareBackwards();
+        }
+    }
+
+}
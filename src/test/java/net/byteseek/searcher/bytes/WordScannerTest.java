@@ -0,0 +1,220 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.bytes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import net.byteseek.matcher.bytes.AllBitmaskMatcher;
+import net.byteseek.matcher.bytes.AnyBitmaskMatcher;
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.bytes.ByteRangeMatcher;
+import net.byteseek.matcher.bytes.InvertedByteMatcher;
+import net.byteseek.matcher.bytes.OneByteMatcher;
+import net.byteseek.matcher.bytes.SetBitsetMatcher;
+import net.byteseek.matcher.bytes.TwoByteMatcher;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for scanning bytes a word at a time.
+ *
+ * @author Matt Palmer
+ */
+public class WordScannerTest {
+
+    private static final Random RANDOM = new Random(19);
+
+    @Test
+    public void testSingleBytes() {
+        for (int value = 0; value < 256; value++) {
+            assertScansCorrectly(OneByteMatcher.valueOf((byte) value), true);
+            assertScansCorrectly(new InvertedByteMatcher((byte) value), true);
+        }
+    }
+
+    @Test
+    public void testTwoBytes() {
+        for (int test = 0; test < 200; test++) {
+            final int first = RANDOM.nextInt(256);
+            final int second = (first + 1 + RANDOM.nextInt(255)) & 0xFF;
+            assertScansCorrectly(new TwoByteMatcher((byte) first, (byte) second), true);
+        }
+        assertScansCorrectly(new TwoByteMatcher((byte) 0, (byte) 0xFF), true);
+        assertScansCorrectly(new TwoByteMatcher((byte) 0x7F, (byte) 0x80), true);
+    }
+
+    @Test
+    public void testRanges() {
+        final int[][] ranges = {{0, 255}, {0, 127}, {128, 255}, {0x30, 0x39}, {0x41, 0x5A}, {1, 254},
+                                {0x7E, 0x81}, {0, 1}, {254, 255}, {5, 5}};
+        for (final int[] range : ranges) {
+            final boolean allBytes = range[0] == 0 && range[1] == 255;
+            assertScansCorrectly(new ByteRangeMatcher(range[0], range[1], false), !allBytes);
+            if (!allBytes) {
+                assertScansCorrectly(new ByteRangeMatcher(range[0], range[1], true), true);
+            }
+        }
+        for (int test = 0; test < 200; test++) {
+            final int min = RANDOM.nextInt(256);
+            final int max = min + RANDOM.nextInt(256 - min);
+            assertScansCorrectly(new ByteRangeMatcher(min, max, RANDOM.nextBoolean()), false);
+        }
+    }
+
+    @Test
+    public void testBitmasks() {
+        for (int mask = 1; mask < 256; mask++) {
+            assertScansCorrectly(new AllBitmaskMatcher((byte) mask, false), true);
+            assertScansCorrectly(new AllBitmaskMatcher((byte) mask, true), true);
+            assertScansCorrectly(new AnyBitmaskMatcher((byte) mask, false), true);
+            assertScansCorrectly(new AnyBitmaskMatcher((byte) mask, true), true);
+        }
+    }
+
+    @Test
+    public void testOtherSets() {
+        for (int test = 0; test < 200; test++) {
+            final Set<Byte> values = new HashSet<Byte>();
+            final int numValues = 3 + RANDOM.nextInt(60);
+            while (values.size() < numValues) {
+                values.add((byte) RANDOM.nextInt(256));
+            }
+            assertScansCorrectly(new SetBitsetMatcher(values, RANDOM.nextBoolean()), false);
+        }
+    }
+
+    @Test
+    public void testSearchersFindAllMatches() {
+        final byte[] bytes = randomBytes(1000);
+        final List<ByteMatcher> matchers = new ArrayList<ByteMatcher>();
+        matchers.add(OneByteMatcher.valueOf(bytes[500]));
+        matchers.add(new ByteRangeMatcher(0x20, 0x40, false));
+        matchers.add(new AnyBitmaskMatcher((byte) 0x81, true));
+        for (final ByteMatcher matcher : matchers) {
+            final List<Integer> expected = new ArrayList<Integer>();
+            for (int position = 0; position < bytes.length; position++) {
+                if (matcher.matches(bytes[position])) {
+                    expected.add(position);
+                }
+            }
+            final ByteMatcherSearcher searcher = new ByteMatcherSearcher(matcher);
+            assertEquals(expected.size(), searcher.count(bytes));
+            assertEquals(expected.get(0).longValue(),
+                         searcher.searchForwards(bytes, 0, bytes.length - 1).get(0).getMatchPosition());
+            assertEquals(expected.get(expected.size() - 1).longValue(),
+                         searcher.searchBackwards(bytes, bytes.length - 1, 0).get(0).getMatchPosition());
+        }
+        final ByteSearcher byteSearcher = new ByteSearcher(bytes[500]);
+        assertEquals(new ByteMatcherSearcher(matchers.get(0)).count(bytes), byteSearcher.count(bytes));
+    }
+
+    private static void assertScansCorrectly(final ByteMatcher matcher, final boolean wordAtATime) {
+        final WordScanner scanner = WordScanner.forMatcher(matcher);
+        if (wordAtATime) {
+            assertTrue(matcher + " " + scanner, scanner.isWordAtATime());
+        }
+        final byte[] bytes = randomBytes(80);
+        for (int value = 0; value < 256; value++) {
+            if (matcher.matches((byte) value) != scanner.matches((byte) value)) {
+                fail(matcher + " does not scan value " + value + " correctly.");
+            }
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        final int last = bytes.length - 1;
+        for (int position = 0; position <= last; position++) {
+            assertIndex(matcher, "forwards from", position,
+                        expectedIndexOf(matcher, bytes, position, last), scanner.indexOf(bytes, position, last));
+            assertIndex(matcher, "forwards to", position,
+                        expectedIndexOf(matcher, bytes, 0, position), scanner.indexOf(bytes, 0, position));
+            assertIndex(matcher, "backwards from", position,
+                        expectedLastIndexOf(matcher, bytes, position, 0), scanner.lastIndexOf(bytes, position, 0));
+            assertIndex(matcher, "backwards to", position,
+                        expectedLastIndexOf(matcher, bytes, last, position), scanner.lastIndexOf(bytes, last, position));
+            assertIndex(matcher, "buffer forwards from", position,
+                        expectedIndexOf(matcher, bytes, position, last), scanner.indexOf(buffer, position, last));
+            assertIndex(matcher, "buffer backwards to", position,
+                        expectedLastIndexOf(matcher, bytes, last, position), scanner.lastIndexOf(buffer, last, position));
+        }
+        assertEquals("Buffer order unchanged", ByteOrder.BIG_ENDIAN, buffer.order());
+    }
+
+    private static void assertIndex(final ByteMatcher matcher, final String description, final int position,
+                                    final int expected, final int actual) {
+        if (expected != actual) {
+            assertEquals(matcher + " " + description + " " + position, expected, actual);
+        }
+    }
+
+    private static int expectedIndexOf(final ByteMatcher matcher, final byte[] bytes, final int from, final int to) {
+        for (int position = from; position <= to; position++) {
+            if (matcher.matches(bytes[position])) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static int expectedLastIndexOf(final ByteMatcher matcher, final byte[] bytes, final int from, final int to) {
+        for (int position = from; position >= to; position--) {
+            if (matcher.matches(bytes[position])) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Random bytes, with runs of equal and adjacent values so matches cluster
+     * within a word, as well as being spread out.
+     */
+    private static byte[] randomBytes(final int length) {
+        final byte[] bytes = new byte[length];
+        int position = 0;
+        while (position < length) {
+            final int value = RANDOM.nextInt(256);
+            final int runLength = 1 + RANDOM.nextInt(4);
+            for (int run = 0; run < runLength && position < length; run++) {
+                bytes[position++] = (byte) (value + RANDOM.nextInt(3) - 1);
+            }
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.matcher.bytes.AnyByteMatcher;
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.bytes.ByteRangeMatcher;
+import net.byteseek.matcher.bytes.InvertedByteMatcher;
+import net.byteseek.matcher.bytes.OneByteMatcher;
+import net.byteseek.matcher.bytes.TwoByteMatcher;
+import net.byteseek.matcher.sequence.ByteMatcherSequenceMatcher;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.MatchListener;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.sequence.bitparallel.BndmSearcher;
+import net.byteseek.searcher.sequence.bitparallel.ShiftOrSearcher;
+import net.byteseek.searcher.sequence.horspool.HashQHorspoolSearcher;
+import net.byteseek.searcher.sequence.oracle.BomSearcher;
+import net.byteseek.searcher.sequence.sunday.BerryRavindranSearcher;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the sequence searchers find the same matches as a naive search,
+ * in byte arrays and in readers with windows small enough for matches to cross
+ * window boundaries, or for sequences to be longer than a window.
+ *
+ * @author Matt Palmer
+ */
+@RunWith(Parameterized.class)
+public class SequenceSearcherAlgorithmsTest {
+
+    private static final int[] SMALL_WINDOWS = {61, 127, 4096};
+
+    private static byte[] text;
+
+    private final SearcherFactory factory;
+    private final Random random = new Random(21);
+
+    public SequenceSearcherAlgorithmsTest(final String name, final SearcherFactory factory) {
+        this.factory = factory;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> searchers() {
+        return Arrays.asList(new Object[][]{
+                {"TwoWay", new SearcherFactory() {
+                    public AbstractSequenceSearcher create(final SequenceMatcher sequence) {
+                        return new TwoWaySearcher(sequence);
+                    }}},
+                {"ShiftOr", new SearcherFactory() {
+                    public AbstractSequenceSearcher create(final SequenceMatcher sequence) {
+                        return new ShiftOrSearcher(sequence);
+                    }}},
+                {"Bndm", new SearcherFactory() {
+                    public AbstractSequenceSearcher create(final SequenceMatcher sequence) {
+                        return new BndmSearcher(sequence);
+                    }}},
+                {"Bom", new SearcherFactory() {
+                    public AbstractSequenceSearcher create(final SequenceMatcher sequence) {
+                        return new BomSearcher(sequence);
+                    }}},
+                {"HashQHorspool q=2", new SearcherFactory() {
+                    public AbstractSequenceSearcher create(final SequenceMatcher sequence) {
+                        return new HashQHorspoolSearcher(sequence, 2);
+                    }}},
+                {"HashQHorspool q=3", new SearcherFactory() {
+                    public AbstractSequenceSearcher create(final SequenceMatcher sequence) {
+                        return new HashQHorspoolSearcher(sequence, 3);
+                    }}},
+                {"HashQHorspool q=4", new SearcherFactory() {
+                    public AbstractSequenceSearcher create(final SequenceMatcher sequence) {
+                        return new HashQHorspoolSearcher(sequence, 4);
+                    }}},
+                {"BerryRavindran", new SearcherFactory() {
+                    public AbstractSequenceSearcher create(final SequenceMatcher sequence) {
+                        return new BerryRavindranSearcher(sequence);
+                    }}}
+        });
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        final File file = new File(SequenceSearcherAlgorithmsTest.class.getResource("/TestASCII.txt").getPath());
+        text = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(text);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testSequencesInText() throws IOException {
+        final String[] sequences = {"a", "e", "th", "the", "The", "and", "Midsommer", "  ", "e ", "eee", "xyz",
+                                    "Titania", "of the", "\r\n\r\n"};
+        for (final String sequence : sequences) {
+            assertSearchesCorrectly(new ByteSequenceMatcher(sequence), text, 4096);
+        }
+        for (int test = 0; test < 10; test++) {
+            final int length = 1 + random.nextInt(70);
+            final int position = random.nextInt(text.length - length);
+            assertSearchesCorrectly(new ByteSequenceMatcher(text, position, position + length), text);
+        }
+        assertSearchesCorrectly(new ByteSequenceMatcher(Arrays.copyOfRange(text, 0, 3)), text, 127);
+        assertSearchesCorrectly(new ByteSequenceMatcher(Arrays.copyOfRange(text, text.length - 3, text.length)),
+                                text, 127);
+    }
+
+    @Test
+    public void testLongSequences() throws IOException {
+        final int[] lengths = {63, 64, 65, 128, 129, 256, 500, 1000, 4096};
+        for (final int length : lengths) {
+            final int position = random.nextInt(text.length - length);
+            assertSearchesCorrectly(new ByteSequenceMatcher(text, position, position + length), text, 127, 4096);
+        }
+    }
+
+    @Test
+    public void testMatchesCrossingWindows() throws IOException {
+        final int windowSize = 64;
+        final byte[] data = new byte[windowSize * 40];
+        random.nextBytes(data);
+        for (final int length : new int[]{2, 3, 17, 63, 64, 65, 150}) {
+            final byte[] sequence = new byte[length];
+            random.nextBytes(sequence);
+            final byte[] copy = data.clone();
+            // Start a match at every offset before a window boundary which makes it cross it:
+            for (int offset = 1; offset < length && offset <= windowSize; offset += 1 + offset / 4) {
+                final int position = windowSize * (1 + offset % 37) - offset;
+                System.arraycopy(sequence, 0, copy, position, length);
+            }
+            assertSearchesCorrectly(new ByteSequenceMatcher(sequence), copy, windowSize, windowSize - 1);
+        }
+    }
+
+    @Test
+    public void testPeriodicSequences() throws IOException {
+        final byte[] data = new byte[4096];
+        for (int position = 0; position < data.length; position++) {
+            data[position] = (byte) (random.nextInt(8) == 0? 'b' : 'a');
+        }
+        final String[] sequences = {"aaaa", "abab", "ababab", "aabaab", "abaaba", "aab", "baa", "aba", "abaabaaab",
+                                    "aaaaaaaab", "baaaaaaaa", "abababababa", "aabaabaabaa"};
+        for (final String sequence : sequences) {
+            assertSearchesCorrectly(new ByteSequenceMatcher(sequence), data, 61);
+        }
+        for (int test = 0; test < 40; test++) {
+            final byte[] sequence = new byte[1 + random.nextInt(70)];
+            for (int position = 0; position < sequence.length; position++) {
+                sequence[position] = (byte) (random.nextInt(4) == 0? 'b' : 'a');
+            }
+            assertSearchesCorrectly(new ByteSequenceMatcher(sequence), data, 61);
+        }
+    }
+
+    @Test
+    public void testPeriodicSequencesLongerThanWindows() throws IOException {
+        final byte[] data = new byte[20000];
+        for (int position = 0; position < data.length; position++) {
+            data[position] = (byte) (position % 3 == 0 && random.nextInt(50) > 0? 'b' : 'a');
+        }
+        final byte[] sequence = new byte[400];
+        for (int position = 0; position < sequence.length; position++) {
+            sequence[position] = (byte) (position % 3 == 0? 'b' : 'a');
+        }
+        assertSearchesCorrectly(new ByteSequenceMatcher(sequence), data, 64, 127, 4096);
+    }
+
+    @Test
+    public void testZeros() throws IOException {
+        final byte[] zeros = new byte[12000];
+        zeros[9000] = 1;
+        final byte[] zerosThenOne = new byte[201];
+        zerosThenOne[200] = 1;
+        assertSearchesCorrectly(new ByteSequenceMatcher(zerosThenOne), zeros, 127, 4096);
+        final byte[] oneThenZeros = new byte[201];
+        oneThenZeros[0] = 1;
+        assertSearchesCorrectly(new ByteSequenceMatcher(oneThenZeros), zeros, 127, 4096);
+        // Sequences of zeros match at every position:
+        final byte[] allZeros = new byte[2000];
+        assertSearchesCorrectly(new ByteSequenceMatcher((byte) 0, 300), allZeros, 127, 4096);
+        assertSearchesCorrectly(new ByteSequenceMatcher((byte) 0, 5), allZeros, 127);
+    }
+
+    @Test
+    public void testByteClasses() throws IOException {
+        final SequenceMatcher caseInsensitive = new ByteMatcherSequenceMatcher(
+                new TwoByteMatcher((byte) 't', (byte) 'T'), new TwoByteMatcher((byte) 'h', (byte) 'H'),
+                new TwoByteMatcher((byte) 'e', (byte) 'E'));
+        assertSearchesCorrectly(caseInsensitive, text, 127);
+        final ByteMatcher letter = new ByteRangeMatcher('a', 'z', false);
+        final SequenceMatcher wideAtEnd = new ByteMatcherSequenceMatcher(
+                new ByteSequenceMatcher("the "), new ByteMatcherSequenceMatcher(letter, letter, letter, letter));
+        assertSearchesCorrectly(wideAtEnd, text, 127);
+        final SequenceMatcher wideInMiddle = new ByteMatcherSequenceMatcher(
+                new ByteSequenceMatcher("of"), new ByteMatcherSequenceMatcher(AnyByteMatcher.ANY_BYTE_MATCHER,
+                AnyByteMatcher.ANY_BYTE_MATCHER, AnyByteMatcher.ANY_BYTE_MATCHER), new ByteSequenceMatcher("e "));
+        assertSearchesCorrectly(wideInMiddle, text, 4096);
+        final SequenceMatcher allClasses = new ByteMatcherSequenceMatcher(
+                new ByteRangeMatcher('a', 'z', false), AnyByteMatcher.ANY_BYTE_MATCHER, new InvertedByteMatcher((byte) ' '));
+        assertSearchesCorrectly(allClasses, text, 4096);
+        for (final int length : new int[]{1, 5, 30, 64, 65, 200}) {
+            final int position = random.nextInt(text.length - length);
+            assertSearchesCorrectly(classesMatching(text, position, length), text, 127);
+        }
+    }
+
+    private SequenceMatcher classesMatching(final byte[] data, final int position, final int length) {
+        final ByteMatcher[] matchers = new ByteMatcher[length];
+        for (int index = 0; index < length; index++) {
+            final int value = data[position + index] & 0xFF;
+            switch (random.nextInt(5)) {
+                case 0:  matchers[index] = OneByteMatcher.valueOf((byte) value); break;
+                case 1:  matchers[index] = new TwoByteMatcher((byte) value, (byte) (value ^ 0x20)); break;
+                case 2:  matchers[index] = new ByteRangeMatcher(value & 0xF0, value | 0x0F, false); break;
+                case 3:  matchers[index] = AnyByteMatcher.ANY_BYTE_MATCHER; break;
+                default: matchers[index] = new InvertedByteMatcher((byte) (value + 1));
+            }
+        }
+        return new ByteMatcherSequenceMatcher(matchers);
+    }
+
+    private void assertSearchesCorrectly(final SequenceMatcher sequence, final byte[] data) throws IOException {
+        assertSearchesCorrectly(sequence, data, SMALL_WINDOWS);
+    }
+
+    private void assertSearchesCorrectly(final SequenceMatcher sequence, final byte[] data,
+                                         final int... windowSizes) throws IOException {
+        final AbstractSequenceSearcher searcher = factory.create(sequence);
+        final List<Integer> expected = new ArrayList<Integer>();
+        for (int position = 0; position <= data.length - sequence.length(); position++) {
+            if (sequence.matchesNoBoundsCheck(data, position)) {
+                expected.add(position);
+            }
+        }
+        final List<Integer> reversed = new ArrayList<Integer>(expected);
+        Collections.reverse(reversed);
+
+        // Searching byte arrays:
+        final List<Integer> forwards = new ArrayList<Integer>();
+        searcher.searchForwards(data, 0, data.length, new PositionCollector(forwards));
+        assertEquals(searcher.toString(), expected, forwards);
+        final List<Integer> backwards = new ArrayList<Integer>();
+        searcher.searchBackwards(data, data.length, 0, new PositionCollector(backwards));
+        assertEquals(searcher.toString(), reversed, backwards);
+        final List<Integer> restarted = new ArrayList<Integer>();
+        int position = 0;
+        List<SearchResult<SequenceMatcher>> results;
+        while (!(results = searcher.searchForwards(data, position)).isEmpty()) {
+            restarted.add((int) results.get(0).getMatchPosition());
+            position = (int) results.get(0).getMatchPosition() + 1;
+        }
+        assertEquals(searcher.toString(), expected, restarted);
+        if (!expected.isEmpty()) {
+            final int middle = expected.get(expected.size() / 2);
+            assertEquals(searcher.toString(), middle,
+                         searcher.searchForwards(data, middle, middle).get(0).getMatchPosition());
+            assertEquals(searcher.toString(), middle,
+                         searcher.searchBackwards(data, middle, middle).get(0).getMatchPosition());
+        }
+
+        // Searching readers, where matches can cross window boundaries:
+        for (final int windowSize : windowSizes) {
+            final String description = searcher + " window size " + windowSize;
+            final WindowReader reader = new InputStreamReader(new ByteArrayInputStream(data), windowSize,
+                                                              data.length / windowSize + 1);
+            try {
+                final List<Integer> readerForwards = new ArrayList<Integer>();
+                searcher.searchForwards(reader, 0, Long.MAX_VALUE, new PositionCollector(readerForwards));
+                assertEquals(description, expected, readerForwards);
+                final List<Integer> readerBackwards = new ArrayList<Integer>();
+                searcher.searchBackwards(reader, data.length, 0, new PositionCollector(readerBackwards));
+                assertEquals(description, reversed, readerBackwards);
+                assertEquals(description, expected.size() > 20? 20 : expected.size(),
+                             searcher.searchForwards(reader, 0, Long.MAX_VALUE, new PositionCollector(20)));
+
+                // A restarted search with list results from each position, forwards and backwards:
+                final List<Integer> readerRestarted = new ArrayList<Integer>();
+                long readerPosition = 0;
+                while (readerRestarted.size() < 50 &&
+                       !(results = searcher.searchForwards(reader, readerPosition)).isEmpty()) {
+                    readerRestarted.add((int) results.get(0).getMatchPosition());
+                    readerPosition = results.get(0).getMatchPosition() + 1;
+                }
+                assertEquals(description, expected.subList(0, readerRestarted.size()), readerRestarted);
+                assertEquals(description, expected.size() < 50? expected.size() : 50, readerRestarted.size());
+                final List<Integer> readerRestartedBackwards = new ArrayList<Integer>();
+                readerPosition = data.length;
+                while (readerRestartedBackwards.size() < 50 &&
+                       !(results = searcher.searchBackwards(reader, readerPosition)).isEmpty()) {
+                    readerRestartedBackwards.add((int) results.get(0).getMatchPosition());
+                    readerPosition = results.get(0).getMatchPosition() - 1;
+                }
+                assertEquals(description, reversed.subList(0, readerRestartedBackwards.size()), readerRestartedBackwards);
+                assertEquals(description, reversed.size() < 50? reversed.size() : 50, readerRestartedBackwards.size());
+
+                // Bounded searches starting and ending around window boundaries:
+                for (int test = 0; test < 5; test++) {
+                    final int boundary = windowSize * (1 + random.nextInt(data.length / windowSize + 1));
+                    final int from = boundary - 1 - random.nextInt(sequence.length() < boundary? sequence.length() : boundary);
+                    final int to = from + random.nextInt(windowSize * 3);
+                    final List<Integer> bounded = new ArrayList<Integer>();
+                    for (final Integer match : expected) {
+                        if (match >= from && match <= to) {
+                            bounded.add(match);
+                        }
+                    }
+                    final List<Integer> boundedForwards = new ArrayList<Integer>();
+                    searcher.searchForwards(reader, from, to, new PositionCollector(boundedForwards));
+                    assertEquals(description + " from " + from + " to " + to, bounded, boundedForwards);
+                    final List<Integer> boundedBackwards = new ArrayList<Integer>();
+                    searcher.searchBackwards(reader, to, from, new PositionCollector(boundedBackwards));
+                    Collections.reverse(boundedBackwards);
+                    assertEquals(description + " from " + to + " back to " + from, bounded, boundedBackwards);
+                    final List<SearchResult<SequenceMatcher>> first = searcher.searchForwards(reader, from, to);
+                    assertEquals(description + " from " + from + " to " + to,
+                                 bounded.isEmpty()? -1 : bounded.get(0),
+                                 first.isEmpty()? -1 : (int) first.get(0).getMatchPosition());
+                    final List<SearchResult<SequenceMatcher>> last = searcher.searchBackwards(reader, to, from);
+                    assertEquals(description + " from " + to + " back to " + from,
+                                 bounded.isEmpty()? -1 : bounded.get(bounded.size() - 1),
+                                 last.isEmpty()? -1 : (int) last.get(0).getMatchPosition());
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private interface SearcherFactory {
+        AbstractSequenceSearcher create(SequenceMatcher sequence);
+    }
+
+    private static final class PositionCollector implements MatchListener<SequenceMatcher> {
+
+        private final List<Integer> positions;
+        private final int limit;
+
+        private PositionCollector(final List<Integer> positions) {
+            this.positions = positions;
+            this.limit = Integer.MAX_VALUE;
+        }
+
+        private PositionCollector(final int limit) {
+            this.positions = new ArrayList<Integer>();
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean matchFound(final long matchPosition, final SequenceMatcher matchingObject) {
+            positions.add((int) matchPosition);
+            return positions.size() < limit;
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence;
+
+import java.io.IOException;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.matcher.bytes.AbstractByteMatcher;
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.bytes.ByteRangeMatcher;
+import net.byteseek.matcher.bytes.OneByteMatcher;
+import net.byteseek.matcher.bytes.TwoByteMatcher;
+import net.byteseek.matcher.sequence.ByteMatcherSequenceMatcher;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests which sequences the Two-Way searcher uses the Two-Way algorithm for, and that searching
+ * adversarial data takes linear time.  Finding matches is tested with the other sequence
+ * searchers in {@link SequenceSearcherAlgorithmsTest}.
+ *
+ * @author Matt Palmer
+ */
+public class TwoWaySearcherTest {
+
+    @Test
+    public void testIsTwoWay() {
+        assertTrue(new TwoWaySearcher(new ByteSequenceMatcher("the")).isTwoWay());
+        assertTrue(new TwoWaySearcher(new ByteSequenceMatcher((byte) 0, 300)).isTwoWay());
+        assertFalse(new TwoWaySearcher(new ByteMatcherSequenceMatcher(
+                OneByteMatcher.valueOf((byte) 't'), new ByteRangeMatcher('a', 'z', false),
+                OneByteMatcher.valueOf((byte) 'e'))).isTwoWay());
+    }
+
+    @Test(timeout = 2000)
+    public void testLinearOnZeros() {
+        // 00{200} 01 over a long run of zeros verifies almost the whole sequence at every
+        // position with a naive search, taking 200 times as long as a linear search:
+        final byte[] zerosThenOne = new byte[201];
+        zerosThenOne[200] = 1;
+        final TwoWaySearcher searcher = new TwoWaySearcher(new ByteSequenceMatcher(zerosThenOne));
+        assertTrue(searcher.isTwoWay());
+        final byte[] zeros = new byte[16 * 1024 * 1024];
+        for (int repeat = 0; repeat < 4; repeat++) {
+            assertTrue(searcher.searchForwards(zeros).isEmpty());
+            assertTrue(searcher.searchBackwards(zeros).isEmpty());
+        }
+    }
+
+    @Test
+    public void testByteClassesLinearOnZeros() {
+        // The same sequence with a byte class at the start, counting how often each byte matcher is used:
+        final CountingMatcher[] matchers = new CountingMatcher[201];
+        matchers[0] = new CountingMatcher(new TwoByteMatcher((byte) 0, (byte) 2));
+        for (int position = 1; position < 200; position++) {
+            matchers[position] = new CountingMatcher(OneByteMatcher.valueOf((byte) 0));
+        }
+        matchers[200] = new CountingMatcher(OneByteMatcher.valueOf((byte) 1));
+        final TwoWaySearcher searcher = new TwoWaySearcher(new ByteMatcherSequenceMatcher(matchers));
+        assertFalse(searcher.isTwoWay());
+        searcher.prepareForwards();
+        searcher.prepareBackwards();
+        CountingMatcher.comparisons = 0;
+
+        final byte[] zeros = new byte[100000];
+        assertTrue(searcher.searchForwards(zeros).isEmpty());
+        assertTrue(searcher.searchBackwards(zeros).isEmpty());
+        zeros[50000] = 1;
+        assertEquals(49800, searcher.searchForwards(zeros).get(0).getMatchPosition());
+        assertEquals(49800, searcher.searchBackwards(zeros).get(0).getMatchPosition());
+        assertTrue("comparisons " + CountingMatcher.comparisons, CountingMatcher.comparisons <= 4 * zeros.length);
+    }
+
+    /**
+     * A ByteMatcher which counts how many bytes all instances have been asked to match.
+     */
+    private static final class CountingMatcher extends AbstractByteMatcher {
+
+        private static long comparisons;
+
+        private final ByteMatcher matcher;
+
+        private CountingMatcher(final ByteMatcher matcher) {
+            this.matcher = matcher;
+        }
+
+        @Override
+        public boolean matches(final WindowReader reader, final long matchPosition) throws IOException {
+            comparisons++;
+            return matcher.matches(reader, matchPosition);
+        }
+
+        @Override
+        public boolean matches(final byte[] bytes, final int matchPosition) {
+            comparisons++;
+            return matcher.matches(bytes, matchPosition);
+        }
+
+        @Override
+        public boolean matchesNoBoundsCheck(final byte[] bytes, final int matchPosition) {
+            comparisons++;
+            return matcher.matchesNoBoundsCheck(bytes, matchPosition);
+        }
+
+        @Override
+        public boolean matches(final byte theByte) {
+            comparisons++;
+            return matcher.matches(theByte);
+        }
+
+        @Override
+        public byte[] getMatchingBytes() {
+            return matcher.getMatchingBytes();
+        }
+
+        @Override
+        public int getNumberOfMatchingBytes() {
+            return matcher.getNumberOfMatchingBytes();
+        }
+
+        @Override
+        public String toRegularExpression(final boolean prettyPrint) {
+            return matcher.toRegularExpression(prettyPrint);
+        }
+    }
+
+}
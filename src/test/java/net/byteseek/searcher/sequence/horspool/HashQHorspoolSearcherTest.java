@@ -0,0 +1,65 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence.horspool;
+
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the q-gram hashed Horspool searcher arguments.  Searching is tested with
+ * the other sequence searchers in {@link net.byteseek.searcher.sequence.SequenceSearcherAlgorithmsTest}.
+ *
+ * @author Matt Palmer
+ */
+public class HashQHorspoolSearcherTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testQTooSmall() {
+        new HashQHorspoolSearcher(new ByteSequenceMatcher("abc"), 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testQTooLarge() {
+        new HashQHorspoolSearcher(new ByteSequenceMatcher("abc"), 5);
+    }
+
+    @Test
+    public void testQ() {
+        assertEquals(1, new HashQHorspoolSearcher(new ByteSequenceMatcher("a"), 4).getQ());
+        assertEquals(2, new HashQHorspoolSearcher(new ByteSequenceMatcher("ab"), 4).getQ());
+        assertEquals(3, new HashQHorspoolSearcher(new ByteSequenceMatcher("abcd")).getQ());
+        assertEquals(4, new HashQHorspoolSearcher(new ByteSequenceMatcher("abcd"), 4).getQ());
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence.oracle;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the factor oracle used by the Backward Oracle Matching searcher.
+ * Searching is tested with the other sequence searchers in
+ * {@link net.byteseek.searcher.sequence.SequenceSearcherAlgorithmsTest}.
+ *
+ * @author Matt Palmer
+ */
+public class FactorOracleTest {
+
+    private static final Random RANDOM = new Random(23);
+
+    @Test
+    public void testOracleAcceptsAllFactors() {
+        final String[] strings = {"a", "abba", "abbbaab", "aaaaaa", "abcabcabd", "the quick brown fox"};
+        for (final String string : strings) {
+            assertAcceptsAllFactors(string.getBytes());
+        }
+        for (int test = 0; test < 100; test++) {
+            final byte[] string = new byte[1 + RANDOM.nextInt(100)];
+            for (int index = 0; index < string.length; index++) {
+                string[index] = (byte) ('a' + RANDOM.nextInt(3));
+            }
+            assertAcceptsAllFactors(string);
+        }
+        final FactorOracle oracle = new FactorOracle("abbbaab".getBytes());
+        assertEquals(FactorOracle.NO_STATE, oracle.initialTransition((byte) 'c'));
+        assertEquals(FactorOracle.NO_STATE, oracle.transition(oracle.initialTransition((byte) 'a'), (byte) 'c'));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyOracle() {
+        new FactorOracle(new byte[0]);
+    }
+
+    private static void assertAcceptsAllFactors(final byte[] string) {
+        final FactorOracle oracle = new FactorOracle(string);
+        assertEquals(string.length, oracle.length());
+        assertTrue(oracle.numberOfTransitions() <= 2 * string.length - 1);
+        for (int start = 0; start < string.length; start++) {
+            int state = oracle.initialTransition(string[start]);
+            for (int index = start + 1; index < string.length && state != FactorOracle.NO_STATE; index++) {
+                state = oracle.transition(state, string[index]);
+            }
+            assertTrue(new String(string), state != FactorOracle.NO_STATE);
+        }
+    }
+
+}
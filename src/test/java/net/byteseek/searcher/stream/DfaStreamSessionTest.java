@@ -0,0 +1,200 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.searcher.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.byteseek.automata.MutableAutomata;
+import net.byteseek.automata.MutableState;
+import net.byteseek.automata.trie.ByteArrayTrie;
+import net.byteseek.matcher.MatchResult;
+import net.byteseek.matcher.automata.ByteMatcherTransition;
+import net.byteseek.matcher.automata.ByteMatcherTransitionFactory;
+import net.byteseek.matcher.automata.DfaMatcher;
+import net.byteseek.matcher.bytes.InvertedByteMatcher;
+import net.byteseek.matcher.bytes.OneByteMatcher;
+import net.byteseek.searcher.MatchListener;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for matching an automata over a stream fed in chunks with a DfaStreamSession.
+ *
+ * @author Matt Palmer
+ */
+public class DfaStreamSessionTest {
+
+    private static final int[] CHUNK_SIZES = {1, 2, 3, 7, 100, 4096, Integer.MAX_VALUE};
+
+    private byte[] bytes;
+    private DfaMatcher<byte[]> matcher;
+
+    @Before
+    public void setUp() throws IOException {
+        final File file = new File(getClass().getResource("/TestASCII.txt").getPath());
+        bytes = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        matcher = new DfaMatcher<byte[]>(new ByteArrayTrie(
+                Arrays.asList("he".getBytes(), "the".getBytes(), "then".getBytes(), "Midsommer".getBytes()),
+                new ByteMatcherTransitionFactory<byte[]>()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullMatcher() {
+        new DfaStreamSession<byte[]>(null, new MatchCollector(Integer.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullListener() {
+        new DfaStreamSession<byte[]>(matcher, null);
+    }
+
+    @Test
+    public void testFindsAllMatches() {
+        final List<String> expected = new ArrayList<String>();
+        for (int position = 0; position < bytes.length; position++) {
+            for (final MatchResult<byte[]> result : matcher.allMatches(bytes, position)) {
+                expected.add(describe(result));
+            }
+        }
+        Collections.sort(expected);
+        assertFalse(expected.isEmpty());
+
+        for (final int chunkSize : CHUNK_SIZES) {
+            final MatchCollector collector = new MatchCollector(Integer.MAX_VALUE);
+            final DfaStreamSession<byte[]> session = new DfaStreamSession<byte[]>(matcher, collector);
+            long numMatches = 0;
+            for (int position = 0; position < bytes.length; position += chunkSize) {
+                numMatches += session.feed(bytes, position, Math.min(chunkSize, bytes.length - position));
+                assertTrue(session.getNumActive() <= 9);
+            }
+            numMatches += session.finish();
+            assertEquals(0, session.getNumActive());
+            assertEquals(expected.size(), numMatches);
+            Collections.sort(collector.matches);
+            assertEquals("chunk size " + chunkSize, expected, collector.matches);
+        }
+    }
+
+    @Test
+    public void testMatchesReportedAsTheyComplete() {
+        final MatchCollector collector = new MatchCollector(Integer.MAX_VALUE);
+        final DfaStreamSession<byte[]> session = new DfaStreamSession<byte[]>(matcher, collector);
+        assertEquals(0, session.feed("xt".getBytes()));
+        assertEquals(2, session.feed("he".getBytes()));   // "the" at 1 and "he" at 2.
+        assertEquals(Arrays.asList("1:3", "2:2"), collector.matches);
+        assertEquals(1, session.feed("n".getBytes()));    // "then" at 1.
+        assertEquals(Arrays.asList("1:3", "2:2", "1:4"), collector.matches);
+        assertEquals(5, session.getPosition());
+        assertEquals(0, session.finish());
+    }
+
+    @Test
+    public void testListenerStopsSession() {
+        final MatchCollector collector = new MatchCollector(2);
+        final DfaStreamSession<byte[]> session = new DfaStreamSession<byte[]>(matcher, collector);
+        session.feed(bytes);
+        assertEquals(2, collector.matches.size());
+        assertTrue(session.isStopped());
+        assertEquals(0, session.feed(bytes));
+
+        session.reset();
+        assertFalse(session.isStopped());
+        assertEquals(0, session.getNumActive());
+        assertEquals(0, session.getPosition());
+    }
+
+    @Test
+    public void testCyclicAutomataKeepEarliestPartialMatch() {
+        // a.*b, where a partial match after the first 'a' stays in the same state until a 'b':
+        final MutableState<byte[]> start = new MutableState<byte[]>();
+        final MutableState<byte[]> afterA = new MutableState<byte[]>();
+        final MutableState<byte[]> end = new MutableState<byte[]>(true);
+        end.addAssociation("a.*b".getBytes());
+        start.addTransition(new ByteMatcherTransition<byte[]>(OneByteMatcher.valueOf((byte) 'a'), afterA));
+        afterA.addTransition(new ByteMatcherTransition<byte[]>(OneByteMatcher.valueOf((byte) 'b'), end));
+        afterA.addTransition(new ByteMatcherTransition<byte[]>(new InvertedByteMatcher((byte) 'b'), afterA));
+        end.addTransition(new ByteMatcherTransition<byte[]>(OneByteMatcher.valueOf((byte) 'b'), end));
+        end.addTransition(new ByteMatcherTransition<byte[]>(new InvertedByteMatcher((byte) 'b'), afterA));
+        final DfaMatcher<byte[]> cyclic = new DfaMatcher<byte[]>(new MutableAutomata<byte[]>(start));
+
+        final MatchCollector collector = new MatchCollector(Integer.MAX_VALUE);
+        final DfaStreamSession<byte[]> session = new DfaStreamSession<byte[]>(cyclic, collector);
+        final byte[] as = new byte[10000];
+        Arrays.fill(as, (byte) 'a');
+        for (int chunk = 0; chunk < 10; chunk++) {
+            assertEquals(0, session.feed(as));
+            assertTrue(session.getNumActive() <= 3);
+        }
+        assertEquals(1, session.feed("b".getBytes()));
+        assertEquals(Arrays.asList("0:100001"), collector.matches);
+        // "ab" at 100002 reaches the same states as the match from 0, so only the earliest is reported:
+        assertEquals(1, session.feed("xab".getBytes()));
+        assertEquals(Arrays.asList("0:100001", "0:100004"), collector.matches);
+        assertTrue(session.getNumActive() <= 3);
+    }
+
+    private static String describe(final MatchResult<byte[]> result) {
+        return result.getMatchPosition() + ":" + result.getMatchLength();
+    }
+
+    private static final class MatchCollector implements MatchListener<MatchResult<byte[]>> {
+
+        private final List<String> matches = new ArrayList<String>();
+        private final int maxMatches;
+
+        private MatchCollector(final int maxMatches) {
+            this.maxMatches = maxMatches;
+        }
+
+        @Override
+        public boolean matchFound(final long matchPosition, final MatchResult<byte[]> matchingObject) {
+            assertEquals(matchPosition, matchingObject.getMatchPosition());
+            assertFalse(matchingObject.getMatchingObjects().isEmpty());
+            matches.add(describe(matchingObject));
+            return matches.size() < maxMatches;
+        }
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.searcher.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.byteseek.compiler.matcher.MatcherCompilerUtils;
+import net.byteseek.matcher.multisequence.ListMultiSequenceMatcher;
+import net.byteseek.matcher.multisequence.MultiSequenceMatcher;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.MatchListener;
+import net.byteseek.searcher.multisequence.AbstractMultiSequenceSearcher;
+import net.byteseek.searcher.multisequence.MultiSequenceMatcherSearcher;
+import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
+import net.byteseek.searcher.sequence.SequenceMatcherSearcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import net.byteseek.searcher.sequence.horspool.HorspoolFinalFlagSearcher;
+import net.byteseek.searcher.sequence.sunday.SundayQuickSearcher;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for searching a stream fed in chunks with a SearcherStreamSession.
+ *
+ * @author Matt Palmer
+ */
+public class SearcherStreamSessionTest {
+
+    private static final int[] CHUNK_SIZES = {1, 2, 3, 7, 100, 4096, Integer.MAX_VALUE};
+
+    private byte[] bytes;
+
+    @Before
+    public void setUp() throws IOException {
+        final File file = new File(getClass().getResource("/TestASCII.txt").getPath());
+        bytes = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullSearcher() {
+        new SearcherStreamSession<SequenceMatcher>(null, 3, new PositionCollector(Integer.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullListener() {
+        new SearcherStreamSession<SequenceMatcher>(new SequenceMatcherSearcher(new ByteSequenceMatcher("the")), 3, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroMaxMatchLength() {
+        new SearcherStreamSession<SequenceMatcher>(new SequenceMatcherSearcher(new ByteSequenceMatcher("the")), 0,
+                                                   new PositionCollector(Integer.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadRange() {
+        SearcherStreamSession.forSequenceSearcher(new SequenceMatcherSearcher(new ByteSequenceMatcher("the")),
+                                                  new PositionCollector(Integer.MAX_VALUE)).feed(bytes, 10, bytes.length);
+    }
+
+    @Test
+    public void testSequenceSearchers() {
+        final SequenceMatcher[] matchers = {new ByteSequenceMatcher("the"),
+                                            new ByteSequenceMatcher("e"),
+                                            new ByteSequenceMatcher("A Midsommer Nights Dreame"),
+                                            MatcherCompilerUtils.createCaseInsensitiveMatcher("midsommer")};
+        for (final SequenceMatcher matcher : matchers) {
+            final List<Long> expected = new ArrayList<Long>();
+            for (int position = 0; position <= bytes.length - matcher.length(); position++) {
+                if (matcher.matches(bytes, position)) {
+                    expected.add((long) position);
+                }
+            }
+            final AbstractSequenceSearcher[] searchers = {new SequenceMatcherSearcher(matcher),
+                                                          new BoyerMooreHorspoolSearcher(matcher),
+                                                          new HorspoolFinalFlagSearcher(matcher),
+                                                          new SundayQuickSearcher(matcher)};
+            for (final AbstractSequenceSearcher searcher : searchers) {
+                for (final int chunkSize : CHUNK_SIZES) {
+                    final PositionCollector collector = new PositionCollector(Integer.MAX_VALUE);
+                    final SearcherStreamSession<SequenceMatcher> session =
+                            SearcherStreamSession.forSequenceSearcher(searcher, collector);
+                    assertEquals(expected.size(), feedInChunks(session, chunkSize));
+                    assertEquals(searcher + " chunk size " + chunkSize, expected, collector.positions);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMultiSequenceSearchers() {
+        final MultiSequenceMatcher matcher = new ListMultiSequenceMatcher(
+                Arrays.asList(new ByteSequenceMatcher("the"), new ByteSequenceMatcher("and"),
+                              new ByteSequenceMatcher("Midsommer")));
+        final List<Long> expected = new ArrayList<Long>();
+        for (int position = 0; position < bytes.length; position++) {
+            if (matcher.matches(bytes, position)) {
+                expected.add((long) position);
+            }
+        }
+        final AbstractMultiSequenceSearcher searcher = new MultiSequenceMatcherSearcher(matcher);
+        for (final int chunkSize : CHUNK_SIZES) {
+            final PositionCollector collector = new PositionCollector(Integer.MAX_VALUE);
+            final SearcherStreamSession<SequenceMatcher> session =
+                    SearcherStreamSession.forMultiSequenceSearcher(searcher, collector);
+            assertEquals(expected.size(), feedInChunks(session, chunkSize));
+            assertEquals("chunk size " + chunkSize, expected, collector.positions);
+        }
+    }
+
+    @Test
+    public void testRandomChunksAndBuffers() {
+        final SequenceMatcher matcher = new ByteSequenceMatcher("the");
+        final List<Long> expected = new ArrayList<Long>();
+        for (int position = 0; position <= bytes.length - matcher.length(); position++) {
+            if (matcher.matches(bytes, position)) {
+                expected.add((long) position);
+            }
+        }
+        final PositionCollector collector = new PositionCollector(Integer.MAX_VALUE);
+        final SearcherStreamSession<SequenceMatcher> session =
+                SearcherStreamSession.forSequenceSearcher(new BoyerMooreHorspoolSearcher(matcher), collector);
+        final Random random = new Random(42);
+        int position = 0;
+        while (position < bytes.length) {
+            final int length = Math.min(random.nextInt(20), bytes.length - position);
+            switch (random.nextInt(3)) {
+                case 0:  session.feed(Arrays.copyOfRange(bytes, position, position + length)); break;
+                case 1:  session.feed(ByteBuffer.wrap(bytes, position, length)); break;
+                default: {
+                    final ByteBuffer direct = ByteBuffer.allocateDirect(length);
+                    direct.put(bytes, position, length).flip();
+                    session.feed(direct);
+                    assertFalse(direct.hasRemaining());
+                }
+            }
+            position += length;
+            assertEquals(position, session.getPosition());
+        }
+        session.finish();
+        assertEquals(expected, collector.positions);
+    }
+
+    @Test
+    public void testListenerStopsSession() {
+        final PositionCollector collector = new PositionCollector(3);
+        final SearcherStreamSession<SequenceMatcher> session = SearcherStreamSession.forSequenceSearcher(
+                new BoyerMooreHorspoolSearcher(new ByteSequenceMatcher("the")), collector);
+        feedInChunks(session, 1000);
+        assertEquals(3, collector.positions.size());
+        assertTrue(session.isStopped());
+
+        session.reset();
+        assertFalse(session.isStopped());
+        assertEquals(0, session.getPosition());
+        assertEquals(0, session.feed(bytes, 0, 10));
+    }
+
+    @Test
+    public void testMatchesAtEndOfStream() {
+        final MultiSequenceMatcher matcher = new ListMultiSequenceMatcher(
+                Arrays.asList(new ByteSequenceMatcher("xy"), new ByteSequenceMatcher("abcdef")));
+        final PositionCollector collector = new PositionCollector(Integer.MAX_VALUE);
+        final SearcherStreamSession<SequenceMatcher> session =
+                SearcherStreamSession.forMultiSequenceSearcher(new MultiSequenceMatcherSearcher(matcher), collector);
+        assertEquals(0, session.feed("--abc".getBytes()));
+        assertEquals(1, session.feed("def-xy".getBytes()));
+        assertEquals(Arrays.asList(2L), collector.positions);
+        assertEquals(1, session.finish());
+        assertEquals(Arrays.asList(2L, 9L), collector.positions);
+    }
+
+    private long feedInChunks(final StreamSearchSession session, final int chunkSize) {
+        long numMatches = 0;
+        for (int position = 0; position < bytes.length; position += chunkSize) {
+            numMatches += session.feed(bytes, position, Math.min(chunkSize, bytes.length - position));
+        }
+        return numMatches + session.finish();
+    }
+
+    private static final class PositionCollector implements MatchListener<SequenceMatcher> {
+
+        private final List<Long> positions = new ArrayList<Long>();
+        private final int maxMatches;
+
+        private PositionCollector(final int maxMatches) {
+            this.maxMatches = maxMatches;
+        }
+
+        @Override
+        public boolean matchFound(final long matchPosition, final SequenceMatcher matchingObject) {
+            assertNotNull(matchingObject);
+            positions.add(matchPosition);
+            return positions.size() < maxMatches;
+        }
+    }
+
+}
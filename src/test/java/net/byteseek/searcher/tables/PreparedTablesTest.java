@@ -0,0 +1,306 @@
+/*
+ * Copyright Matt Palmer 2015, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.tables;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.byteseek.matcher.multisequence.ListMultiSequenceMatcher;
+import net.byteseek.matcher.multisequence.MultiSequenceMatcher;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.SearchUtils;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.multisequence.set_horspool.SetHorspoolSearcher;
+import net.byteseek.searcher.multisequence.wu_manber.WuManberOneByteSearcher;
+import net.byteseek.searcher.multisequence.wu_manber.WuManberTwoByteSearcher;
+import net.byteseek.searcher.sequence.horspool.BoyerMooreHorspoolSearcher;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for writing, reading and searching with prepared tables.
+ *
+ * @author Matt Palmer
+ */
+public class PreparedTablesTest {
+
+    private byte[] bytes;
+
+    @Before
+    public void setUp() throws IOException {
+        final File file = new File(getClass().getResource("/TestASCII.txt").getPath());
+        bytes = new byte[(int) file.length()];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final int[] first = {1, 2, 3};
+        final int[] second = new int[65536];
+        Arrays.fill(second, 7);
+        second[1000] = -1;
+        final PreparedTables.Builder builder = new PreparedTables.Builder()
+                .add("first", 42L, first)
+                .add("sec\u00f6nd", -3L, second)
+                .add("empty", 0L, new int[0]);
+        assertEquals(3, builder.size());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        builder.write(out);
+        final PreparedTables tables = PreparedTables.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, tables.size());
+        assertEquals(Arrays.asList("first", "sec\u00f6nd", "empty"), new ArrayList<String>(tables.getKeys()));
+        assertArrayEquals(first, toArray(tables.getTable("first", 42L)));
+        assertArrayEquals(second, toArray(tables.getTable("sec\u00f6nd", -3L)));
+        assertArrayEquals(new int[0], toArray(tables.getTable("empty", 0L)));
+        assertTrue(tables.getTable("first", 42L).isReadOnly());
+        assertNull(tables.getTable("first", 43L));
+        assertNull(tables.getTable("missing", 42L));
+        assertTrue(tables.containsTable("first"));
+        assertFalse(tables.containsTable("missing"));
+
+        final PreparedTables built = builder.build();
+        assertArrayEquals(second, toArray(built.getTable("sec\u00f6nd", -3L)));
+    }
+
+    @Test
+    public void testMapFile() throws IOException {
+        final int[] table = {9, 8, 7, 6, 5};
+        final File file = File.createTempFile("prepared", ".tables");
+        try {
+            new PreparedTables.Builder().add("table", 1L, table).write(file);
+            final PreparedTables tables = PreparedTables.map(file);
+            assertArrayEquals(table, toArray(tables.getTable("table", 1L)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testByteSets() {
+        final byte[] values = {0, 31, 32, (byte) 0x80, (byte) 0xFF};
+        final PreparedTables tables = new PreparedTables.Builder()
+                .addByteSet("set", 5L, values)
+                .addByteSet("empty", 5L, new byte[0])
+                .add("notASet", 5L, new int[3])
+                .build();
+        final Set<Byte> expected = new HashSet<Byte>();
+        for (final byte value : values) {
+            expected.add(value);
+        }
+        assertEquals(expected, tables.getByteSet("set", 5L));
+        assertEquals(new HashSet<Byte>(), tables.getByteSet("empty", 5L));
+        assertNull(tables.getByteSet("set", 6L));
+        assertNull(tables.getByteSet("notASet", 5L));
+        assertNull(tables.getByteSet("missing", 5L));
+    }
+
+    @Test
+    public void testInvalidData() throws IOException {
+        try {
+            PreparedTables.wrap(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}));
+            fail("Expected an IOException for data which is not prepared tables.");
+        } catch (IOException expected) {
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PreparedTables.Builder().add("table", 1L, new int[256]).write(out);
+        final byte[] truncated = Arrays.copyOf(out.toByteArray(), 20);
+        try {
+            PreparedTables.wrap(ByteBuffer.wrap(truncated));
+            fail("Expected an EOFException for truncated tables.");
+        } catch (EOFException expected) {
+        }
+        final byte[] missingData = Arrays.copyOf(out.toByteArray(), out.size() - 4);
+        try {
+            PreparedTables.wrap(ByteBuffer.wrap(missingData));
+            fail("Expected an IOException for a table extending past the end of the data.");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testFingerprints() {
+        final SequenceMatcher the = new ByteSequenceMatcher("the");
+        assertEquals(PreparedTables.fingerprint(the), PreparedTables.fingerprint(new ByteSequenceMatcher("the")));
+        assertFalse(PreparedTables.fingerprint(the) == PreparedTables.fingerprint(new ByteSequenceMatcher("tha")));
+        assertFalse(PreparedTables.fingerprint(the) == PreparedTables.fingerprint(new ByteSequenceMatcher("thee")));
+        assertFalse(PreparedTables.fingerprint(sequences("ab", "c")) == PreparedTables.fingerprint(sequences("a", "bc")));
+    }
+
+    @Test
+    public void testBoyerMooreHorspoolSearcher() throws IOException {
+        final SequenceMatcher sequence = new ByteSequenceMatcher("Midsommer");
+        final BoyerMooreHorspoolSearcher original = new BoyerMooreHorspoolSearcher(sequence);
+        final PreparedTables tables = writeAndMap(original);
+        assertEquals(4, tables.size());
+        final BoyerMooreHorspoolSearcher prepared = new BoyerMooreHorspoolSearcher(sequence, tables);
+        assertSameResults(original, prepared);
+
+        // Tables for a different sequence are not used:
+        final SequenceMatcher other = new ByteSequenceMatcher("Dreame");
+        assertSameResults(new BoyerMooreHorspoolSearcher(other), new BoyerMooreHorspoolSearcher(other, tables));
+    }
+
+    @Test
+    public void testTablesForManySequences() throws IOException {
+        final SequenceMatcher midsommer = new ByteSequenceMatcher("Midsommer");
+        final SequenceMatcher dreame = new ByteSequenceMatcher("Dreame");
+        final BoyerMooreHorspoolSearcher first = new BoyerMooreHorspoolSearcher(midsommer);
+        final BoyerMooreHorspoolSearcher second = new BoyerMooreHorspoolSearcher(dreame);
+        final PreparedTables tables = writeAndMap(first, second);
+        assertEquals(8, tables.size());
+        final String midsommerKey = PreparedTables.tableKey(BoyerMooreHorspoolSearcher.class,
+                                                            PreparedTables.fingerprint(midsommer), "forwards");
+        final String dreameKey = PreparedTables.tableKey(BoyerMooreHorspoolSearcher.class,
+                                                         PreparedTables.fingerprint(dreame), "forwards");
+        assertNotNull(tables.getTable(midsommerKey, PreparedTables.fingerprint(midsommer)));
+        assertNotNull(tables.getTable(dreameKey, PreparedTables.fingerprint(dreame)));
+        assertSameResults(first, new BoyerMooreHorspoolSearcher(midsommer, tables));
+        assertSameResults(second, new BoyerMooreHorspoolSearcher(dreame, tables));
+    }
+
+    @Test
+    public void testPreparedShiftsAreUsed() {
+        final SequenceMatcher sequence = new ByteSequenceMatcher("Midsommer");
+        final long fingerprint = PreparedTables.fingerprint(sequence);
+        final int[] hugeShifts = new int[256];
+        Arrays.fill(hugeShifts, bytes.length);
+        final PreparedTables tables = new PreparedTables.Builder()
+                .add(PreparedTables.tableKey(BoyerMooreHorspoolSearcher.class, fingerprint, "forwards"),
+                     fingerprint, hugeShifts)
+                .build();
+        assertTrue(new BoyerMooreHorspoolSearcher(sequence).exists(bytes));
+        assertFalse(new BoyerMooreHorspoolSearcher(sequence, tables).exists(bytes));
+    }
+
+    @Test
+    public void testPreparedVerifierBytesAreUsed() throws IOException {
+        final SequenceMatcher sequence = new ByteSequenceMatcher("Midsommer");
+        final long fingerprint = PreparedTables.fingerprint(sequence);
+        final int[] oneShifts = new int[256];
+        Arrays.fill(oneShifts, 1);
+        // The final byte is 'r', so a verifier byte set of only 'x' never lets the verifier run:
+        final PreparedTables tables = new PreparedTables.Builder()
+                .add(PreparedTables.tableKey(BoyerMooreHorspoolSearcher.class, fingerprint, "forwards"),
+                     fingerprint, oneShifts)
+                .addByteSet(PreparedTables.tableKey(BoyerMooreHorspoolSearcher.class, fingerprint, "forwards.verifier"),
+                            fingerprint, new byte[] {'x'})
+                .build();
+        assertTrue(new BoyerMooreHorspoolSearcher(sequence).exists(bytes));
+        assertFalse(new BoyerMooreHorspoolSearcher(sequence, tables).exists(bytes));
+
+        final MultiSequenceMatcher sequences = sequences("Midsommer", "Dreame");
+        final long setFingerprint = PreparedTables.fingerprint(sequences);
+        final PreparedTables setTables = new PreparedTables.Builder()
+                .add(PreparedTables.tableKey(SetHorspoolSearcher.class, setFingerprint, "backwards"),
+                     setFingerprint, oneShifts)
+                .addByteSet(PreparedTables.tableKey(SetHorspoolSearcher.class, setFingerprint, "backwards.verifier"),
+                            setFingerprint, new byte[] {'x'})
+                .build();
+        assertFalse(SearchUtils.searchAllBackwards(new SetHorspoolSearcher(sequences), bytes).isEmpty());
+        assertTrue(SearchUtils.searchAllBackwards(new SetHorspoolSearcher(sequences, setTables), bytes).isEmpty());
+    }
+
+    @Test
+    public void testMultiSequenceSearchers() throws IOException {
+        final MultiSequenceMatcher sequences = sequences("Midsommer", "Dreame", "the", "Lysander");
+        final SetHorspoolSearcher setHorspool = new SetHorspoolSearcher(sequences);
+        final WuManberOneByteSearcher oneByte = new WuManberOneByteSearcher(sequences);
+        final WuManberTwoByteSearcher twoByte = new WuManberTwoByteSearcher(sequences);
+        final PreparedTables tables = writeAndMap(setHorspool, oneByte, twoByte);
+        assertEquals(8, tables.size());
+        assertSameResults(setHorspool, new SetHorspoolSearcher(sequences, tables));
+        assertSameResults(oneByte, new WuManberOneByteSearcher(sequences, tables));
+        assertSameResults(twoByte, new WuManberTwoByteSearcher(sequences, tables));
+    }
+
+    private PreparedTables writeAndMap(final PreparedTableSearcher... searchers) throws IOException {
+        final PreparedTables.Builder builder = new PreparedTables.Builder();
+        for (final PreparedTableSearcher searcher : searchers) {
+            builder.add(searcher);
+        }
+        final File file = File.createTempFile("prepared", ".tables");
+        file.deleteOnExit();
+        builder.write(file);
+        return PreparedTables.map(file);
+    }
+
+    private <T> void assertSameResults(final Searcher<T> expected, final Searcher<T> actual) {
+        assertEquals(expected.toString(), positionsOf(SearchUtils.searchAllForwards(expected, bytes)),
+                                          positionsOf(SearchUtils.searchAllForwards(actual, bytes)));
+        assertEquals(expected.toString(), positionsOf(SearchUtils.searchAllBackwards(expected, bytes)),
+                                          positionsOf(SearchUtils.searchAllBackwards(actual, bytes)));
+    }
+
+    private static int[] toArray(final IntBuffer table) {
+        final int[] values = new int[table.remaining()];
+        table.get(values);
+        return values;
+    }
+
+    private static <T> List<Long> positionsOf(final List<SearchResult<T>> results) {
+        final List<Long> positions = new ArrayList<Long>();
+        for (final SearchResult<T> result : results) {
+            positions.add(result.getMatchPosition());
+        }
+        return positions;
+    }
+
+    private static MultiSequenceMatcher sequences(final String... values) {
+        final List<SequenceMatcher> matchers = new ArrayList<SequenceMatcher>();
+        for (final String value : values) {
+            matchers.add(new ByteSequenceMatcher(value));
+        }
+        return new ListMultiSequenceMatcher(matchers);
+    }
+
+}
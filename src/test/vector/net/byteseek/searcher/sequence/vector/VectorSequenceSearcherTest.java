@@ -0,0 +1,193 @@
+/*
+ * Copyright Matt Palmer 2016, All rights reserved.
+ *
+ * This code is licensed under a standard 3-clause BSD license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * The names of its contributors may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.byteseek.searcher.sequence.vector;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.matcher.bytes.AnyByteMatcher;
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.bytes.ByteRangeMatcher;
+import net.byteseek.matcher.bytes.InvertedByteMatcher;
+import net.byteseek.matcher.bytes.OneByteMatcher;
+import net.byteseek.matcher.bytes.TwoByteMatcher;
+import net.byteseek.matcher.sequence.ByteMatcherSequenceMatcher;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.MatchListener;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.sequence.AbstractSequenceSearcher;
+import net.byteseek.searcher.sequence.SequenceMatcherSearcher;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests that the VectorSequenceSearcher finds the same matches as a {@link SequenceMatcherSearcher},
+ * in byte arrays and in readers with windows small enough for matches to cross window boundaries.
+ * These tests are compiled and run by the vector profile, and are skipped if the Vector API
+ * is not available on the platform running them.
+ *
+ * @author Matt Palmer
+ */
+public class VectorSequenceSearcherTest {
+
+    private static final int[] WINDOW_SIZES = {61, 127, 4096};
+
+    private final Random random = new Random(20);
+    private byte[] data;
+
+    @Before
+    public void setUp() {
+        assumeTrue(VectorSearchers.isAvailable());
+        // A small alphabet, so sequences match often:
+        data = new byte[20000];
+        for (int position = 0; position < data.length; position++) {
+            data[position] = (byte) ('a' + random.nextInt(4));
+        }
+    }
+
+    @Test
+    public void testVectorSearchersAreUsed() {
+        assertTrue(VectorSearchers.newSequenceSearcher(new ByteSequenceMatcher("ab")) instanceof VectorSequenceSearcher);
+        assertTrue(VectorSequenceSearcher.getVectorLength() >= 32);
+    }
+
+    @Test
+    public void testSequences() throws IOException {
+        final String[] sequences = {"a", "ab", "abc", "dddd", "abcdabcd", "x", "axb"};
+        for (final String sequence : sequences) {
+            assertSameMatches(new ByteSequenceMatcher(sequence));
+        }
+        for (final int length : new int[]{1, 2, 5, 31, 32, 33, 63, 64, 65, 200}) {
+            final int position = random.nextInt(data.length - length);
+            assertSameMatches(new ByteSequenceMatcher(data, position, position + length));
+        }
+    }
+
+    @Test
+    public void testByteClasses() throws IOException {
+        assertSameMatches(new ByteMatcherSequenceMatcher(
+                new TwoByteMatcher((byte) 'a', (byte) 'b'), OneByteMatcher.valueOf((byte) 'c')));
+        assertSameMatches(new ByteMatcherSequenceMatcher(
+                new ByteRangeMatcher('b', 'c', false), AnyByteMatcher.ANY_BYTE_MATCHER,
+                new InvertedByteMatcher((byte) 'a')));
+        // Sequences without a first or last byte to test:
+        assertSameMatches(new ByteMatcherSequenceMatcher(
+                AnyByteMatcher.ANY_BYTE_MATCHER, OneByteMatcher.valueOf((byte) 'd')));
+        assertSameMatches(new ByteMatcherSequenceMatcher(
+                OneByteMatcher.valueOf((byte) 'd'), AnyByteMatcher.ANY_BYTE_MATCHER));
+        assertSameMatches(new ByteMatcherSequenceMatcher(
+                AnyByteMatcher.ANY_BYTE_MATCHER, OneByteMatcher.valueOf((byte) 'd'), AnyByteMatcher.ANY_BYTE_MATCHER));
+        for (final int length : new int[]{1, 3, 30, 70}) {
+            final int position = random.nextInt(data.length - length);
+            final ByteMatcher[] matchers = new ByteMatcher[length];
+            for (int index = 0; index < length; index++) {
+                final byte value = data[position + index];
+                matchers[index] = random.nextBoolean()? OneByteMatcher.valueOf(value)
+                                                      : new TwoByteMatcher(value, (byte) (value ^ 1));
+            }
+            assertSameMatches(new ByteMatcherSequenceMatcher(matchers));
+        }
+    }
+
+    private void assertSameMatches(final SequenceMatcher sequence) throws IOException {
+        final AbstractSequenceSearcher expectedSearcher = new SequenceMatcherSearcher(sequence);
+        final AbstractSequenceSearcher searcher = new VectorSequenceSearcher(sequence);
+
+        // Searching byte arrays:
+        final List<Long> expected = new ArrayList<Long>();
+        expectedSearcher.searchForwards(data, 0, data.length, new PositionCollector(expected));
+        final List<Long> forwards = new ArrayList<Long>();
+        searcher.searchForwards(data, 0, data.length, new PositionCollector(forwards));
+        assertEquals(searcher.toString(), expected, forwards);
+        final List<Long> expectedBackwards = new ArrayList<Long>();
+        expectedSearcher.searchBackwards(data, data.length, 0, new PositionCollector(expectedBackwards));
+        final List<Long> backwards = new ArrayList<Long>();
+        searcher.searchBackwards(data, data.length, 0, new PositionCollector(backwards));
+        assertEquals(searcher.toString(), expectedBackwards, backwards);
+
+        // Searching readers, where matches can cross window boundaries:
+        for (final int windowSize : WINDOW_SIZES) {
+            final String description = searcher + " window size " + windowSize;
+            final WindowReader reader = new InputStreamReader(new ByteArrayInputStream(data), windowSize,
+                                                              data.length / windowSize + 1);
+            try {
+                final List<Long> readerForwards = new ArrayList<Long>();
+                searcher.searchForwards(reader, 0, Long.MAX_VALUE, new PositionCollector(readerForwards));
+                assertEquals(description, expected, readerForwards);
+                final List<Long> readerBackwards = new ArrayList<Long>();
+                searcher.searchBackwards(reader, data.length, 0, new PositionCollector(readerBackwards));
+                assertEquals(description, expectedBackwards, readerBackwards);
+                for (int test = 0; test < 5; test++) {
+                    final long from = random.nextInt(data.length);
+                    final long to = from + random.nextInt(windowSize * 3);
+                    assertEquals(description + " from " + from + " to " + to,
+                                 matchPosition(expectedSearcher.searchForwards(reader, from, to)),
+                                 matchPosition(searcher.searchForwards(reader, from, to)));
+                    assertEquals(description + " from " + to + " back to " + from,
+                                 matchPosition(expectedSearcher.searchBackwards(reader, to, from)),
+                                 matchPosition(searcher.searchBackwards(reader, to, from)));
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private static long matchPosition(final List<SearchResult<SequenceMatcher>> results) {
+        return results.isEmpty()? -1 : results.get(0).getMatchPosition();
+    }
+
+    private static final class PositionCollector implements MatchListener<SequenceMatcher> {
+
+        private final List<Long> positions;
+
+        private PositionCollector(final List<Long> positions) {
+            this.positions = positions;
+        }
+
+        @Override
+        public boolean matchFound(final long matchPosition, final SequenceMatcher matchingObject) {
+            positions.add(matchPosition);
+            return true;
+        }
+    }
+
+}